@@ -0,0 +1,109 @@
+package hospitalsystem.benchmark;
+
+import hospitalsystem.persistence.HospitalSystemApplication;
+import hospitalsystem.persistence.entity.Hospital;
+import hospitalsystem.persistence.entity.Patient;
+import hospitalsystem.persistence.service.HospitalService;
+import hospitalsystem.persistence.service.PatientImportService;
+import hospitalsystem.persistence.service.PatientService;
+import org.springframework.boot.WebApplicationType;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import java.util.ArrayList;
+import java.util.Calendar;
+import java.util.GregorianCalendar;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.stream.IntStream;
+
+/**
+ * Starts the application against a private in-memory H2 database seeded with a given number of patients.
+ * Every tenth patient is registered at the roster hospital.
+ */
+public final class BenchmarkDatabase implements AutoCloseable {
+    private static final String[] LAST_NAMES = {"Mueller", "Schmidt", "Schneider", "Fischer", "Weber", "Meyer",
+            "Wagner", "Becker", "Schulz", "Hoffmann", "Koch", "Richter", "Klein", "Wolf", "Neumann", "Braun"};
+    private static final String[] FIRST_NAMES = {"Max", "Felix", "Anna", "Lena", "Paul", "Marie", "Jonas", "Laura",
+            "Lukas", "Sophie", "Leon", "Emma", "Finn", "Mia", "Noah", "Hannah"};
+
+    private final ConfigurableApplicationContext context;
+    private final int[] patientIds;
+    private final Hospital hospital;
+
+    private BenchmarkDatabase(ConfigurableApplicationContext context, int[] patientIds, Hospital hospital) {
+        this.context = context;
+        this.patientIds = patientIds;
+        this.hospital = hospital;
+    }
+
+    public static BenchmarkDatabase start(int patients, String... properties) {
+        List<String> arguments = new ArrayList<>(List.of(
+                "--spring.datasource.url=jdbc:h2:mem:benchmark" + System.nanoTime() + ";DB_CLOSE_DELAY=-1",
+                "--logging.level.root=WARN"));
+        for (String property : properties) {
+            arguments.add("--" + property);
+        }
+        ConfigurableApplicationContext context = new SpringApplicationBuilder(HospitalSystemApplication.class)
+                .web(WebApplicationType.NONE)
+                .run(arguments.toArray(String[]::new));
+
+        context.getBean(PatientImportService.class)
+                .importPatients(IntStream.range(0, patients).mapToObj(BenchmarkDatabase::patient));
+        Hospital hospital = context.getBean(HospitalService.class)
+                .createHospital("Benchmark Klinikum", "Ismaninger Straße 22", "123-456-789");
+
+        PatientService patientService = context.getBean(PatientService.class);
+        int[] patientIds = new int[patients];
+        int[] count = new int[1];
+        List<Integer> roster = new ArrayList<>();
+        patientService.forEachPatient(patient -> {
+            if (count[0] < patientIds.length) {
+                patientIds[count[0]++] = patient.getId();
+                if (count[0] % 10 == 0) {
+                    roster.add(patient.getId());
+                }
+            }
+        });
+        for (int i = 0; i < roster.size(); i += 1000) {
+            patientService.registerPatients(roster.subList(i, Math.min(i + 1000, roster.size())), hospital.getId());
+        }
+        return new BenchmarkDatabase(context, patientIds, hospital);
+    }
+
+    /**
+     * Creates the i-th generated patient. Names repeat, emails are unique.
+     */
+    public static Patient patient(int i) {
+        Calendar dateOfBirth = new GregorianCalendar(1930 + i % 90, i % 12, 1 + i % 28);
+        Patient patient = new Patient(FIRST_NAMES[i % FIRST_NAMES.length],
+                LAST_NAMES[(i / FIRST_NAMES.length) % LAST_NAMES.length] + (i / 256),
+                dateOfBirth.getTime(), "patient" + i + "@benchmark.de");
+        patient.setSex(i % 2 == 0 ? "female" : "male");
+        return patient;
+    }
+
+    public <T> T getBean(Class<T> type) {
+        return context.getBean(type);
+    }
+
+    public int randomPatientId() {
+        return patientIds[ThreadLocalRandom.current().nextInt(patientIds.length)];
+    }
+
+    public Hospital getHospital() {
+        return hospital;
+    }
+
+    /**
+     * Returns an unmanaged copy of a random seeded patient, to derive search terms that have matches.
+     */
+    public Patient randomSeededPatient() {
+        return patient(ThreadLocalRandom.current().nextInt(patientIds.length));
+    }
+
+    @Override
+    public void close() {
+        context.close();
+    }
+}
@@ -0,0 +1,69 @@
+package hospitalsystem.benchmark;
+
+import hospitalsystem.persistence.entity.Patient;
+import hospitalsystem.persistence.projection.PatientView;
+import hospitalsystem.persistence.service.PatientService;
+import hospitalsystem.persistence.service.ReadModelService;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.util.List;
+
+/**
+ * Compares the entity read paths with the record read models. The interesting numbers are the
+ * gc.alloc.rate.norm bytes per operation reported by the gc profiler.
+ * Run with {@code ./gradlew jmh -PjmhIncludes=PatientReadModelBenchmark}.
+ */
+@State(Scope.Benchmark)
+public class PatientReadModelBenchmark {
+    private static final int PAGE_SIZE = 100;
+
+    @Param({"10000"})
+    public int patients;
+
+    private BenchmarkDatabase database;
+    private PatientService patientService;
+    private ReadModelService readModelService;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        database = BenchmarkDatabase.start(patients);
+        patientService = database.getBean(PatientService.class);
+        readModelService = database.getBean(ReadModelService.class);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        database.close();
+    }
+
+    @Benchmark
+    public Patient detailEntity() {
+        return patientService.findPatientById(database.randomPatientId());
+    }
+
+    @Benchmark
+    public PatientView detailReadModel() {
+        return readModelService.findPatientView(database.randomPatientId());
+    }
+
+    @Benchmark
+    public List<Patient> pageEntities() {
+        return patientService.findPatientsAfter(database.randomPatientId(), PAGE_SIZE);
+    }
+
+    @Benchmark
+    public List<Patient> pageReadOnlyEntities() {
+        return readModelService.findReadOnlyPatientsAfter(database.randomPatientId(), PAGE_SIZE);
+    }
+
+    @Benchmark
+    public List<PatientView> pageReadModels() {
+        return readModelService.findPatientViewsAfter(database.randomPatientId(), PAGE_SIZE);
+    }
+}
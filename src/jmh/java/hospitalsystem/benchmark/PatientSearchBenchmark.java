@@ -0,0 +1,82 @@
+package hospitalsystem.benchmark;
+
+import hospitalsystem.persistence.entity.Patient;
+import hospitalsystem.persistence.search.PatientSearchHit;
+import hospitalsystem.persistence.service.PatientService;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Slice;
+import org.springframework.data.domain.Sort;
+
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks the indexed patient search methods.
+ * Run with {@code ./gradlew jmh -PjmhIncludes=PatientSearchBenchmark}.
+ */
+@State(Scope.Benchmark)
+public class PatientSearchBenchmark {
+    private static final Pageable FIRST_PAGE = PageRequest.of(0, 20, Sort.by("lastName", "firstName"));
+
+    @Param({"10000", "100000", "1000000"})
+    public int patients;
+
+    private BenchmarkDatabase database;
+    private PatientService patientService;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        database = BenchmarkDatabase.start(patients);
+        patientService = database.getBean(PatientService.class);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        database.close();
+    }
+
+    @Benchmark
+    public Slice<Patient> searchByLastNamePrefix() {
+        String lastName = database.randomSeededPatient().getLastName();
+        return patientService.searchPatientsByLastName(lastName.substring(0, lastName.length() - 1), FIRST_PAGE);
+    }
+
+    @Benchmark
+    public Slice<Patient> searchByName() {
+        Patient patient = database.randomSeededPatient();
+        return patientService.searchPatientsByName(patient.getLastName(), patient.getFirstName().substring(0, 2),
+                FIRST_PAGE);
+    }
+
+    @Benchmark
+    public Patient findByEmail() {
+        return patientService.findPatientByEmail(database.randomSeededPatient().getEmail());
+    }
+
+    @Benchmark
+    public Slice<Patient> searchByDateOfBirth() {
+        Date dateOfBirth = database.randomSeededPatient().getDateOfBirth();
+        Date nextDay = new Date(dateOfBirth.getTime() + TimeUnit.DAYS.toMillis(1));
+        return patientService.searchPatientsByDateOfBirth(dateOfBirth, nextDay, PageRequest.of(0, 20));
+    }
+
+    /**
+     * Fuzzy search through the in-memory trigram index with a misspelled last name.
+     */
+    @Benchmark
+    public List<PatientSearchHit> fuzzySearch() {
+        Patient patient = database.randomSeededPatient();
+        String lastName = patient.getLastName();
+        String misspelled = lastName.substring(0, 2) + lastName.substring(3);
+        return patientService.searchPatients(patient.getFirstName() + " " + misspelled, 20);
+    }
+}
@@ -0,0 +1,103 @@
+package hospitalsystem.benchmark;
+
+import hospitalsystem.persistence.entity.Hospital;
+import hospitalsystem.persistence.entity.Patient;
+import hospitalsystem.persistence.service.HospitalRosterService;
+import hospitalsystem.persistence.service.HospitalService;
+import hospitalsystem.persistence.service.PatientService;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.Date;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Benchmarks the hot paths of PatientService and HospitalService against H2.
+ * Run with {@code ./gradlew jmh -PjmhIncludes=PatientServiceBenchmark}; throughput, latency percentiles
+ * (sample mode) and allocation rate (gc profiler) are configured in build.gradle.
+ */
+@State(Scope.Benchmark)
+public class PatientServiceBenchmark {
+
+    @Param({"10000", "100000", "1000000"})
+    public int patients;
+
+    private BenchmarkDatabase database;
+    private PatientService patientService;
+    private HospitalService hospitalService;
+    private HospitalRosterService hospitalRosterService;
+    private TransactionTemplate transaction;
+    private Hospital hospital;
+    private final AtomicInteger created = new AtomicInteger();
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        database = BenchmarkDatabase.start(patients);
+        patientService = database.getBean(PatientService.class);
+        hospitalService = database.getBean(HospitalService.class);
+        hospitalRosterService = database.getBean(HospitalRosterService.class);
+        transaction = new TransactionTemplate(database.getBean(PlatformTransactionManager.class));
+        hospital = database.getHospital();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        database.close();
+    }
+
+    @Benchmark
+    public Patient createPatient() {
+        int i = created.incrementAndGet();
+        return patientService.createPatient("Max", "Tum", new Date(), "created" + i + "@benchmark.de");
+    }
+
+    @Benchmark
+    public Patient findPatientById() {
+        return patientService.findPatientById(database.randomPatientId());
+    }
+
+    @Benchmark
+    public boolean registerPatient() {
+        return patientService.registerPatient(database.randomPatientId(), hospital.getId());
+    }
+
+    @Benchmark
+    public void addDiagnosisById() {
+        patientService.addDiagnosisById(database.randomPatientId(), "Diagnosis " + created.incrementAndGet());
+    }
+
+    /**
+     * Loads the full roster of a hospital through Hospital.patients.
+     */
+    @Benchmark
+    public Integer listPatientsByHospital() {
+        return transaction.execute(status -> {
+            Hospital managed = hospitalService.findHospitalById(hospital.getId());
+            Set<Patient> roster = hospitalService.listPatientsByHospital(managed, null);
+            return roster.size();
+        });
+    }
+
+    /**
+     * Loads one roster page through the projection query, for comparison with listPatientsByHospital.
+     */
+    @Benchmark
+    public Object findRosterByHospital() {
+        return hospitalRosterService.findRosterByHospital(hospital.getId(), PageRequest.of(0, 50));
+    }
+
+    @Benchmark
+    public List<Patient> findAllPatients() {
+        return patientService.findAllPatients();
+    }
+}
@@ -0,0 +1,109 @@
+package hospitalsystem.benchmark;
+
+import hospitalsystem.persistence.HospitalSystemApplication;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.io.IOException;
+import java.net.HttpURLConnection;
+import java.net.ServerSocket;
+import java.net.URI;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the time from launching a new JVM with the application until its first request is answered, with the
+ * prod profile alone and combined with the fast-start profile, against the same file database. Every invocation
+ * is a cold start, so run it in single shot mode: {@code ./gradlew jmh -PjmhIncludes=StartupBenchmark -PjmhMode=ss}.
+ * Class data sharing and AOT processing need the boot jar instead of this classpath, see build.gradle.
+ */
+@State(Scope.Benchmark)
+public class StartupBenchmark {
+    private static final long TIMEOUT_SECONDS = 120;
+
+    @Param({"prod", "prod,fast-start"})
+    public String profiles;
+
+    private Path directory;
+    private Process process;
+
+    /**
+     * Creates the schema and the demo data with one start with the prod profile.
+     */
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        directory = Files.createTempDirectory("startup-benchmark");
+        timeToFirstRequest("prod");
+        stop();
+    }
+
+    @TearDown(Level.Invocation)
+    public void stop() throws InterruptedException {
+        if (process != null) {
+            process.destroy();
+            if (!process.waitFor(TIMEOUT_SECONDS, TimeUnit.SECONDS)) {
+                process.destroyForcibly();
+            }
+            process = null;
+        }
+    }
+
+    @Benchmark
+    public long timeToFirstRequest() throws Exception {
+        return timeToFirstRequest(profiles);
+    }
+
+    private long timeToFirstRequest(String activeProfiles) throws Exception {
+        int port = freePort();
+        List<String> command = new ArrayList<>(List.of(
+                ProcessHandle.current().info().command().orElse("java"),
+                "-cp", System.getProperty("java.class.path"),
+                HospitalSystemApplication.class.getName(),
+                "--spring.profiles.active=" + activeProfiles,
+                "--spring.datasource.url=jdbc:h2:file:" + directory.resolve("hospital"),
+                "--server.port=" + port,
+                "--logging.level.root=WARN"));
+        Path log = directory.resolve("application.log");
+        long start = System.nanoTime();
+        process = new ProcessBuilder(command)
+                .redirectErrorStream(true)
+                .redirectOutput(log.toFile())
+                .start();
+        URI hospitals = URI.create("http://localhost:" + port + "/hospitals");
+        long deadline = start + TimeUnit.SECONDS.toNanos(TIMEOUT_SECONDS);
+        while (!answers(hospitals)) {
+            if (!process.isAlive() || System.nanoTime() > deadline) {
+                throw new IllegalStateException("Application did not answer, see " + log);
+            }
+            Thread.sleep(5);
+        }
+        return System.nanoTime() - start;
+    }
+
+    private static boolean answers(URI uri) {
+        try {
+            HttpURLConnection connection = (HttpURLConnection) uri.toURL().openConnection();
+            try {
+                return connection.getResponseCode() == 200;
+            } finally {
+                connection.disconnect();
+            }
+        } catch (IOException e) {
+            return false;
+        }
+    }
+
+    private static int freePort() throws IOException {
+        try (ServerSocket socket = new ServerSocket(0)) {
+            return socket.getLocalPort();
+        }
+    }
+}
@@ -4,22 +4,42 @@ import hospitalsystem.persistence.entity.Hospital;
 import hospitalsystem.persistence.entity.Patient;
 import hospitalsystem.persistence.service.HospitalService;
 import hospitalsystem.persistence.service.PatientService;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.boot.SpringApplication;
 import org.springframework.boot.autoconfigure.SpringBootApplication;
 import org.springframework.boot.context.event.ApplicationReadyEvent;
 import org.springframework.context.event.EventListener;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
 
 import java.util.Date;
 import java.util.HashSet;
 import java.util.Set;
 
+/**
+ * Seeds two hospitals and two patients once the application is ready. With hospital.seed.mode=sync, the default,
+ * the seed is written before the application reports that it accepts traffic, with async it is written on a
+ * background thread and with skip not at all. Databases that already hold the seed are left alone, so restarts
+ * against a persistent database do not fail on the unique emails; the seed is written atomically, so its first
+ * patient tells whether it exists.
+ */
+
 @SpringBootApplication
 public class HospitalSystemApplication {
+	private static final Logger log = LoggerFactory.getLogger(HospitalSystemApplication.class);
+	private static final String SEED_EMAIL = "max.tum@tum.de";
+
+	@Value("${hospital.seed.mode:sync}")
+	private String seedMode;
 	@Autowired
 	PatientService patientService;
 	@Autowired
 	HospitalService hospitalService;
+	@Autowired
+	PlatformTransactionManager transactionManager;
 
 	public static void main(String[] args) {
 		SpringApplication.run(HospitalSystemApplication.class, args);
@@ -29,26 +49,48 @@ public class HospitalSystemApplication {
 	public void execCodeAfterStartup() {
 		System.out.println("The app is running...");
 
-		Hospital hospital1 = new Hospital("Klinikum", " ", "1523");
-		Hospital hospital2 = new Hospital("Center", " ", "1253");
-
-		hospitalService.saveHospital(hospital1);
-		hospitalService.saveHospital(hospital2);
-
-		Patient patient1 = new Patient("Max", "Tum", new Date(), "max.tum@tum.de");
-		Patient patient2 = new Patient("Felix", "Tum", new Date(), "felix.tum@tum.de");
-
-		patientService.savePatient(patient1);
-		patientService.savePatient(patient2);
+		switch (seedMode) {
+			case "sync" -> seed();
+			case "async" -> {
+				Thread thread = new Thread(() -> {
+					try {
+						seed();
+					} catch (RuntimeException e) {
+						log.warn("Seeding the demo data failed", e);
+					}
+				}, "seed");
+				thread.setDaemon(true);
+				thread.start();
+			}
+			case "skip" -> log.info("Skipping the demo data");
+			default -> throw new IllegalStateException("Unknown hospital.seed.mode " + seedMode);
+		}
+	}
 
-		patientService.registerPatient(patient1, hospital1);
-		patientService.registerPatient(patient1, hospital2);
-		patientService.registerPatient(patient2, hospital1);
+	/**
+	 * Writes the demo hospitals and patients unless they exist already. The seed is written in one transaction,
+	 * so a seed interrupted before the patients were saved does not leave hospitals behind that the check misses.
+	 */
+	private void seed() {
+		if (patientService.findPatientByEmail(SEED_EMAIL) != null) {
+			return;
+		}
+		new TransactionTemplate(transactionManager).executeWithoutResult(status -> {
+			Hospital hospital1 = new Hospital("Klinikum", " ", "1523");
+			Hospital hospital2 = new Hospital("Center", " ", "1253");
 
-		patientService.savePatient(patient1);
-		patientService.savePatient(patient2);
+			hospitalService.saveHospital(hospital1);
+			hospitalService.saveHospital(hospital2);
 
+			Patient patient1 = new Patient("Max", "Tum", new Date(), SEED_EMAIL);
+			Patient patient2 = new Patient("Felix", "Tum", new Date(), "felix.tum@tum.de");
 
+			patientService.savePatient(patient1);
+			patientService.savePatient(patient2);
 
+			patientService.registerPatient(patient1, hospital1);
+			patientService.registerPatient(patient1, hospital2);
+			patientService.registerPatient(patient2, hospital1);
+		});
 	}
 }
@@ -0,0 +1,84 @@
+package hospitalsystem.persistence.audit;
+
+import hospitalsystem.persistence.outbox.ChangeType;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * One archived change of an entity.
+ *
+ * @param entity   the kind of entity
+ * @param id       the ID of the patient or hospital
+ * @param position the position of the change event
+ * @param time     when the change was made, in epoch milliseconds
+ * @param type     the kind of change
+ * @param changes  the new values of the changed properties as JSON, all properties for a creation
+ */
+
+record AuditRecord(AuditedEntity entity, int id, long position, long time, ChangeType type,
+                   Map<String, String> changes) {
+
+    long key() {
+        return EntityHistory.key(entity, id);
+    }
+
+    /**
+     * Writes the record as a journal entry.
+     */
+    void writeTo(DataOutput output) throws IOException {
+        output.writeByte(entity.code());
+        output.writeInt(id);
+        output.writeLong(position);
+        output.writeLong(time);
+        output.writeByte(code(type));
+        output.writeInt(changes.size());
+        for (Map.Entry<String, String> change : changes.entrySet()) {
+            output.writeUTF(change.getKey());
+            output.writeUTF(change.getValue());
+        }
+    }
+
+    static AuditRecord readFrom(DataInput input) throws IOException {
+        AuditedEntity entity = AuditedEntity.ofCode(input.readUnsignedByte());
+        int id = input.readInt();
+        long position = input.readLong();
+        long time = input.readLong();
+        ChangeType type = changeType(input.readUnsignedByte());
+        int size = input.readInt();
+        Map<String, String> changes = new LinkedHashMap<>();
+        for (int i = 0; i < size; i++) {
+            changes.put(input.readUTF(), input.readUTF());
+        }
+        return new AuditRecord(entity, id, position, time, type, changes);
+    }
+
+    /**
+     * Returns the code a change type is stored as. The codes must never change, unlike the ordinals of ChangeType.
+     */
+    static int code(ChangeType type) {
+        return switch (type) {
+            case PATIENT_CREATED -> 1;
+            case PATIENT_UPDATED -> 2;
+            case PATIENT_DELETED -> 3;
+            case HOSPITAL_CREATED -> 4;
+            case HOSPITAL_UPDATED -> 5;
+            case HOSPITAL_DELETED -> 6;
+            case PATIENT_REGISTERED -> 7;
+            case PATIENT_UNREGISTERED -> 8;
+            case DIAGNOSIS_ADDED -> 9;
+        };
+    }
+
+    static ChangeType changeType(int code) throws IOException {
+        for (ChangeType type : ChangeType.values()) {
+            if (code(type) == code) {
+                return type;
+            }
+        }
+        throw new IOException("Unknown change type code " + code);
+    }
+}
@@ -0,0 +1,161 @@
+package hospitalsystem.persistence.audit;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * An immutable segment file of the audit trail: the compressed {@link EntityHistory} blocks of the entities that
+ * changed within a range of positions, followed by a directory with the entity, offset, length and time range of
+ * every block. The directory is read when the segment is opened, so a block is then read with one positional read.
+ * The header holds the format version; segments of another version are refused instead of being misread.
+ * Segments are written to a temporary file, forced to disk and renamed, so a crash never leaves a partial segment.
+ */
+
+final class AuditSegment implements Closeable {
+    private static final int MAGIC = 0x41554431;
+    private static final int FORMAT_VERSION = 1;
+    private static final int HEADER_LENGTH = Integer.BYTES + Byte.BYTES;
+    private static final int TRAILER_LENGTH = Long.BYTES + Integer.BYTES;
+
+    /**
+     * The location of the block of one entity.
+     */
+    record Entry(AuditedEntity entity, int id, long offset, int length, long firstTime, long lastTime) {
+    }
+
+    private final Path path;
+    private final FileChannel channel;
+    private final List<Entry> entries;
+    private final long maxPosition;
+
+    private AuditSegment(Path path, FileChannel channel, List<Entry> entries, long maxPosition) {
+        this.path = path;
+        this.channel = channel;
+        this.entries = entries;
+        this.maxPosition = maxPosition;
+    }
+
+    static AuditSegment write(Path path, List<EntityHistory> histories) throws IOException {
+        Path temporary = path.resolveSibling(path.getFileName() + ".tmp");
+        long maxPosition = 0;
+        try (FileOutputStream file = new FileOutputStream(temporary.toFile());
+             DataOutputStream output = new DataOutputStream(new BufferedOutputStream(file))) {
+            List<Entry> entries = new ArrayList<>();
+            output.writeInt(MAGIC);
+            output.writeByte(FORMAT_VERSION);
+            for (EntityHistory history : histories) {
+                byte[] block = history.encode();
+                entries.add(new Entry(history.getEntity(), history.getId(), output.size(), block.length,
+                        history.firstTime(), history.lastTime()));
+                output.write(block);
+                for (AuditRecord record : history.getRecords()) {
+                    maxPosition = Math.max(maxPosition, record.position());
+                }
+            }
+            long directory = output.size();
+            output.writeInt(entries.size());
+            for (Entry entry : entries) {
+                output.writeByte(entry.entity().code());
+                output.writeInt(entry.id());
+                output.writeLong(entry.offset());
+                output.writeInt(entry.length());
+                output.writeLong(entry.firstTime());
+                output.writeLong(entry.lastTime());
+            }
+            output.writeLong(maxPosition);
+            output.writeLong(directory);
+            output.writeInt(MAGIC);
+            output.flush();
+            file.getFD().sync();
+        }
+        Files.move(temporary, path, StandardCopyOption.ATOMIC_MOVE);
+        return open(path);
+    }
+
+    static AuditSegment open(Path path) throws IOException {
+        FileChannel channel = FileChannel.open(path, StandardOpenOption.READ);
+        try {
+            long size = channel.size();
+            ByteBuffer header = read(channel, 0, HEADER_LENGTH);
+            if (header.getInt() != MAGIC) {
+                throw new IOException(path + " is not an audit segment");
+            }
+            int version = header.get();
+            if (version != FORMAT_VERSION) {
+                throw new IOException(path + " has audit format version " + version + ", expected "
+                        + FORMAT_VERSION);
+            }
+            ByteBuffer trailer = read(channel, size - TRAILER_LENGTH, TRAILER_LENGTH);
+            long directory = trailer.getLong();
+            if (trailer.getInt() != MAGIC) {
+                throw new IOException(path + " is not an audit segment");
+            }
+            DataInputStream input = new DataInputStream(new ByteArrayInputStream(
+                    read(channel, directory, (int) (size - TRAILER_LENGTH - directory)).array()));
+            int count = input.readInt();
+            List<Entry> entries = new ArrayList<>(count);
+            for (int i = 0; i < count; i++) {
+                entries.add(new Entry(AuditedEntity.ofCode(input.readUnsignedByte()), input.readInt(), input.readLong(),
+                        input.readInt(), input.readLong(), input.readLong()));
+            }
+            return new AuditSegment(path, channel, entries, input.readLong());
+        } catch (IOException | RuntimeException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    List<Entry> getEntries() {
+        return entries;
+    }
+
+    long getMaxPosition() {
+        return maxPosition;
+    }
+
+    Path getPath() {
+        return path;
+    }
+
+    /**
+     * Reads and decodes the block of an entity.
+     */
+    EntityHistory read(Entry entry) {
+        try {
+            return EntityHistory.decode(entry.entity(), entry.id(), read(channel, entry.offset(), entry.length())
+                    .array());
+        } catch (IOException e) {
+            throw new UncheckedIOException("Reading " + path + " failed", e);
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+
+    private static ByteBuffer read(FileChannel channel, long offset, int length) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(length);
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer, offset + buffer.position()) < 0) {
+                throw new EOFException("Audit segment ends before " + (offset + length));
+            }
+        }
+        return buffer.flip();
+    }
+}
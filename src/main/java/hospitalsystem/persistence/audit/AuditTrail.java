@@ -0,0 +1,448 @@
+package hospitalsystem.persistence.audit;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import hospitalsystem.persistence.outbox.ChangeEvent;
+import hospitalsystem.persistence.outbox.ChangeEventSink;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+/**
+ * Keeps every past version of patients and hospitals outside of the live database. The trail is a
+ * {@link ChangeEventSink}, so it receives the committed creations, updates, deletions and diagnoses from the
+ * outbox relay and never runs on the request path.
+ * <p>
+ * Received changes are appended to a journal in hospital.audit.directory and forced to disk before the relay
+ * advances the offset of the trail. Every hospital.audit.compaction-interval, or as soon as
+ * hospital.audit.segment-size changes are waiting, they are compacted into a new {@link AuditSegment} with one
+ * {@link EntityHistory} block per changed entity, which starts from the state of the entity at the end of the
+ * previous segments. The journal is deleted once the segment is on disk and read again after a crash.
+ * <p>
+ * The directory of all segments is kept in memory, per entity in the order of the changes. The state of an entity
+ * as of a point in time is read from the one block covering that time, plus the changes not compacted yet.
+ */
+
+@Component
+@ConditionalOnProperty(name = "hospital.audit.enabled", havingValue = "true")
+public class AuditTrail implements ChangeEventSink {
+    private static final Logger log = LoggerFactory.getLogger(AuditTrail.class);
+    private static final String SEGMENT_PREFIX = "segment-";
+    private static final String SEGMENT_SUFFIX = ".seg";
+    private static final String JOURNAL_PREFIX = "journal-";
+    private static final String JOURNAL_SUFFIX = ".log";
+
+    private final ScheduledExecutorService executor = Executors.newSingleThreadScheduledExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "audit-compaction");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    @Autowired
+    private ObjectMapper objectMapper;
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    @Value("${hospital.audit.directory:./data/audit}")
+    private Path directory;
+    @Value("${hospital.audit.compaction-interval:1m}")
+    private Duration compactionInterval;
+    @Value("${hospital.audit.segment-size:100000}")
+    private int segmentSize;
+
+    /**
+     * The block of an entity in a segment.
+     */
+    private record Block(AuditSegment segment, AuditSegment.Entry entry) {
+    }
+
+    // guarded by this
+    private final List<AuditSegment> segments = new ArrayList<>();
+    private final Map<Long, List<Block>> index = new HashMap<>();
+    private final List<Path> retiredJournals = new ArrayList<>();
+    private List<AuditRecord> pending = new ArrayList<>();
+    private List<AuditRecord> compacting = List.of();
+    private FileOutputStream journalFile;
+    private DataOutputStream journal;
+    private long journalNumber;
+    private long lastPosition;
+
+    private Counter archived;
+
+    @PostConstruct
+    void open() throws IOException {
+        Files.createDirectories(directory);
+        archived = Counter.builder("hospital.audit.archived")
+                .description("Changes compacted into audit segments")
+                .register(meterRegistry);
+        List<Path> files;
+        try (Stream<Path> list = Files.list(directory)) {
+            files = list.sorted().toList();
+        }
+        synchronized (this) {
+            for (Path file : files) {
+                String name = file.getFileName().toString();
+                if (name.endsWith(".tmp")) {
+                    Files.delete(file);
+                } else if (name.startsWith(SEGMENT_PREFIX) && name.endsWith(SEGMENT_SUFFIX)) {
+                    addSegment(AuditSegment.open(file));
+                }
+            }
+            for (Path file : files) {
+                String name = file.getFileName().toString();
+                if (name.startsWith(JOURNAL_PREFIX) && name.endsWith(JOURNAL_SUFFIX)) {
+                    for (AuditRecord record : readJournal(file)) {
+                        if (record.position() > lastPosition) {
+                            pending.add(record);
+                            lastPosition = record.position();
+                        }
+                    }
+                    retiredJournals.add(file);
+                    journalNumber = Math.max(journalNumber, Long.parseLong(
+                            name.substring(JOURNAL_PREFIX.length(), name.length() - JOURNAL_SUFFIX.length())));
+                }
+            }
+            openJournal(journalNumber + 1);
+        }
+        log.info("Opened audit trail with {} segments and {} changes to compact", segments.size(), pending.size());
+        executor.scheduleWithFixedDelay(this::compactQuietly, compactionInterval.toMillis(),
+                compactionInterval.toMillis(), TimeUnit.MILLISECONDS);
+    }
+
+    @PreDestroy
+    synchronized void close() throws IOException {
+        executor.shutdown();
+        journal.close();
+        for (AuditSegment segment : segments) {
+            segment.close();
+        }
+    }
+
+    @Override
+    public String getName() {
+        return "audit";
+    }
+
+    @Override
+    public synchronized void publish(List<ChangeEvent> events) {
+        List<AuditRecord> records = new ArrayList<>();
+        for (ChangeEvent event : events) {
+            AuditedEntity entity = AuditedEntity.of(event.type());
+            if (entity != null && event.position() > lastPosition) {
+                records.add(new AuditRecord(entity, event.aggregateId(), event.position(),
+                        event.createdAt().toEpochMilli(), event.type(), changes(event.payload())));
+            }
+        }
+        if (!records.isEmpty()) {
+            try {
+                for (AuditRecord record : records) {
+                    record.writeTo(journal);
+                }
+                journal.flush();
+                journalFile.getChannel().force(false);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+            pending.addAll(records);
+        }
+        if (!events.isEmpty()) {
+            lastPosition = Math.max(lastPosition, events.get(events.size() - 1).position());
+        }
+        if (pending.size() >= segmentSize) {
+            executor.execute(this::compactQuietly);
+        }
+    }
+
+    /**
+     * Compacts the changes received so far into a new segment and waits until it is written.
+     */
+
+    public void compact() {
+        try {
+            executor.submit(() -> {
+                compactPending();
+                return null;
+            }).get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("Interrupted while compacting the audit trail", e);
+        } catch (ExecutionException e) {
+            throw new RuntimeException("Compacting the audit trail failed", e.getCause());
+        }
+    }
+
+    /**
+     * Rebuilds a patient or hospital as it was at a point in time. Reads at most one block of one segment.
+     *
+     * @param entity the kind of entity
+     * @param id     the ID of the patient or hospital
+     * @param at     the point in time
+     * @return the state, or null if the entity did not exist at that time or was never archived
+     */
+
+    public AuditedState findAsOf(AuditedEntity entity, int id, Instant at) {
+        long key = EntityHistory.key(entity, id);
+        long time = at.toEpochMilli();
+        Block block = null;
+        List<AuditRecord> recent;
+        synchronized (this) {
+            List<Block> blocks = index.getOrDefault(key, List.of());
+            for (int i = blocks.size() - 1; i >= 0 && block == null; i--) {
+                if (blocks.get(i).entry().firstTime() <= time) {
+                    block = blocks.get(i);
+                }
+            }
+            recent = unarchived(key);
+        }
+        EntityHistory.State state = block == null ? null : block.segment().read(block.entry()).stateAt(time);
+        for (AuditRecord record : recent) {
+            if (record.time() <= time) {
+                state = EntityHistory.apply(state, record);
+            }
+        }
+        return state == null ? null : new AuditedState(entity, id, state.position(),
+                Instant.ofEpochMilli(state.time()), json(state.properties()));
+    }
+
+    /**
+     * Lists all archived changes of a patient or hospital with the old and new values of the changed properties.
+     *
+     * @param entity the kind of entity
+     * @param id     the ID of the patient or hospital
+     * @return the changes, oldest first
+     */
+
+    public List<AuditedChange> findHistory(AuditedEntity entity, int id) {
+        long key = EntityHistory.key(entity, id);
+        List<Block> blocks;
+        List<AuditRecord> recent;
+        synchronized (this) {
+            blocks = List.copyOf(index.getOrDefault(key, List.of()));
+            recent = unarchived(key);
+        }
+        EntityHistory.State state = null;
+        List<AuditRecord> records = new ArrayList<>();
+        for (int i = 0; i < blocks.size(); i++) {
+            EntityHistory history = blocks.get(i).segment().read(blocks.get(i).entry());
+            if (i == 0) {
+                state = history.getBase();
+            }
+            records.addAll(history.getRecords());
+        }
+        records.addAll(recent);
+
+        List<AuditedChange> changes = new ArrayList<>(records.size());
+        for (AuditRecord record : records) {
+            EntityHistory.State next = EntityHistory.apply(state, record);
+            Collection<String> names = next == null && state != null
+                    ? state.properties().keySet() : record.changes().keySet();
+            Map<String, String> before = new LinkedHashMap<>();
+            Map<String, String> after = new LinkedHashMap<>();
+            for (String name : names) {
+                if (state != null && state.properties().containsKey(name)) {
+                    before.put(name, state.properties().get(name));
+                }
+                if (next != null) {
+                    after.put(name, next.properties().get(name));
+                }
+            }
+            changes.add(new AuditedChange(record.position(), Instant.ofEpochMilli(record.time()), record.type(),
+                    json(before), json(after)));
+            state = next;
+        }
+        return changes;
+    }
+
+    public synchronized int getSegmentCount() {
+        return segments.size();
+    }
+
+    public synchronized int getPendingCount() {
+        return pending.size() + compacting.size();
+    }
+
+    private void compactQuietly() {
+        try {
+            compactPending();
+        } catch (IOException | RuntimeException e) {
+            log.warn("Compacting the audit trail failed, retrying with the next run", e);
+        }
+    }
+
+    /**
+     * Writes the waiting changes to a new segment. Only runs on the compaction thread. The waiting changes stay
+     * readable until the segment is in the directory, and are restored if it cannot be written.
+     */
+    private void compactPending() throws IOException {
+        long start = System.nanoTime();
+        List<AuditRecord> records;
+        List<Path> journals;
+        synchronized (this) {
+            if (pending.isEmpty()) {
+                return;
+            }
+            rotateJournal();
+            records = pending;
+            pending = new ArrayList<>();
+            compacting = records;
+            journals = new ArrayList<>(retiredJournals);
+            retiredJournals.clear();
+        }
+        int entities;
+        try {
+            Map<Long, List<AuditRecord>> byEntity = new TreeMap<>();
+            for (AuditRecord record : records) {
+                byEntity.computeIfAbsent(record.key(), key -> new ArrayList<>()).add(record);
+            }
+            List<EntityHistory> histories = new ArrayList<>(byEntity.size());
+            for (Map.Entry<Long, List<AuditRecord>> changes : byEntity.entrySet()) {
+                AuditRecord first = changes.getValue().get(0);
+                histories.add(new EntityHistory(first.entity(), first.id(), latestState(changes.getKey()),
+                        changes.getValue()));
+            }
+            entities = histories.size();
+            Path file = directory.resolve(
+                    String.format("%s%019d%s", SEGMENT_PREFIX, records.get(0).position(), SEGMENT_SUFFIX));
+            AuditSegment segment = AuditSegment.write(file, histories);
+            synchronized (this) {
+                addSegment(segment);
+                compacting = List.of();
+            }
+        } catch (IOException | RuntimeException e) {
+            synchronized (this) {
+                pending.addAll(0, records);
+                compacting = List.of();
+                retiredJournals.addAll(0, journals);
+            }
+            throw e;
+        }
+        for (Path journal : journals) {
+            Files.deleteIfExists(journal);
+        }
+        archived.increment(records.size());
+        log.info("Archived {} changes of {} entities in {} ms", records.size(), entities,
+                (System.nanoTime() - start) / 1_000_000);
+    }
+
+    /**
+     * Returns the state of an entity at the end of the last segment that changed it, or null.
+     */
+    private EntityHistory.State latestState(long key) {
+        Block last;
+        synchronized (this) {
+            List<Block> blocks = index.get(key);
+            last = blocks == null ? null : blocks.get(blocks.size() - 1);
+        }
+        return last == null ? null : last.segment().read(last.entry()).finalState();
+    }
+
+    private void addSegment(AuditSegment segment) {
+        segments.add(segment);
+        for (AuditSegment.Entry entry : segment.getEntries()) {
+            index.computeIfAbsent(EntityHistory.key(entry.entity(), entry.id()), key -> new ArrayList<>())
+                    .add(new Block(segment, entry));
+        }
+        lastPosition = Math.max(lastPosition, segment.getMaxPosition());
+    }
+
+    private List<AuditRecord> unarchived(long key) {
+        List<AuditRecord> records = new ArrayList<>();
+        for (List<AuditRecord> list : List.of(compacting, pending)) {
+            for (AuditRecord record : list) {
+                if (record.key() == key) {
+                    records.add(record);
+                }
+            }
+        }
+        return records;
+    }
+
+    private void openJournal(long number) throws IOException {
+        journalNumber = number;
+        journalFile = new FileOutputStream(journalPath(number).toFile(), true);
+        journal = new DataOutputStream(new BufferedOutputStream(journalFile));
+    }
+
+    private void rotateJournal() throws IOException {
+        journal.close();
+        retiredJournals.add(journalPath(journalNumber));
+        openJournal(journalNumber + 1);
+    }
+
+    private Path journalPath(long number) {
+        return directory.resolve(String.format("%s%019d%s", JOURNAL_PREFIX, number, JOURNAL_SUFFIX));
+    }
+
+    /**
+     * Reads the records of a journal. A record cut off by a crash while it was written is dropped; it was not
+     * acknowledged and is published again by the relay.
+     */
+    private static List<AuditRecord> readJournal(Path path) throws IOException {
+        List<AuditRecord> records = new ArrayList<>();
+        try (DataInputStream input = new DataInputStream(new BufferedInputStream(Files.newInputStream(path)))) {
+            while (true) {
+                records.add(AuditRecord.readFrom(input));
+            }
+        } catch (EOFException e) {
+            return records;
+        }
+    }
+
+    private Map<String, String> changes(String payload) {
+        Map<String, String> changes = new LinkedHashMap<>();
+        if (payload != null) {
+            try {
+                objectMapper.readTree(payload).fields()
+                        .forEachRemaining(field -> changes.put(field.getKey(), field.getValue().toString()));
+            } catch (JsonProcessingException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+        return changes;
+    }
+
+    private ObjectNode json(Map<String, String> properties) {
+        ObjectNode node = objectMapper.createObjectNode();
+        try {
+            for (Map.Entry<String, String> property : properties.entrySet()) {
+                node.set(property.getKey(), objectMapper.readTree(property.getValue()));
+            }
+        } catch (JsonProcessingException e) {
+            throw new UncheckedIOException(e);
+        }
+        return node;
+    }
+}
@@ -0,0 +1,21 @@
+package hospitalsystem.persistence.audit;
+
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import hospitalsystem.persistence.outbox.ChangeType;
+
+import java.time.Instant;
+
+/**
+ * One change of a patient or hospital with the old and new values of the properties it changed. The old values of
+ * a creation and the new values of a deletion are empty.
+ *
+ * @param position  the position of the change event
+ * @param changedAt when the change was made
+ * @param type      the kind of change
+ * @param before    the values of the changed properties before the change
+ * @param after     the values of the changed properties after the change
+ */
+
+public record AuditedChange(long position, Instant changedAt, ChangeType type, ObjectNode before,
+                            ObjectNode after) {
+}
@@ -0,0 +1,45 @@
+package hospitalsystem.persistence.audit;
+
+import hospitalsystem.persistence.outbox.ChangeType;
+
+import java.io.IOException;
+
+/**
+ * The kinds of entities kept in the audit trail. Diagnoses are archived as changes of the patient's diagnosis.
+ * The audit files store the {@link #code()} of an entity, which must never change, so new kinds need new codes.
+ */
+
+public enum AuditedEntity {
+    PATIENT(1),
+    HOSPITAL(2);
+
+    private final int code;
+
+    AuditedEntity(int code) {
+        this.code = code;
+    }
+
+    int code() {
+        return code;
+    }
+
+    static AuditedEntity ofCode(int code) throws IOException {
+        for (AuditedEntity entity : values()) {
+            if (entity.code == code) {
+                return entity;
+            }
+        }
+        throw new IOException("Unknown audited entity code " + code);
+    }
+
+    /**
+     * Returns the entity changed by an event of the given type, or null if the event is not archived.
+     */
+    static AuditedEntity of(ChangeType type) {
+        return switch (type) {
+            case PATIENT_CREATED, PATIENT_UPDATED, PATIENT_DELETED, DIAGNOSIS_ADDED -> PATIENT;
+            case HOSPITAL_CREATED, HOSPITAL_UPDATED, HOSPITAL_DELETED -> HOSPITAL;
+            default -> null;
+        };
+    }
+}
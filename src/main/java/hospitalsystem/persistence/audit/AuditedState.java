@@ -0,0 +1,18 @@
+package hospitalsystem.persistence.audit;
+
+import com.fasterxml.jackson.databind.node.ObjectNode;
+
+import java.time.Instant;
+
+/**
+ * The state of a patient or hospital as of a point in time, rebuilt from the audit trail.
+ *
+ * @param entity     the kind of entity
+ * @param id         the ID of the patient or hospital
+ * @param position   the position of the last change up to that time
+ * @param changedAt  when that change was made
+ * @param properties the values of the properties
+ */
+
+public record AuditedState(AuditedEntity entity, int id, long position, Instant changedAt, ObjectNode properties) {
+}
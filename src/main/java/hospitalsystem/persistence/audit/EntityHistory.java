@@ -0,0 +1,363 @@
+package hospitalsystem.persistence.audit;
+
+import hospitalsystem.persistence.outbox.ChangeType;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInput;
+import java.io.DataInputStream;
+import java.io.DataOutput;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * The changes of one entity within one segment, together with its state before the first of them, so that the
+ * state at any time covered by the segment is rebuilt from this block alone.
+ * <p>
+ * A block is stored column by column: the positions and times of all changes as deltas of their predecessors,
+ * their types, a bit mask of the properties each change sets, and then the values of one property after the other.
+ * Deltas are written as varints, and the block is compressed with Deflate, which finds the repetitions between
+ * successive values of the same property.
+ */
+
+final class EntityHistory {
+    private static final int MAX_PROPERTIES = Long.SIZE;
+
+    private final AuditedEntity entity;
+    private final int id;
+    private final State base;
+    private final List<AuditRecord> records;
+
+    /**
+     * The properties of an existing entity after the change at the given position.
+     *
+     * @param position   the position of the change
+     * @param time       when the change was made, in epoch milliseconds
+     * @param properties the values of all known properties as JSON
+     */
+    record State(long position, long time, Map<String, String> properties) {
+    }
+
+    /**
+     * @param base    the state before the first change, or null if the entity did not exist
+     * @param records the changes, ordered by position
+     */
+    EntityHistory(AuditedEntity entity, int id, State base, List<AuditRecord> records) {
+        this.entity = entity;
+        this.id = id;
+        this.base = base;
+        this.records = records;
+    }
+
+    static long key(AuditedEntity entity, int id) {
+        return (long) entity.ordinal() << Integer.SIZE | Integer.toUnsignedLong(id);
+    }
+
+    /**
+     * Returns the state after all changes made up to the given time, or null if the entity did not exist then.
+     */
+    State stateAt(long time) {
+        State state = base;
+        for (AuditRecord record : records) {
+            if (record.time() <= time) {
+                state = apply(state, record);
+            }
+        }
+        return state;
+    }
+
+    State finalState() {
+        return stateAt(Long.MAX_VALUE);
+    }
+
+    /**
+     * Applies a change to a state. Changes of an entity whose creation is not archived start from an empty state.
+     */
+    static State apply(State state, AuditRecord record) {
+        return switch (record.type()) {
+            case PATIENT_DELETED, HOSPITAL_DELETED -> null;
+            case PATIENT_CREATED, HOSPITAL_CREATED ->
+                    new State(record.position(), record.time(), new LinkedHashMap<>(record.changes()));
+            default -> {
+                Map<String, String> properties = state == null
+                        ? new LinkedHashMap<>() : new LinkedHashMap<>(state.properties());
+                properties.putAll(record.changes());
+                yield new State(record.position(), record.time(), properties);
+            }
+        };
+    }
+
+    long firstTime() {
+        return records.stream().mapToLong(AuditRecord::time).min().orElse(Long.MAX_VALUE);
+    }
+
+    long lastTime() {
+        return records.stream().mapToLong(AuditRecord::time).max().orElse(Long.MIN_VALUE);
+    }
+
+    AuditedEntity getEntity() {
+        return entity;
+    }
+
+    int getId() {
+        return id;
+    }
+
+    State getBase() {
+        return base;
+    }
+
+    List<AuditRecord> getRecords() {
+        return records;
+    }
+
+    /**
+     * Encodes the block: the length of the encoded columns, followed by the compressed columns.
+     */
+    byte[] encode() {
+        List<String> names = new ArrayList<>();
+        if (base != null) {
+            addNames(names, base.properties());
+        }
+        for (AuditRecord record : records) {
+            addNames(names, record.changes());
+        }
+        if (names.size() > MAX_PROPERTIES) {
+            throw new IllegalStateException("The audit trail of " + entity + " " + id + " has more than "
+                    + MAX_PROPERTIES + " properties");
+        }
+        try {
+            ByteArrayOutputStream columns = new ByteArrayOutputStream();
+            DataOutputStream output = new DataOutputStream(columns);
+            writeVarLong(output, names.size());
+            for (String name : names) {
+                output.writeUTF(name);
+            }
+            long position = 0;
+            long time = 0;
+            output.writeBoolean(base != null);
+            if (base != null) {
+                writeVarLong(output, base.position());
+                writeVarLong(output, zigzag(base.time()));
+                writeValues(output, names, base.properties());
+                position = base.position();
+                time = base.time();
+            }
+            writeVarLong(output, records.size());
+            for (AuditRecord record : records) {
+                writeVarLong(output, record.position() - position);
+                position = record.position();
+            }
+            for (AuditRecord record : records) {
+                writeVarLong(output, zigzag(record.time() - time));
+                time = record.time();
+            }
+            for (AuditRecord record : records) {
+                output.writeByte(AuditRecord.code(record.type()));
+            }
+            for (AuditRecord record : records) {
+                writeVarLong(output, mask(names, record.changes()));
+            }
+            for (String name : names) {
+                for (AuditRecord record : records) {
+                    String value = record.changes().get(name);
+                    if (value != null) {
+                        writeValue(output, value);
+                    }
+                }
+            }
+            return deflate(columns.toByteArray());
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    static EntityHistory decode(AuditedEntity entity, int id, byte[] block) {
+        try {
+            DataInputStream input = new DataInputStream(new ByteArrayInputStream(inflate(block)));
+            List<String> names = new ArrayList<>();
+            for (long i = readVarLong(input); i > 0; i--) {
+                names.add(input.readUTF());
+            }
+            long position = 0;
+            long time = 0;
+            State base = null;
+            if (input.readBoolean()) {
+                position = readVarLong(input);
+                time = unzigzag(readVarLong(input));
+                base = new State(position, time, readValues(input, names));
+            }
+            int size = (int) readVarLong(input);
+            long[] positions = new long[size];
+            long[] times = new long[size];
+            ChangeType[] types = new ChangeType[size];
+            long[] masks = new long[size];
+            for (int i = 0; i < size; i++) {
+                position += readVarLong(input);
+                positions[i] = position;
+            }
+            for (int i = 0; i < size; i++) {
+                time += unzigzag(readVarLong(input));
+                times[i] = time;
+            }
+            for (int i = 0; i < size; i++) {
+                types[i] = AuditRecord.changeType(input.readUnsignedByte());
+            }
+            for (int i = 0; i < size; i++) {
+                masks[i] = readVarLong(input);
+            }
+            List<Map<String, String>> changes = new ArrayList<>(size);
+            for (int i = 0; i < size; i++) {
+                changes.add(new LinkedHashMap<>());
+            }
+            for (int property = 0; property < names.size(); property++) {
+                for (int i = 0; i < size; i++) {
+                    if ((masks[i] & 1L << property) != 0) {
+                        changes.get(i).put(names.get(property), readValue(input));
+                    }
+                }
+            }
+            List<AuditRecord> records = new ArrayList<>(size);
+            for (int i = 0; i < size; i++) {
+                records.add(new AuditRecord(entity, id, positions[i], times[i], types[i], changes.get(i)));
+            }
+            return new EntityHistory(entity, id, base, records);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private static void addNames(List<String> names, Map<String, String> properties) {
+        for (String name : properties.keySet()) {
+            if (!names.contains(name)) {
+                names.add(name);
+            }
+        }
+    }
+
+    private static long mask(List<String> names, Map<String, String> properties) {
+        long mask = 0;
+        for (int i = 0; i < names.size(); i++) {
+            if (properties.containsKey(names.get(i))) {
+                mask |= 1L << i;
+            }
+        }
+        return mask;
+    }
+
+    /**
+     * Writes the mask of the given properties followed by their values, in the order of the names.
+     */
+    private static void writeValues(DataOutput output, List<String> names, Map<String, String> properties)
+            throws IOException {
+        writeVarLong(output, mask(names, properties));
+        for (String name : names) {
+            String value = properties.get(name);
+            if (value != null) {
+                writeValue(output, value);
+            }
+        }
+    }
+
+    private static Map<String, String> readValues(DataInput input, List<String> names) throws IOException {
+        long mask = readVarLong(input);
+        Map<String, String> properties = new LinkedHashMap<>();
+        for (int i = 0; i < names.size(); i++) {
+            if ((mask & 1L << i) != 0) {
+                properties.put(names.get(i), readValue(input));
+            }
+        }
+        return properties;
+    }
+
+    private static void writeValue(DataOutput output, String value) throws IOException {
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        writeVarLong(output, bytes.length);
+        output.write(bytes);
+    }
+
+    private static String readValue(DataInput input) throws IOException {
+        byte[] bytes = new byte[(int) readVarLong(input)];
+        input.readFully(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private static void writeVarLong(DataOutput output, long value) throws IOException {
+        while ((value & ~0x7FL) != 0) {
+            output.writeByte((int) (value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        output.writeByte((int) value);
+    }
+
+    private static long readVarLong(DataInput input) throws IOException {
+        long value = 0;
+        for (int shift = 0; shift < Long.SIZE; shift += 7) {
+            int b = input.readUnsignedByte();
+            value |= (long) (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                return value;
+            }
+        }
+        throw new IOException("Malformed varint in audit block");
+    }
+
+    private static long zigzag(long value) {
+        return value << 1 ^ value >> 63;
+    }
+
+    private static long unzigzag(long value) {
+        return value >>> 1 ^ -(value & 1);
+    }
+
+    private static byte[] deflate(byte[] columns) {
+        Deflater deflater = new Deflater();
+        try {
+            deflater.setInput(columns);
+            deflater.finish();
+            ByteArrayOutputStream block = new ByteArrayOutputStream(columns.length / 2 + Integer.BYTES);
+            block.write(columns.length >>> 24);
+            block.write(columns.length >>> 16);
+            block.write(columns.length >>> 8);
+            block.write(columns.length);
+            byte[] buffer = new byte[8192];
+            while (!deflater.finished()) {
+                block.write(buffer, 0, deflater.deflate(buffer));
+            }
+            return block.toByteArray();
+        } finally {
+            deflater.end();
+        }
+    }
+
+    private static byte[] inflate(byte[] block) throws IOException {
+        int length = (block[0] & 0xFF) << 24 | (block[1] & 0xFF) << 16 | (block[2] & 0xFF) << 8 | block[3] & 0xFF;
+        byte[] columns = new byte[length];
+        Inflater inflater = new Inflater();
+        try {
+            inflater.setInput(block, Integer.BYTES, block.length - Integer.BYTES);
+            int read = 0;
+            while (read < length && !inflater.finished()) {
+                int inflated = inflater.inflate(columns, read, length - read);
+                if (inflated == 0 && (inflater.needsInput() || inflater.needsDictionary())) {
+                    throw new IOException("Truncated audit block");
+                }
+                read += inflated;
+            }
+            return columns;
+        } catch (DataFormatException e) {
+            throw new IOException("Corrupt audit block", e);
+        } finally {
+            inflater.end();
+        }
+    }
+}
@@ -0,0 +1,67 @@
+package hospitalsystem.persistence.controller;
+
+import hospitalsystem.persistence.audit.AuditTrail;
+import hospitalsystem.persistence.audit.AuditedChange;
+import hospitalsystem.persistence.audit.AuditedEntity;
+import hospitalsystem.persistence.audit.AuditedState;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpStatus;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.server.ResponseStatusException;
+
+import java.time.Instant;
+import java.util.List;
+
+@RestController
+public class AuditController {
+
+    @Autowired
+    private ObjectProvider<AuditTrail> auditTrail;
+
+    /**
+     * Returns a patient as it was at the given time, e.g. {@code at=2024-05-01T12:00:00Z}.
+     */
+    @GetMapping("/patients/{id}/as-of")
+    public AuditedState findPatientAsOf(@PathVariable int id, @RequestParam Instant at) {
+        return findAsOf(AuditedEntity.PATIENT, id, at);
+    }
+
+    @GetMapping("/patients/{id}/history")
+    public List<AuditedChange> findPatientHistory(@PathVariable int id) {
+        return auditTrail().findHistory(AuditedEntity.PATIENT, id);
+    }
+
+    /**
+     * Returns a hospital as it was at the given time.
+     */
+    @GetMapping("/hospitals/{id}/as-of")
+    public AuditedState findHospitalAsOf(@PathVariable int id, @RequestParam Instant at) {
+        return findAsOf(AuditedEntity.HOSPITAL, id, at);
+    }
+
+    @GetMapping("/hospitals/{id}/history")
+    public List<AuditedChange> findHospitalHistory(@PathVariable int id) {
+        return auditTrail().findHistory(AuditedEntity.HOSPITAL, id);
+    }
+
+    private AuditedState findAsOf(AuditedEntity entity, int id, Instant at) {
+        AuditedState state = auditTrail().findAsOf(entity, id, at);
+        if (state == null) {
+            throw new ResponseStatusException(HttpStatus.NOT_FOUND,
+                    (entity == AuditedEntity.PATIENT ? "Patient " : "Hospital ") + id + " did not exist at " + at);
+        }
+        return state;
+    }
+
+    private AuditTrail auditTrail() {
+        AuditTrail trail = auditTrail.getIfAvailable();
+        if (trail == null) {
+            throw new ResponseStatusException(HttpStatus.NOT_FOUND, "The audit trail is not enabled");
+        }
+        return trail;
+    }
+}
@@ -0,0 +1,30 @@
+package hospitalsystem.persistence.controller;
+
+import hospitalsystem.persistence.outbox.ChangeEvent;
+import hospitalsystem.persistence.outbox.ChangeEventRelay;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+
+import java.util.List;
+
+@RestController
+@RequestMapping("/events")
+public class ChangeEventController {
+    private static final int MAX_PAGE_SIZE = 1000;
+
+    @Autowired
+    private ChangeEventRelay changeEventRelay;
+
+    /**
+     * Returns the change events after a position. Consumers pass the position of the last event they processed
+     * and so receive every change once, instead of polling all patients.
+     */
+    @GetMapping
+    public List<ChangeEvent> findEvents(@RequestParam(defaultValue = "0") long after,
+                                        @RequestParam(defaultValue = "100") int limit) {
+        return changeEventRelay.findEventsAfter(after, Math.max(1, Math.min(limit, MAX_PAGE_SIZE)));
+    }
+}
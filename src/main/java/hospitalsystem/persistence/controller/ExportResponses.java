@@ -0,0 +1,39 @@
+package hospitalsystem.persistence.controller;
+
+import hospitalsystem.persistence.service.ExportFormat;
+import hospitalsystem.persistence.service.PatientExportFilter;
+import hospitalsystem.persistence.service.PatientExportService;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.server.ResponseStatusException;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+
+import java.util.Locale;
+
+/**
+ * Builds the streaming responses of the export endpoints.
+ */
+final class ExportResponses {
+
+    private ExportResponses() {
+    }
+
+    static ResponseEntity<StreamingResponseBody> stream(PatientExportService exportService, ExportFormat format,
+                                                        PatientExportFilter filter, String fileName) {
+        return ResponseEntity.ok()
+                .contentType(MediaType.parseMediaType(format.getMediaType()))
+                .header(HttpHeaders.CONTENT_DISPOSITION,
+                        "attachment; filename=\"" + fileName + "." + format.getFileExtension() + "\"")
+                .body(output -> exportService.exportPatients(filter, format, output));
+    }
+
+    static ExportFormat format(String format) {
+        try {
+            return ExportFormat.valueOf(format.toUpperCase(Locale.ROOT));
+        } catch (IllegalArgumentException e) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "Unknown export format " + format);
+        }
+    }
+}
@@ -0,0 +1,163 @@
+package hospitalsystem.persistence.controller;
+
+import hospitalsystem.persistence.dto.HospitalDto;
+import hospitalsystem.persistence.dto.HospitalRequest;
+import hospitalsystem.persistence.dto.PageDto;
+import hospitalsystem.persistence.dto.RegistrationRequest;
+import hospitalsystem.persistence.dto.RosterEntryDto;
+import hospitalsystem.persistence.entity.Hospital;
+import hospitalsystem.persistence.service.HospitalRosterService;
+import hospitalsystem.persistence.service.HospitalService;
+import hospitalsystem.persistence.service.PatientExportFilter;
+import hospitalsystem.persistence.service.PatientExportService;
+import hospitalsystem.persistence.service.PatientService;
+import hospitalsystem.persistence.service.PatientStreamService;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.DeleteMapping;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.PutMapping;
+import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.web.bind.annotation.RequestHeader;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.ResponseStatus;
+import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.server.ResponseStatusException;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+@RestController
+@RequestMapping("/hospitals")
+public class HospitalController {
+    private static final int MAX_PAGE_SIZE = 1000;
+
+    @Autowired
+    private HospitalService hospitalService;
+    @Autowired
+    private HospitalRosterService hospitalRosterService;
+    @Autowired
+    private PatientService patientService;
+    @Autowired
+    private PatientExportService patientExportService;
+    @Autowired
+    private PatientStreamService patientStreamService;
+
+    @PostMapping
+    @ResponseStatus(HttpStatus.CREATED)
+    public HospitalDto createHospital(@RequestBody HospitalRequest request) {
+        return HospitalDto.from(hospitalService.createHospital(request.name(), request.address(), request.phone()));
+    }
+
+    @GetMapping("/{id}")
+    public HospitalDto findHospital(@PathVariable int id) {
+        return HospitalDto.from(requireHospital(id));
+    }
+
+    @GetMapping
+    public List<HospitalDto> findHospitals() {
+        return hospitalService.findAllHospitals().stream().map(HospitalDto::from).toList();
+    }
+
+    @PutMapping("/{id}")
+    public HospitalDto updateHospital(@PathVariable int id, @RequestBody HospitalRequest request) {
+        requireHospital(id);
+        hospitalService.updateHospitalById(id, request.name(), request.address(), request.phone());
+        return HospitalDto.from(requireHospital(id));
+    }
+
+    @DeleteMapping("/{id}")
+    @ResponseStatus(HttpStatus.NO_CONTENT)
+    public void deleteHospital(@PathVariable int id) {
+        requireHospital(id);
+        hospitalService.deleteHospitalById(id);
+    }
+
+    @GetMapping("/{id}/patients")
+    public PageDto<RosterEntryDto> findRoster(@PathVariable int id,
+                                              @RequestParam(defaultValue = "0") int page,
+                                              @RequestParam(defaultValue = "50") int size) {
+        requireHospital(id);
+        PageRequest pageable = PageRequest.of(page, Math.min(size, MAX_PAGE_SIZE));
+        return PageDto.from(hospitalRosterService.findRosterByHospital(id, pageable), RosterEntryDto::from);
+    }
+
+    /**
+     * Streams the roster of the hospital as CSV or NDJSON, see {@link PatientController#exportPatients}.
+     */
+    @GetMapping("/{id}/patients/export")
+    public ResponseEntity<StreamingResponseBody> exportRoster(@PathVariable int id,
+                                                              @RequestParam(defaultValue = "csv") String format,
+                                                              @RequestParam(defaultValue = "false") boolean hospitals) {
+        requireHospital(id);
+        return ExportResponses.stream(patientExportService, ExportResponses.format(format),
+                new PatientExportFilter(id, null, null, hospitals), "hospital-" + id + "-roster");
+    }
+
+    /**
+     * Streams the roster of the hospital as NDJSON or server-sent events, see
+     * {@link PatientController#streamPatients}.
+     */
+    @GetMapping("/{id}/patients/stream")
+    public ResponseEntity<StreamingResponseBody> streamRoster(
+            @PathVariable int id,
+            @RequestParam(defaultValue = "ndjson") String format,
+            @RequestParam(defaultValue = "0") int afterId,
+            @RequestHeader(value = "Last-Event-ID", required = false) String lastEventId) {
+        requireHospital(id);
+        return StreamResponses.stream(patientStreamService, id, StreamResponses.afterId(afterId, lastEventId),
+                StreamResponses.format(format));
+    }
+
+    @GetMapping("/{id}/patients/count")
+    public long countPatients(@PathVariable int id) {
+        requireHospital(id);
+        return hospitalService.countPatientsByHospital(id);
+    }
+
+    /**
+     * Registers several patients at the hospital at once.
+     *
+     * @return the number of new registrations
+     */
+    @PostMapping("/{id}/patients")
+    public int registerPatients(@PathVariable int id, @RequestBody RegistrationRequest request) {
+        requireHospital(id);
+        requirePatients(request.patientIds());
+        return patientService.registerPatients(request.patientIds(), id);
+    }
+
+    private Hospital requireHospital(int id) {
+        Hospital hospital = hospitalService.findHospitalById(id);
+        if (hospital == null) {
+            throw new ResponseStatusException(HttpStatus.NOT_FOUND, "Hospital " + id + " not found");
+        }
+        return hospital;
+    }
+
+    /**
+     * Rejects a batch without patient IDs with 400 and one that names an unknown patient with 404, before it is
+     * inserted, so it does not fail with a foreign key violation.
+     */
+    private void requirePatients(List<Integer> patientIds) {
+        if (patientIds == null || patientIds.contains(null)) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "patientIds must be a list of patient IDs");
+        }
+        if (patientIds.isEmpty()) {
+            return;
+        }
+        Set<Integer> found = new HashSet<>(patientService.findExistingPatientIds(patientIds));
+        for (int patientId : patientIds) {
+            if (!found.contains(patientId)) {
+                throw new ResponseStatusException(HttpStatus.NOT_FOUND, "Patient " + patientId + " not found");
+            }
+        }
+    }
+}
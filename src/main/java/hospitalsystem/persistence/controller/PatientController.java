@@ -0,0 +1,260 @@
+package hospitalsystem.persistence.controller;
+
+import hospitalsystem.persistence.dto.DiagnosisEntryDto;
+import hospitalsystem.persistence.dto.DiagnosisRequest;
+import hospitalsystem.persistence.dto.HospitalDto;
+import hospitalsystem.persistence.dto.PatientDto;
+import hospitalsystem.persistence.dto.PatientRequest;
+import hospitalsystem.persistence.entity.Hospital;
+import hospitalsystem.persistence.entity.Patient;
+import hospitalsystem.persistence.projection.PatientView;
+import hospitalsystem.persistence.service.DeduplicationReport;
+import hospitalsystem.persistence.service.DiagnosisHistoryService;
+import hospitalsystem.persistence.service.FileImportReport;
+import hospitalsystem.persistence.service.HospitalService;
+import hospitalsystem.persistence.service.PatientDeduplicationService;
+import hospitalsystem.persistence.service.PatientExportFilter;
+import hospitalsystem.persistence.service.PatientExportService;
+import hospitalsystem.persistence.service.PatientFileImportService;
+import hospitalsystem.persistence.service.PatientService;
+import hospitalsystem.persistence.service.PatientStreamService;
+import hospitalsystem.persistence.service.ReadModelService;
+import hospitalsystem.persistence.service.WriteBehindQueue;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.format.annotation.DateTimeFormat;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.DeleteMapping;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.PutMapping;
+import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.web.bind.annotation.RequestHeader;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.ResponseStatus;
+import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.server.ResponseStatusException;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.time.Duration;
+import java.util.Date;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+@RestController
+@RequestMapping("/patients")
+public class PatientController {
+    private static final int MAX_PAGE_SIZE = 1000;
+
+    @Autowired
+    private PatientService patientService;
+    @Autowired
+    private HospitalService hospitalService;
+    @Autowired
+    private DiagnosisHistoryService diagnosisHistoryService;
+    @Autowired
+    private WriteBehindQueue writeBehindQueue;
+    @Autowired
+    private PatientExportService patientExportService;
+    @Autowired
+    private PatientFileImportService patientFileImportService;
+    @Autowired
+    private ReadModelService readModelService;
+    @Autowired
+    private PatientDeduplicationService patientDeduplicationService;
+    @Autowired
+    private PatientStreamService patientStreamService;
+
+    @Value("${hospital.write-behind.response-timeout:10s}")
+    private Duration writeTimeout;
+
+    /**
+     * Creates a patient, registered at the hospital of the request if there is one. Patients without a hospital
+     * are stored on the default shard.
+     */
+    @PostMapping
+    @ResponseStatus(HttpStatus.CREATED)
+    public PatientDto createPatient(@RequestBody PatientRequest request) {
+        if (request.hospitalId() == null) {
+            return PatientDto.from(patientService.createPatient(request.firstName(), request.lastName(),
+                    request.dateOfBirth(), request.email()));
+        }
+        requireHospital(request.hospitalId());
+        return PatientDto.from(patientService.createPatient(request.hospitalId(), request.firstName(),
+                request.lastName(), request.dateOfBirth(), request.email()));
+    }
+
+    @GetMapping("/{id}")
+    public PatientDto findPatient(@PathVariable int id) {
+        PatientView patient = readModelService.findPatientView(id);
+        if (patient == null) {
+            throw new ResponseStatusException(HttpStatus.NOT_FOUND, "Patient " + id + " not found");
+        }
+        return PatientDto.from(patient);
+    }
+
+    /**
+     * Lists patients using keyset pagination. Pass the ID of the last patient of a page as afterId to get the
+     * next page.
+     */
+    @GetMapping
+    public List<PatientDto> findPatients(@RequestParam(defaultValue = "0") int afterId,
+                                         @RequestParam(defaultValue = "100") int limit) {
+        return readModelService.findPatientViewsAfter(afterId, Math.min(limit, MAX_PAGE_SIZE)).stream()
+                .map(PatientDto::from)
+                .toList();
+    }
+
+    /**
+     * Streams all patients, or the ones matching the given filters, as CSV or NDJSON. The response is written
+     * while the rows are read, so it starts immediately and uses constant memory.
+     */
+    @GetMapping("/export")
+    public ResponseEntity<StreamingResponseBody> exportPatients(
+            @RequestParam(defaultValue = "csv") String format,
+            @RequestParam(required = false) Integer hospitalId,
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) Date bornFrom,
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) Date bornTo,
+            @RequestParam(defaultValue = "false") boolean hospitals) {
+        return ExportResponses.stream(patientExportService, ExportResponses.format(format),
+                new PatientExportFilter(hospitalId, bornFrom, bornTo, hospitals), "patients");
+    }
+
+    /**
+     * Streams all patients ordered by ID as NDJSON or server-sent events. Pages are read on demand as the client
+     * consumes the response, see {@link PatientStreamService}.
+     */
+    @GetMapping("/stream")
+    public ResponseEntity<StreamingResponseBody> streamPatients(
+            @RequestParam(defaultValue = "ndjson") String format,
+            @RequestParam(defaultValue = "0") int afterId,
+            @RequestHeader(value = "Last-Event-ID", required = false) String lastEventId) {
+        return StreamResponses.stream(patientStreamService, null, StreamResponses.afterId(afterId, lastEventId),
+                StreamResponses.format(format));
+    }
+
+    /**
+     * Imports patients from a CSV upload, see {@link PatientFileImportService} for the format. The upload is
+     * spooled to a temporary file first, so the import can read it with the file pipeline.
+     */
+    @PostMapping(path = "/import", consumes = "text/csv")
+    public FileImportReport importPatients(InputStream body) throws IOException {
+        Path file = Files.createTempFile("patient-import", ".csv");
+        try {
+            Files.copy(body, file, StandardCopyOption.REPLACE_EXISTING);
+            return patientFileImportService.importFile(file);
+        } finally {
+            Files.deleteIfExists(file);
+        }
+    }
+
+    /**
+     * Merges patients registered more than once, see {@link PatientDeduplicationService}. Resumes an interrupted
+     * run if there is one.
+     */
+    @PostMapping("/deduplicate")
+    public DeduplicationReport deduplicatePatients() {
+        return patientDeduplicationService.deduplicate();
+    }
+
+    @PutMapping("/{id}")
+    public PatientDto updatePatient(@PathVariable int id, @RequestBody PatientRequest request) {
+        requirePatient(id);
+        patientService.updatePatientById(id, request.firstName(), request.lastName(), request.email());
+        return PatientDto.from(requirePatient(id));
+    }
+
+    @DeleteMapping("/{id}")
+    @ResponseStatus(HttpStatus.NO_CONTENT)
+    public void deletePatient(@PathVariable int id) {
+        requirePatient(id);
+        patientService.deletePatientById(id);
+    }
+
+    /**
+     * Adds a diagnosis. The response is sent after the commit; in write-behind mode concurrent requests share it.
+     */
+    @PutMapping("/{id}/diagnosis")
+    @ResponseStatus(HttpStatus.NO_CONTENT)
+    public void addDiagnosis(@PathVariable int id, @RequestBody DiagnosisRequest request) {
+        requirePatient(id);
+        await(writeBehindQueue.addDiagnosis(id, request.diagnosis()));
+    }
+
+    @GetMapping("/{id}/diagnoses")
+    public List<DiagnosisEntryDto> findDiagnoses(@PathVariable int id) {
+        requirePatient(id);
+        return diagnosisHistoryService.findDiagnosisHistory(id).stream()
+                .map(DiagnosisEntryDto::from)
+                .toList();
+    }
+
+    @GetMapping("/{id}/hospitals")
+    public List<HospitalDto> findHospitals(@PathVariable int id) {
+        Set<Hospital> hospitals = patientService.listHospitalsByPatients(List.of(id)).get(id);
+        if (hospitals == null) {
+            throw new ResponseStatusException(HttpStatus.NOT_FOUND, "Patient " + id + " not found");
+        }
+        return hospitals.stream().map(HospitalDto::from).toList();
+    }
+
+    @PutMapping("/{id}/hospitals/{hospitalId}")
+    @ResponseStatus(HttpStatus.NO_CONTENT)
+    public void registerPatient(@PathVariable int id, @PathVariable int hospitalId) {
+        requirePatient(id);
+        requireHospital(hospitalId);
+        await(writeBehindQueue.registerPatient(id, hospitalId));
+    }
+
+    @DeleteMapping("/{id}/hospitals/{hospitalId}")
+    @ResponseStatus(HttpStatus.NO_CONTENT)
+    public void unregisterPatient(@PathVariable int id, @PathVariable int hospitalId) {
+        requirePatient(id);
+        requireHospital(hospitalId);
+        patientService.unregisterPatient(id, hospitalId);
+    }
+
+    /**
+     * Waits for a mutation of the write-behind queue to commit, for up to hospital.write-behind.response-timeout.
+     * A mutation that takes longer is answered with 503; it stays queued and may still be written.
+     */
+    private void await(CompletableFuture<Void> result) {
+        try {
+            result.copy().orTimeout(writeTimeout.toMillis(), TimeUnit.MILLISECONDS).join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof TimeoutException) {
+                throw new ResponseStatusException(HttpStatus.SERVICE_UNAVAILABLE, "Write not committed within "
+                        + writeTimeout.toMillis() + " ms");
+            }
+            throw e;
+        }
+    }
+
+    private Patient requirePatient(int id) {
+        Patient patient = patientService.findPatientById(id);
+        if (patient == null) {
+            throw new ResponseStatusException(HttpStatus.NOT_FOUND, "Patient " + id + " not found");
+        }
+        return patient;
+    }
+
+    private Hospital requireHospital(int id) {
+        Hospital hospital = hospitalService.findHospitalById(id);
+        if (hospital == null) {
+            throw new ResponseStatusException(HttpStatus.NOT_FOUND, "Hospital " + id + " not found");
+        }
+        return hospital;
+    }
+}
@@ -0,0 +1,31 @@
+package hospitalsystem.persistence.controller;
+
+import hospitalsystem.persistence.statistics.HospitalStatistics;
+import hospitalsystem.persistence.statistics.StatisticsSnapshot;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RestController;
+
+@RestController
+@RequestMapping("/statistics")
+public class StatisticsController {
+
+    @Autowired
+    private HospitalStatistics hospitalStatistics;
+
+    @GetMapping
+    public StatisticsSnapshot findStatistics() {
+        return hospitalStatistics.snapshot();
+    }
+
+    /**
+     * Returns the number of patients registered at a hospital from the in-memory counters. Unlike
+     * /hospitals/{id}/patients/count it does not query the database, and unknown hospitals have no patients.
+     */
+    @GetMapping("/hospitals/{id}/patients")
+    public long countPatients(@PathVariable int id) {
+        return hospitalStatistics.getPatientCount(id);
+    }
+}
@@ -0,0 +1,53 @@
+package hospitalsystem.persistence.controller;
+
+import hospitalsystem.persistence.service.PatientStreamService;
+import hospitalsystem.persistence.service.StreamFormat;
+import org.springframework.http.CacheControl;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.server.ResponseStatusException;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+
+import java.util.Locale;
+
+/**
+ * Builds the responses of the patient stream endpoints. The body is written on the stream executor (see
+ * {@link StreamingConfiguration}), so the request thread is released as soon as the stream starts.
+ */
+final class StreamResponses {
+
+    private StreamResponses() {
+    }
+
+    static ResponseEntity<StreamingResponseBody> stream(PatientStreamService streamService, Integer hospitalId,
+                                                        int afterId, StreamFormat format) {
+        return ResponseEntity.ok()
+                .contentType(MediaType.parseMediaType(format.getMediaType()))
+                .cacheControl(CacheControl.noStore())
+                .body(output -> streamService.streamPatients(hospitalId, afterId, format, output));
+    }
+
+    /**
+     * Resolves the start of a stream: a reconnecting SSE client sends the ID of the last received patient in the
+     * Last-Event-ID header, which takes precedence over the afterId parameter.
+     */
+    static int afterId(int afterId, String lastEventId) {
+        if (lastEventId == null || lastEventId.isBlank()) {
+            return afterId;
+        }
+        try {
+            return Integer.parseInt(lastEventId.trim());
+        } catch (NumberFormatException e) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "Invalid Last-Event-ID " + lastEventId);
+        }
+    }
+
+    static StreamFormat format(String format) {
+        try {
+            return StreamFormat.valueOf(format.toUpperCase(Locale.ROOT));
+        } catch (IllegalArgumentException e) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "Unknown stream format " + format);
+        }
+    }
+}
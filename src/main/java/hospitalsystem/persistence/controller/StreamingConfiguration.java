@@ -0,0 +1,40 @@
+package hospitalsystem.persistence.controller;
+
+import jakarta.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+import org.springframework.web.servlet.config.annotation.AsyncSupportConfigurer;
+import org.springframework.web.servlet.config.annotation.WebMvcConfigurer;
+
+/**
+ * Writes the bodies of the stream and export endpoints on an executor of their own. A stream to a slow client
+ * holds its thread for as long as the client reads, so these threads are kept apart from the application task
+ * executor, which keeps its default size.
+ */
+@Configuration
+public class StreamingConfiguration implements WebMvcConfigurer {
+    private final ThreadPoolTaskExecutor streamExecutor = new ThreadPoolTaskExecutor();
+
+    @Value("${hospital.stream.max-concurrent:200}")
+    private int maxConcurrent;
+
+    /**
+     * Runs up to the configured number of responses at once; further ones wait until a running response ends.
+     * Idle threads are released, so the pool only holds threads while streams are open.
+     */
+    @Override
+    public void configureAsyncSupport(AsyncSupportConfigurer configurer) {
+        streamExecutor.setThreadNamePrefix("patient-stream-");
+        streamExecutor.setCorePoolSize(maxConcurrent);
+        streamExecutor.setMaxPoolSize(maxConcurrent);
+        streamExecutor.setAllowCoreThreadTimeOut(true);
+        streamExecutor.initialize();
+        configurer.setTaskExecutor(streamExecutor);
+    }
+
+    @PreDestroy
+    void stop() {
+        streamExecutor.shutdown();
+    }
+}
@@ -0,0 +1,16 @@
+package hospitalsystem.persistence.dto;
+
+import hospitalsystem.persistence.entity.DiagnosisEntry;
+
+import java.time.Instant;
+
+/**
+ * Representation of an entry in the diagnosis history of a patient.
+ */
+
+public record DiagnosisEntryDto(long id, String diagnosis, Instant recordedAt) {
+
+    public static DiagnosisEntryDto from(DiagnosisEntry entry) {
+        return new DiagnosisEntryDto(entry.getId(), entry.getDiagnosis(), entry.getRecordedAt());
+    }
+}
@@ -0,0 +1,8 @@
+package hospitalsystem.persistence.dto;
+
+/**
+ * Request body to add or update the diagnosis of a patient.
+ */
+
+public record DiagnosisRequest(String diagnosis) {
+}
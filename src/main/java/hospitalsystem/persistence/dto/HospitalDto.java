@@ -0,0 +1,20 @@
+package hospitalsystem.persistence.dto;
+
+import hospitalsystem.persistence.entity.Hospital;
+import hospitalsystem.persistence.projection.HospitalView;
+
+/**
+ * Representation of a hospital in the REST API. Does not contain the patients of the hospital, use the roster
+ * endpoint to page through them.
+ */
+
+public record HospitalDto(int id, String name, String address, String phone) {
+
+    public static HospitalDto from(Hospital hospital) {
+        return new HospitalDto(hospital.getId(), hospital.getName(), hospital.getAddress(), hospital.getPhone());
+    }
+
+    public static HospitalDto from(HospitalView hospital) {
+        return new HospitalDto(hospital.id(), hospital.name(), hospital.address(), hospital.phone());
+    }
+}
@@ -0,0 +1,8 @@
+package hospitalsystem.persistence.dto;
+
+/**
+ * Request body to create or update a hospital.
+ */
+
+public record HospitalRequest(String name, String address, String phone) {
+}
@@ -0,0 +1,23 @@
+package hospitalsystem.persistence.dto;
+
+import org.springframework.data.domain.Page;
+
+import java.util.List;
+import java.util.function.Function;
+
+/**
+ * Stable JSON representation of one page of a paged result.
+ *
+ * @param content       the elements of the page
+ * @param page          the zero-based page number
+ * @param size          the requested page size
+ * @param totalElements the total number of elements
+ */
+
+public record PageDto<T>(List<T> content, int page, int size, long totalElements) {
+
+    public static <S, T> PageDto<T> from(Page<S> page, Function<S, T> mapper) {
+        return new PageDto<>(page.getContent().stream().map(mapper).toList(), page.getNumber(), page.getSize(),
+                page.getTotalElements());
+    }
+}
@@ -0,0 +1,26 @@
+package hospitalsystem.persistence.dto;
+
+import hospitalsystem.persistence.entity.Patient;
+import hospitalsystem.persistence.projection.PatientView;
+
+import java.util.Date;
+
+/**
+ * Representation of a patient in the REST API. Does not contain the hospitals of the patient, so serializing
+ * it never initializes the lazy association.
+ */
+
+public record PatientDto(int id, String firstName, String lastName, String address, String email, String phone,
+                         Date dateOfBirth, String sex, String diagnosis) {
+
+    public static PatientDto from(Patient patient) {
+        return new PatientDto(patient.getId(), patient.getFirstName(), patient.getLastName(), patient.getAddress(),
+                patient.getEmail(), patient.getPhone(), patient.getDateOfBirth(), patient.getSex(),
+                patient.getDiagnosis());
+    }
+
+    public static PatientDto from(PatientView patient) {
+        return new PatientDto(patient.id(), patient.firstName(), patient.lastName(), patient.address(),
+                patient.email(), patient.phone(), patient.dateOfBirth(), patient.sex(), patient.diagnosis());
+    }
+}
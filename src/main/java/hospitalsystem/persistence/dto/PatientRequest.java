@@ -0,0 +1,12 @@
+package hospitalsystem.persistence.dto;
+
+import java.util.Date;
+
+/**
+ * Request body to create or update a patient. The date of birth is ignored on updates. The optional hospital
+ * registers a new patient there and, when the data is partitioned, decides the shard the patient is stored on;
+ * it is ignored on updates as well.
+ */
+
+public record PatientRequest(String firstName, String lastName, Date dateOfBirth, String email, Integer hospitalId) {
+}
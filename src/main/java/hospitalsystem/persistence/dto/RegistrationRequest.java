@@ -0,0 +1,10 @@
+package hospitalsystem.persistence.dto;
+
+import java.util.List;
+
+/**
+ * Request body to register several patients at a hospital at once.
+ */
+
+public record RegistrationRequest(List<Integer> patientIds) {
+}
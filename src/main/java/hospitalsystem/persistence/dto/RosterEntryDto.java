@@ -0,0 +1,16 @@
+package hospitalsystem.persistence.dto;
+
+import hospitalsystem.persistence.projection.PatientRosterEntry;
+
+import java.util.Date;
+
+/**
+ * Representation of a patient in the roster of a hospital.
+ */
+
+public record RosterEntryDto(int id, String firstName, String lastName, Date dateOfBirth) {
+
+    public static RosterEntryDto from(PatientRosterEntry entry) {
+        return new RosterEntryDto(entry.getId(), entry.getFirstName(), entry.getLastName(), entry.getDateOfBirth());
+    }
+}
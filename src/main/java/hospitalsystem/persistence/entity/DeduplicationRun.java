@@ -0,0 +1,89 @@
+package hospitalsystem.persistence.entity;
+
+import jakarta.persistence.*;
+
+import java.time.Instant;
+
+/**
+ * Progress of a patient deduplication run. The run processes blocks of candidate duplicates in the order of their
+ * blocking keys and records the key of the last merged block in the same transaction as the merges, so an
+ * interrupted run resumes after that block.
+ */
+
+@Entity
+@Table(name = "DeduplicationRuns")
+public class DeduplicationRun {
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "deduplication_run_seq")
+    @SequenceGenerator(name = "deduplication_run_seq", sequenceName = "deduplication_runs_seq", allocationSize = 1)
+    private Long id;
+
+    @Column(nullable = false)
+    private Instant startedAt;
+    private Instant finishedAt;
+    @Column(length = 1000)
+    private String lastBlockKey;
+    private long comparisons;
+    private long merged;
+
+    public DeduplicationRun(Instant startedAt) {
+        this.startedAt = startedAt;
+    }
+
+    public DeduplicationRun() {
+
+    }
+
+    //getter
+    public Long getId() {
+        return id;
+    }
+
+    public Instant getStartedAt() {
+        return startedAt;
+    }
+
+    public Instant getFinishedAt() {
+        return finishedAt;
+    }
+
+    public String getLastBlockKey() {
+        return lastBlockKey;
+    }
+
+    public long getComparisons() {
+        return comparisons;
+    }
+
+    public long getMerged() {
+        return merged;
+    }
+
+    //setter
+    public void setFinishedAt(Instant finishedAt) {
+        this.finishedAt = finishedAt;
+    }
+
+    /**
+     * Records the merges of a window of blocks.
+     *
+     * @param lastBlockKey the blocking key of the last block of the window
+     * @param comparisons  the number of compared pairs in the window
+     * @param merged       the number of patients merged into another one in the window
+     */
+    public void advance(String lastBlockKey, long comparisons, long merged) {
+        this.lastBlockKey = lastBlockKey;
+        this.comparisons += comparisons;
+        this.merged += merged;
+    }
+
+    @Override
+    public String toString() {
+        return "DeduplicationRun{" +
+                "id=" + id +
+                ", lastBlockKey='" + lastBlockKey + '\'' +
+                ", merged=" + merged +
+                '}';
+    }
+}
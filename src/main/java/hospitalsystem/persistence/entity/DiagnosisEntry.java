@@ -0,0 +1,66 @@
+package hospitalsystem.persistence.entity;
+
+import jakarta.persistence.*;
+import org.hibernate.annotations.Immutable;
+
+import java.time.Instant;
+
+/**
+ * One entry of the append-only diagnosis history of a patient. Entries are only ever inserted; the current
+ * diagnosis of a patient is materialized on {@link Patient#getDiagnosis()}.
+ */
+
+@Entity
+@Immutable
+@Table(name = "DiagnosisEntries",
+        indexes = @Index(name = "idx_diagnosis_entries_patient", columnList = "patientId, id"))
+public class DiagnosisEntry {
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "diagnosis_entry_seq")
+    @SequenceGenerator(name = "diagnosis_entry_seq", sequenceName = "diagnosis_entries_seq", allocationSize = 50)
+    private Long id;
+
+    @Column(nullable = false)
+    private int patientId;
+    @Column(length = 4000)
+    private String diagnosis;
+    @Column(nullable = false)
+    private Instant recordedAt;
+
+    public DiagnosisEntry(int patientId, String diagnosis, Instant recordedAt) {
+        this.patientId = patientId;
+        this.diagnosis = diagnosis;
+        this.recordedAt = recordedAt;
+    }
+
+    public DiagnosisEntry() {
+
+    }
+
+    //getter
+    public Long getId() {
+        return id;
+    }
+
+    public int getPatientId() {
+        return patientId;
+    }
+
+    public String getDiagnosis() {
+        return diagnosis;
+    }
+
+    public Instant getRecordedAt() {
+        return recordedAt;
+    }
+
+    @Override
+    public String toString() {
+        return "DiagnosisEntry{" +
+                "id=" + id +
+                ", patientId=" + patientId +
+                ", diagnosis='" + diagnosis + '\'' +
+                '}';
+    }
+}
@@ -1,18 +1,26 @@
 package hospitalsystem.persistence.entity;
 
 import jakarta.persistence.*;
+import org.hibernate.annotations.Cache;
+import org.hibernate.annotations.CacheConcurrencyStrategy;
 
 import java.util.HashSet;
 import java.util.Set;
 
 @Entity
+@Cacheable
+@Cache(usage = CacheConcurrencyStrategy.READ_WRITE, region = "hospitals")
 @Table(name = "Hospitals")
 public class Hospital {
 
     @Id
-    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "hospital_seq")
+    @SequenceGenerator(name = "hospital_seq", sequenceName = "hospitals_seq", allocationSize = 50)
     private int id;
 
+    @Version
+    private long version;
+
     private String name;
     private String address;
     private String phone;
@@ -47,6 +55,10 @@ public class Hospital {
         this.id = id;
     }
 
+    public long getVersion() {
+        return version;
+    }
+
     public String getAddress() {
         return address;
     }
@@ -0,0 +1,65 @@
+package hospitalsystem.persistence.entity;
+
+import hospitalsystem.persistence.outbox.ChangeType;
+import jakarta.persistence.*;
+import org.hibernate.annotations.Immutable;
+
+import java.time.Instant;
+
+/**
+ * A change of a patient, hospital, registration or diagnosis, written in the same transaction as the change
+ * itself. The rows are inserted with JDBC, see {@code ChangeEventOutbox}, and the identity ID only reflects the
+ * insertion order. The position in the change stream is assigned by the relay once the row is committed, so
+ * positions are gapless and never assigned to a row that a reader could still miss.
+ */
+
+@Entity
+@Immutable
+@Table(name = "OutboxEvents",
+        indexes = @Index(name = "idx_outbox_events_position", columnList = "position", unique = true))
+public class OutboxEvent {
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+
+    private Long position;
+    @Column(nullable = false)
+    private Instant createdAt;
+    @Column(nullable = false, length = 32)
+    @Enumerated(EnumType.STRING)
+    private ChangeType type;
+    @Column(nullable = false)
+    private int aggregateId;
+    @Column(length = 4000)
+    private String payload;
+
+    public OutboxEvent() {
+
+    }
+
+    //getter
+    public Long getId() {
+        return id;
+    }
+
+    public Long getPosition() {
+        return position;
+    }
+
+    public Instant getCreatedAt() {
+        return createdAt;
+    }
+
+    public ChangeType getType() {
+        return type;
+    }
+
+    public int getAggregateId() {
+        return aggregateId;
+    }
+
+    public String getPayload() {
+        return payload;
+    }
+}
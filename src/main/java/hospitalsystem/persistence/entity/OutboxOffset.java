@@ -0,0 +1,49 @@
+package hospitalsystem.persistence.entity;
+
+import jakarta.persistence.*;
+
+/**
+ * The position of the last change event a sink has acknowledged. The relay resumes every sink after its offset,
+ * so events that were published but not acknowledged before a crash are published again.
+ */
+
+@Entity
+@Table(name = "OutboxOffsets")
+public class OutboxOffset {
+
+    @Id
+    @Column(length = 100)
+    private String sink;
+    private long position;
+
+    public OutboxOffset(String sink, long position) {
+        this.sink = sink;
+        this.position = position;
+    }
+
+    public OutboxOffset() {
+
+    }
+
+    //getter
+    public String getSink() {
+        return sink;
+    }
+
+    public long getPosition() {
+        return position;
+    }
+
+    //setter
+    public void setPosition(long position) {
+        this.position = position;
+    }
+
+    @Override
+    public String toString() {
+        return "OutboxOffset{" +
+                "sink='" + sink + '\'' +
+                ", position=" + position +
+                '}';
+    }
+}
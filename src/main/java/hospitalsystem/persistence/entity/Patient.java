@@ -1,19 +1,34 @@
 package hospitalsystem.persistence.entity;
 
+import hospitalsystem.persistence.search.PatientSearchIndexListener;
+import hospitalsystem.persistence.sharding.ShardSchemaInitializer;
 import jakarta.persistence.*;
+import org.hibernate.annotations.Cache;
+import org.hibernate.annotations.CacheConcurrencyStrategy;
 
 import java.util.Date;
 import java.util.HashSet;
 import java.util.Set;
 
 @Entity
-@Table(name = "Patients")
+@EntityListeners(PatientSearchIndexListener.class)
+@Cacheable
+@Cache(usage = CacheConcurrencyStrategy.READ_WRITE, region = "patients")
+@Table(name = "Patients", indexes = {
+        @Index(name = "idx_patients_name", columnList = "lastName, firstName"),
+        @Index(name = "idx_patients_email", columnList = "email", unique = true),
+        @Index(name = "idx_patients_date_of_birth", columnList = "dateOfBirth")})
+@NamedEntityGraph(name = "Patient.hospitals", attributeNodes = @NamedAttributeNode("hospitals"))
 public class Patient {
 
     @Id
-    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "patient_seq")
+    @SequenceGenerator(name = "patient_seq", sequenceName = "patients_seq", allocationSize = 50)
     private int id;
 
+    @Version
+    private long version;
+
     private String firstName;
     private String lastName;
     private String address;
@@ -21,9 +36,19 @@ public class Patient {
     private String phone;
     private Date dateOfBirth;
     private String sex;
+    // written by CurrentDiagnosisMaterializer only, updates of the patient must not overwrite them
+    @Column(updatable = false)
     private String diagnosis;
+    @Column(updatable = false)
+    private Long diagnosisEntryId;
 
+    // sharded databases drop the patient key, a registration is stored on the shard of its hospital
     @ManyToMany
+    @JoinTable(name = "Patient_hospitals",
+            joinColumns = @JoinColumn(name = "patient_id",
+                    foreignKey = @ForeignKey(name = ShardSchemaInitializer.REGISTERED_PATIENT_KEY)),
+            inverseJoinColumns = @JoinColumn(name = "hospital_id"),
+            indexes = @Index(name = "idx_patient_hospitals_hospital", columnList = "hospital_id, patient_id"))
     private Set<Hospital> hospitals = new HashSet<>();
 
     public Patient(String firstName, String lastName, String address, String email, String phone, Date dateOfBirth, String sex, String diagnosis) {
@@ -96,6 +121,10 @@ public class Patient {
         this.id = id;
     }
 
+    public long getVersion() {
+        return version;
+    }
+
     public Date getDateOfBirth() {
         return dateOfBirth;
     }
@@ -108,10 +137,22 @@ public class Patient {
         return diagnosis;
     }
 
+    /**
+     * Sets the diagnosis of this instance only. The column is not updatable, so the value is ignored when the
+     * patient is saved; add diagnoses with {@code PatientService.addDiagnosisById}, the current diagnosis is then
+     * written by the {@code CurrentDiagnosisMaterializer}.
+     *
+     * @param diagnosis the diagnosis to show on this instance
+     */
+
     public void setDiagnosis(String diagnosis) {
         this.diagnosis = diagnosis;
     }
 
+    public Long getDiagnosisEntryId() {
+        return diagnosisEntryId;
+    }
+
     public Set<Hospital> getHospitals() {
         return hospitals;
     }
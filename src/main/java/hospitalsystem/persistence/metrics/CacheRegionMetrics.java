@@ -0,0 +1,41 @@
+package hospitalsystem.persistence.metrics;
+
+import hospitalsystem.persistence.service.CacheRegionStats;
+import hospitalsystem.persistence.service.CacheStatisticsService;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import java.util.function.ToDoubleFunction;
+
+/**
+ * Publishes hit rate, evictions and size of the second-level cache regions of the entities.
+ */
+
+@Component
+public class CacheRegionMetrics implements MeterBinder {
+    private static final String[] REGIONS = {"hospitals", "patients"};
+
+    @Autowired
+    private CacheStatisticsService cacheStatisticsService;
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        for (String region : REGIONS) {
+            gauge(registry, "hospital.cache.hit.rate", region, CacheRegionStats::hitRate);
+            gauge(registry, "hospital.cache.evictions", region, CacheRegionStats::evictions);
+            gauge(registry, "hospital.cache.size", region, CacheRegionStats::size);
+        }
+    }
+
+    private void gauge(MeterRegistry registry, String name, String region, ToDoubleFunction<CacheRegionStats> value) {
+        Gauge.builder(name, cacheStatisticsService, service -> {
+                    CacheRegionStats statistics = service.findRegionStatistics(region);
+                    return statistics == null ? Double.NaN : value.applyAsDouble(statistics);
+                })
+                .tag("region", region)
+                .register(registry);
+    }
+}
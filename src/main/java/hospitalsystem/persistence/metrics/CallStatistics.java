@@ -0,0 +1,68 @@
+package hospitalsystem.persistence.metrics;
+
+/**
+ * Per-thread counters of the database work done by the current thread. The counters only ever grow; the work
+ * of a single call is the difference between a {@link #snapshot()} taken before and one taken after the call.
+ */
+
+public final class CallStatistics {
+    private static final ThreadLocal<CallStatistics> CURRENT = ThreadLocal.withInitial(CallStatistics::new);
+
+    long statements;
+    long entityLoads;
+    long collectionFetches;
+    long cacheHits;
+    long cacheMisses;
+    long transactions;
+
+    private CallStatistics() {
+    }
+
+    static CallStatistics current() {
+        return CURRENT.get();
+    }
+
+    /**
+     * Records SQL statements that were executed on a raw JDBC connection and are therefore not seen by Hibernate.
+     * A JDBC batch counts as one statement, as it does for the statements Hibernate executes.
+     *
+     * @param count the number of executed statements and batches
+     */
+
+    public static void addStatements(int count) {
+        current().statements += count;
+    }
+
+    /**
+     * Takes a snapshot of the counters of the current thread.
+     *
+     * @return the current counter values
+     */
+
+    public static Snapshot snapshot() {
+        CallStatistics statistics = current();
+        return new Snapshot(statistics.statements, statistics.entityLoads, statistics.collectionFetches,
+                statistics.cacheHits, statistics.cacheMisses, statistics.transactions);
+    }
+
+    /**
+     * Counter values at one point in time, or the difference between two points in time.
+     */
+
+    public record Snapshot(long statements, long entityLoads, long collectionFetches, long cacheHits,
+                           long cacheMisses, long transactions) {
+
+        /**
+         * Returns the work done since an earlier snapshot.
+         *
+         * @param before the earlier snapshot
+         * @return the difference of both snapshots
+         */
+
+        public Snapshot since(Snapshot before) {
+            return new Snapshot(statements - before.statements, entityLoads - before.entityLoads,
+                    collectionFetches - before.collectionFetches, cacheHits - before.cacheHits,
+                    cacheMisses - before.cacheMisses, transactions - before.transactions);
+        }
+    }
+}
@@ -0,0 +1,36 @@
+package hospitalsystem.persistence.metrics;
+
+import org.hibernate.SessionEventListener;
+
+/**
+ * Counts statements, second-level cache lookups and transactions of every Hibernate session into the
+ * {@link CallStatistics} of the current thread. Registered through hibernate.session.events.auto.
+ */
+
+public class CallStatisticsSessionListener implements SessionEventListener {
+
+    @Override
+    public void jdbcExecuteStatementEnd() {
+        CallStatistics.current().statements++;
+    }
+
+    @Override
+    public void jdbcExecuteBatchEnd() {
+        CallStatistics.current().statements++;
+    }
+
+    @Override
+    public void cacheGetEnd(boolean hit) {
+        CallStatistics statistics = CallStatistics.current();
+        if (hit) {
+            statistics.cacheHits++;
+        } else {
+            statistics.cacheMisses++;
+        }
+    }
+
+    @Override
+    public void transactionCompletion(boolean successful) {
+        CallStatistics.current().transactions++;
+    }
+}
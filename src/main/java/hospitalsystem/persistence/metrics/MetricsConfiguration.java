@@ -0,0 +1,30 @@
+package hospitalsystem.persistence.metrics;
+
+import org.hibernate.integrator.spi.Integrator;
+import org.hibernate.jpa.boot.spi.IntegratorProvider;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.boot.autoconfigure.orm.jpa.HibernatePropertiesCustomizer;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import java.util.ArrayList;
+import java.util.List;
+
+@Configuration
+public class MetricsConfiguration {
+
+    /**
+     * Registers the listeners that count entity loads and collection fetches per call, together with the
+     * integrators declared as beans. Hibernate accepts a single integrator provider, so all of them are
+     * registered here.
+     */
+    @Bean
+    public HibernatePropertiesCustomizer callStatisticsIntegrator(ObjectProvider<Integrator> integratorBeans) {
+        return properties -> properties.put("hibernate.integrator_provider", (IntegratorProvider) () -> {
+            List<Integrator> integrators = new ArrayList<>();
+            integrators.add(new CallStatisticsIntegrator());
+            integratorBeans.orderedStream().forEach(integrators::add);
+            return integrators;
+        });
+    }
+}
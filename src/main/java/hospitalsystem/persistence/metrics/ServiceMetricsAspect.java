@@ -0,0 +1,89 @@
+package hospitalsystem.persistence.metrics;
+
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Tags;
+import io.micrometer.core.instrument.Timer;
+import org.aspectj.lang.ProceedingJoinPoint;
+import org.aspectj.lang.annotation.Around;
+import org.aspectj.lang.annotation.Aspect;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.Ordered;
+import org.springframework.core.annotation.Order;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Records a latency histogram and the database work of every public method of PatientService,
+ * HospitalService and ReadModelService. Calls slower than hospital.metrics.slow-call-threshold are logged with their SQL count.
+ * Runs outside of the transaction advice, so commit time is included.
+ */
+
+@Aspect
+@Component
+@Order(Ordered.HIGHEST_PRECEDENCE)
+public class ServiceMetricsAspect {
+    private static final Logger log = LoggerFactory.getLogger(ServiceMetricsAspect.class);
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+    @Value("${hospital.metrics.slow-call-threshold:500ms}")
+    private Duration slowCallThreshold;
+
+    @Around("execution(public * hospitalsystem.persistence.service.PatientService.*(..))"
+            + " || execution(public * hospitalsystem.persistence.service.HospitalService.*(..))"
+            + " || execution(public * hospitalsystem.persistence.service.ReadModelService.*(..))")
+    public Object record(ProceedingJoinPoint joinPoint) throws Throwable {
+        CallStatistics.Snapshot before = CallStatistics.snapshot();
+        long start = System.nanoTime();
+        String exception = "none";
+        try {
+            return joinPoint.proceed();
+        } catch (Throwable e) {
+            exception = e.getClass().getSimpleName();
+            throw e;
+        } finally {
+            long nanos = System.nanoTime() - start;
+            CallStatistics.Snapshot call = CallStatistics.snapshot().since(before);
+            String service = joinPoint.getSignature().getDeclaringType().getSimpleName();
+            String method = joinPoint.getSignature().getName();
+            Tags tags = Tags.of("service", service, "method", method);
+
+            Timer.builder("hospital.service.calls")
+                    .description("Latency of service calls")
+                    .tags(tags)
+                    .tag("exception", exception)
+                    .publishPercentileHistogram()
+                    .register(meterRegistry)
+                    .record(nanos, TimeUnit.NANOSECONDS);
+            summary("hospital.service.sql.statements", "SQL statements per service call", tags, call.statements());
+            summary("hospital.service.entity.loads", "Entities loaded per service call", tags, call.entityLoads());
+            summary("hospital.service.collection.fetches", "Collections initialized per service call", tags,
+                    call.collectionFetches());
+            summary("hospital.service.cache.hits", "Second-level cache hits per service call", tags,
+                    call.cacheHits());
+            summary("hospital.service.cache.misses", "Second-level cache misses per service call", tags,
+                    call.cacheMisses());
+            summary("hospital.service.transactions", "Transactions per service call", tags, call.transactions());
+
+            if (nanos > slowCallThreshold.toNanos()) {
+                log.warn("Slow call {}.{} took {} ms: {} SQL statements, {} entity loads, {} collection fetches",
+                        service, method, TimeUnit.NANOSECONDS.toMillis(nanos), call.statements(),
+                        call.entityLoads(), call.collectionFetches());
+            }
+        }
+    }
+
+    private void summary(String name, String description, Tags tags, long value) {
+        DistributionSummary.builder(name)
+                .description(description)
+                .tags(tags)
+                .register(meterRegistry)
+                .record(value);
+    }
+}
@@ -0,0 +1,32 @@
+package hospitalsystem.persistence.outbox;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.stereotype.Component;
+
+import java.util.List;
+
+/**
+ * Publishes change events in-process as application events, so any bean can subscribe with
+ * {@code @EventListener(ChangeEvent.class)}. Listeners run on the relay thread; a listener that throws makes the
+ * relay publish the batch again, including to the listeners that already received it.
+ */
+
+@Component
+@ConditionalOnProperty(name = "hospital.outbox.application-events.enabled", havingValue = "true", matchIfMissing = true)
+public class ApplicationEventSink implements ChangeEventSink {
+
+    @Autowired
+    private ApplicationEventPublisher applicationEventPublisher;
+
+    @Override
+    public String getName() {
+        return "application-events";
+    }
+
+    @Override
+    public void publish(List<ChangeEvent> events) {
+        events.forEach(applicationEventPublisher::publishEvent);
+    }
+}
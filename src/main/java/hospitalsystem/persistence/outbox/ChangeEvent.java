@@ -0,0 +1,27 @@
+package hospitalsystem.persistence.outbox;
+
+import com.fasterxml.jackson.annotation.JsonRawValue;
+import hospitalsystem.persistence.entity.OutboxEvent;
+
+import java.time.Instant;
+
+/**
+ * A published change event. The payload is a JSON object with the changed properties: all properties of a created
+ * patient or hospital, the modified properties of an update, the hospital ID of a registration and the diagnosis
+ * of a diagnosis event. Deletions have no payload.
+ *
+ * @param position    the position in the change stream, the offset to resume after
+ * @param type        the kind of change
+ * @param aggregateId the ID of the patient, or of the hospital for hospital events
+ * @param payload     the JSON payload, or null
+ * @param createdAt   when the change was made
+ */
+
+public record ChangeEvent(long position, ChangeType type, int aggregateId, @JsonRawValue String payload,
+                          Instant createdAt) {
+
+    public static ChangeEvent from(OutboxEvent event) {
+        return new ChangeEvent(event.getPosition(), event.getType(), event.getAggregateId(), event.getPayload(),
+                event.getCreatedAt());
+    }
+}
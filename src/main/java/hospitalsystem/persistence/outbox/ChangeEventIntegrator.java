@@ -0,0 +1,196 @@
+package hospitalsystem.persistence.outbox;
+
+import hospitalsystem.persistence.entity.DiagnosisEntry;
+import hospitalsystem.persistence.entity.Hospital;
+import hospitalsystem.persistence.entity.Patient;
+import org.hibernate.boot.Metadata;
+import org.hibernate.boot.spi.BootstrapContext;
+import org.hibernate.engine.spi.SessionFactoryImplementor;
+import org.hibernate.event.service.spi.EventListenerRegistry;
+import org.hibernate.event.spi.EventType;
+import org.hibernate.event.spi.PostCollectionRecreateEvent;
+import org.hibernate.event.spi.PostCollectionRecreateEventListener;
+import org.hibernate.event.spi.PostCollectionUpdateEvent;
+import org.hibernate.event.spi.PostCollectionUpdateEventListener;
+import org.hibernate.event.spi.PostDeleteEvent;
+import org.hibernate.event.spi.PostDeleteEventListener;
+import org.hibernate.event.spi.PostInsertEvent;
+import org.hibernate.event.spi.PostInsertEventListener;
+import org.hibernate.event.spi.PostUpdateEvent;
+import org.hibernate.event.spi.PostUpdateEventListener;
+import org.hibernate.integrator.spi.Integrator;
+import org.hibernate.persister.entity.EntityPersister;
+import org.hibernate.service.spi.SessionFactoryServiceRegistry;
+import org.hibernate.type.Type;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Appends the changes of patients, hospitals, registrations and diagnoses written through Hibernate to the
+ * {@link ChangeEventOutbox}. Updates only carry the modified properties. The version and the materialized
+ * diagnosis of a patient are left out; diagnoses are published when they are added to the history.
+ */
+
+@Component
+public class ChangeEventIntegrator implements Integrator {
+    private static final Set<String> INTERNAL_PROPERTIES = Set.of("version", "diagnosis", "diagnosisEntryId");
+
+    @Autowired
+    private ChangeEventOutbox changeEventOutbox;
+
+    @Override
+    public void integrate(Metadata metadata, BootstrapContext bootstrapContext,
+                          SessionFactoryImplementor sessionFactory) {
+        EventListenerRegistry registry = sessionFactory.getServiceRegistry().getService(EventListenerRegistry.class);
+        Listener listener = new Listener();
+        registry.appendListeners(EventType.POST_INSERT, listener);
+        registry.appendListeners(EventType.POST_UPDATE, listener);
+        registry.appendListeners(EventType.POST_DELETE, listener);
+        registry.appendListeners(EventType.POST_COLLECTION_RECREATE, listener);
+        registry.appendListeners(EventType.POST_COLLECTION_UPDATE, listener);
+    }
+
+    @Override
+    public void disintegrate(SessionFactoryImplementor sessionFactory, SessionFactoryServiceRegistry serviceRegistry) {
+    }
+
+    /**
+     * Copies the given properties, or all properties if none are given, out of a Hibernate state array. Collections
+     * and internal properties are skipped.
+     */
+    private static Map<String, Object> properties(EntityPersister persister, Object[] state, int[] indexes) {
+        String[] names = persister.getPropertyNames();
+        Type[] types = persister.getPropertyTypes();
+        Map<String, Object> properties = new LinkedHashMap<>();
+        for (int i = 0; i < names.length; i++) {
+            if (indexes == null || contains(indexes, i)) {
+                if (!types[i].isCollectionType() && !INTERNAL_PROPERTIES.contains(names[i])) {
+                    properties.put(names[i], state[i]);
+                }
+            }
+        }
+        return properties;
+    }
+
+    private static boolean contains(int[] indexes, int index) {
+        for (int i : indexes) {
+            if (i == index) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Reads the hospital IDs of a collection or of its snapshot, which is a map for sets.
+     */
+    private static Set<Integer> hospitalIds(Object elements) {
+        Collection<?> hospitals;
+        if (elements instanceof Map<?, ?> snapshot) {
+            hospitals = snapshot.keySet();
+        } else if (elements instanceof Collection<?> collection) {
+            hospitals = collection;
+        } else {
+            hospitals = List.of();
+        }
+        Set<Integer> ids = new HashSet<>();
+        for (Object hospital : hospitals) {
+            if (hospital instanceof Hospital registered) {
+                ids.add(registered.getId());
+            }
+        }
+        return ids;
+    }
+
+    private final class Listener implements PostInsertEventListener, PostUpdateEventListener,
+            PostDeleteEventListener, PostCollectionRecreateEventListener, PostCollectionUpdateEventListener {
+
+        @Override
+        public void onPostInsert(PostInsertEvent event) {
+            if (event.getEntity() instanceof Patient patient) {
+                changeEventOutbox.append(event.getSession(), ChangeType.PATIENT_CREATED, patient.getId(),
+                        properties(event.getPersister(), event.getState(), null));
+            } else if (event.getEntity() instanceof Hospital hospital) {
+                changeEventOutbox.append(event.getSession(), ChangeType.HOSPITAL_CREATED, hospital.getId(),
+                        properties(event.getPersister(), event.getState(), null));
+            } else if (event.getEntity() instanceof DiagnosisEntry entry) {
+                Map<String, Object> payload = new LinkedHashMap<>();
+                payload.put("diagnosis", entry.getDiagnosis());
+                changeEventOutbox.append(event.getSession(), ChangeType.DIAGNOSIS_ADDED, entry.getPatientId(),
+                        payload);
+            }
+        }
+
+        @Override
+        public void onPostUpdate(PostUpdateEvent event) {
+            ChangeType type;
+            int id;
+            if (event.getEntity() instanceof Patient patient) {
+                type = ChangeType.PATIENT_UPDATED;
+                id = patient.getId();
+            } else if (event.getEntity() instanceof Hospital hospital) {
+                type = ChangeType.HOSPITAL_UPDATED;
+                id = hospital.getId();
+            } else {
+                return;
+            }
+            Map<String, Object> changed = properties(event.getPersister(), event.getState(),
+                    event.getDirtyProperties());
+            if (!changed.isEmpty()) {
+                changeEventOutbox.append(event.getSession(), type, id, changed);
+            }
+        }
+
+        @Override
+        public void onPostDelete(PostDeleteEvent event) {
+            if (event.getEntity() instanceof Patient patient) {
+                changeEventOutbox.append(event.getSession(), ChangeType.PATIENT_DELETED, patient.getId(), null);
+            } else if (event.getEntity() instanceof Hospital hospital) {
+                changeEventOutbox.append(event.getSession(), ChangeType.HOSPITAL_DELETED, hospital.getId(), null);
+            }
+        }
+
+        @Override
+        public void onPostRecreateCollection(PostCollectionRecreateEvent event) {
+            if (event.getAffectedOwnerOrNull() instanceof Patient patient) {
+                for (int hospitalId : hospitalIds(event.getCollection())) {
+                    changeEventOutbox.append(event.getSession(), ChangeType.PATIENT_REGISTERED, patient.getId(),
+                            Map.of("hospitalId", hospitalId));
+                }
+            }
+        }
+
+        @Override
+        public void onPostUpdateCollection(PostCollectionUpdateEvent event) {
+            if (!(event.getAffectedOwnerOrNull() instanceof Patient patient)) {
+                return;
+            }
+            Set<Integer> before = hospitalIds(event.getCollection().getStoredSnapshot());
+            Set<Integer> after = hospitalIds(event.getCollection());
+            for (int hospitalId : after) {
+                if (!before.contains(hospitalId)) {
+                    changeEventOutbox.append(event.getSession(), ChangeType.PATIENT_REGISTERED, patient.getId(),
+                            Map.of("hospitalId", hospitalId));
+                }
+            }
+            for (int hospitalId : before) {
+                if (!after.contains(hospitalId)) {
+                    changeEventOutbox.append(event.getSession(), ChangeType.PATIENT_UNREGISTERED, patient.getId(),
+                            Map.of("hospitalId", hospitalId));
+                }
+            }
+        }
+
+        @Override
+        public boolean requiresPostCommitHandling(EntityPersister persister) {
+            return false;
+        }
+    }
+}
@@ -0,0 +1,122 @@
+package hospitalsystem.persistence.outbox;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import hospitalsystem.persistence.metrics.CallStatistics;
+import org.hibernate.Session;
+import org.hibernate.action.spi.AfterTransactionCompletionProcess;
+import org.hibernate.action.spi.BeforeTransactionCompletionProcess;
+import org.hibernate.engine.spi.SessionImplementor;
+import org.hibernate.engine.spi.SharedSessionContractImplementor;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.io.UncheckedIOException;
+import java.sql.PreparedStatement;
+import java.sql.Timestamp;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * The transactional outbox of the change stream, enabled with hospital.outbox.enabled. Change events are
+ * collected per Hibernate session and inserted with one JDBC batch right before the transaction commits, after the
+ * session has been flushed. The events are therefore committed or rolled back together with the changes they
+ * describe, and a transaction costs one additional JDBC batch no matter how many events it produces.
+ * <p>
+ * Entity changes are captured by the {@link ChangeEventIntegrator}; changes written with JDBC are appended by the
+ * code that writes them. The {@link ChangeEventRelay} publishes the committed events.
+ */
+
+@Component
+public class ChangeEventOutbox {
+    private static final String INSERT_EVENT =
+            "insert into OutboxEvents (created_at, type, aggregate_id, payload) values (?, ?, ?, ?)";
+
+    private final Map<SharedSessionContractImplementor, Events> pending = new ConcurrentHashMap<>();
+
+    @Autowired
+    private ObjectMapper objectMapper;
+    @Value("${hospital.outbox.enabled:true}")
+    private boolean enabled;
+
+    private record Event(ChangeType type, int aggregateId, String payload, Instant createdAt) {
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Adds a change event to the current transaction of a session. Must be called within an active transaction.
+     *
+     * @param session     the session of the transaction
+     * @param type        the kind of change
+     * @param aggregateId the ID of the patient, or of the hospital for hospital events
+     * @param payload     the changed properties, null or empty for no payload
+     */
+
+    public void append(Session session, ChangeType type, int aggregateId, Map<String, ?> payload) {
+        if (!enabled) {
+            return;
+        }
+        SessionImplementor source = session.unwrap(SessionImplementor.class);
+        Event event = new Event(type, aggregateId, payload == null || payload.isEmpty() ? null : toJson(payload),
+                Instant.now());
+        pending.computeIfAbsent(source, key -> {
+            Events events = new Events();
+            source.getActionQueue().registerProcess((BeforeTransactionCompletionProcess) events);
+            source.getActionQueue().registerProcess((AfterTransactionCompletionProcess) events);
+            return events;
+        }).add(event);
+    }
+
+    private String toJson(Map<String, ?> payload) {
+        try {
+            return objectMapper.writeValueAsString(payload);
+        } catch (JsonProcessingException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * The events of one transaction. They are written before the transaction completes and discarded after it
+     * completed, whether it committed or not.
+     */
+    private final class Events implements BeforeTransactionCompletionProcess, AfterTransactionCompletionProcess {
+        private final List<Event> events = new ArrayList<>();
+
+        synchronized void add(Event event) {
+            events.add(event);
+        }
+
+        @Override
+        public synchronized void doBeforeTransactionCompletion(SessionImplementor session) {
+            pending.remove(session);
+            if (events.isEmpty()) {
+                return;
+            }
+            session.doWork(connection -> {
+                try (PreparedStatement statement = connection.prepareStatement(INSERT_EVENT)) {
+                    for (Event event : events) {
+                        statement.setTimestamp(1, Timestamp.from(event.createdAt()));
+                        statement.setString(2, event.type().name());
+                        statement.setInt(3, event.aggregateId());
+                        statement.setString(4, event.payload());
+                        statement.addBatch();
+                    }
+                    CallStatistics.addStatements(1);
+                    statement.executeBatch();
+                }
+            });
+        }
+
+        @Override
+        public void doAfterTransactionCompletion(boolean success, SharedSessionContractImplementor session) {
+            pending.remove(session);
+        }
+    }
+}
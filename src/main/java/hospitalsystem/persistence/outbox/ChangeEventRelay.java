@@ -0,0 +1,260 @@
+package hospitalsystem.persistence.outbox;
+
+import hospitalsystem.persistence.entity.OutboxOffset;
+import hospitalsystem.persistence.repository.OutboxEventRepository;
+import hospitalsystem.persistence.repository.OutboxOffsetRepository;
+import hospitalsystem.persistence.sharding.ShardContext;
+import hospitalsystem.persistence.sharding.ShardRoutingDataSource;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Lazy;
+import org.springframework.data.domain.Limit;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.sql.Timestamp;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Publishes the committed change events of the outbox to all {@link ChangeEventSink}s, every
+ * hospital.outbox.relay-interval in batches of up to hospital.outbox.batch-size events.
+ * <p>
+ * Committed events first get consecutive positions, in the order of their IDs. A transaction that commits late
+ * therefore gets a position after the events committed before it, and readers resuming after a position never
+ * skip an event. Each sink then receives the events after its stored offset, which is advanced once the sink has
+ * accepted a batch, so delivery is at least once. Events acknowledged by all sinks are deleted after
+ * hospital.outbox.retention; until then they can also be read with {@link #findEventsAfter(long, int)}.
+ * <p>
+ * When the data is partitioned, the events written on other shards are first moved to the outbox of the default
+ * shard, so there is one change stream. They are deleted on their shard after the copy has committed; a failure in
+ * between publishes them twice, but never loses them.
+ * <p>
+ * A single relay may run per database; a second one fails on the unique position index and retries. It is
+ * created eagerly even with lazy initialization, as nothing else would start it.
+ */
+
+@Component
+@Lazy(false)
+public class ChangeEventRelay {
+    private static final Logger log = LoggerFactory.getLogger(ChangeEventRelay.class);
+    private static final String SELECT_UNSEQUENCED =
+            "select id from OutboxEvents where position is null order by id fetch first ? rows only";
+    private static final String SELECT_LAST_POSITION = "select coalesce(max(position), 0) from OutboxEvents";
+    private static final String UPDATE_POSITION = "update OutboxEvents set position = ? where id = ?";
+    private static final String SELECT_SHARD_EVENTS = "select id, created_at, type, aggregate_id, payload "
+            + "from OutboxEvents where position is null order by id fetch first ? rows only";
+    private static final String INSERT_EVENT =
+            "insert into OutboxEvents (created_at, type, aggregate_id, payload) values (?, ?, ?, ?)";
+    private static final String DELETE_EVENT = "delete from OutboxEvents where id = ?";
+    private static final Duration PURGE_INTERVAL = Duration.ofMinutes(1);
+
+    private final ScheduledExecutorService executor = Executors.newSingleThreadScheduledExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "outbox-relay");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    @Autowired
+    private ChangeEventOutbox changeEventOutbox;
+    @Autowired
+    private OutboxEventRepository outboxEventRepository;
+    @Autowired
+    private OutboxOffsetRepository outboxOffsetRepository;
+    @Autowired
+    private ObjectProvider<ChangeEventSink> sinks;
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    @Value("${hospital.outbox.relay-interval:100ms}")
+    private Duration interval;
+    @Value("${hospital.outbox.batch-size:500}")
+    private int batchSize;
+    @Value("${hospital.outbox.retention:1d}")
+    private Duration retention;
+
+    /**
+     * An unpositioned event read from another shard.
+     */
+    private record ShardEvent(long id, Timestamp createdAt, String type, int aggregateId, String payload) {
+    }
+
+    private long lastPosition = -1;
+    private Instant lastPurge = Instant.now();
+
+    @PostConstruct
+    void start() {
+        if (!changeEventOutbox.isEnabled()) {
+            return;
+        }
+        executor.scheduleWithFixedDelay(() -> {
+            try {
+                relay();
+            } catch (RuntimeException e) {
+                log.warn("Relaying change events failed, retrying with the next run", e);
+            }
+        }, interval.toMillis(), interval.toMillis(), TimeUnit.MILLISECONDS);
+    }
+
+    @PreDestroy
+    void stop() {
+        executor.shutdown();
+    }
+
+    /**
+     * Positions all committed events and publishes them to every sink now. A sink that fails is retried with the
+     * next run, the other sinks are not held up.
+     *
+     * @return the number of newly positioned events
+     */
+
+    public synchronized int relay() {
+        for (int shard : ShardRoutingDataSource.shards(jdbcTemplate.getDataSource())) {
+            if (shard == ShardRoutingDataSource.DEFAULT_SHARD) {
+                continue;
+            }
+            int collected;
+            do {
+                collected = collect(shard);
+            } while (collected == batchSize);
+        }
+        int positioned = 0;
+        int batch;
+        do {
+            batch = assignPositions();
+            positioned += batch;
+        } while (batch == batchSize);
+
+        List<Long> offsets = new ArrayList<>();
+        sinks.orderedStream().forEach(sink -> {
+            try {
+                offsets.add(publish(sink));
+            } catch (RuntimeException e) {
+                log.warn("Publishing change events to sink {} failed, retrying with the next run", sink.getName(), e);
+                offsets.add(0L);
+            }
+        });
+        if (Instant.now().isAfter(lastPurge.plus(PURGE_INTERVAL))) {
+            long acknowledged = offsets.stream().mapToLong(Long::longValue).min().orElse(lastPosition);
+            purge(acknowledged);
+        }
+        return positioned;
+    }
+
+    /**
+     * Reads the change stream after a position, for consumers that keep their own offset.
+     *
+     * @param position the position of the last event already read, 0 to read from the beginning
+     * @param limit    the maximum number of events
+     * @return the events ordered by position
+     */
+
+    public List<ChangeEvent> findEventsAfter(long position, int limit) {
+        return outboxEventRepository.findByPositionGreaterThanOrderByPositionAsc(position, Limit.of(limit)).stream()
+                .map(ChangeEvent::from)
+                .toList();
+    }
+
+    /**
+     * Moves the next batch of committed events of another shard to the outbox of the default shard, keeping their
+     * order.
+     */
+    private int collect(int shard) {
+        TransactionTemplate transaction = new TransactionTemplate(transactionManager);
+        List<ShardEvent> events = ShardContext.call(shard, () -> jdbcTemplate.query(SELECT_SHARD_EVENTS,
+                (resultSet, row) -> new ShardEvent(resultSet.getLong(1), resultSet.getTimestamp(2),
+                        resultSet.getString(3), resultSet.getInt(4), resultSet.getString(5)), batchSize));
+        if (events.isEmpty()) {
+            return 0;
+        }
+        transaction.executeWithoutResult(status -> jdbcTemplate.batchUpdate(INSERT_EVENT, events.stream()
+                .map(event -> new Object[]{event.createdAt(), event.type(), event.aggregateId(), event.payload()})
+                .toList()));
+        ShardContext.call(shard, () -> transaction.execute(status -> jdbcTemplate.batchUpdate(DELETE_EVENT,
+                events.stream().map(event -> new Object[]{event.id()}).toList())));
+        return events.size();
+    }
+
+    /**
+     * Positions the next batch of committed events after the last position. The last position is cached between
+     * runs; it is read again after a failed run, as another relay may have positioned events in the meantime.
+     */
+    private int assignPositions() {
+        TransactionTemplate transaction = new TransactionTemplate(transactionManager);
+        long[] last = new long[1];
+        Integer positioned;
+        try {
+            positioned = transaction.execute(status -> {
+                long position = lastPosition >= 0 ? lastPosition
+                        : jdbcTemplate.queryForObject(SELECT_LAST_POSITION, Long.class);
+                List<Long> ids = jdbcTemplate.queryForList(SELECT_UNSEQUENCED, Long.class, batchSize);
+                List<Object[]> positions = new ArrayList<>(ids.size());
+                for (long id : ids) {
+                    positions.add(new Object[]{++position, id});
+                }
+                jdbcTemplate.batchUpdate(UPDATE_POSITION, positions);
+                last[0] = position;
+                return ids.size();
+            });
+        } catch (RuntimeException e) {
+            lastPosition = -1;
+            throw e;
+        }
+        // only advanced once the positions are committed
+        lastPosition = last[0];
+        return positioned;
+    }
+
+    /**
+     * Publishes all events after the offset of a sink, one batch at a time, and stores the new offset after
+     * each batch.
+     */
+    private long publish(ChangeEventSink sink) {
+        OutboxOffset offset = outboxOffsetRepository.findById(sink.getName())
+                .orElseGet(() -> new OutboxOffset(sink.getName(), 0));
+        Counter published = Counter.builder("hospital.outbox.published")
+                .description("Change events published to a sink")
+                .tag("sink", sink.getName())
+                .register(meterRegistry);
+        List<ChangeEvent> events;
+        do {
+            events = findEventsAfter(offset.getPosition(), batchSize);
+            if (events.isEmpty()) {
+                break;
+            }
+            sink.publish(events);
+            offset.setPosition(events.get(events.size() - 1).position());
+            offset = outboxOffsetRepository.save(offset);
+            published.increment(events.size());
+        } while (events.size() == batchSize);
+        return offset.getPosition();
+    }
+
+    private void purge(long acknowledged) {
+        Instant now = Instant.now();
+        Integer deleted = new TransactionTemplate(transactionManager).execute(status ->
+                outboxEventRepository.deleteAcknowledged(acknowledged, now.minus(retention)));
+        lastPurge = now;
+        if (deleted > 0) {
+            log.info("Deleted {} published change events", deleted);
+        }
+    }
+}
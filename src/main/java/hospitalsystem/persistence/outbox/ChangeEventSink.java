@@ -0,0 +1,29 @@
+package hospitalsystem.persistence.outbox;
+
+import java.util.List;
+
+/**
+ * A destination of the change stream, fed by the {@link ChangeEventRelay}. Sinks are declared as beans.
+ */
+
+public interface ChangeEventSink {
+
+    /**
+     * Returns a stable name of the sink. The offset of the sink is stored under this name, so renaming a sink
+     * publishes the retained events to it again.
+     *
+     * @return the name of the sink
+     */
+
+    String getName();
+
+    /**
+     * Publishes a batch of events in the order of their positions. Returning means that the batch was handed
+     * over; if the method throws, the same events are published again with the next run of the relay. Sinks must
+     * therefore tolerate duplicates, which they can recognize by their position.
+     *
+     * @param events the events, ordered by position
+     */
+
+    void publish(List<ChangeEvent> events);
+}
@@ -0,0 +1,17 @@
+package hospitalsystem.persistence.outbox;
+
+/**
+ * The kinds of change events. The aggregate ID of an event is the ID of the patient, except for hospital events.
+ */
+
+public enum ChangeType {
+    PATIENT_CREATED,
+    PATIENT_UPDATED,
+    PATIENT_DELETED,
+    HOSPITAL_CREATED,
+    HOSPITAL_UPDATED,
+    HOSPITAL_DELETED,
+    PATIENT_REGISTERED,
+    PATIENT_UNREGISTERED,
+    DIAGNOSIS_ADDED
+}
@@ -0,0 +1,74 @@
+package hospitalsystem.persistence.outbox;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+
+/**
+ * Appends change events to an append-only log file, hospital.outbox.file.path, one JSON object per line. A batch
+ * is written with one write and forced to disk before the relay advances the offset. After a crash the last batch
+ * may appear twice; readers skip lines whose position is not greater than the last one they read.
+ */
+
+@Component
+@ConditionalOnProperty(name = "hospital.outbox.file.enabled", havingValue = "true")
+public class FileLogSink implements ChangeEventSink {
+
+    @Autowired
+    private ObjectMapper objectMapper;
+    @Value("${hospital.outbox.file.path:./data/outbox.ndjson}")
+    private Path path;
+
+    private FileChannel channel;
+
+    @PostConstruct
+    void open() throws IOException {
+        if (path.getParent() != null) {
+            Files.createDirectories(path.getParent());
+        }
+        channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.APPEND);
+    }
+
+    @PreDestroy
+    synchronized void close() throws IOException {
+        channel.close();
+    }
+
+    @Override
+    public String getName() {
+        return "file:" + path.getFileName();
+    }
+
+    @Override
+    public synchronized void publish(List<ChangeEvent> events) {
+        try {
+            ByteArrayOutputStream lines = new ByteArrayOutputStream();
+            for (ChangeEvent event : events) {
+                lines.write(objectMapper.writeValueAsBytes(event));
+                lines.write('\n');
+            }
+            ByteBuffer buffer = ByteBuffer.wrap(lines.toByteArray());
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+            channel.force(false);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+}
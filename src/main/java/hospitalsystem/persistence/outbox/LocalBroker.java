@@ -0,0 +1,90 @@
+package hospitalsystem.persistence.outbox;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * An in-memory stand-in for a message broker topic. It keeps the last hospital.outbox.broker.capacity events and
+ * consumers poll them with their own offset, the position of the last event they processed. Events published
+ * again by the relay are recognized by their position and dropped, so each position is stored once.
+ */
+
+@Component
+@ConditionalOnProperty(name = "hospital.outbox.broker.enabled", havingValue = "true")
+public class LocalBroker implements ChangeEventSink {
+    private final Deque<ChangeEvent> events = new ArrayDeque<>();
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition published = lock.newCondition();
+
+    @Value("${hospital.outbox.broker.capacity:100000}")
+    private int capacity;
+
+    @Override
+    public String getName() {
+        return "broker";
+    }
+
+    @Override
+    public void publish(List<ChangeEvent> batch) {
+        lock.lock();
+        try {
+            for (ChangeEvent event : batch) {
+                if (events.isEmpty() || event.position() > events.peekLast().position()) {
+                    events.addLast(event);
+                    if (events.size() > capacity) {
+                        events.removeFirst();
+                    }
+                }
+            }
+            published.signalAll();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Returns the events after an offset, waiting up to the given time if there are none yet. A consumer whose
+     * offset is older than the retained events receives the oldest retained events, and can tell the gap from
+     * their positions.
+     *
+     * @param offset  the position of the last event the consumer processed, 0 to start at the oldest event
+     * @param limit   the maximum number of events
+     * @param timeout how long to wait for new events
+     * @return the events after the offset ordered by position, empty if none arrived in time
+     * @throws InterruptedException if the thread is interrupted while waiting
+     */
+
+    public List<ChangeEvent> poll(long offset, int limit, Duration timeout) throws InterruptedException {
+        long nanos = timeout.toNanos();
+        lock.lock();
+        try {
+            while (events.isEmpty() || events.peekLast().position() <= offset) {
+                if (nanos <= 0) {
+                    return List.of();
+                }
+                nanos = published.awaitNanos(nanos);
+            }
+            List<ChangeEvent> polled = new ArrayList<>();
+            for (ChangeEvent event : events) {
+                if (event.position() > offset) {
+                    polled.add(event);
+                    if (polled.size() == limit) {
+                        break;
+                    }
+                }
+            }
+            return polled;
+        } finally {
+            lock.unlock();
+        }
+    }
+}
@@ -0,0 +1,11 @@
+package hospitalsystem.persistence.projection;
+
+/**
+ * The ID and name of a hospital, e.g. for selection lists.
+ */
+
+public interface HospitalName {
+    int getId();
+
+    String getName();
+}
@@ -0,0 +1,14 @@
+package hospitalsystem.persistence.projection;
+
+import hospitalsystem.persistence.entity.Hospital;
+import org.springframework.data.domain.Page;
+
+/**
+ * A hospital together with one page of its roster.
+ *
+ * @param hospital the hospital
+ * @param roster   the requested page of patients registered at the hospital
+ */
+
+public record HospitalRoster(Hospital hospital, Page<PatientRosterEntry> roster) {
+}
@@ -0,0 +1,8 @@
+package hospitalsystem.persistence.projection;
+
+/**
+ * Read model of a hospital for list and detail views.
+ */
+
+public record HospitalView(int id, String name, String address, String phone) {
+}
@@ -0,0 +1,11 @@
+package hospitalsystem.persistence.projection;
+
+/**
+ * The ID of a patient together with the email address that identifies them.
+ */
+
+public interface PatientIdentity {
+    int getId();
+
+    String getEmail();
+}
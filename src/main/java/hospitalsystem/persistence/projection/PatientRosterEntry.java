@@ -0,0 +1,17 @@
+package hospitalsystem.persistence.projection;
+
+import java.util.Date;
+
+/**
+ * Lightweight view of a patient as listed in the roster of a hospital.
+ */
+
+public interface PatientRosterEntry {
+    int getId();
+
+    String getFirstName();
+
+    String getLastName();
+
+    Date getDateOfBirth();
+}
@@ -0,0 +1,12 @@
+package hospitalsystem.persistence.projection;
+
+import java.util.Date;
+
+/**
+ * Read model of a patient for list and detail views. Selected with a constructor expression, so reading it
+ * creates neither a managed entity nor a dirty-checking snapshot.
+ */
+
+public record PatientView(int id, String firstName, String lastName, String address, String email, String phone,
+                          Date dateOfBirth, String sex, String diagnosis) {
+}
@@ -0,0 +1,12 @@
+package hospitalsystem.persistence.repository;
+
+/**
+ * The diagnosis to materialize on a patient.
+ *
+ * @param patientId the unique ID of the patient
+ * @param entryId   the ID of the diagnosis entry the diagnosis comes from
+ * @param diagnosis the diagnosis
+ */
+
+public record CurrentDiagnosis(int patientId, long entryId, String diagnosis) {
+}
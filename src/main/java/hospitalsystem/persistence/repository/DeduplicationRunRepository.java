@@ -0,0 +1,19 @@
+package hospitalsystem.persistence.repository;
+
+import hospitalsystem.persistence.entity.DeduplicationRun;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.stereotype.Repository;
+
+import java.util.Optional;
+
+@Repository
+public interface DeduplicationRunRepository extends JpaRepository<DeduplicationRun, Long> {
+
+    /**
+     * Retrieves the latest deduplication run that has not finished, e.g. because the application stopped.
+     *
+     * @return the unfinished run, if there is one
+     */
+
+    Optional<DeduplicationRun> findFirstByFinishedAtIsNullOrderByIdDesc();
+}
@@ -0,0 +1,56 @@
+package hospitalsystem.persistence.repository;
+
+import hospitalsystem.persistence.entity.DiagnosisEntry;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+import java.util.List;
+import java.util.Optional;
+
+@Repository
+public interface DiagnosisEntryRepository extends JpaRepository<DiagnosisEntry, Long> {
+
+    /**
+     * Retrieves the diagnosis history of a patient with a range scan over the (patientId, id) index.
+     *
+     * @param patientId the unique ID of the patient
+     * @return the diagnosis entries of the patient, oldest first
+     */
+
+    List<DiagnosisEntry> findByPatientIdOrderByIdAsc(int patientId);
+
+    /**
+     * Retrieves the latest diagnosis entry of a patient.
+     *
+     * @param patientId the unique ID of the patient
+     * @return the latest entry, if the patient has any
+     */
+
+    Optional<DiagnosisEntry> findFirstByPatientIdOrderByIdDesc(int patientId);
+
+    /**
+     * Finds the latest diagnosis entry of every patient whose materialized diagnosis is older, e.g. because the
+     * application stopped before the entry was materialized.
+     *
+     * @return the diagnoses to materialize
+     */
+
+    @Query("select new hospitalsystem.persistence.repository.CurrentDiagnosis(e.patientId, e.id, e.diagnosis) "
+            + "from DiagnosisEntry e, Patient p where p.id = e.patientId and e.id > coalesce(p.diagnosisEntryId, 0) "
+            + "and e.id = (select max(l.id) from DiagnosisEntry l where l.patientId = e.patientId)")
+    List<CurrentDiagnosis> findUnmaterialized();
+
+    /**
+     * Deletes the diagnosis history of a patient with a single statement.
+     *
+     * @param patientId the unique ID of the patient
+     * @return the number of deleted entries
+     */
+
+    @Modifying
+    @Query("delete from DiagnosisEntry e where e.patientId = :patientId")
+    int deleteByPatientId(@Param("patientId") int patientId);
+}
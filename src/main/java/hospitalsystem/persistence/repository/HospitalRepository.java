@@ -1,9 +1,79 @@
 package hospitalsystem.persistence.repository;
 
 import hospitalsystem.persistence.entity.Hospital;
+import hospitalsystem.persistence.projection.HospitalName;
+import hospitalsystem.persistence.projection.HospitalView;
+import jakarta.persistence.QueryHint;
+import org.hibernate.jpa.HibernateHints;
+import org.springframework.data.domain.Limit;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
+import java.util.Collection;
+import java.util.List;
+
 @Repository
 public interface HospitalRepository extends JpaRepository<Hospital, Integer> {
+
+    /**
+     * Retrieves all hospitals. The result is kept in the query cache until the hospital table changes.
+     *
+     * @return a list of all hospitals
+     */
+
+    @Override
+    @QueryHints(@QueryHint(name = HibernateHints.HINT_CACHEABLE, value = "true"))
+    List<Hospital> findAll();
+
+    /**
+     * Keyset pagination over the primary key.
+     *
+     * @param id    the last ID of the previous page, 0 for the first page
+     * @param limit the maximum page size
+     * @return the next hospitals ordered by ID
+     */
+
+    List<Hospital> findByIdGreaterThanOrderByIdAsc(int id, Limit limit);
+
+    @Query("select new hospitalsystem.persistence.projection.HospitalView(h.id, h.name, h.address, h.phone) "
+            + "from Hospital h order by h.id")
+    List<HospitalView> findAllViews();
+
+    @Query("select new hospitalsystem.persistence.projection.HospitalView(h.id, h.name, h.address, h.phone) "
+            + "from Hospital h where h.id in :ids order by h.id")
+    List<HospitalView> findViewsByIdIn(@Param("ids") Collection<Integer> ids);
+
+    /**
+     * Retrieves the ID and name of all hospitals. The interface projection selects only these two columns.
+     *
+     * @return the names of all hospitals in alphabetical order
+     */
+
+    List<HospitalName> findNamesByOrderByNameAsc();
+
+    /**
+     * Counts the patients registered at a hospital with a single COUNT over the join table.
+     *
+     * @param hospitalId the unique ID of the hospital
+     * @return the number of registered patients
+     */
+
+    @Query(value = "select count(*) from Patient_hospitals where hospital_id = :hospitalId", nativeQuery = true)
+    long countPatientsByHospital(@Param("hospitalId") int hospitalId);
+
+    /**
+     * Deletes a hospital with a bulk delete. Unlike {@link #delete(Object)} this does not cascade to
+     * Hospital.patients, so the registrations have to be removed beforehand.
+     *
+     * @param id the unique ID of the hospital
+     * @return the number of deleted hospitals
+     */
+
+    @Modifying(flushAutomatically = true)
+    @Query("delete from Hospital h where h.id = :id")
+    int bulkDeleteById(@Param("id") int id);
 }
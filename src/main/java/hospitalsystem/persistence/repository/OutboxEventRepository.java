@@ -0,0 +1,38 @@
+package hospitalsystem.persistence.repository;
+
+import hospitalsystem.persistence.entity.OutboxEvent;
+import org.springframework.data.domain.Limit;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+import java.time.Instant;
+import java.util.List;
+
+@Repository
+public interface OutboxEventRepository extends JpaRepository<OutboxEvent, Long> {
+
+    /**
+     * Reads the change stream after a position. Only events that have been assigned a position are returned.
+     *
+     * @param position the position of the last event already read, 0 to read from the beginning
+     * @param limit    the maximum number of events
+     * @return the events ordered by position
+     */
+
+    List<OutboxEvent> findByPositionGreaterThanOrderByPositionAsc(long position, Limit limit);
+
+    /**
+     * Deletes events that every sink has acknowledged and that are older than the retention.
+     *
+     * @param position the lowest acknowledged position of all sinks
+     * @param before   the oldest creation time to keep
+     * @return the number of deleted events
+     */
+
+    @Modifying
+    @Query("delete from OutboxEvent e where e.position <= :position and e.createdAt < :before")
+    int deleteAcknowledged(@Param("position") long position, @Param("before") Instant before);
+}
@@ -0,0 +1,9 @@
+package hospitalsystem.persistence.repository;
+
+import hospitalsystem.persistence.entity.OutboxOffset;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.stereotype.Repository;
+
+@Repository
+public interface OutboxOffsetRepository extends JpaRepository<OutboxOffset, String> {
+}
@@ -0,0 +1,25 @@
+package hospitalsystem.persistence.repository;
+
+import java.util.Collection;
+
+/**
+ * Single-statement updates of individual patient columns that do not load the patient first.
+ */
+
+public interface PatientPartialUpdateRepository {
+
+    /**
+     * Sets the current diagnosis of several patients with one JDBC batch of single-row UPDATEs. The versions are
+     * left alone, so concurrent updates of other patient properties do not fail; Hibernate never writes the
+     * diagnosis columns itself, so such updates cannot overwrite the diagnosis either. A patient is only updated
+     * if the diagnosis comes from a newer diagnosis entry than its current one, so out-of-order updates never
+     * overwrite a newer diagnosis. The patients are evicted from the second-level cache; instances managed by the
+     * current persistence context are not refreshed. The search index receives the diagnoses that were actually
+     * set once the transaction commits.
+     *
+     * @param diagnoses the diagnoses to set
+     * @return the number of updated patients
+     */
+
+    int updateDiagnoses(Collection<CurrentDiagnosis> diagnoses);
+}
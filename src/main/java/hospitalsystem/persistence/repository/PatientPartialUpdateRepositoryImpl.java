@@ -0,0 +1,105 @@
+package hospitalsystem.persistence.repository;
+
+import hospitalsystem.persistence.entity.Patient;
+import hospitalsystem.persistence.metrics.CallStatistics;
+import hospitalsystem.persistence.search.PatientSearchIndex;
+import hospitalsystem.persistence.statistics.HospitalStatistics;
+import hospitalsystem.persistence.support.AfterCommit;
+import jakarta.persistence.Cache;
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.PersistenceContext;
+import org.hibernate.Session;
+import org.springframework.beans.factory.annotation.Autowired;
+
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+
+public class PatientPartialUpdateRepositoryImpl implements PatientPartialUpdateRepository {
+    private static final String UPDATE_DIAGNOSIS = "update Patients set diagnosis = ?, diagnosis_entry_id = ? "
+            + "where id = ? and coalesce(diagnosis_entry_id, 0) < ?";
+    private static final int SELECT_CHUNK_SIZE = 500;
+
+    @PersistenceContext
+    private EntityManager entityManager;
+    @Autowired
+    private HospitalStatistics hospitalStatistics;
+    @Autowired
+    private PatientSearchIndex patientSearchIndex;
+
+    private record DiagnosisChange(int patientId, String previous, String current) {
+    }
+
+    @Override
+    public int updateDiagnoses(Collection<CurrentDiagnosis> diagnoses) {
+        if (diagnoses.isEmpty()) {
+            return 0;
+        }
+        Session session = entityManager.unwrap(Session.class);
+        session.flush();
+        Map<Integer, String> previousDiagnoses = new HashMap<>();
+        List<DiagnosisChange> changes = new ArrayList<>();
+        int updated = session.doReturningWork(connection -> {
+            // lock the rows and remember the replaced diagnoses for the statistics
+            List<CurrentDiagnosis> pending = new ArrayList<>(diagnoses);
+            for (int from = 0; from < pending.size(); from += SELECT_CHUNK_SIZE) {
+                int to = Math.min(from + SELECT_CHUNK_SIZE, pending.size());
+                List<CurrentDiagnosis> chunk = pending.subList(from, to);
+                String sql = "select id, diagnosis from Patients where id in ("
+                        + String.join(", ", Collections.nCopies(chunk.size(), "?")) + ") for update";
+                try (PreparedStatement select = connection.prepareStatement(sql)) {
+                    for (int i = 0; i < chunk.size(); i++) {
+                        select.setInt(i + 1, chunk.get(i).patientId());
+                    }
+                    CallStatistics.addStatements(1);
+                    try (ResultSet resultSet = select.executeQuery()) {
+                        while (resultSet.next()) {
+                            previousDiagnoses.put(resultSet.getInt(1), resultSet.getString(2));
+                        }
+                    }
+                }
+            }
+            try (PreparedStatement statement = connection.prepareStatement(UPDATE_DIAGNOSIS)) {
+                for (CurrentDiagnosis diagnosis : pending) {
+                    statement.setString(1, diagnosis.diagnosis());
+                    statement.setLong(2, diagnosis.entryId());
+                    statement.setInt(3, diagnosis.patientId());
+                    statement.setLong(4, diagnosis.entryId());
+                    statement.addBatch();
+                }
+                CallStatistics.addStatements(1);
+                int changed = 0;
+                Iterator<CurrentDiagnosis> updates = pending.iterator();
+                for (int count : statement.executeBatch()) {
+                    CurrentDiagnosis diagnosis = updates.next();
+                    if (count > 0) {
+                        changed += count;
+                        changes.add(new DiagnosisChange(diagnosis.patientId(),
+                                previousDiagnoses.get(diagnosis.patientId()), diagnosis.diagnosis()));
+                    }
+                }
+                return changed;
+            }
+        });
+        // evict again after commit, a concurrent reader may have cached the old row in the meantime
+        Cache cache = entityManager.getEntityManagerFactory().getCache();
+        for (CurrentDiagnosis diagnosis : diagnoses) {
+            cache.evict(Patient.class, diagnosis.patientId());
+        }
+        AfterCommit.run(() -> {
+            diagnoses.forEach(diagnosis -> cache.evict(Patient.class, diagnosis.patientId()));
+            changes.forEach(change -> patientSearchIndex.updateDiagnosis(change.patientId(), change.current()));
+            changes.stream()
+                    .filter(change -> !Objects.equals(change.previous(), change.current()))
+                    .forEach(change -> hospitalStatistics.diagnosisChanged(change.previous(), change.current()));
+        });
+        return updated;
+    }
+}
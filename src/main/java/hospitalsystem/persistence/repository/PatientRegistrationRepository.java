@@ -0,0 +1,60 @@
+package hospitalsystem.persistence.repository;
+
+import java.util.Collection;
+
+/**
+ * Registration operations that write directly against the Patient_hospitals join table, without loading the
+ * hospitals of a patient or the patients of a hospital.
+ */
+
+public interface PatientRegistrationRepository {
+
+    /**
+     * Registers a patient at a hospital unless the registration already exists.
+     *
+     * @param patientId  the unique ID of the patient
+     * @param hospitalId the unique ID of the hospital
+     * @return true if a new registration was created
+     */
+
+    boolean register(int patientId, int hospitalId);
+
+    /**
+     * Registers several patients at a hospital with one JDBC batch. Existing registrations are skipped.
+     *
+     * @param patientIds the unique IDs of the patients
+     * @param hospitalId the unique ID of the hospital
+     * @return the number of new registrations
+     */
+
+    int registerAll(Collection<Integer> patientIds, int hospitalId);
+
+    /**
+     * Removes the registration of a patient at a hospital.
+     *
+     * @param patientId  the unique ID of the patient
+     * @param hospitalId the unique ID of the hospital
+     * @return true if a registration was removed
+     */
+
+    boolean unregister(int patientId, int hospitalId);
+
+    /**
+     * Removes the registrations of several patients at a hospital with one JDBC batch.
+     *
+     * @param patientIds the unique IDs of the patients
+     * @param hospitalId the unique ID of the hospital
+     * @return the number of removed registrations
+     */
+
+    int unregisterAll(Collection<Integer> patientIds, int hospitalId);
+
+    /**
+     * Removes all registrations at a hospital with a single delete.
+     *
+     * @param hospitalId the unique ID of the hospital
+     * @return the number of removed registrations
+     */
+
+    int unregisterAllAtHospital(int hospitalId);
+}
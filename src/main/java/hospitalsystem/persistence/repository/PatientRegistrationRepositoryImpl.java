@@ -0,0 +1,138 @@
+package hospitalsystem.persistence.repository;
+
+import hospitalsystem.persistence.metrics.CallStatistics;
+import hospitalsystem.persistence.outbox.ChangeEventOutbox;
+import hospitalsystem.persistence.outbox.ChangeType;
+import hospitalsystem.persistence.statistics.HospitalStatistics;
+import hospitalsystem.persistence.support.AfterCommit;
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.PersistenceContext;
+import org.hibernate.Session;
+import org.springframework.beans.factory.annotation.Autowired;
+
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+
+public class PatientRegistrationRepositoryImpl implements PatientRegistrationRepository {
+    private static final String INSERT_REGISTRATION = "insert into Patient_hospitals (patient_id, hospital_id) "
+            + "select cast(? as int), cast(? as int) where not exists "
+            + "(select 1 from Patient_hospitals where patient_id = ? and hospital_id = ?)";
+    private static final String DELETE_REGISTRATION =
+            "delete from Patient_hospitals where patient_id = ? and hospital_id = ?";
+    private static final String SELECT_HOSPITAL_REGISTRATIONS =
+            "select patient_id from Patient_hospitals where hospital_id = ? for update";
+    private static final String DELETE_HOSPITAL_REGISTRATIONS = "delete from Patient_hospitals where hospital_id = ?";
+
+    @PersistenceContext
+    private EntityManager entityManager;
+    @Autowired
+    private HospitalStatistics hospitalStatistics;
+    @Autowired
+    private ChangeEventOutbox changeEventOutbox;
+
+    @Override
+    public boolean register(int patientId, int hospitalId) {
+        return registerAll(List.of(patientId), hospitalId) > 0;
+    }
+
+    @Override
+    public int registerAll(Collection<Integer> patientIds, int hospitalId) {
+        return executeBatch(INSERT_REGISTRATION, patientIds, hospitalId, true);
+    }
+
+    @Override
+    public boolean unregister(int patientId, int hospitalId) {
+        return unregisterAll(List.of(patientId), hospitalId) > 0;
+    }
+
+    @Override
+    public int unregisterAll(Collection<Integer> patientIds, int hospitalId) {
+        return executeBatch(DELETE_REGISTRATION, patientIds, hospitalId, false);
+    }
+
+    /**
+     * Deletes the registrations with a single statement. The registered patients are selected and locked first,
+     * only to report the removed registrations to the {@link HospitalStatistics} and the change stream.
+     */
+    @Override
+    public int unregisterAllAtHospital(int hospitalId) {
+        Session session = entityManager.unwrap(Session.class);
+        session.flush();
+        List<Integer> patientIds = new ArrayList<>();
+        int removed = session.doReturningWork(connection -> {
+            try (PreparedStatement select = connection.prepareStatement(SELECT_HOSPITAL_REGISTRATIONS);
+                 PreparedStatement delete = connection.prepareStatement(DELETE_HOSPITAL_REGISTRATIONS)) {
+                select.setInt(1, hospitalId);
+                try (ResultSet resultSet = select.executeQuery()) {
+                    while (resultSet.next()) {
+                        patientIds.add(resultSet.getInt(1));
+                    }
+                }
+                delete.setInt(1, hospitalId);
+                CallStatistics.addStatements(2);
+                return delete.executeUpdate();
+            }
+        });
+        for (int patientId : patientIds) {
+            changeEventOutbox.append(session, ChangeType.PATIENT_UNREGISTERED, patientId,
+                    Map.of("hospitalId", hospitalId));
+        }
+        AfterCommit.run(() -> patientIds.forEach(patientId -> hospitalStatistics.unregistered(patientId, hospitalId)));
+        return removed;
+    }
+
+    /**
+     * Executes one statement per patient as a single JDBC batch. The statements bypass Hibernate, so pending
+     * changes are flushed first to make newly persisted patients and hospitals visible to the foreign keys.
+     * Registrations bind the ID pair a second time for their NOT EXISTS check. The association collections
+     * are not second-level cached and no cached query reads the join table, so no cache region has to be evicted.
+     * The pairs that were actually inserted or deleted are appended to the change stream and reported to the
+     * {@link HospitalStatistics} on commit.
+     */
+    private int executeBatch(String sql, Collection<Integer> patientIds, int hospitalId, boolean register) {
+        if (patientIds.isEmpty()) {
+            return 0;
+        }
+        Session session = entityManager.unwrap(Session.class);
+        session.flush();
+        List<Integer> changedIds = new ArrayList<>();
+        int changed = session.doReturningWork(connection -> {
+            try (PreparedStatement statement = connection.prepareStatement(sql)) {
+                for (int patientId : patientIds) {
+                    statement.setInt(1, patientId);
+                    statement.setInt(2, hospitalId);
+                    if (register) {
+                        statement.setInt(3, patientId);
+                        statement.setInt(4, hospitalId);
+                    }
+                    statement.addBatch();
+                }
+                CallStatistics.addStatements(1);
+                int[] counts = statement.executeBatch();
+                int i = 0;
+                for (int patientId : patientIds) {
+                    if (counts[i++] > 0) {
+                        changedIds.add(patientId);
+                    }
+                }
+                return changedIds.size();
+            }
+        });
+        ChangeType type = register ? ChangeType.PATIENT_REGISTERED : ChangeType.PATIENT_UNREGISTERED;
+        for (int patientId : changedIds) {
+            changeEventOutbox.append(session, type, patientId, Map.of("hospitalId", hospitalId));
+        }
+        AfterCommit.run(() -> changedIds.forEach(patientId -> {
+            if (register) {
+                hospitalStatistics.registered(patientId, hospitalId);
+            } else {
+                hospitalStatistics.unregistered(patientId, hospitalId);
+            }
+        }));
+        return changed;
+    }
+}
@@ -1,9 +1,171 @@
 package hospitalsystem.persistence.repository;
 
 import hospitalsystem.persistence.entity.Patient;
+import hospitalsystem.persistence.projection.PatientIdentity;
+import hospitalsystem.persistence.projection.PatientRosterEntry;
+import hospitalsystem.persistence.projection.PatientView;
+import jakarta.persistence.QueryHint;
+import org.hibernate.jpa.HibernateHints;
+import org.springframework.data.domain.Limit;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Slice;
+import org.springframework.data.jpa.repository.EntityGraph;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
+import java.util.Collection;
+import java.util.Date;
+import java.util.List;
+import java.util.Optional;
+
 @Repository
-public interface PatientRepository extends JpaRepository<Patient, Integer> {
+public interface PatientRepository extends JpaRepository<Patient, Integer>, PatientRegistrationRepository,
+        PatientPartialUpdateRepository {
+    String SELECT_PATIENT_VIEW = "select new hospitalsystem.persistence.projection.PatientView(p.id, p.firstName, "
+            + "p.lastName, p.address, p.email, p.phone, p.dateOfBirth, p.sex, p.diagnosis) ";
+
+    /**
+     * Keyset pagination over the primary key.
+     *
+     * @param id    the last ID of the previous page, 0 for the first page
+     * @param limit the maximum page size
+     * @return the next patients ordered by ID
+     */
+
+    List<Patient> findByIdGreaterThanOrderByIdAsc(int id, Limit limit);
+
+    /**
+     * Keyset pagination over the primary key that loads the patients read-only: Hibernate keeps no snapshot for
+     * dirty checking and never flushes them.
+     *
+     * @param id    the last ID of the previous page, 0 for the first page
+     * @param limit the maximum page size
+     * @return the next patients ordered by ID, read-only
+     */
+
+    @QueryHints(@QueryHint(name = HibernateHints.HINT_READ_ONLY, value = "true"))
+    @Query("select p from Patient p where p.id > :id order by p.id")
+    List<Patient> findReadOnlyByIdGreaterThan(@Param("id") int id, Limit limit);
+
+    @Query(SELECT_PATIENT_VIEW + "from Patient p where p.id = :id")
+    Optional<PatientView> findViewById(@Param("id") int id);
+
+    @Query(SELECT_PATIENT_VIEW + "from Patient p where p.id > :id order by p.id")
+    List<PatientView> findViewsByIdGreaterThan(@Param("id") int id, Limit limit);
+
+    @Query(SELECT_PATIENT_VIEW + "from Patient p where p.id in :ids order by p.id")
+    List<PatientView> findViewsByIdIn(@Param("ids") Collection<Integer> ids);
+
+    /**
+     * Retrieves patients together with their hospitals in a single query.
+     *
+     * @param ids the unique IDs of the patients
+     * @return the patients with initialized hospitals
+     */
+
+    @EntityGraph("Patient.hospitals")
+    List<Patient> findWithHospitalsByIdIn(Collection<Integer> ids);
+
+    // The search methods below are backed by the indexes declared on Patient. Prefix matches are case-sensitive
+    // so that they translate to an index range scan, and they return slices to avoid a count over the range.
+
+    Slice<Patient> findByLastNameStartingWith(String lastNamePrefix, Pageable pageable);
+
+    Slice<Patient> findByLastNameAndFirstNameStartingWith(String lastName, String firstNamePrefix, Pageable pageable);
+
+    Optional<Patient> findByEmail(String email);
+
+    List<PatientIdentity> findByEmailIn(Collection<String> emails);
+
+    Slice<Patient> findByEmailStartingWith(String emailPrefix, Pageable pageable);
+
+    Slice<Patient> findByDateOfBirthBetween(Date from, Date to, Pageable pageable);
+
+    /**
+     * Retrieves the roster entries of the given patients without initializing Hospital.patients.
+     *
+     * @param ids the unique IDs of the patients
+     * @return the roster entries ordered by patient ID
+     */
+
+    @Query("select p.id as id, p.firstName as firstName, p.lastName as lastName, p.dateOfBirth as dateOfBirth "
+            + "from Patient p where p.id in :ids order by p.id")
+    List<PatientRosterEntry> findRosterByIdIn(@Param("ids") Collection<Integer> ids);
+
+    /**
+     * Retrieves one page of the IDs of the patients registered at a hospital from the join table only, which also
+     * holds the registrations of patients stored on other shards. The IDs are ordered, so the pages neither overlap
+     * nor skip patients.
+     *
+     * @param hospitalId the unique ID of the hospital
+     * @param pageable   the requested page
+     * @return the patient IDs of the requested page
+     */
+
+    @Query(value = "select patient_id from Patient_hospitals where hospital_id = :hospitalId order by patient_id",
+            nativeQuery = true)
+    List<Integer> findRegisteredIds(@Param("hospitalId") int hospitalId, Pageable pageable);
+
+    /**
+     * Keyset pagination over the IDs of the patients registered at a hospital, a range scan on the
+     * (hospital_id, patient_id) index.
+     *
+     * @param hospitalId the unique ID of the hospital
+     * @param id         the last ID of the previous page, 0 for the first page
+     * @param pageable   the first page of the requested size
+     * @return the next patient IDs of the hospital in ascending order
+     */
+
+    @Query(value = "select patient_id from Patient_hospitals where hospital_id = :hospitalId and patient_id > :id "
+            + "order by patient_id", nativeQuery = true)
+    List<Integer> findRegisteredIdsAfter(@Param("hospitalId") int hospitalId, @Param("id") int id,
+                                         Pageable pageable);
+
+    /**
+     * Checks whether a patient is registered at a hospital by looking up the join table only.
+     *
+     * @param patientId  the unique ID of the patient
+     * @param hospitalId the unique ID of the hospital
+     * @return true if the patient is registered at the hospital
+     */
+
+    @Query(value = "select exists(select 1 from Patient_hospitals "
+            + "where patient_id = :patientId and hospital_id = :hospitalId)", nativeQuery = true)
+    boolean isRegistered(@Param("patientId") int patientId, @Param("hospitalId") int hospitalId);
+
+    /**
+     * Retrieves which of the given IDs belong to existing patients, without loading the patients.
+     *
+     * @param ids the IDs to check
+     * @return the IDs of the existing patients
+     */
+
+    @Query("select p.id from Patient p where p.id in :ids")
+    List<Integer> findExistingIds(@Param("ids") Collection<Integer> ids);
+
+    /**
+     * Retrieves the IDs of the hospitals a patient is registered at by reading the join table only.
+     *
+     * @param patientId the unique ID of the patient
+     * @return the IDs of the hospitals of the patient
+     */
+
+    @Query(value = "select hospital_id from Patient_hospitals where patient_id = :patientId", nativeQuery = true)
+    List<Integer> findHospitalIds(@Param("patientId") int patientId);
+
+    /**
+     * Retrieves the registrations of the given patients whose patient is not stored in this database. With
+     * sharding these are registrations at hospitals of this shard of patients stored on another shard; without
+     * sharding there are none.
+     *
+     * @param ids the unique IDs of the patients
+     * @return pairs of patient ID and hospital ID
+     */
+
+    @Query(value = "select ph.patient_id, ph.hospital_id from Patient_hospitals ph where ph.patient_id in :ids "
+            + "and not exists (select 1 from Patients p where p.id = ph.patient_id)", nativeQuery = true)
+    List<Object[]> findForeignRegistrations(@Param("ids") Collection<Integer> ids);
 }
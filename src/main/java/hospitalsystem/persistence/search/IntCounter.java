@@ -0,0 +1,72 @@
+package hospitalsystem.persistence.search;
+
+/**
+ * Open addressing hash map from positive int keys to int counts, used to accumulate the matching trigrams
+ * of every candidate patient during a search without boxing.
+ */
+
+final class IntCounter {
+    private static final int EMPTY = 0;
+
+    private int[] keys;
+    private int[] counts;
+    private int size;
+
+    IntCounter(int expectedSize) {
+        int capacity = Integer.highestOneBit(Math.max(16, expectedSize * 2) - 1) << 1;
+        keys = new int[capacity];
+        counts = new int[capacity];
+    }
+
+    void increment(int key) {
+        int mask = keys.length - 1;
+        int slot = mix(key) & mask;
+        while (keys[slot] != EMPTY && keys[slot] != key) {
+            slot = (slot + 1) & mask;
+        }
+        if (keys[slot] == EMPTY) {
+            keys[slot] = key;
+            if (++size * 2 > keys.length) {
+                counts[slot] = 1;
+                grow();
+                return;
+            }
+        }
+        counts[slot]++;
+    }
+
+    int capacity() {
+        return keys.length;
+    }
+
+    int keyAt(int slot) {
+        return keys[slot];
+    }
+
+    int countAt(int slot) {
+        return counts[slot];
+    }
+
+    private void grow() {
+        int[] oldKeys = keys;
+        int[] oldCounts = counts;
+        keys = new int[oldKeys.length * 2];
+        counts = new int[oldKeys.length * 2];
+        int mask = keys.length - 1;
+        for (int i = 0; i < oldKeys.length; i++) {
+            if (oldKeys[i] != EMPTY) {
+                int slot = mix(oldKeys[i]) & mask;
+                while (keys[slot] != EMPTY) {
+                    slot = (slot + 1) & mask;
+                }
+                keys[slot] = oldKeys[i];
+                counts[slot] = oldCounts[i];
+            }
+        }
+    }
+
+    private static int mix(int key) {
+        int h = key * 0x9E3779B9;
+        return h ^ (h >>> 16);
+    }
+}
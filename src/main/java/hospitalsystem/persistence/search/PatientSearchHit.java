@@ -0,0 +1,11 @@
+package hospitalsystem.persistence.search;
+
+/**
+ * A patient found by the fuzzy search.
+ *
+ * @param patientId the unique ID of the patient
+ * @param score     the relevance of the patient, higher is better; 1 means all trigrams of the query matched
+ */
+
+public record PatientSearchHit(int patientId, double score) {
+}
@@ -0,0 +1,266 @@
+package hospitalsystem.persistence.search;
+
+import hospitalsystem.persistence.entity.Patient;
+import org.springframework.stereotype.Component;
+
+import java.text.Normalizer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * In-memory trigram index over the first name, last name, email and diagnosis of all patients. Serves fuzzy,
+ * ranked searches for partial or misspelled terms without touching the database.
+ * <p>
+ * Every character is folded into one of 64 classes (letters without accents, digits and a few separators), so a
+ * trigram fits into 18 bits and directly addresses its posting list. Posting lists are sorted primitive int sets
+ * of patient IDs.
+ */
+
+@Component
+public class PatientSearchIndex {
+    private static final int CHARACTER_BITS = 6;
+    private static final int TRIGRAMS = 1 << (3 * CHARACTER_BITS);
+    private static final int[] NO_TRIGRAMS = new int[0];
+    private static final SortedIntSet EMPTY_POSTING = new SortedIntSet();
+
+    /**
+     * Fraction of the query trigrams a patient has to contain to be returned.
+     */
+    private static final double MIN_COVERAGE = 0.3;
+
+    private final SortedIntSet[] postings = new SortedIntSet[TRIGRAMS];
+    private final Map<Integer, Document> documents = new HashMap<>();
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+
+    /**
+     * Adds a patient to the index or replaces its previous entry.
+     *
+     * @param patient the patient to index
+     */
+
+    public void index(Patient patient) {
+        Document document = new Document(patient.getFirstName(), patient.getLastName(), patient.getEmail(),
+                patient.getDiagnosis());
+        lock.writeLock().lock();
+        try {
+            putDocument(patient.getId(), document);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Replaces the indexed names and email of a patient, keeping the indexed diagnosis, which only
+     * {@link #updateDiagnosis(int, String)} changes. A patient that is not indexed yet is added with its diagnosis.
+     *
+     * @param patient the patient to index
+     */
+
+    public void indexKeepingDiagnosis(Patient patient) {
+        lock.writeLock().lock();
+        try {
+            Document previous = documents.get(patient.getId());
+            putDocument(patient.getId(), new Document(patient.getFirstName(), patient.getLastName(),
+                    patient.getEmail(), previous != null ? previous.diagnosis() : patient.getDiagnosis()));
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Replaces the indexed diagnosis of a patient, keeping the other indexed fields.
+     *
+     * @param patientId the unique ID of the patient
+     * @param diagnosis the new diagnosis
+     */
+
+    public void updateDiagnosis(int patientId, String diagnosis) {
+        lock.writeLock().lock();
+        try {
+            Document document = documents.get(patientId);
+            if (document != null) {
+                putDocument(patientId, new Document(document.firstName(), document.lastName(), document.email(),
+                        diagnosis));
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Removes a patient from the index.
+     *
+     * @param patientId the unique ID of the patient
+     */
+
+    public void remove(int patientId) {
+        lock.writeLock().lock();
+        try {
+            removeDocument(patientId);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Finds the patients that best match the query. Patients are ranked by the fraction of query trigrams they
+     * contain; ties are broken in favor of patients with less indexed text. Candidates are only taken from the
+     * shortest posting lists and looked up in the others, so common trigrams do not inflate the work.
+     *
+     * @param query the search terms, may be partial or misspelled
+     * @param limit the maximum number of hits
+     * @return the best matching patients, best match first
+     */
+
+    public List<PatientSearchHit> search(String query, int limit) {
+        int[] queryTrigrams = trigrams(query);
+        if (queryTrigrams.length == 0 || limit <= 0) {
+            return List.of();
+        }
+        int minMatches = 1;
+        while ((double) minMatches / queryTrigrams.length < MIN_COVERAGE) {
+            minMatches++;
+        }
+        List<PatientSearchHit> hits = new ArrayList<>();
+        lock.readLock().lock();
+        try {
+            SortedIntSet[] lists = new SortedIntSet[queryTrigrams.length];
+            for (int i = 0; i < queryTrigrams.length; i++) {
+                lists[i] = postings[queryTrigrams[i]] == null ? EMPTY_POSTING : postings[queryTrigrams[i]];
+            }
+            Arrays.sort(lists, Comparator.comparingInt(SortedIntSet::size));
+            // a patient missing from all of the shortest lists misses too many trigrams to reach the coverage
+            int seeds = queryTrigrams.length - minMatches + 1;
+            int candidates = 0;
+            for (int i = 0; i < seeds; i++) {
+                candidates += lists[i].size();
+            }
+            IntCounter matches = new IntCounter(candidates);
+            for (int i = 0; i < seeds; i++) {
+                for (int j = 0; j < lists[i].size(); j++) {
+                    matches.increment(lists[i].get(j));
+                }
+            }
+            for (int slot = 0; slot < matches.capacity(); slot++) {
+                int patientId = matches.keyAt(slot);
+                if (patientId == 0) {
+                    continue;
+                }
+                int count = matches.countAt(slot);
+                for (int i = seeds; i < lists.length; i++) {
+                    if (lists[i].contains(patientId)) {
+                        count++;
+                    }
+                }
+                double coverage = (double) count / queryTrigrams.length;
+                if (coverage >= MIN_COVERAGE) {
+                    int documentTrigrams = documents.get(patientId).trigrams().length;
+                    double dice = 2.0 * count / (queryTrigrams.length + documentTrigrams);
+                    hits.add(new PatientSearchHit(patientId, coverage + dice / 10));
+                }
+            }
+        } finally {
+            lock.readLock().unlock();
+        }
+        hits.sort(Comparator.comparingDouble(PatientSearchHit::score).reversed());
+        return hits.size() > limit ? new ArrayList<>(hits.subList(0, limit)) : hits;
+    }
+
+    /**
+     * Returns the number of indexed patients.
+     *
+     * @return the number of indexed patients
+     */
+
+    public int size() {
+        lock.readLock().lock();
+        try {
+            return documents.size();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    private void putDocument(int patientId, Document document) {
+        removeDocument(patientId);
+        for (int trigram : document.trigrams()) {
+            SortedIntSet posting = postings[trigram];
+            if (posting == null) {
+                posting = postings[trigram] = new SortedIntSet();
+            }
+            posting.add(patientId);
+        }
+        documents.put(patientId, document);
+    }
+
+    private void removeDocument(int patientId) {
+        Document document = documents.remove(patientId);
+        if (document != null) {
+            for (int trigram : document.trigrams()) {
+                postings[trigram].remove(patientId);
+            }
+        }
+    }
+
+    /**
+     * Splits a text into its distinct trigrams. The text is lower-cased, stripped of accents and padded, so
+     * the beginning of a word produces its own trigrams.
+     */
+    static int[] trigrams(String text) {
+        String normalized = Normalizer.normalize(text.toLowerCase(Locale.ROOT), Normalizer.Form.NFD)
+                .replaceAll("\\p{M}", "")
+                .replaceAll("\\s+", " ")
+                .trim();
+        if (normalized.isEmpty()) {
+            return NO_TRIGRAMS;
+        }
+        String padded = "  " + normalized + " ";
+        int[] trigrams = new int[padded.length() - 2];
+        for (int i = 0; i < trigrams.length; i++) {
+            trigrams[i] = characterClass(padded.charAt(i)) << (2 * CHARACTER_BITS)
+                    | characterClass(padded.charAt(i + 1)) << CHARACTER_BITS
+                    | characterClass(padded.charAt(i + 2));
+        }
+        return Arrays.stream(trigrams).sorted().distinct().toArray();
+    }
+
+    private static int characterClass(char c) {
+        if (c >= 'a' && c <= 'z') {
+            return 1 + c - 'a';
+        }
+        if (c >= '0' && c <= '9') {
+            return 27 + c - '0';
+        }
+        return switch (c) {
+            case ' ' -> 0;
+            case '@' -> 37;
+            case '.' -> 38;
+            case '-' -> 39;
+            case '_' -> 40;
+            case 'ß' -> 19;
+            default -> 41 + c % 23;
+        };
+    }
+
+    private static String nullToEmpty(String value) {
+        return value == null ? "" : value;
+    }
+
+    /**
+     * The indexed fields of a patient and their trigrams.
+     */
+    private record Document(String firstName, String lastName, String email, String diagnosis, int[] trigrams) {
+
+        Document(String firstName, String lastName, String email, String diagnosis) {
+            this(firstName, lastName, email, diagnosis, trigrams(String.join(" ", nullToEmpty(firstName),
+                    nullToEmpty(lastName), nullToEmpty(email), nullToEmpty(diagnosis))));
+        }
+    }
+}
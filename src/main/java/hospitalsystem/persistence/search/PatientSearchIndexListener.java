@@ -0,0 +1,50 @@
+package hospitalsystem.persistence.search;
+
+import hospitalsystem.persistence.entity.Patient;
+import hospitalsystem.persistence.support.AfterCommit;
+import jakarta.persistence.PostPersist;
+import jakarta.persistence.PostRemove;
+import jakarta.persistence.PostUpdate;
+import org.springframework.beans.factory.annotation.Autowired;
+
+/**
+ * Keeps the {@link PatientSearchIndex} current with every patient written through JPA. Changes are applied
+ * once the transaction commits, so rolled back changes never become searchable. Bulk and JDBC updates bypass
+ * entity listeners and have to update the index themselves.
+ * <p>
+ * The diagnosis of a loaded patient may be older than its latest diagnosis entry until it is materialized, so an
+ * update keeps the indexed diagnosis; diagnoses are indexed when they are added and when they are materialized.
+ */
+
+public class PatientSearchIndexListener {
+    @Autowired
+    private PatientSearchIndex patientSearchIndex;
+
+    @PostPersist
+    public void indexPatient(Patient patient) {
+        Patient snapshot = snapshot(patient);
+        AfterCommit.run(() -> patientSearchIndex.index(snapshot));
+    }
+
+    @PostUpdate
+    public void reindexPatient(Patient patient) {
+        Patient snapshot = snapshot(patient);
+        AfterCommit.run(() -> patientSearchIndex.indexKeepingDiagnosis(snapshot));
+    }
+
+    @PostRemove
+    public void removePatient(Patient patient) {
+        int id = patient.getId();
+        AfterCommit.run(() -> patientSearchIndex.remove(id));
+    }
+
+    /**
+     * Copies the indexed fields, the patient may change again before the transaction commits.
+     */
+    private static Patient snapshot(Patient patient) {
+        Patient snapshot = new Patient(patient.getFirstName(), patient.getLastName(), null, patient.getEmail());
+        snapshot.setId(patient.getId());
+        snapshot.setDiagnosis(patient.getDiagnosis());
+        return snapshot;
+    }
+}
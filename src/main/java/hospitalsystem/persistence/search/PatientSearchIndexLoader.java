@@ -0,0 +1,44 @@
+package hospitalsystem.persistence.search;
+
+import hospitalsystem.persistence.service.PatientService;
+import hospitalsystem.persistence.sharding.ShardContext;
+import hospitalsystem.persistence.sharding.ShardRoutingDataSource;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.core.annotation.Order;
+import org.springframework.stereotype.Component;
+
+import javax.sql.DataSource;
+
+/**
+ * Builds the {@link PatientSearchIndex} from the database at startup, reading the patients of every shard.
+ */
+
+@Component
+public class PatientSearchIndexLoader {
+    private static final Logger log = LoggerFactory.getLogger(PatientSearchIndexLoader.class);
+
+    @Autowired
+    private PatientService patientService;
+    @Autowired
+    private PatientSearchIndex patientSearchIndex;
+    @Autowired
+    private DataSource dataSource;
+
+    @Order(0)
+    @EventListener(ApplicationReadyEvent.class)
+    public void buildIndex() {
+        long start = System.nanoTime();
+        for (int shard : ShardRoutingDataSource.shards(dataSource)) {
+            ShardContext.call(shard, () -> {
+                patientService.forEachPatient(patientSearchIndex::index);
+                return null;
+            });
+        }
+        log.info("Indexed {} patients for search in {} ms", patientSearchIndex.size(),
+                (System.nanoTime() - start) / 1_000_000);
+    }
+}
@@ -0,0 +1,50 @@
+package hospitalsystem.persistence.search;
+
+import java.util.Arrays;
+
+/**
+ * Sorted set of primitive ints used as posting list. Patient IDs are mostly added in ascending order,
+ * in which case an insert is a binary search plus an append.
+ */
+
+final class SortedIntSet {
+    private int[] values = new int[4];
+    private int size;
+
+    boolean add(int value) {
+        int index = Arrays.binarySearch(values, 0, size, value);
+        if (index >= 0) {
+            return false;
+        }
+        index = -index - 1;
+        if (size == values.length) {
+            values = Arrays.copyOf(values, size + (size >> 1));
+        }
+        System.arraycopy(values, index, values, index + 1, size - index);
+        values[index] = value;
+        size++;
+        return true;
+    }
+
+    boolean remove(int value) {
+        int index = Arrays.binarySearch(values, 0, size, value);
+        if (index < 0) {
+            return false;
+        }
+        System.arraycopy(values, index + 1, values, index, size - index - 1);
+        size--;
+        return true;
+    }
+
+    boolean contains(int value) {
+        return Arrays.binarySearch(values, 0, size, value) >= 0;
+    }
+
+    int size() {
+        return size;
+    }
+
+    int get(int index) {
+        return values[index];
+    }
+}
@@ -0,0 +1,26 @@
+package hospitalsystem.persistence.service;
+
+/**
+ * Snapshot of the statistics of one second-level cache region.
+ *
+ * @param region    the name of the cache region
+ * @param hits      the number of lookups that were served from the cache
+ * @param misses    the number of lookups that had to go to the database
+ * @param puts      the number of entries put into the cache
+ * @param evictions the number of entries evicted because the region was full, or -1 if unknown
+ * @param size      the number of entries currently held in memory
+ */
+
+public record CacheRegionStats(String region, long hits, long misses, long puts, long evictions, long size) {
+
+    /**
+     * Returns the ratio of lookups served from the cache.
+     *
+     * @return the hit rate between 0 and 1
+     */
+
+    public double hitRate() {
+        long lookups = hits + misses;
+        return lookups == 0 ? 0 : (double) hits / lookups;
+    }
+}
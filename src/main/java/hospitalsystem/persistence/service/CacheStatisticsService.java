@@ -0,0 +1,81 @@
+package hospitalsystem.persistence.service;
+
+import jakarta.persistence.EntityManagerFactory;
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.CacheRegionStatistics;
+import org.hibernate.stat.Statistics;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+
+@Service
+public class CacheStatisticsService {
+    @Autowired
+    private EntityManagerFactory entityManagerFactory;
+
+    /**
+     * Retrieves the statistics of all second-level cache regions, including the query cache.
+     * Hits, misses and puts are taken from the Hibernate statistics, evictions from the JCache provider.
+     *
+     * @return one entry per cache region
+     */
+
+    public List<CacheRegionStats> findAllRegionStatistics() {
+        Statistics statistics = entityManagerFactory.unwrap(SessionFactory.class).getStatistics();
+        List<CacheRegionStats> regions = new ArrayList<>();
+        for (String region : statistics.getSecondLevelCacheRegionNames()) {
+            CacheRegionStatistics regionStatistics = statistics.getCacheRegionStatistics(region);
+            if (regionStatistics != null) {
+                regions.add(new CacheRegionStats(region,
+                        regionStatistics.getHitCount(), regionStatistics.getMissCount(),
+                        regionStatistics.getPutCount(), findEvictions(region),
+                        regionStatistics.getElementCountInMemory()));
+            }
+        }
+        return regions;
+    }
+
+    /**
+     * Finds the statistics of a single cache region.
+     *
+     * @param region the name of the cache region
+     * @return the statistics of the region, or null if there is no such region
+     */
+
+    public CacheRegionStats findRegionStatistics(String region) {
+        return findAllRegionStatistics().stream()
+                .filter(statistics -> statistics.region().equals(region))
+                .findFirst()
+                .orElse(null);
+    }
+
+    /**
+     * Evicts all entries from all second-level cache regions.
+     */
+
+    public void evictAll() {
+        entityManagerFactory.getCache().evictAll();
+    }
+
+    private long findEvictions(String region) {
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        try {
+            Set<ObjectName> names = server.queryNames(
+                    new ObjectName("javax.cache:type=CacheStatistics,Cache=" + region + ",*"), null);
+            long evictions = -1;
+            for (ObjectName name : names) {
+                evictions = Math.max(evictions, 0) + (Long) server.getAttribute(name, "CacheEvictions");
+            }
+            return evictions;
+        } catch (JMException e) {
+            return -1;
+        }
+    }
+}
@@ -0,0 +1,166 @@
+package hospitalsystem.persistence.service;
+
+import hospitalsystem.persistence.repository.CurrentDiagnosis;
+import hospitalsystem.persistence.repository.DiagnosisEntryRepository;
+import hospitalsystem.persistence.repository.PatientRepository;
+import hospitalsystem.persistence.sharding.ShardContext;
+import hospitalsystem.persistence.sharding.ShardRoutingDataSource;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.sql.DataSource;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Materializes the latest diagnosis entry of every patient on {@code Patient.diagnosis} in the background.
+ * Appends of the same patient between two runs are coalesced, so a burst of appends costs one row update.
+ * Diagnoses are written on the shard they were appended on, see {@link ShardContext}.
+ * <p>
+ * Pending diagnoses are written before the application stops. Entries that were still missed, e.g. after a crash,
+ * are found by comparing Patients.diagnosis_entry_id with the latest entry of each patient once the application is
+ * ready.
+ */
+
+@Component
+public class CurrentDiagnosisMaterializer {
+    private static final Logger log = LoggerFactory.getLogger(CurrentDiagnosisMaterializer.class);
+
+    private final Map<Integer, Pending> pending = new ConcurrentHashMap<>();
+    private final ScheduledExecutorService executor = Executors.newSingleThreadScheduledExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "diagnosis-materializer");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    @Autowired
+    private PatientRepository patientRepository;
+    @Autowired
+    private DiagnosisEntryRepository diagnosisEntryRepository;
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+    @Autowired
+    private DataSource dataSource;
+    @Value("${hospital.diagnosis.materialize-interval:50ms}")
+    private Duration interval;
+
+    private record Pending(CurrentDiagnosis diagnosis, Integer shard) {
+    }
+
+    @PostConstruct
+    void start() {
+        executor.scheduleWithFixedDelay(() -> {
+            try {
+                flush();
+            } catch (RuntimeException e) {
+                log.warn("Materializing current diagnoses failed, retrying with the next run", e);
+            }
+        }, interval.toMillis(), interval.toMillis(), TimeUnit.MILLISECONDS);
+    }
+
+    @PreDestroy
+    void stop() throws InterruptedException {
+        executor.shutdown();
+        executor.awaitTermination(10, TimeUnit.SECONDS);
+        try {
+            flush();
+        } catch (RuntimeException e) {
+            log.warn("Materializing current diagnoses on shutdown failed, they are repaired with the next start", e);
+        }
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void repairAfterStart() {
+        executor.execute(() -> {
+            try {
+                repair();
+            } catch (RuntimeException e) {
+                log.warn("Repairing current diagnoses failed", e);
+            }
+        });
+    }
+
+    /**
+     * Schedules the latest diagnosis entry of every patient whose current diagnosis is behind its history.
+     *
+     * @return the number of scheduled diagnoses
+     */
+
+    public int repair() {
+        TransactionTemplate transaction = new TransactionTemplate(transactionManager);
+        int missed = 0;
+        for (int shard : ShardRoutingDataSource.shards(dataSource)) {
+            List<CurrentDiagnosis> diagnoses = ShardContext.call(shard,
+                    () -> transaction.execute(status -> diagnosisEntryRepository.findUnmaterialized()));
+            diagnoses.forEach(diagnosis -> enqueue(diagnosis, shard));
+            missed += diagnoses.size();
+        }
+        if (missed > 0) {
+            log.info("Materializing {} diagnoses missed before the last shutdown", missed);
+        }
+        return missed;
+    }
+
+    /**
+     * Schedules a committed diagnosis entry to become the current diagnosis of its patient.
+     *
+     * @param diagnosis the committed diagnosis entry
+     */
+
+    public void enqueue(CurrentDiagnosis diagnosis) {
+        enqueue(diagnosis, ShardContext.current());
+    }
+
+    private void enqueue(CurrentDiagnosis diagnosis, Integer shard) {
+        pending.merge(diagnosis.patientId(), new Pending(diagnosis, shard),
+                (current, next) -> next.diagnosis().entryId() > current.diagnosis().entryId() ? next : current);
+    }
+
+    /**
+     * Writes all pending diagnoses now, in one transaction per shard.
+     *
+     * @return the number of updated patients
+     */
+
+    public synchronized int flush() {
+        Map<Integer, List<CurrentDiagnosis>> diagnosesByShard = new HashMap<>();
+        for (Integer patientId : pending.keySet()) {
+            Pending diagnosis = pending.remove(patientId);
+            if (diagnosis != null) {
+                diagnosesByShard.computeIfAbsent(diagnosis.shard(), shard -> new ArrayList<>())
+                        .add(diagnosis.diagnosis());
+            }
+        }
+        int updated = 0;
+        RuntimeException failure = null;
+        for (Map.Entry<Integer, List<CurrentDiagnosis>> diagnoses : diagnosesByShard.entrySet()) {
+            try {
+                updated += ShardContext.call(diagnoses.getKey(), () -> new TransactionTemplate(transactionManager)
+                        .execute(status -> patientRepository.updateDiagnoses(diagnoses.getValue())));
+            } catch (RuntimeException e) {
+                diagnoses.getValue().forEach(diagnosis -> enqueue(diagnosis, diagnoses.getKey()));
+                failure = e;
+            }
+        }
+        if (failure != null) {
+            throw failure;
+        }
+        return updated;
+    }
+}
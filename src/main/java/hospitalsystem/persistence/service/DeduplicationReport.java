@@ -0,0 +1,20 @@
+package hospitalsystem.persistence.service;
+
+import java.util.List;
+
+/**
+ * Outcome of a deduplication run.
+ *
+ * @param runId         the ID of the run, see {@link hospitalsystem.persistence.entity.DeduplicationRun}
+ * @param resumed       whether the run continued an interrupted run
+ * @param patients      the number of patients that could be blocked, i.e. have a last name and a date of birth
+ * @param blocks        the number of blocks with more than one patient
+ * @param comparisons   the number of compared pairs, including those of an interrupted run
+ * @param merged        the number of merged patients, including those of an interrupted run
+ * @param merges        the first merges of this invocation, see {@link PatientDeduplicationService#MAX_REPORTED_MERGES}
+ * @param elapsedMillis the wall clock time of this invocation in milliseconds
+ */
+
+public record DeduplicationReport(long runId, boolean resumed, long patients, long blocks, long comparisons,
+                                  long merged, List<PatientMerge> merges, long elapsedMillis) {
+}
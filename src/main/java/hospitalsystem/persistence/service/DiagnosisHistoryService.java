@@ -0,0 +1,98 @@
+package hospitalsystem.persistence.service;
+
+import hospitalsystem.persistence.entity.DiagnosisEntry;
+import hospitalsystem.persistence.repository.CurrentDiagnosis;
+import hospitalsystem.persistence.repository.DiagnosisEntryRepository;
+import hospitalsystem.persistence.support.AfterCommit;
+import jakarta.transaction.Transactional;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+@Service
+public class DiagnosisHistoryService {
+    @Autowired
+    private DiagnosisEntryRepository diagnosisEntryRepository;
+    @Autowired
+    private CurrentDiagnosisMaterializer currentDiagnosisMaterializer;
+
+    /**
+     * Appends a diagnosis to the history of a patient. The entry is only inserted; the current diagnosis of
+     * the patient is updated asynchronously after the commit.
+     *
+     * @param patientId the unique ID of the patient
+     * @param diagnosis the diagnosis
+     * @return the saved diagnosis entry
+     */
+
+    @Transactional
+    public DiagnosisEntry appendDiagnosis(int patientId, String diagnosis) {
+        DiagnosisEntry entry = diagnosisEntryRepository.save(new DiagnosisEntry(patientId, diagnosis, Instant.now()));
+        materializeAfterCommit(List.of(entry));
+        return entry;
+    }
+
+    /**
+     * Appends diagnoses of several patients with batched inserts. The diagnoses of a patient are appended in the
+     * given order, so the last one becomes the current diagnosis.
+     *
+     * @param diagnoses the diagnoses to append, oldest first, keyed by the unique ID of the patient
+     * @return the saved diagnosis entries
+     */
+
+    @Transactional
+    public List<DiagnosisEntry> appendDiagnoses(Map<Integer, List<String>> diagnoses) {
+        Instant now = Instant.now();
+        List<DiagnosisEntry> entries = new ArrayList<>(diagnoses.size());
+        diagnoses.forEach((patientId, patientDiagnoses) -> patientDiagnoses.forEach(diagnosis ->
+                entries.add(new DiagnosisEntry(patientId, diagnosis, now))));
+        List<DiagnosisEntry> saved = diagnosisEntryRepository.saveAll(entries);
+        materializeAfterCommit(saved);
+        return saved;
+    }
+
+    /**
+     * Retrieves the diagnosis history of a patient.
+     *
+     * @param patientId the unique ID of the patient
+     * @return the diagnosis entries of the patient, oldest first
+     */
+
+    public List<DiagnosisEntry> findDiagnosisHistory(int patientId) {
+        return diagnosisEntryRepository.findByPatientIdOrderByIdAsc(patientId);
+    }
+
+    /**
+     * Finds the latest diagnosis of a patient from the history. Unlike {@code Patient.getDiagnosis()} this
+     * includes diagnoses that have not been materialized yet.
+     *
+     * @param patientId the unique ID of the patient
+     * @return the latest diagnosis, or null if the patient has none
+     */
+
+    public String findLatestDiagnosis(int patientId) {
+        return diagnosisEntryRepository.findFirstByPatientIdOrderByIdDesc(patientId)
+                .map(DiagnosisEntry::getDiagnosis)
+                .orElse(null);
+    }
+
+    /**
+     * Deletes the diagnosis history of a patient.
+     *
+     * @param patientId the unique ID of the patient
+     */
+
+    @Transactional
+    public void deleteDiagnosisHistory(int patientId) {
+        diagnosisEntryRepository.deleteByPatientId(patientId);
+    }
+
+    private void materializeAfterCommit(List<DiagnosisEntry> entries) {
+        AfterCommit.run(() -> entries.forEach(entry -> currentDiagnosisMaterializer.enqueue(
+                new CurrentDiagnosis(entry.getPatientId(), entry.getId(), entry.getDiagnosis()))));
+    }
+}
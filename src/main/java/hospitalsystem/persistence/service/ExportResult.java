@@ -0,0 +1,21 @@
+package hospitalsystem.persistence.service;
+
+/**
+ * Summary of an export run.
+ *
+ * @param rows          the number of exported patients
+ * @param elapsedMillis the wall clock time the export took in milliseconds
+ */
+
+public record ExportResult(long rows, long elapsedMillis) {
+
+    /**
+     * Returns the export throughput.
+     *
+     * @return the number of exported patients per second
+     */
+
+    public double rowsPerSecond() {
+        return elapsedMillis == 0 ? rows * 1000.0 : rows * 1000.0 / elapsedMillis;
+    }
+}
@@ -0,0 +1,30 @@
+package hospitalsystem.persistence.service;
+
+import java.util.List;
+
+/**
+ * Progress and outcome of a file import. Intermediate reports are passed to the progress listener while the import
+ * runs, the final one is returned.
+ *
+ * @param records       the number of records read so far, without the header
+ * @param imported      the number of new patients
+ * @param skipped       the number of records whose email already belonged to a patient
+ * @param rejected      the number of invalid records
+ * @param registrations the number of new hospital registrations
+ * @param errors        the first rejected records, see {@link PatientFileImportService#MAX_REPORTED_ERRORS}
+ * @param elapsedMillis the wall clock time the import took so far in milliseconds
+ */
+
+public record FileImportReport(long records, long imported, long skipped, long rejected, long registrations,
+                               List<ImportError> errors, long elapsedMillis) {
+
+    /**
+     * Returns the import throughput.
+     *
+     * @return the number of processed records per second
+     */
+
+    public double recordsPerSecond() {
+        return elapsedMillis == 0 ? records * 1000.0 : records * 1000.0 / elapsedMillis;
+    }
+}
@@ -0,0 +1,88 @@
+package hospitalsystem.persistence.service;
+
+import hospitalsystem.persistence.entity.Hospital;
+import hospitalsystem.persistence.projection.HospitalRoster;
+import hospitalsystem.persistence.projection.PatientRosterEntry;
+import hospitalsystem.persistence.projection.PatientView;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.support.PageableExecutionUtils;
+import org.springframework.stereotype.Service;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Reads the rosters of hospitals. The registrations of a hospital are stored on its shard, the registered patients
+ * on the shard they were created at, so a roster is read in two steps: the patient IDs of the requested page from
+ * the join table of the hospital, then these patients from every shard. Without sharding both steps read the same
+ * database. The patients collection of the hospital is never initialized.
+ */
+
+@Service
+public class HospitalRosterService {
+    @Autowired
+    private HospitalService hospitalService;
+    @Autowired
+    private ReadModelService readModelService;
+
+    /**
+     * Retrieves one page of the roster of a hospital. Only the roster fields are selected.
+     *
+     * @param hospitalId the unique ID of the hospital
+     * @param pageable   the requested page
+     * @return a page of roster entries ordered by patient ID
+     */
+
+    public Page<PatientRosterEntry> findRosterByHospital(int hospitalId, Pageable pageable) {
+        List<Integer> patientIds = hospitalService.findRegisteredPatientIds(hospitalId, pageable);
+        List<PatientRosterEntry> roster = patientIds.isEmpty()
+                ? List.of() : readModelService.findRosterEntries(patientIds);
+        return PageableExecutionUtils.getPage(roster, pageable,
+                () -> hospitalService.countPatientsByHospital(hospitalId));
+    }
+
+    /**
+     * Finds a hospital together with one page of its roster.
+     *
+     * @param id       the unique ID of the hospital
+     * @param pageable the requested roster page
+     * @return the hospital and its roster page, or null if there is no hospital with the given ID
+     */
+
+    public HospitalRoster findHospitalWithRoster(int id, Pageable pageable) {
+        Hospital hospital = hospitalService.findHospitalById(id);
+        if (hospital == null) {
+            return null;
+        }
+        return new HospitalRoster(hospital, findRosterByHospital(id, pageable));
+    }
+
+    /**
+     * Retrieves the patients of a hospital using keyset pagination on the ID. Patients deleted between both steps
+     * are replaced by reading further IDs, so a page is only shorter than the limit at the end of the roster.
+     *
+     * @param hospitalId the unique ID of the hospital
+     * @param afterId    the ID of the last patient of the previous page, 0 for the first page
+     * @param limit      the maximum number of patients to return
+     * @return the patients of the hospital with an ID greater than afterId, ordered by ID
+     */
+
+    public List<PatientView> findPatientViewsByHospitalAfter(int hospitalId, int afterId, int limit) {
+        List<PatientView> patients = new ArrayList<>();
+        int lastId = afterId;
+        while (patients.size() < limit) {
+            int requested = limit - patients.size();
+            List<Integer> patientIds = hospitalService.findRegisteredPatientIdsAfter(hospitalId, lastId, requested);
+            if (!patientIds.isEmpty()) {
+                patients.addAll(readModelService.findPatientViews(patientIds));
+                lastId = patientIds.get(patientIds.size() - 1);
+            }
+            if (patientIds.size() < requested) {
+                break;
+            }
+        }
+        return patients;
+    }
+}
@@ -2,19 +2,43 @@ package hospitalsystem.persistence.service;
 
 import hospitalsystem.persistence.entity.Hospital;
 import hospitalsystem.persistence.entity.Patient;
+import hospitalsystem.persistence.outbox.ChangeEventOutbox;
+import hospitalsystem.persistence.outbox.ChangeType;
 import hospitalsystem.persistence.repository.HospitalRepository;
+import hospitalsystem.persistence.repository.PatientRepository;
+import hospitalsystem.persistence.sharding.HospitalShardKey;
+import hospitalsystem.persistence.sharding.PageLimit;
+import hospitalsystem.persistence.sharding.PlaceHospital;
+import hospitalsystem.persistence.sharding.ScatterGather;
+import hospitalsystem.persistence.sharding.SingleShard;
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.PersistenceContext;
 import jakarta.transaction.Transactional;
+import org.hibernate.Session;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.domain.Limit;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Pageable;
 import org.springframework.stereotype.Service;
 
 import java.util.List;
 import java.util.Optional;
 import java.util.Set;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
 
 @Service
 public class HospitalService {
     @Autowired
     private HospitalRepository hospitalRepository;
+    @Autowired
+    private PatientRepository patientRepository;
+    @Autowired
+    private OptimisticLockRetry optimisticLockRetry;
+    @PersistenceContext
+    private EntityManager entityManager;
+    @Autowired
+    private ChangeEventOutbox changeEventOutbox;
 
     /**
      * Creates a new hospital and saves it to the database.
@@ -25,6 +49,7 @@ public class HospitalService {
      * @return the saved Hospital object
      */
 
+    @PlaceHospital
     @Transactional
     public Hospital createHospital(String name, String address, String phone) {
         return hospitalRepository.save(new Hospital(name, address, phone));
@@ -37,13 +62,14 @@ public class HospitalService {
      * @return the Hospital object if found, or null if there is no hospital with the given ID.
      */
 
-    public Hospital findHospitalById(int id) {
+    public Hospital findHospitalById(@HospitalShardKey int id) {
         Optional<Hospital> foundHospital = hospitalRepository.findById(id);
         return foundHospital.orElse(null);
     }
 
     /**
-     * Updates the details of an existing hospital.
+     * Updates the details of an existing hospital. Concurrent updates are detected through the version of the
+     * hospital; the update is then retried with the latest state a bounded number of times.
      *
      * @param id      the unique ID of the hospital
      * @param name    the updated name of the hospital
@@ -52,59 +78,110 @@ public class HospitalService {
      * @throws RuntimeException if the hospital with the given ID is not found
      */
 
-    @Transactional
-    public void updateHospitalById(int id, String name, String address, String phone) {
-        Hospital hospital = findHospitalById(id);
-        try {
-            hospital.setName(name);
-            hospital.setAddress(address);
-            hospital.setPhone(phone);
-            saveHospital(hospital);
-        } catch (Exception e) {
-            throw new RuntimeException(e.getMessage());
-        }
+    public void updateHospitalById(@HospitalShardKey int id, String name, String address, String phone) {
+        optimisticLockRetry.run(() -> {
+            Hospital hospital = findHospitalById(id);
+            try {
+                hospital.setName(name);
+                hospital.setAddress(address);
+                hospital.setPhone(phone);
+                saveHospital(hospital);
+            } catch (Exception e) {
+                throw new RuntimeException(e.getMessage());
+            }
+        });
     }
 
     /**
      * Deletes a hospital by its ID. Also removes all associations with patients.
-     * The patients will not be deleted.
+     * The patients will not be deleted. The associations are removed with a single delete on the join table,
+     * so the cost does not depend on the number of registered patients.
      *
      * @param id the unique ID of the hospital
      * @throws RuntimeException if the hospital cannot be deleted
      */
 
     @Transactional
-    public void deleteHospitalById(int id) {
-        Hospital hospital = findHospitalById(id);
-        try {
-            for (Patient patient : hospital.getPatients()) {
-                patient.getHospitals().remove(hospital);
-            }
-            hospital.getPatients().clear();
-            hospitalRepository.delete(hospital);
-        } catch (Exception e) {
-            throw new RuntimeException(e.getMessage());
+    public void deleteHospitalById(@HospitalShardKey int id) {
+        patientRepository.unregisterAllAtHospital(id);
+        if (hospitalRepository.bulkDeleteById(id) == 0) {
+            throw new RuntimeException("Hospital " + id + " not found");
         }
+        // the bulk delete bypasses the entity events that publish other changes
+        changeEventOutbox.append(entityManager.unwrap(Session.class), ChangeType.HOSPITAL_DELETED, id, null);
     }
 
     /**
-     * Retrieves the list of all patients of a hospital.
+     * Retrieves the list of all patients of a hospital. The collection only holds the patients stored in the same
+     * database as the hospital, so with sharding the caller has to pick the shard of the hospital; see
+     * {@link HospitalRosterService} for the roster across shards.
      *
      * @param hospital the hospital in which the patients have been registered
      * @return a set of Patient objects associated with the hospital
      */
 
-    public Set<Patient> listPatientsByHospital(Hospital hospital, Patient patient) {
+    @SingleShard
+    public Set<Patient> listPatientsByHospital(@HospitalShardKey Hospital hospital, Patient patient) {
      return hospital.getPatients();
     }
 
+    /**
+     * Retrieves one page of the IDs of the patients registered at a hospital, including the patients stored on
+     * other shards. See {@link HospitalRosterService} for the patients themselves.
+     *
+     * @param hospitalId the unique ID of the hospital
+     * @param pageable   the requested page
+     * @return the patient IDs of the page in ascending order
+     */
+
+    public List<Integer> findRegisteredPatientIds(@HospitalShardKey int hospitalId, Pageable pageable) {
+        return patientRepository.findRegisteredIds(hospitalId, pageable);
+    }
+
+    /**
+     * Retrieves the IDs of the patients registered at a hospital using keyset pagination on the ID, including
+     * the patients stored on other shards.
+     *
+     * @param hospitalId the unique ID of the hospital
+     * @param afterId    the last patient ID of the previous page, 0 for the first page
+     * @param limit      the maximum number of IDs to return
+     * @return the patient IDs greater than afterId in ascending order
+     */
+
+    public List<Integer> findRegisteredPatientIdsAfter(@HospitalShardKey int hospitalId, int afterId, int limit) {
+        return patientRepository.findRegisteredIdsAfter(hospitalId, afterId, PageRequest.of(0, limit));
+    }
+
+    /**
+     * Counts the patients registered at a hospital.
+     *
+     * @param hospitalId the unique ID of the hospital
+     * @return the number of registered patients
+     */
+
+    public long countPatientsByHospital(@HospitalShardKey int hospitalId) {
+        return hospitalRepository.countPatientsByHospital(hospitalId);
+    }
+
+    /**
+     * Checks whether a patient is registered at a hospital.
+     *
+     * @param patientId  the unique ID of the patient
+     * @param hospitalId the unique ID of the hospital
+     * @return true if the patient is registered at the hospital
+     */
+
+    public boolean isPatientRegistered(int patientId, @HospitalShardKey int hospitalId) {
+        return patientRepository.isRegistered(patientId, hospitalId);
+    }
+
     /**
      * Saves a hospital object to the database.
      *
      * @param hospital the hospital object to save
      */
 
-    public void saveHospital(Hospital hospital) {
+    public void saveHospital(@HospitalShardKey Hospital hospital) {
         hospitalRepository.save(hospital);
     }
 
@@ -115,7 +192,50 @@ public class HospitalService {
      */
 
 
+    @ScatterGather
     public List<Hospital> findAllHospitals() {
         return hospitalRepository.findAll();
     }
+
+    /**
+     * Retrieves one page of hospitals using keyset pagination on the ID.
+     *
+     * @param afterId the ID of the last hospital of the previous page, 0 for the first page
+     * @param limit   the maximum number of hospitals to return
+     * @return the hospitals with an ID greater than afterId, ordered by ID
+     */
+
+    @ScatterGather(order = ScatterGather.Order.ID)
+    public List<Hospital> findHospitalsAfter(int afterId, @PageLimit int limit) {
+        return hospitalRepository.findByIdGreaterThanOrderByIdAsc(afterId, Limit.of(limit));
+    }
+
+    /**
+     * Streams all hospitals from a forward-only database cursor, detaching each hospital once processed.
+     * Must be called within an active transaction and the returned stream must be closed. With sharding the
+     * stream covers one shard, which the caller picks.
+     *
+     * @return a stream of all hospitals ordered by ID
+     */
+
+    @SingleShard
+    @Transactional(Transactional.TxType.MANDATORY)
+    public Stream<Hospital> streamAllHospitals() {
+        return ScrollingStreams.scroll(entityManager, "from Hospital order by id", Hospital.class);
+    }
+
+    /**
+     * Passes every hospital to the given action, reading them from a forward-only database cursor. With sharding
+     * the hospitals of one shard are visited, which the caller picks.
+     *
+     * @param action the action to perform for each hospital
+     */
+
+    @SingleShard
+    @Transactional
+    public void forEachHospital(Consumer<Hospital> action) {
+        try (Stream<Hospital> hospitals = streamAllHospitals()) {
+            hospitals.forEach(action);
+        }
+    }
 }
@@ -0,0 +1,11 @@
+package hospitalsystem.persistence.service;
+
+/**
+ * A record of an import file that was rejected.
+ *
+ * @param line    the line of the file the record starts on
+ * @param message why the record was rejected
+ */
+
+public record ImportError(long line, String message) {
+}
@@ -0,0 +1,21 @@
+package hospitalsystem.persistence.service;
+
+/**
+ * Summary of a bulk import run.
+ *
+ * @param rows          the number of rows that were persisted
+ * @param elapsedMillis the wall clock time the import took in milliseconds
+ */
+
+public record ImportResult(long rows, long elapsedMillis) {
+
+    /**
+     * Returns the import throughput.
+     *
+     * @return the number of persisted rows per second
+     */
+
+    public double rowsPerSecond() {
+        return elapsedMillis == 0 ? rows * 1000.0 : rows * 1000.0 / elapsedMillis;
+    }
+}
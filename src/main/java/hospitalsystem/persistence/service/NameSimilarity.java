@@ -0,0 +1,83 @@
+package hospitalsystem.persistence.service;
+
+import java.text.Normalizer;
+import java.util.Locale;
+import java.util.regex.Pattern;
+
+/**
+ * Normalization and fuzzy comparison of personal names for deduplication.
+ */
+
+final class NameSimilarity {
+    private static final Pattern NON_LETTERS = Pattern.compile("[^\\p{L}]+");
+    private static final Pattern MARKS = Pattern.compile("\\p{M}+");
+    private static final double PREFIX_SCALE = 0.1;
+    private static final int MAX_PREFIX = 4;
+
+    private NameSimilarity() {
+    }
+
+    /**
+     * Lower-cases a name and removes accents, spaces and punctuation, so that "Müller" and "muller", or "Le Gall"
+     * and "Legall", are equal.
+     */
+    static String normalize(String name) {
+        if (name == null) {
+            return "";
+        }
+        String decomposed = Normalizer.normalize(name.replace("ß", "ss"), Normalizer.Form.NFD);
+        return NON_LETTERS.matcher(MARKS.matcher(decomposed).replaceAll("")).replaceAll("").toLowerCase(Locale.ROOT);
+    }
+
+    /**
+     * Computes the Jaro-Winkler similarity of two normalized names: 1 for equal names, 0 for names without common
+     * characters. Common prefixes, typical for nicknames and typos at the end of a name, raise the similarity.
+     */
+    static double jaroWinkler(String first, String second) {
+        if (first.equals(second)) {
+            return 1;
+        }
+        if (first.isEmpty() || second.isEmpty()) {
+            return 0;
+        }
+        int window = Math.max(0, Math.max(first.length(), second.length()) / 2 - 1);
+        boolean[] firstMatched = new boolean[first.length()];
+        boolean[] secondMatched = new boolean[second.length()];
+        int matches = 0;
+        for (int i = 0; i < first.length(); i++) {
+            int from = Math.max(0, i - window);
+            int to = Math.min(second.length(), i + window + 1);
+            for (int j = from; j < to; j++) {
+                if (!secondMatched[j] && first.charAt(i) == second.charAt(j)) {
+                    firstMatched[i] = true;
+                    secondMatched[j] = true;
+                    matches++;
+                    break;
+                }
+            }
+        }
+        if (matches == 0) {
+            return 0;
+        }
+        int transpositions = 0;
+        for (int i = 0, j = 0; i < first.length(); i++) {
+            if (firstMatched[i]) {
+                while (!secondMatched[j]) {
+                    j++;
+                }
+                if (first.charAt(i) != second.charAt(j)) {
+                    transpositions++;
+                }
+                j++;
+            }
+        }
+        double jaro = ((double) matches / first.length() + (double) matches / second.length()
+                + (matches - transpositions / 2.0) / matches) / 3;
+        int prefix = 0;
+        while (prefix < Math.min(MAX_PREFIX, Math.min(first.length(), second.length()))
+                && first.charAt(prefix) == second.charAt(prefix)) {
+            prefix++;
+        }
+        return jaro + prefix * PREFIX_SCALE * (1 - jaro);
+    }
+}
@@ -0,0 +1,73 @@
+package hospitalsystem.persistence.service;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.orm.ObjectOptimisticLockingFailureException;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.function.Supplier;
+
+/**
+ * Runs read-modify-write operations in their own transaction and retries them a bounded number of times
+ * if a concurrent update caused an optimistic locking failure.
+ */
+
+@Component
+public class OptimisticLockRetry {
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+    @Value("${hospital.optimistic-lock.max-attempts:5}")
+    private int maxAttempts;
+
+    /**
+     * Executes the work in a new transaction, retrying on optimistic locking failures. If the caller already
+     * holds a transaction the work joins it and is not retried, as the caller's persistence context is stale.
+     *
+     * @param work the read-modify-write operation
+     * @return the result of the work
+     * @throws ObjectOptimisticLockingFailureException if the last attempt failed as well
+     */
+
+    public <T> T execute(Supplier<T> work) {
+        TransactionTemplate transaction = new TransactionTemplate(transactionManager);
+        if (TransactionSynchronizationManager.isActualTransactionActive()) {
+            return transaction.execute(status -> work.get());
+        }
+        for (int attempt = 1; ; attempt++) {
+            try {
+                return transaction.execute(status -> work.get());
+            } catch (ObjectOptimisticLockingFailureException e) {
+                if (attempt >= maxAttempts) {
+                    throw e;
+                }
+                backOff(attempt);
+            }
+        }
+    }
+
+    /**
+     * Executes the work in a new transaction, retrying on optimistic locking failures.
+     *
+     * @param work the read-modify-write operation
+     */
+
+    public void run(Runnable work) {
+        execute(() -> {
+            work.run();
+            return null;
+        });
+    }
+
+    private static void backOff(int attempt) {
+        try {
+            Thread.sleep(ThreadLocalRandom.current().nextInt(1, 2 << Math.min(attempt, 6)));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while retrying an optimistic update", e);
+        }
+    }
+}
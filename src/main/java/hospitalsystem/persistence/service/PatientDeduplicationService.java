@@ -0,0 +1,287 @@
+package hospitalsystem.persistence.service;
+
+import hospitalsystem.persistence.entity.DeduplicationRun;
+import hospitalsystem.persistence.repository.DeduplicationRunRepository;
+import hospitalsystem.persistence.repository.PatientRepository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowCallbackHandler;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Locale;
+import java.util.Optional;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+/**
+ * Finds patients that were registered twice, typically once per hospital, and merges each duplicate into the
+ * oldest record of the same person.
+ * <p>
+ * Comparing all pairs is quadratic, so patients are first grouped into blocks by normalized last name, birth year
+ * and email domain with one sort, and only patients of the same block are compared. Two patients of a block are
+ * the same person if they have the same date of birth and their first names have a Jaro-Winkler similarity of at
+ * least hospital.deduplication.threshold. Blocks are scored in parallel on a fork-join pool.
+ * <p>
+ * Merges are written in transactions of hospital.deduplication.window blocks, together with the progress of the
+ * {@link DeduplicationRun}. A run that was interrupted is resumed after its last merged block.
+ */
+
+@Service
+public class PatientDeduplicationService {
+    private static final Logger log = LoggerFactory.getLogger(PatientDeduplicationService.class);
+    public static final int MAX_REPORTED_MERGES = 1000;
+    private static final int FETCH_SIZE = 1000;
+    private static final int BLOCKS_PER_TASK = 64;
+    private static final String SELECT_CANDIDATES = "select id, first_name, last_name, email, date_of_birth "
+            + "from Patients where last_name is not null and date_of_birth is not null";
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+    @Autowired
+    private PatientRepository patientRepository;
+    @Autowired
+    private PatientService patientService;
+    @Autowired
+    private DiagnosisHistoryService diagnosisHistoryService;
+    @Autowired
+    private DeduplicationRunRepository deduplicationRunRepository;
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    @Value("${hospital.deduplication.threshold:0.92}")
+    private double threshold;
+    @Value("${hospital.deduplication.window:1000}")
+    private int window;
+    @Value("${hospital.deduplication.max-block-size:5000}")
+    private int maxBlockSize;
+
+    /**
+     * A patient as seen by the deduplication, with its blocking key and normalized first name.
+     */
+    private record Candidate(int id, String blockKey, String firstName, LocalDate dateOfBirth) {
+    }
+
+    /**
+     * The candidates of one block, a range of the sorted candidates.
+     */
+    private record Block(int from, int to) {
+    }
+
+    private record Scores(long comparisons, List<PatientMerge> merges) {
+    }
+
+    /**
+     * Runs the deduplication over all patients, or resumes the last interrupted run.
+     *
+     * @return the merges and statistics of the run
+     */
+
+    public synchronized DeduplicationReport deduplicate() {
+        long start = System.nanoTime();
+        TransactionTemplate transaction = new TransactionTemplate(transactionManager);
+        Optional<DeduplicationRun> interrupted = deduplicationRunRepository.findFirstByFinishedAtIsNullOrderByIdDesc();
+        DeduplicationRun run = interrupted.orElseGet(() ->
+                transaction.execute(status -> deduplicationRunRepository.save(new DeduplicationRun(Instant.now()))));
+        if (interrupted.isPresent()) {
+            log.info("Resuming deduplication run {} after block {}", run.getId(), run.getLastBlockKey());
+        }
+
+        Candidate[] candidates = loadCandidates();
+        Arrays.parallelSort(candidates, Comparator.comparing(Candidate::blockKey).thenComparingInt(Candidate::id));
+        List<Block> blocks = blocks(candidates, run.getLastBlockKey());
+
+        List<PatientMerge> reported = new ArrayList<>();
+        for (int from = 0; from < blocks.size(); from += window) {
+            List<Block> windowBlocks = blocks.subList(from, Math.min(from + window, blocks.size()));
+            Scores scores = ForkJoinPool.commonPool().invoke(new ScoreTask(candidates, windowBlocks, threshold));
+            String lastBlockKey = candidates[windowBlocks.get(windowBlocks.size() - 1).from()].blockKey();
+            DeduplicationRun current = run;
+            run = transaction.execute(status -> {
+                long merged = 0;
+                for (PatientMerge merge : scores.merges()) {
+                    if (merge(merge)) {
+                        merged++;
+                        if (reported.size() < MAX_REPORTED_MERGES) {
+                            reported.add(merge);
+                        }
+                    }
+                }
+                current.advance(lastBlockKey, scores.comparisons(), merged);
+                return deduplicationRunRepository.save(current);
+            });
+        }
+        run.setFinishedAt(Instant.now());
+        DeduplicationRun finished = run;
+        run = transaction.execute(status -> deduplicationRunRepository.save(finished));
+
+        DeduplicationReport report = new DeduplicationReport(run.getId(), interrupted.isPresent(), candidates.length,
+                blocks.size(), run.getComparisons(), run.getMerged(), reported,
+                (System.nanoTime() - start) / 1_000_000);
+        log.info("Deduplication run {} compared {} pairs in {} blocks of {} patients and merged {} patients in {} ms",
+                report.runId(), report.comparisons(), report.blocks(), report.patients(), report.merged(),
+                report.elapsedMillis());
+        return report;
+    }
+
+    /**
+     * Reads the blockable patients with a forward-only cursor, without creating entities.
+     */
+    private Candidate[] loadCandidates() {
+        List<Candidate> candidates = new ArrayList<>();
+        jdbcTemplate.query(connection -> {
+            PreparedStatement statement = connection.prepareStatement(SELECT_CANDIDATES,
+                    ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY);
+            statement.setFetchSize(FETCH_SIZE);
+            return statement;
+        }, (RowCallbackHandler) resultSet -> {
+            LocalDate dateOfBirth = resultSet.getDate(5).toLocalDate();
+            String blockKey = NameSimilarity.normalize(resultSet.getString(3)) + '|' + dateOfBirth.getYear() + '|'
+                    + emailDomain(resultSet.getString(4));
+            candidates.add(new Candidate(resultSet.getInt(1), blockKey,
+                    NameSimilarity.normalize(resultSet.getString(2)), dateOfBirth));
+        });
+        return candidates.toArray(Candidate[]::new);
+    }
+
+    private static String emailDomain(String email) {
+        int at = email == null ? -1 : email.lastIndexOf('@');
+        return at < 0 ? "" : email.substring(at + 1).toLowerCase(Locale.ROOT);
+    }
+
+    /**
+     * Splits the sorted candidates into blocks of equal keys. Single patients cannot have duplicates and blocks
+     * up to the key of the last merged block have already been processed, so both are left out.
+     */
+    private List<Block> blocks(Candidate[] candidates, String lastBlockKey) {
+        List<Block> blocks = new ArrayList<>();
+        int from = 0;
+        while (from < candidates.length) {
+            String key = candidates[from].blockKey();
+            int to = from + 1;
+            while (to < candidates.length && candidates[to].blockKey().equals(key)) {
+                to++;
+            }
+            if (to - from > maxBlockSize) {
+                log.warn("Skipping block {} with {} patients, it exceeds the maximum block size", key, to - from);
+            } else if (to - from > 1 && (lastBlockKey == null || key.compareTo(lastBlockKey) > 0)) {
+                blocks.add(new Block(from, to));
+            }
+            from = to;
+        }
+        return blocks;
+    }
+
+    /**
+     * Merges a duplicate into the surviving patient: the survivor is registered at all hospitals of the duplicate
+     * and takes over its diagnosis if it has none, then the duplicate is deleted. Patients deleted since they
+     * were read are skipped.
+     */
+    private boolean merge(PatientMerge merge) {
+        if (!patientRepository.existsById(merge.survivorId()) || !patientRepository.existsById(merge.duplicateId())) {
+            return false;
+        }
+        for (int hospitalId : patientRepository.findHospitalIds(merge.duplicateId())) {
+            patientRepository.register(merge.survivorId(), hospitalId);
+        }
+        if (diagnosisHistoryService.findLatestDiagnosis(merge.survivorId()) == null) {
+            String diagnosis = diagnosisHistoryService.findLatestDiagnosis(merge.duplicateId());
+            if (diagnosis != null) {
+                diagnosisHistoryService.appendDiagnosis(merge.survivorId(), diagnosis);
+            }
+        }
+        patientService.deletePatientById(merge.duplicateId());
+        return true;
+    }
+
+    /**
+     * Scores a range of blocks, splitting it in halves until a task has at most {@link #BLOCKS_PER_TASK} blocks.
+     * The merges are returned in block order.
+     */
+    private static final class ScoreTask extends RecursiveTask<Scores> {
+        private final Candidate[] candidates;
+        private final List<Block> blocks;
+        private final double threshold;
+
+        ScoreTask(Candidate[] candidates, List<Block> blocks, double threshold) {
+            this.candidates = candidates;
+            this.blocks = blocks;
+            this.threshold = threshold;
+        }
+
+        @Override
+        protected Scores compute() {
+            if (blocks.size() > BLOCKS_PER_TASK) {
+                int middle = blocks.size() / 2;
+                ScoreTask left = new ScoreTask(candidates, blocks.subList(0, middle), threshold);
+                ScoreTask right = new ScoreTask(candidates, blocks.subList(middle, blocks.size()), threshold);
+                left.fork();
+                Scores rightScores = right.compute();
+                Scores leftScores = left.join();
+                List<PatientMerge> merges = new ArrayList<>(leftScores.merges());
+                merges.addAll(rightScores.merges());
+                return new Scores(leftScores.comparisons() + rightScores.comparisons(), merges);
+            }
+            long comparisons = 0;
+            List<PatientMerge> merges = new ArrayList<>();
+            for (Block block : blocks) {
+                comparisons += score(block, merges);
+            }
+            return new Scores(comparisons, merges);
+        }
+
+        /**
+         * Links all matching pairs of a block with a union-find over the block positions. The root of every
+         * cluster is its smallest position, i.e. the patient with the smallest ID, which survives.
+         */
+        private long score(Block block, List<PatientMerge> merges) {
+            int size = block.to() - block.from();
+            int[] parent = new int[size];
+            for (int i = 0; i < size; i++) {
+                parent[i] = i;
+            }
+            for (int i = 0; i < size; i++) {
+                Candidate first = candidates[block.from() + i];
+                for (int j = i + 1; j < size; j++) {
+                    Candidate second = candidates[block.from() + j];
+                    if (first.dateOfBirth().equals(second.dateOfBirth())
+                            && NameSimilarity.jaroWinkler(first.firstName(), second.firstName()) >= threshold) {
+                        int firstRoot = root(parent, i);
+                        int secondRoot = root(parent, j);
+                        parent[Math.max(firstRoot, secondRoot)] = Math.min(firstRoot, secondRoot);
+                    }
+                }
+            }
+            for (int i = 0; i < size; i++) {
+                int survivor = root(parent, i);
+                if (survivor != i) {
+                    Candidate kept = candidates[block.from() + survivor];
+                    Candidate duplicate = candidates[block.from() + i];
+                    merges.add(new PatientMerge(kept.id(), duplicate.id(),
+                            NameSimilarity.jaroWinkler(kept.firstName(), duplicate.firstName())));
+                }
+            }
+            return (long) size * (size - 1) / 2;
+        }
+
+        private static int root(int[] parent, int position) {
+            while (parent[position] != position) {
+                parent[position] = parent[parent[position]];
+                position = parent[position];
+            }
+            return position;
+        }
+    }
+}
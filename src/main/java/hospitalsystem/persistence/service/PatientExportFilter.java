@@ -0,0 +1,19 @@
+package hospitalsystem.persistence.service;
+
+import java.util.Date;
+
+/**
+ * Selects the patients of an export. All criteria are optional.
+ *
+ * @param hospitalId       only export patients registered at this hospital
+ * @param bornFrom         only export patients born on or after this date
+ * @param bornTo           only export patients born on or before this date
+ * @param includeHospitals whether to add the IDs of the hospitals of every patient
+ */
+
+public record PatientExportFilter(Integer hospitalId, Date bornFrom, Date bornTo, boolean includeHospitals) {
+
+    public static PatientExportFilter all() {
+        return new PatientExportFilter(null, null, null, false);
+    }
+}
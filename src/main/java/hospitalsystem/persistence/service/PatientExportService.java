@@ -0,0 +1,447 @@
+package hospitalsystem.persistence.service;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.io.SerializedString;
+import hospitalsystem.persistence.sharding.ShardContext;
+import hospitalsystem.persistence.sharding.ShardRoutingDataSource;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.PreparedStatementCreator;
+import org.springframework.jdbc.core.RowCallbackHandler;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.sql.Date;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Exports patients as CSV or NDJSON. Rows are read with a forward-only JDBC cursor and written to the output as
+ * they arrive, without creating entities or holding more than one patient in memory, so the memory footprint does
+ * not depend on the number of exported patients.
+ * <p>
+ * When the data is partitioned, the patients are read from every shard in pages of IDs instead, and at most one
+ * page of patients is held in memory.
+ */
+
+@Service
+public class PatientExportService {
+    private static final Logger log = LoggerFactory.getLogger(PatientExportService.class);
+    private static final int FETCH_SIZE = 1000;
+    private static final int BUFFER_SIZE = 64 * 1024;
+    private static final JsonFactory JSON = new JsonFactory();
+    private static final String[] COLUMNS = {"id", "first_name", "last_name", "email", "date_of_birth", "sex",
+            "address", "phone", "diagnosis"};
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    /**
+     * Writes the selected patients, ordered by ID, to the given stream. The stream is flushed but not closed.
+     *
+     * @param filter the patients to export
+     * @param format the output format
+     * @param output the stream to write to
+     * @return the number of exported patients and the throughput of the export
+     * @throws IOException if writing to the stream fails
+     */
+
+    public ExportResult exportPatients(PatientExportFilter filter, ExportFormat format, OutputStream output)
+            throws IOException {
+        long start = System.nanoTime();
+        Writer writer = new BufferedWriter(new OutputStreamWriter(output, StandardCharsets.UTF_8), BUFFER_SIZE);
+        RowWriter rows = format == ExportFormat.CSV
+                ? new CsvRowWriter(writer, filter.includeHospitals())
+                : new NdjsonRowWriter(writer, filter.includeHospitals());
+        try {
+            rows.writeHeader();
+            List<Integer> shards = ShardRoutingDataSource.shards(jdbcTemplate.getDataSource());
+            if (shards.size() == 1) {
+                new TransactionTemplate(transactionManager).executeWithoutResult(status -> export(filter, rows));
+            } else {
+                exportPages(filter, shards, rows);
+            }
+            rows.finish();
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+        writer.flush();
+
+        ExportResult result = new ExportResult(rows.count(), (System.nanoTime() - start) / 1_000_000);
+        log.info("Exported {} patients as {} in {} ms ({} rows/sec)", result.rows(), format,
+                result.elapsedMillis(), String.format("%.0f", result.rowsPerSecond()));
+        return result;
+    }
+
+    /**
+     * Exports the patients of a single database with one cursor.
+     */
+    private void export(PatientExportFilter filter, RowWriter rows) {
+        ExportedPatient patient = new ExportedPatient();
+        jdbcTemplate.query(query(filter), (RowCallbackHandler) resultSet -> {
+            int id = resultSet.getInt(1);
+            if (patient.id != id && patient.isSet()) {
+                write(rows, patient);
+            }
+            if (patient.id != id) {
+                patient.read(resultSet);
+            }
+            if (filter.includeHospitals()) {
+                int hospitalId = resultSet.getInt(COLUMNS.length + 1);
+                if (!resultSet.wasNull()) {
+                    patient.addHospital(hospitalId);
+                }
+            }
+        });
+        if (patient.isSet()) {
+            write(rows, patient);
+        }
+    }
+
+    /**
+     * Exports the patients of several shards in pages of up to FETCH_SIZE IDs. A page holds the lowest IDs after
+     * the previous page over all shards, taken from the patients or, with a hospital filter, from the registrations
+     * of the hospital, which are stored on its shard only. The patients of the page and their registrations are
+     * then read from every shard and written in ID order. Each page is read at its own time, so a patient changed
+     * during the export is written as it was when its page was read.
+     */
+    private void exportPages(PatientExportFilter filter, List<Integer> shards, RowWriter rows) {
+        int lastId = 0;
+        List<Integer> ids;
+        do {
+            ids = nextIds(filter, shards, lastId);
+            if (ids.isEmpty()) {
+                break;
+            }
+            lastId = ids.get(ids.size() - 1);
+            Map<Integer, ExportedPatient> patients = new TreeMap<>();
+            for (int shard : shards) {
+                PreparedStatementCreator query = patientsQuery(filter, ids);
+                ShardContext.call(shard, () -> jdbcTemplate.query(query, (resultSet, row) -> {
+                    ExportedPatient patient = new ExportedPatient();
+                    patient.read(resultSet);
+                    return patient;
+                })).forEach(patient -> patients.put(patient.id, patient));
+            }
+            if (filter.includeHospitals() && !patients.isEmpty()) {
+                String sql = "select patient_id, hospital_id from Patient_hospitals where patient_id in ("
+                        + placeholders(patients.size()) + ")";
+                Object[] patientIds = patients.keySet().toArray();
+                for (int shard : shards) {
+                    ShardContext.call(shard, () -> {
+                        jdbcTemplate.query(sql, (RowCallbackHandler) resultSet ->
+                                patients.get(resultSet.getInt(1)).addHospital(resultSet.getInt(2)), patientIds);
+                        return null;
+                    });
+                }
+            }
+            for (ExportedPatient patient : patients.values()) {
+                Arrays.sort(patient.hospitalIds, 0, patient.hospitalCount);
+                write(rows, patient);
+            }
+        } while (ids.size() == FETCH_SIZE);
+    }
+
+    /**
+     * Finds the IDs of the next page over all shards. The filter on the date of birth is applied here unless
+     * the IDs are taken from the registrations of a hospital.
+     */
+    private List<Integer> nextIds(PatientExportFilter filter, List<Integer> shards, int lastId) {
+        List<Object> parameters = new ArrayList<>();
+        String sql;
+        if (filter.hospitalId() != null) {
+            sql = "select patient_id from Patient_hospitals where hospital_id = ? and patient_id > ? "
+                    + "order by patient_id fetch first ? rows only";
+            parameters.add(filter.hospitalId());
+            parameters.add(lastId);
+        } else {
+            List<String> conditions = new ArrayList<>();
+            conditions.add("p.id > ?");
+            parameters.add(lastId);
+            addBornConditions(filter, conditions, parameters);
+            sql = "select p.id from Patients p where " + String.join(" and ", conditions)
+                    + " order by p.id fetch first ? rows only";
+        }
+        parameters.add(FETCH_SIZE);
+
+        List<Integer> ids = new ArrayList<>();
+        for (int shard : shards) {
+            ids.addAll(ShardContext.call(shard, () ->
+                    jdbcTemplate.queryForList(sql, Integer.class, parameters.toArray())));
+        }
+        Collections.sort(ids);
+        return ids.size() > FETCH_SIZE ? new ArrayList<>(ids.subList(0, FETCH_SIZE)) : ids;
+    }
+
+    /**
+     * Builds the query for the patients of one page, which are found on the shards they are stored on.
+     */
+    private static PreparedStatementCreator patientsQuery(PatientExportFilter filter, List<Integer> ids) {
+        List<Object> parameters = new ArrayList<>(ids);
+        List<String> conditions = new ArrayList<>();
+        conditions.add("p.id in (" + placeholders(ids.size()) + ")");
+        addBornConditions(filter, conditions, parameters);
+        return statement("select p." + String.join(", p.", COLUMNS) + " from Patients p where "
+                + String.join(" and ", conditions), parameters);
+    }
+
+    private static String placeholders(int count) {
+        return String.join(", ", Collections.nCopies(count, "?"));
+    }
+
+    private static void write(RowWriter rows, ExportedPatient patient) {
+        try {
+            rows.write(patient);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Builds the export query. Patients with several hospitals appear in consecutive rows, one per hospital; the
+     * hospital filter is an EXISTS on the (hospital_id, patient_id) index, so it does not multiply the rows.
+     */
+    private static PreparedStatementCreator query(PatientExportFilter filter) {
+        StringBuilder sql = new StringBuilder("select p.").append(String.join(", p.", COLUMNS));
+        if (filter.includeHospitals()) {
+            sql.append(", ph.hospital_id from Patients p left join Patient_hospitals ph on ph.patient_id = p.id");
+        } else {
+            sql.append(" from Patients p");
+        }
+        List<Object> parameters = new ArrayList<>();
+        List<String> conditions = new ArrayList<>();
+        if (filter.hospitalId() != null) {
+            conditions.add("exists (select 1 from Patient_hospitals f "
+                    + "where f.hospital_id = ? and f.patient_id = p.id)");
+            parameters.add(filter.hospitalId());
+        }
+        addBornConditions(filter, conditions, parameters);
+        if (!conditions.isEmpty()) {
+            sql.append(" where ").append(String.join(" and ", conditions));
+        }
+        sql.append(filter.includeHospitals() ? " order by p.id, ph.hospital_id" : " order by p.id");
+        return statement(sql.toString(), parameters);
+    }
+
+    private static void addBornConditions(PatientExportFilter filter, List<String> conditions,
+                                          List<Object> parameters) {
+        if (filter.bornFrom() != null) {
+            conditions.add("p.date_of_birth >= ?");
+            parameters.add(new Timestamp(filter.bornFrom().getTime()));
+        }
+        if (filter.bornTo() != null) {
+            // dates of birth may carry a time, so the whole last day is included
+            conditions.add("p.date_of_birth < ?");
+            parameters.add(Timestamp.valueOf(Instant.ofEpochMilli(filter.bornTo().getTime())
+                    .atZone(ZoneId.systemDefault()).toLocalDate().plusDays(1).atStartOfDay()));
+        }
+    }
+
+    private static PreparedStatementCreator statement(String sql, List<Object> parameters) {
+        return connection -> {
+            PreparedStatement statement = connection.prepareStatement(sql,
+                    ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY);
+            statement.setFetchSize(FETCH_SIZE);
+            for (int i = 0; i < parameters.size(); i++) {
+                statement.setObject(i + 1, parameters.get(i));
+            }
+            return statement;
+        };
+    }
+
+    /**
+     * The patient that is currently written. A single instance is reused for all rows.
+     */
+    private static final class ExportedPatient {
+        private int id = -1;
+        private final String[] values = new String[COLUMNS.length];
+        private int[] hospitalIds = new int[8];
+        private int hospitalCount;
+
+        void read(ResultSet resultSet) throws SQLException {
+            id = resultSet.getInt(1);
+            values[0] = Integer.toString(id);
+            for (int i = 1; i < COLUMNS.length; i++) {
+                values[i] = resultSet.getString(i + 1);
+            }
+            Date dateOfBirth = resultSet.getDate(5);
+            values[4] = dateOfBirth == null ? null : dateOfBirth.toLocalDate().toString();
+            hospitalCount = 0;
+        }
+
+        void addHospital(int hospitalId) {
+            if (hospitalCount == hospitalIds.length) {
+                hospitalIds = Arrays.copyOf(hospitalIds, hospitalCount * 2);
+            }
+            hospitalIds[hospitalCount++] = hospitalId;
+        }
+
+        boolean isSet() {
+            return id != -1;
+        }
+    }
+
+    private abstract static class RowWriter {
+        protected final Writer writer;
+        protected final boolean includeHospitals;
+        private long count;
+
+        RowWriter(Writer writer, boolean includeHospitals) {
+            this.writer = writer;
+            this.includeHospitals = includeHospitals;
+        }
+
+        void writeHeader() throws IOException {
+        }
+
+        final void write(ExportedPatient patient) throws IOException {
+            writeRow(patient);
+            count++;
+        }
+
+        abstract void writeRow(ExportedPatient patient) throws IOException;
+
+        void finish() throws IOException {
+        }
+
+        long count() {
+            return count;
+        }
+    }
+
+    /**
+     * Writes RFC 4180 CSV with a header line. The hospital IDs of a patient are joined with semicolons.
+     */
+    private static final class CsvRowWriter extends RowWriter {
+
+        CsvRowWriter(Writer writer, boolean includeHospitals) {
+            super(writer, includeHospitals);
+        }
+
+        @Override
+        void writeHeader() throws IOException {
+            writer.write(String.join(",", COLUMNS));
+            if (includeHospitals) {
+                writer.write(",hospital_ids");
+            }
+            writer.write("\r\n");
+        }
+
+        @Override
+        void writeRow(ExportedPatient patient) throws IOException {
+            for (int i = 0; i < COLUMNS.length; i++) {
+                if (i > 0) {
+                    writer.write(',');
+                }
+                writeField(patient.values[i]);
+            }
+            if (includeHospitals) {
+                writer.write(',');
+                for (int i = 0; i < patient.hospitalCount; i++) {
+                    if (i > 0) {
+                        writer.write(';');
+                    }
+                    writer.write(Integer.toString(patient.hospitalIds[i]));
+                }
+            }
+            writer.write("\r\n");
+        }
+
+        private void writeField(String value) throws IOException {
+            if (value == null) {
+                return;
+            }
+            boolean quoted = false;
+            for (int i = 0; i < value.length() && !quoted; i++) {
+                char c = value.charAt(i);
+                quoted = c == ',' || c == '"' || c == '\n' || c == '\r';
+            }
+            if (!quoted) {
+                writer.write(value);
+                return;
+            }
+            writer.write('"');
+            writer.write(value.replace("\"", "\"\""));
+            writer.write('"');
+        }
+    }
+
+    /**
+     * Writes one JSON object per line. The ID is a number, missing values are omitted.
+     */
+    private static final class NdjsonRowWriter extends RowWriter {
+        private final JsonGenerator generator;
+        private final String[] fields = new String[COLUMNS.length];
+
+        NdjsonRowWriter(Writer writer, boolean includeHospitals) throws IOException {
+            super(writer, includeHospitals);
+            generator = JSON.createGenerator(writer);
+            generator.setRootValueSeparator(new SerializedString(""));
+            for (int i = 0; i < COLUMNS.length; i++) {
+                fields[i] = toCamelCase(COLUMNS[i]);
+            }
+        }
+
+        @Override
+        void writeRow(ExportedPatient patient) throws IOException {
+            generator.writeStartObject();
+            generator.writeNumberField(fields[0], patient.id);
+            for (int i = 1; i < COLUMNS.length; i++) {
+                if (patient.values[i] != null) {
+                    generator.writeStringField(fields[i], patient.values[i]);
+                }
+            }
+            if (includeHospitals) {
+                generator.writeArrayFieldStart("hospitalIds");
+                for (int i = 0; i < patient.hospitalCount; i++) {
+                    generator.writeNumber(patient.hospitalIds[i]);
+                }
+                generator.writeEndArray();
+            }
+            generator.writeEndObject();
+            generator.writeRaw('\n');
+        }
+
+        @Override
+        void finish() throws IOException {
+            generator.flush();
+        }
+
+        private static String toCamelCase(String column) {
+            StringBuilder field = new StringBuilder(column.length());
+            boolean upper = false;
+            for (char c : column.toCharArray()) {
+                if (c == '_') {
+                    upper = true;
+                } else {
+                    field.append(upper ? Character.toUpperCase(c) : c);
+                    upper = false;
+                }
+            }
+            return field.toString();
+        }
+    }
+}
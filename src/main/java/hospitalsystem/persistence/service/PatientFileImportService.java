@@ -0,0 +1,527 @@
+package hospitalsystem.persistence.service;
+
+import hospitalsystem.persistence.entity.Hospital;
+import hospitalsystem.persistence.entity.Patient;
+import hospitalsystem.persistence.projection.PatientIdentity;
+import hospitalsystem.persistence.repository.HospitalRepository;
+import hospitalsystem.persistence.repository.PatientRepository;
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.PersistenceContext;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDate;
+import java.time.ZoneId;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.function.Consumer;
+import java.util.regex.Pattern;
+import java.util.stream.Collectors;
+
+/**
+ * Imports patients and their hospital registrations from CSV files, such as the ones written by
+ * {@link PatientExportService}. The file needs a header line with the columns first_name, last_name, email and
+ * date_of_birth (yyyy-MM-dd); sex, address, phone and hospital_ids (separated by semicolons) are optional and any
+ * other column is ignored.
+ * <p>
+ * The import is a pipeline: one thread reads the file through a large channel buffer and cuts it into blocks of
+ * whole records, the blocks are parsed and validated in parallel on all cores, and the calling thread persists the
+ * valid records block by block, one transaction per block. Patients are identified by their email, so records whose
+ * email already exists are skipped and only their registrations are added. Importing the same file again, also
+ * after an aborted run, therefore creates no duplicates.
+ */
+
+@Service
+public class PatientFileImportService {
+    private static final Logger log = LoggerFactory.getLogger(PatientFileImportService.class);
+
+    /**
+     * Number of rejected records whose errors are kept in the report. All rejected records are counted.
+     */
+    public static final int MAX_REPORTED_ERRORS = 1000;
+
+    private static final int READ_BUFFER_SIZE = 8 * 1024 * 1024;
+    private static final int RECORDS_PER_BLOCK = 2000;
+    private static final int MAX_FIELD_LENGTH = 255;
+    private static final int MAX_RECORD_LENGTH = 64 * 1024;
+    private static final Pattern EMAIL = Pattern.compile("[^@\\s]+@[^@\\s]+\\.[^@\\s]+");
+    private static final ParsedBlock END = new ParsedBlock(0, List.of(), List.of());
+
+    @PersistenceContext
+    private EntityManager entityManager;
+    @Autowired
+    private PatientRepository patientRepository;
+    @Autowired
+    private HospitalRepository hospitalRepository;
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+    @Value("${spring.jpa.properties.hibernate.jdbc.batch_size:50}")
+    private int batchSize;
+
+    private record Columns(int count, int firstName, int lastName, int email, int dateOfBirth, int sex, int address,
+                           int phone, int hospitalIds) {
+    }
+
+    private record ValidRecord(long line, Patient patient, int[] hospitalIds) {
+    }
+
+    private record ParsedBlock(long records, List<ValidRecord> valid, List<ImportError> errors) {
+    }
+
+    private record BlockOutcome(long imported, long skipped, long registrations) {
+    }
+
+    /**
+     * Imports all patients of a CSV file.
+     *
+     * @param file the CSV file
+     * @return the report of the import
+     * @throws RuntimeException if the file cannot be read or has no valid header
+     */
+
+    public FileImportReport importFile(Path file) {
+        return importFile(file, report -> {
+        });
+    }
+
+    /**
+     * Imports all patients of a CSV file and reports the progress after every persisted block.
+     *
+     * @param file     the CSV file
+     * @param progress receives the intermediate reports
+     * @return the report of the import
+     * @throws RuntimeException if the file cannot be read or has no valid header
+     */
+
+    public FileImportReport importFile(Path file, Consumer<FileImportReport> progress) {
+        Progress report = new Progress();
+        Set<Integer> hospitalIds = hospitalRepository.findAll().stream()
+                .map(Hospital::getId)
+                .collect(Collectors.toUnmodifiableSet());
+        int parsers = Runtime.getRuntime().availableProcessors();
+        ExecutorService executor = Executors.newFixedThreadPool(parsers, runnable -> {
+            Thread thread = new Thread(runnable, "patient-import-parser");
+            thread.setDaemon(true);
+            return thread;
+        });
+        // bounds the blocks that are read ahead of the persistence stage
+        BlockingQueue<CompletableFuture<ParsedBlock>> blocks = new ArrayBlockingQueue<>(parsers * 2);
+        Thread reader = new Thread(() -> readBlocks(file, hospitalIds, executor, blocks), "patient-import-reader");
+        reader.setDaemon(true);
+        reader.start();
+        try {
+            for (ParsedBlock block = blocks.take().get(); block != END; block = blocks.take().get()) {
+                persist(block, report);
+                progress.accept(report.snapshot());
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("Import of " + file + " was interrupted", e);
+        } catch (ExecutionException e) {
+            throw new RuntimeException("Import of " + file + " failed: " + e.getCause().getMessage(), e.getCause());
+        } finally {
+            reader.interrupt();
+            executor.shutdownNow();
+        }
+
+        FileImportReport result = report.snapshot();
+        log.info("Imported {} of {} records from {} in {} ms ({} records/sec): {} skipped, {} rejected, "
+                        + "{} registrations", result.imported(), result.records(), file, result.elapsedMillis(),
+                String.format("%.0f", result.recordsPerSecond()), result.skipped(), result.rejected(),
+                result.registrations());
+        return result;
+    }
+
+    /**
+     * Reads the file and submits a parse task for every block of {@value #RECORDS_PER_BLOCK} records. Records end at
+     * line breaks outside of quotes, so quoted fields may contain line breaks. A record that is still open after
+     * {@value #MAX_RECORD_LENGTH} bytes, usually because of a stray quote such as in O"Brien, is rejected as ending
+     * at its first line break and reading resumes after it, so the buffer never has to hold the rest of the file.
+     * Ends the queue with {@link #END}, or with the failure if the file cannot be read.
+     */
+    private void readBlocks(Path file, Set<Integer> hospitalIds, ExecutorService executor,
+                            BlockingQueue<CompletableFuture<ParsedBlock>> blocks) {
+        try {
+            try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+                byte[] buffer = new byte[READ_BUFFER_SIZE];
+                int length = 0;
+                int scanned = 0;
+                int blockStart = 0;
+                int records = 0;
+                int recordStart = 0;
+                long line = 1;
+                int lineBreaks = 0;
+                int recordLineBreaks = 0;
+                boolean quoted = false;
+                boolean discarding = false;
+                Columns columns = null;
+                while (true) {
+                    if (length == buffer.length) {
+                        if (blockStart > 0) {
+                            System.arraycopy(buffer, blockStart, buffer, 0, length - blockStart);
+                            length -= blockStart;
+                            scanned -= blockStart;
+                            recordStart -= blockStart;
+                            blockStart = 0;
+                        } else {
+                            buffer = Arrays.copyOf(buffer, buffer.length * 2);
+                        }
+                    }
+                    int read = channel.read(ByteBuffer.wrap(buffer, length, buffer.length - length));
+                    if (read < 0) {
+                        break;
+                    }
+                    length += read;
+                    for (; scanned < length; scanned++) {
+                        byte b = buffer[scanned];
+                        if (discarding) {
+                            // the rejected record continues up to its first line break
+                            if (b == '\n') {
+                                discarding = false;
+                                blockStart = scanned + 1;
+                                recordStart = scanned + 1;
+                            }
+                            continue;
+                        }
+                        if (b == '"') {
+                            quoted = !quoted;
+                        } else if (b == '\n') {
+                            lineBreaks++;
+                            if (!quoted) {
+                                recordStart = scanned + 1;
+                                recordLineBreaks = lineBreaks;
+                            }
+                            if (!quoted && (columns == null || ++records == RECORDS_PER_BLOCK)) {
+                                byte[] block = Arrays.copyOfRange(buffer, blockStart, scanned + 1);
+                                if (columns == null) {
+                                    columns = columns(block);
+                                } else {
+                                    submit(block, line, columns, hospitalIds, executor, blocks);
+                                }
+                                line += lineBreaks;
+                                lineBreaks = 0;
+                                recordLineBreaks = 0;
+                                records = 0;
+                                blockStart = scanned + 1;
+                            }
+                        }
+                        if (quoted && scanned - recordStart >= MAX_RECORD_LENGTH) {
+                            if (columns == null) {
+                                throw new RuntimeException("The header of " + file + " is longer than "
+                                        + MAX_RECORD_LENGTH + " bytes");
+                            }
+                            long recordLine = line + recordLineBreaks;
+                            if (recordStart > blockStart) {
+                                submit(Arrays.copyOfRange(buffer, blockStart, recordStart), line, columns, hospitalIds,
+                                        executor, blocks);
+                            }
+                            blocks.put(CompletableFuture.completedFuture(new ParsedBlock(1, List.of(),
+                                    List.of(new ImportError(recordLine, "Record is longer than " + MAX_RECORD_LENGTH
+                                            + " bytes, probably because of an unbalanced quote")))));
+                            int end = recordStart;
+                            while (end < scanned && buffer[end] != '\n') {
+                                end++;
+                            }
+                            quoted = false;
+                            records = 0;
+                            line = recordLine + 1;
+                            lineBreaks = 0;
+                            recordLineBreaks = 0;
+                            if (end < scanned) {
+                                scanned = end;
+                                blockStart = end + 1;
+                                recordStart = end + 1;
+                            } else {
+                                discarding = true;
+                                blockStart = scanned + 1;
+                                recordStart = scanned + 1;
+                            }
+                        }
+                    }
+                }
+                byte[] rest = Arrays.copyOfRange(buffer, blockStart, length);
+                if (columns == null) {
+                    columns(rest);
+                } else if (rest.length > 0) {
+                    submit(rest, line, columns, hospitalIds, executor, blocks);
+                }
+            }
+            blocks.put(CompletableFuture.completedFuture(END));
+        } catch (InterruptedException e) {
+            // the persistence stage failed and stopped taking blocks
+        } catch (IOException | RuntimeException e) {
+            RuntimeException failure = e instanceof IOException io
+                    ? new UncheckedIOException(io) : (RuntimeException) e;
+            try {
+                blocks.put(CompletableFuture.failedFuture(failure));
+            } catch (InterruptedException interrupted) {
+                // the persistence stage is gone already
+            }
+        }
+    }
+
+    private void submit(byte[] block, long line, Columns columns, Set<Integer> hospitalIds, ExecutorService executor,
+                        BlockingQueue<CompletableFuture<ParsedBlock>> blocks) throws InterruptedException {
+        blocks.put(CompletableFuture.supplyAsync(() -> parse(block, line, columns, hospitalIds), executor));
+    }
+
+    private static Columns columns(byte[] header) {
+        List<List<String>> records = new ArrayList<>();
+        parseRecords(new String(header, StandardCharsets.UTF_8).replace("\uFEFF", ""), 1,
+                (fields, line) -> records.add(new ArrayList<>(fields)));
+        if (records.isEmpty()) {
+            throw new RuntimeException("Import file is empty");
+        }
+        Map<String, Integer> indexes = new HashMap<>();
+        List<String> names = records.get(0);
+        for (int i = 0; i < names.size(); i++) {
+            indexes.putIfAbsent(names.get(i).toLowerCase(Locale.ROOT).replace("_", "").trim(), i);
+        }
+        for (String required : List.of("firstname", "lastname", "email", "dateofbirth")) {
+            if (!indexes.containsKey(required)) {
+                throw new RuntimeException("Import file has no column " + required + " in its header " + names);
+            }
+        }
+        return new Columns(names.size(), indexes.get("firstname"), indexes.get("lastname"), indexes.get("email"),
+                indexes.get("dateofbirth"), indexes.getOrDefault("sex", -1), indexes.getOrDefault("address", -1),
+                indexes.getOrDefault("phone", -1), indexes.getOrDefault("hospitalids", -1));
+    }
+
+    private static ParsedBlock parse(byte[] block, long firstLine, Columns columns, Set<Integer> hospitalIds) {
+        List<ValidRecord> valid = new ArrayList<>(RECORDS_PER_BLOCK);
+        List<ImportError> errors = new ArrayList<>();
+        long records = parseRecords(new String(block, StandardCharsets.UTF_8), firstLine, (fields, line) -> {
+            try {
+                valid.add(validate(fields, line, columns, hospitalIds));
+            } catch (IllegalArgumentException e) {
+                errors.add(new ImportError(line, e.getMessage()));
+            }
+        });
+        return new ParsedBlock(records, valid, errors);
+    }
+
+    private interface RecordHandler {
+        void accept(List<String> fields, long line);
+    }
+
+    /**
+     * Splits RFC 4180 CSV text into records. Blank lines are skipped.
+     *
+     * @return the number of records
+     */
+    private static long parseRecords(String text, long firstLine, RecordHandler handler) {
+        List<String> fields = new ArrayList<>();
+        StringBuilder field = new StringBuilder();
+        boolean quoted = false;
+        long line = firstLine;
+        long recordLine = firstLine;
+        long records = 0;
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            if (quoted) {
+                if (c != '"') {
+                    field.append(c);
+                    line += c == '\n' ? 1 : 0;
+                } else if (i + 1 < text.length() && text.charAt(i + 1) == '"') {
+                    field.append('"');
+                    i++;
+                } else {
+                    quoted = false;
+                }
+            } else if (c == '"') {
+                quoted = true;
+            } else if (c == ',') {
+                fields.add(field.toString());
+                field.setLength(0);
+            } else if (c == '\n') {
+                fields.add(field.toString());
+                field.setLength(0);
+                if (fields.size() > 1 || !fields.get(0).isBlank()) {
+                    handler.accept(fields, recordLine);
+                    records++;
+                }
+                fields.clear();
+                recordLine = ++line;
+            } else if (c != '\r') {
+                field.append(c);
+            }
+        }
+        if (!fields.isEmpty() || !field.toString().isBlank()) {
+            fields.add(field.toString());
+            handler.accept(fields, recordLine);
+            records++;
+        }
+        return records;
+    }
+
+    private static ValidRecord validate(List<String> fields, long line, Columns columns, Set<Integer> hospitalIds) {
+        if (fields.size() != columns.count()) {
+            throw new IllegalArgumentException("Expected " + columns.count() + " fields but found " + fields.size());
+        }
+        String email = field(fields, columns.email(), "email", true);
+        if (!EMAIL.matcher(email).matches()) {
+            throw new IllegalArgumentException("Invalid email " + email);
+        }
+        String dateOfBirth = field(fields, columns.dateOfBirth(), "date_of_birth", true);
+        LocalDate date;
+        try {
+            date = LocalDate.parse(dateOfBirth);
+        } catch (DateTimeParseException e) {
+            throw new IllegalArgumentException("Invalid date_of_birth " + dateOfBirth + ", expected yyyy-MM-dd");
+        }
+        if (date.isAfter(LocalDate.now())) {
+            throw new IllegalArgumentException("date_of_birth " + dateOfBirth + " is in the future");
+        }
+
+        Patient patient = new Patient(field(fields, columns.firstName(), "first_name", true),
+                field(fields, columns.lastName(), "last_name", true),
+                Date.from(date.atStartOfDay(ZoneId.systemDefault()).toInstant()), email);
+        patient.setSex(field(fields, columns.sex(), "sex", false));
+        patient.setAddress(field(fields, columns.address(), "address", false));
+        patient.setPhone(field(fields, columns.phone(), "phone", false));
+
+        String hospitals = field(fields, columns.hospitalIds(), "hospital_ids", false);
+        int[] ids = new int[0];
+        if (hospitals != null) {
+            String[] values = hospitals.split(";");
+            ids = new int[values.length];
+            for (int i = 0; i < values.length; i++) {
+                try {
+                    ids[i] = Integer.parseInt(values[i].trim());
+                } catch (NumberFormatException e) {
+                    throw new IllegalArgumentException("Invalid hospital ID " + values[i]);
+                }
+                if (!hospitalIds.contains(ids[i])) {
+                    throw new IllegalArgumentException("Unknown hospital " + ids[i]);
+                }
+            }
+        }
+        return new ValidRecord(line, patient, ids);
+    }
+
+    private static String field(List<String> fields, int index, String name, boolean required) {
+        String value = index < 0 ? null : fields.get(index).trim();
+        if (value == null || value.isEmpty()) {
+            if (required) {
+                throw new IllegalArgumentException("Missing " + name);
+            }
+            return null;
+        }
+        if (value.length() > MAX_FIELD_LENGTH) {
+            throw new IllegalArgumentException(name + " is longer than " + MAX_FIELD_LENGTH + " characters");
+        }
+        return value;
+    }
+
+    private void persist(ParsedBlock block, Progress report) {
+        report.records += block.records();
+        block.errors().forEach(report::reject);
+        if (block.valid().isEmpty()) {
+            return;
+        }
+        try {
+            BlockOutcome outcome = new TransactionTemplate(transactionManager)
+                    .execute(status -> persistRecords(block.valid()));
+            report.imported += outcome.imported();
+            report.skipped += outcome.skipped();
+            report.registrations += outcome.registrations();
+        } catch (RuntimeException e) {
+            log.warn("Could not save the block starting at line {}", block.valid().get(0).line(), e);
+            block.valid().forEach(record -> report.reject(new ImportError(record.line(),
+                    "Not saved: " + e.getMessage())));
+        }
+    }
+
+    /**
+     * Persists the new patients of a block in JDBC batches and registers all patients of the block at their
+     * hospitals. Existing patients are looked up by email with one query, and a record repeating an email of an
+     * earlier record of the same block is handled like an existing patient.
+     */
+    private BlockOutcome persistRecords(List<ValidRecord> records) {
+        Set<String> emails = new LinkedHashSet<>();
+        records.forEach(record -> emails.add(record.patient().getEmail()));
+        Map<String, Integer> patientIds = new HashMap<>();
+        for (PatientIdentity existing : patientRepository.findByEmailIn(emails)) {
+            patientIds.put(existing.getEmail(), existing.getId());
+        }
+
+        long imported = 0;
+        long skipped = 0;
+        Map<Integer, Set<Integer>> patientsByHospital = new LinkedHashMap<>();
+        for (ValidRecord record : records) {
+            Patient patient = record.patient();
+            Integer patientId = patientIds.get(patient.getEmail());
+            if (patientId == null) {
+                entityManager.persist(patient);
+                patientId = patient.getId();
+                patientIds.put(patient.getEmail(), patientId);
+                if (++imported % batchSize == 0) {
+                    entityManager.flush();
+                    entityManager.clear();
+                }
+            } else {
+                skipped++;
+            }
+            for (int hospitalId : record.hospitalIds()) {
+                patientsByHospital.computeIfAbsent(hospitalId, id -> new LinkedHashSet<>()).add(patientId);
+            }
+        }
+        entityManager.flush();
+        entityManager.clear();
+
+        long registrations = 0;
+        for (Map.Entry<Integer, Set<Integer>> hospital : patientsByHospital.entrySet()) {
+            registrations += patientRepository.registerAll(hospital.getValue(), hospital.getKey());
+        }
+        return new BlockOutcome(imported, skipped, registrations);
+    }
+
+    private static final class Progress {
+        private final long start = System.nanoTime();
+        private final List<ImportError> errors = new ArrayList<>();
+        private long records;
+        private long imported;
+        private long skipped;
+        private long rejected;
+        private long registrations;
+
+        void reject(ImportError error) {
+            rejected++;
+            if (errors.size() < MAX_REPORTED_ERRORS) {
+                errors.add(error);
+            }
+        }
+
+        FileImportReport snapshot() {
+            return new FileImportReport(records, imported, skipped, rejected, registrations, List.copyOf(errors),
+                    (System.nanoTime() - start) / 1_000_000);
+        }
+    }
+}
@@ -0,0 +1,81 @@
+package hospitalsystem.persistence.service;
+
+import hospitalsystem.persistence.entity.Patient;
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.PersistenceContext;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.Iterator;
+import java.util.stream.Stream;
+
+@Service
+public class PatientImportService {
+    private static final Logger log = LoggerFactory.getLogger(PatientImportService.class);
+
+    /**
+     * Number of JDBC batches that are written before the transaction is committed.
+     */
+    private static final int BATCHES_PER_COMMIT = 20;
+
+    @PersistenceContext
+    private EntityManager entityManager;
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+    @Value("${spring.jpa.properties.hibernate.jdbc.batch_size:50}")
+    private int batchSize;
+
+    /**
+     * Persists all patients of the given stream in JDBC batches. The stream is closed afterwards.
+     *
+     * @param patients the new patients to persist
+     * @return the number of persisted rows and the throughput of the import
+     */
+
+    public ImportResult importPatients(Stream<Patient> patients) {
+        try (patients) {
+            return importPatients(patients.iterator());
+        }
+    }
+
+    /**
+     * Persists all patients of the given iterator in JDBC batches. The persistence context is flushed and
+     * cleared after every batch, so the memory footprint does not grow with the number of rows, and the
+     * transaction is committed every {@value #BATCHES_PER_COMMIT} batches.
+     *
+     * @param patients the new patients to persist
+     * @return the number of persisted rows and the throughput of the import
+     */
+
+    public ImportResult importPatients(Iterator<Patient> patients) {
+        TransactionTemplate transaction = new TransactionTemplate(transactionManager);
+        long start = System.nanoTime();
+        long rows = 0;
+        while (patients.hasNext()) {
+            Integer persisted = transaction.execute(status -> persistBatches(patients));
+            rows += persisted;
+        }
+        ImportResult result = new ImportResult(rows, (System.nanoTime() - start) / 1_000_000);
+        log.info("Imported {} patients in {} ms ({} rows/sec)",
+                result.rows(), result.elapsedMillis(), String.format("%.0f", result.rowsPerSecond()));
+        return result;
+    }
+
+    private int persistBatches(Iterator<Patient> patients) {
+        int persisted = 0;
+        for (int batch = 0; batch < BATCHES_PER_COMMIT && patients.hasNext(); batch++) {
+            for (int i = 0; i < batchSize && patients.hasNext(); i++) {
+                entityManager.persist(patients.next());
+                persisted++;
+            }
+            entityManager.flush();
+            entityManager.clear();
+        }
+        return persisted;
+    }
+}
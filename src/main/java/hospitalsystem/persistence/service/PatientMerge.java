@@ -0,0 +1,12 @@
+package hospitalsystem.persistence.service;
+
+/**
+ * A patient that was merged into another patient by a deduplication run.
+ *
+ * @param survivorId  the ID of the patient that was kept
+ * @param duplicateId the ID of the patient that was merged and deleted
+ * @param score       the similarity of the first names, between 0 and 1
+ */
+
+public record PatientMerge(int survivorId, int duplicateId, double score) {
+}
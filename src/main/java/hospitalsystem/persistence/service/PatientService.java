@@ -3,19 +3,55 @@ package hospitalsystem.persistence.service;
 import hospitalsystem.persistence.entity.Hospital;
 import hospitalsystem.persistence.entity.Patient;
 import hospitalsystem.persistence.repository.PatientRepository;
+import hospitalsystem.persistence.search.PatientSearchHit;
+import hospitalsystem.persistence.search.PatientSearchIndex;
+import hospitalsystem.persistence.sharding.HospitalShardKey;
+import hospitalsystem.persistence.sharding.PageLimit;
+import hospitalsystem.persistence.sharding.PatientShardKey;
+import hospitalsystem.persistence.sharding.ScatterGather;
+import hospitalsystem.persistence.sharding.ShardContext;
+import hospitalsystem.persistence.sharding.ShardDirectory;
+import hospitalsystem.persistence.sharding.SingleShard;
+import hospitalsystem.persistence.statistics.HospitalStatistics;
+import hospitalsystem.persistence.support.AfterCommit;
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.PersistenceContext;
 import jakarta.transaction.Transactional;
+import org.hibernate.Hibernate;
+import org.springframework.beans.factory.ObjectProvider;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.domain.Limit;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Slice;
 import org.springframework.stereotype.Service;
 
+import java.util.Collection;
 import java.util.Date;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
 import java.util.Set;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
 
 @Service
 public class PatientService {
     @Autowired
     private PatientRepository patientRepository;
+    @PersistenceContext
+    private EntityManager entityManager;
+    @Autowired
+    private PatientSearchIndex patientSearchIndex;
+    @Autowired
+    private OptimisticLockRetry optimisticLockRetry;
+    @Autowired
+    private DiagnosisHistoryService diagnosisHistoryService;
+    @Autowired
+    private HospitalStatistics hospitalStatistics;
+    @Autowired
+    private ObjectProvider<ShardDirectory> shardDirectory;
 
     /**
      * Creates a new patient and saves it to the database.
@@ -32,6 +68,31 @@ public class PatientService {
         return patientRepository.save(new Patient(firstName, lastName, dateOfBirth, email));
     }
 
+    /**
+     * Creates a new patient registered at a hospital. When the data is partitioned by hospital, the patient is
+     * stored on the shard of the hospital.
+     *
+     * @param hospitalId  the unique ID of the hospital
+     * @param firstName   the first name of the patient
+     * @param lastName    the last name of the patient
+     * @param dateOfBirth the date of birth of the patient
+     * @param email       the email address of the patient
+     * @return the saved Patient object
+     * @throws RuntimeException if the hospital with the given ID is not found
+     */
+
+    @Transactional
+    public Patient createPatient(@HospitalShardKey int hospitalId, String firstName, String lastName,
+                                 Date dateOfBirth, String email) {
+        Hospital hospital = entityManager.find(Hospital.class, hospitalId);
+        if (hospital == null) {
+            throw new RuntimeException("Hospital " + hospitalId + " not found");
+        }
+        Patient patient = new Patient(firstName, lastName, dateOfBirth, email);
+        patient.getHospitals().add(hospital);
+        return patientRepository.save(patient);
+    }
+
     /**
      * Finds a patient by their ID.
      *
@@ -39,13 +100,97 @@ public class PatientService {
      * @return the Patient object if found, or null if no patient exists with the given ID
      */
 
-    public Patient findPatientById(int id) {
+    public Patient findPatientById(@PatientShardKey int id) {
         Optional<Patient> foundPatient = patientRepository.findById(id);
         return foundPatient.orElse(null);
     }
 
     /**
-     * Updates the details of an existing patient.
+     * Finds a patient by their email address.
+     *
+     * @param email the email address of the patient
+     * @return the Patient object if found, or null if no patient has the given email address
+     */
+
+    @ScatterGather
+    public Patient findPatientByEmail(String email) {
+        return patientRepository.findByEmail(email).orElse(null);
+    }
+
+    /**
+     * Searches patients whose last name starts with the given prefix. The match is case-sensitive. The slices
+     * of several shards cannot be merged, so with sharding the caller picks the shard, see {@link SingleShard}.
+     *
+     * @param lastNamePrefix the beginning of the last name
+     * @param pageable       the requested page
+     * @return a slice of matching patients
+     */
+
+    @SingleShard
+    public Slice<Patient> searchPatientsByLastName(String lastNamePrefix, Pageable pageable) {
+        return patientRepository.findByLastNameStartingWith(lastNamePrefix, pageable);
+    }
+
+    /**
+     * Searches patients by their full last name and the beginning of their first name. The match is case-sensitive.
+     * With sharding the caller picks the shard.
+     *
+     * @param lastName        the last name
+     * @param firstNamePrefix the beginning of the first name
+     * @param pageable        the requested page
+     * @return a slice of matching patients
+     */
+
+    @SingleShard
+    public Slice<Patient> searchPatientsByName(String lastName, String firstNamePrefix, Pageable pageable) {
+        return patientRepository.findByLastNameAndFirstNameStartingWith(lastName, firstNamePrefix, pageable);
+    }
+
+    /**
+     * Searches patients whose email address starts with the given prefix. The match is case-sensitive. With
+     * sharding the caller picks the shard.
+     *
+     * @param emailPrefix the beginning of the email address
+     * @param pageable    the requested page
+     * @return a slice of matching patients
+     */
+
+    @SingleShard
+    public Slice<Patient> searchPatientsByEmail(String emailPrefix, Pageable pageable) {
+        return patientRepository.findByEmailStartingWith(emailPrefix, pageable);
+    }
+
+    /**
+     * Searches patients born within the given period. With sharding the caller picks the shard.
+     *
+     * @param from     the earliest date of birth, inclusive
+     * @param to       the latest date of birth, inclusive
+     * @param pageable the requested page
+     * @return a slice of matching patients
+     */
+
+    @SingleShard
+    public Slice<Patient> searchPatientsByDateOfBirth(Date from, Date to, Pageable pageable) {
+        return patientRepository.findByDateOfBirthBetween(from, to, pageable);
+    }
+
+    /**
+     * Searches patients by partial or misspelled names, email addresses or diagnoses. The search is served
+     * from an in-memory trigram index and does not touch the database; the index is loaded from and kept up to
+     * date with every shard.
+     *
+     * @param query the search terms
+     * @param limit the maximum number of hits
+     * @return the best matching patients, best match first
+     */
+
+    public List<PatientSearchHit> searchPatients(String query, int limit) {
+        return patientSearchIndex.search(query, limit);
+    }
+
+    /**
+     * Updates the details of an existing patient. Concurrent updates are detected through the version of the
+     * patient; the update is then retried with the latest state a bounded number of times.
      *
      * @param id          the unique ID of the patient
      * @param firstName   the updated first name of the patient
@@ -54,55 +199,158 @@ public class PatientService {
      * @throws RuntimeException if the patient with the given ID is not found
      */
 
-    @Transactional
-    public void updatePatientById(int id, String firstName, String lastName, String email) {
-        Patient patient = findPatientById(id);
-        try {
-            patient.setFirstName(firstName);
-            patient.setLastName(lastName);
-            patient.setEmail(email);
-            savePatient(patient);
-        } catch (Exception e) {
-            throw new RuntimeException(e);
-        }
+    public void updatePatientById(@PatientShardKey int id, String firstName, String lastName, String email) {
+        optimisticLockRetry.run(() -> {
+            Patient patient = findPatientById(id);
+            try {
+                patient.setFirstName(firstName);
+                patient.setLastName(lastName);
+                patient.setEmail(email);
+                savePatient(patient);
+            } catch (Exception e) {
+                throw new RuntimeException(e);
+            }
+        });
     }
 
     /**
-     * Deletes a patient by their ID. Also removes all associations with hospitals.
+     * Deletes a patient by their ID. Also removes all associations with hospitals and the diagnosis history. As
+     * the patient owns the association, Hibernate removes them with a single delete on the join table without
+     * loading the hospitals. Registrations at hospitals of other shards are removed after the commit.
      *
      * @param id the unique ID of the patient
      * @throws RuntimeException if the patient cannot be deleted
      */
 
     @Transactional
-    public void deletePatientById(int id) {
+    public void deletePatientById(@PatientShardKey int id) {
         Patient patient = findPatientById(id);
-        try {
-            for (Hospital hospital : patient.getHospitals()) {
-                hospital.getPatients().remove(patient);
-            }
-            patient.getHospitals().clear();
-            patientRepository.delete(patient);
-        } catch (Exception e) {
-            throw new RuntimeException(e.getMessage());
+        if (patient == null) {
+            throw new RuntimeException("Patient " + id + " not found");
         }
+        List<Integer> hospitalIds = patientRepository.findHospitalIds(id);
+        diagnosisHistoryService.deleteDiagnosisHistory(id);
+        patientRepository.delete(patient);
+        Integer shard = ShardContext.current();
+        AfterCommit.run(() -> {
+            hospitalIds.forEach(hospitalId -> hospitalStatistics.unregistered(id, hospitalId));
+            shardDirectory.ifAvailable(directory -> directory.removeRegistrations(id, shard)
+                    .forEach(hospitalId -> hospitalStatistics.unregistered(id, hospitalId)));
+        });
     }
 
     /**
      * Registers a patient to a hospital. Creates a bidirectional association between the patient and the hospital.
+     * The association is written with a single insert into the join table; the collections of the given entities
+     * are only updated if they are already initialized, so neither of them has to be loaded.
      *
      * @param patient  the patient to register
      * @param hospital the hospital to register the patient to
+     * @return true if the patient was not registered at the hospital before
      */
 
     @Transactional
-    public void registerPatient(Patient patient, Hospital hospital) {
-        patient.getHospitals().add(hospital);
-        hospital.getPatients().add(patient);
+    public boolean registerPatient(@PatientShardKey Patient patient, @HospitalShardKey Hospital hospital) {
+        boolean registered;
+        if (entityManager.contains(patient) && Hibernate.isInitialized(patient.getHospitals())) {
+            // a managed, loaded collection is written on flush and must not be bypassed
+            registered = patient.getHospitals().add(hospital);
+        } else {
+            registered = patientRepository.register(patient.getId(), hospital.getId());
+            if (Hibernate.isInitialized(patient.getHospitals())) {
+                patient.getHospitals().add(hospital);
+            }
+        }
+        if (Hibernate.isInitialized(hospital.getPatients())) {
+            hospital.getPatients().add(patient);
+        }
+        return registered;
+    }
+
+    /**
+     * Registers a patient to a hospital by their IDs with a single insert into the join table.
+     *
+     * @param patientId  the unique ID of the patient
+     * @param hospitalId the unique ID of the hospital
+     * @return true if the patient was not registered at the hospital before
+     */
+
+    @Transactional
+    public boolean registerPatient(@PatientShardKey int patientId, @HospitalShardKey int hospitalId) {
+        return patientRepository.register(patientId, hospitalId);
+    }
+
+    /**
+     * Registers several patients to a hospital with one batched insert per patient.
+     * Patients that are already registered at the hospital are skipped.
+     *
+     * @param patientIds the unique IDs of the patients
+     * @param hospitalId the unique ID of the hospital
+     * @return the number of new registrations
+     */
+
+    @Transactional
+    public int registerPatients(@PatientShardKey Collection<Integer> patientIds, @HospitalShardKey int hospitalId) {
+        return patientRepository.registerAll(patientIds, hospitalId);
+    }
+
+    /**
+     * Removes the registration of a patient at a hospital. Like {@link #registerPatient(Patient, Hospital)} only
+     * the join table row is deleted and only initialized collections of the given entities are updated.
+     *
+     * @param patient  the patient to unregister
+     * @param hospital the hospital to unregister the patient from
+     * @return true if the patient was registered at the hospital
+     */
+
+    @Transactional
+    public boolean unregisterPatient(@PatientShardKey Patient patient, @HospitalShardKey Hospital hospital) {
+        boolean unregistered;
+        if (entityManager.contains(patient) && Hibernate.isInitialized(patient.getHospitals())) {
+            unregistered = patient.getHospitals().remove(hospital);
+        } else {
+            unregistered = patientRepository.unregister(patient.getId(), hospital.getId());
+            if (Hibernate.isInitialized(patient.getHospitals())) {
+                patient.getHospitals().remove(hospital);
+            }
+        }
+        if (Hibernate.isInitialized(hospital.getPatients())) {
+            hospital.getPatients().remove(patient);
+        }
+        return unregistered;
+    }
+
+    /**
+     * Removes the registration of a patient at a hospital by their IDs with a single delete.
+     *
+     * @param patientId  the unique ID of the patient
+     * @param hospitalId the unique ID of the hospital
+     * @return true if the patient was registered at the hospital
+     */
+
+    @Transactional
+    public boolean unregisterPatient(@PatientShardKey int patientId, @HospitalShardKey int hospitalId) {
+        return patientRepository.unregister(patientId, hospitalId);
+    }
+
+    /**
+     * Removes the registrations of several patients at a hospital with one batched delete per patient.
+     *
+     * @param patientIds the unique IDs of the patients
+     * @param hospitalId the unique ID of the hospital
+     * @return the number of removed registrations
+     */
+
+    @Transactional
+    public int unregisterPatients(@PatientShardKey Collection<Integer> patientIds,
+                                  @HospitalShardKey int hospitalId) {
+        return patientRepository.unregisterAll(patientIds, hospitalId);
     }
 
     /**
-     * Adds or updates a diagnosis for a patient.
+     * Adds or updates a diagnosis for a patient. The diagnosis is appended to the diagnosis history of the patient
+     * without touching the patient row; {@link Patient#getDiagnosis()} reflects it once it has been materialized
+     * in the background, see {@link DiagnosisHistoryService}.
      *
      * @param id        the unique ID of the patient
      * @param diagnosis the new or updated diagnosis for the patient
@@ -110,25 +358,74 @@ public class PatientService {
      */
 
     @Transactional
-    public void addDiagnosisById(int id, String diagnosis) {
-        Patient patient = findPatientById(id);
-        try {
-            patient.setDiagnosis(diagnosis);
-            savePatient(patient);
-        } catch (Exception e) {
-            throw new RuntimeException(e);
+    public void addDiagnosisById(@PatientShardKey int id, String diagnosis) {
+        if (!patientRepository.existsById(id)) {
+            throw new RuntimeException("Patient " + id + " not found");
         }
+        diagnosisHistoryService.appendDiagnosis(id, diagnosis);
+        AfterCommit.run(() -> patientSearchIndex.updateDiagnosis(id, diagnosis));
     }
 
     /**
-     * Retrieves the list of hospitals associated with a given patient.
+     * Retrieves the list of hospitals associated with a given patient. The registrations are stored with their
+     * hospital, so they are looked up on every shard, see {@link #listHospitalsByPatients(Collection)}.
      *
      * @param patient the patient whose list of hospitals is to be retrieved
      * @return a set of Hospital objects associated with the patient
      */
 
+    @ScatterGather
     public Set<Hospital> listHospitalByPatient(Patient patient) {
-        return patient.getHospitals();
+        return listHospitalsByPatients(List.of(patient.getId())).getOrDefault(patient.getId(), Set.of());
+    }
+
+    /**
+     * Finds patients together with their hospitals in a single query. Use this instead of calling
+     * {@link #listHospitalByPatient(Patient)} for each patient of a list.
+     *
+     * @param ids the unique IDs of the patients
+     * @return the patients with initialized hospitals
+     */
+
+    @ScatterGather
+    public List<Patient> findPatientsWithHospitals(Collection<Integer> ids) {
+        return patientRepository.findWithHospitalsByIdIn(ids);
+    }
+
+    /**
+     * Retrieves which of the given IDs belong to existing patients, without loading the patients.
+     *
+     * @param ids the IDs to check
+     * @return the IDs of the existing patients
+     */
+
+    @ScatterGather
+    public List<Integer> findExistingPatientIds(Collection<Integer> ids) {
+        return patientRepository.findExistingIds(ids);
+    }
+
+    /**
+     * Retrieves the hospitals of several patients in a single query, plus one on the join table for the
+     * registrations at hospitals of other shards.
+     *
+     * @param ids the unique IDs of the patients
+     * @return the hospitals of each found patient, keyed by the patient ID
+     */
+
+    @ScatterGather
+    public Map<Integer, Set<Hospital>> listHospitalsByPatients(Collection<Integer> ids) {
+        Map<Integer, Set<Hospital>> hospitals = new HashMap<>();
+        for (Patient patient : findPatientsWithHospitals(ids)) {
+            hospitals.put(patient.getId(), new HashSet<>(patient.getHospitals()));
+        }
+        if (ids.isEmpty()) {
+            return hospitals;
+        }
+        for (Object[] registration : patientRepository.findForeignRegistrations(ids)) {
+            hospitals.computeIfAbsent(((Number) registration[0]).intValue(), id -> new HashSet<>())
+                    .add(entityManager.find(Hospital.class, ((Number) registration[1]).intValue()));
+        }
+        return hospitals;
     }
 
     /**
@@ -137,7 +434,7 @@ public class PatientService {
      * @param patient the patient object to save
      */
 
-    public void savePatient(Patient patient) {
+    public void savePatient(@PatientShardKey Patient patient) {
         patientRepository.save(patient);
     }
 
@@ -147,7 +444,52 @@ public class PatientService {
      * @return a list of all patients
      */
 
+    @ScatterGather
     public List<Patient> findAllPatients() {
         return patientRepository.findAll();
     }
+
+    /**
+     * Retrieves one page of patients using keyset pagination on the ID. Unlike offset pagination the cost
+     * of a page does not grow with its position in the table.
+     *
+     * @param afterId the ID of the last patient of the previous page, 0 for the first page
+     * @param limit   the maximum number of patients to return
+     * @return the patients with an ID greater than afterId, ordered by ID
+     */
+
+    @ScatterGather(order = ScatterGather.Order.ID)
+    public List<Patient> findPatientsAfter(int afterId, @PageLimit int limit) {
+        return patientRepository.findByIdGreaterThanOrderByIdAsc(afterId, Limit.of(limit));
+    }
+
+    /**
+     * Streams all patients from a forward-only database cursor. Processed patients are detached from the
+     * persistence context, so memory stays flat no matter how many patients exist. Must be called within an
+     * active transaction and the returned stream must be closed. With sharding the stream covers one shard, which
+     * the caller picks.
+     *
+     * @return a stream of all patients ordered by ID
+     */
+
+    @SingleShard
+    @Transactional(Transactional.TxType.MANDATORY)
+    public Stream<Patient> streamAllPatients() {
+        return ScrollingStreams.scroll(entityManager, "from Patient order by id", Patient.class);
+    }
+
+    /**
+     * Passes every patient to the given action, reading them from a forward-only database cursor. With sharding
+     * the patients of one shard are visited, which the caller picks.
+     *
+     * @param action the action to perform for each patient
+     */
+
+    @SingleShard
+    @Transactional
+    public void forEachPatient(Consumer<Patient> action) {
+        try (Stream<Patient> patients = streamAllPatients()) {
+            patients.forEach(action);
+        }
+    }
 }
@@ -0,0 +1,115 @@
+package hospitalsystem.persistence.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import hospitalsystem.persistence.dto.PatientDto;
+import hospitalsystem.persistence.projection.PatientView;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Streams patients page by page to slow or long-running clients.
+ * <p>
+ * Each page is read with a keyset query in its own short read-only transaction, written and flushed before the
+ * next page is read. Once the socket buffers of a slow client are full the flush blocks, so the next page is only
+ * read when the client has consumed the previous ones: the stream holds at most one page in memory and holds no
+ * database connection between pages, no matter how long the client takes.
+ */
+
+@Service
+public class PatientStreamService {
+    private static final byte[] NEWLINE = {'\n'};
+    private static final int BUFFER_SIZE = 16 * 1024;
+
+    @Autowired
+    private ReadModelService readModelService;
+    @Autowired
+    private HospitalRosterService hospitalRosterService;
+    @Autowired
+    private ObjectMapper objectMapper;
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    @Value("${hospital.stream.page-size:500}")
+    private int pageSize;
+
+    private final AtomicInteger activeStreams = new AtomicInteger();
+    private Counter pages;
+
+    @PostConstruct
+    void registerMetrics() {
+        Gauge.builder("hospital.stream.active", activeStreams, AtomicInteger::get)
+                .description("Patient streams currently being written")
+                .register(meterRegistry);
+        pages = Counter.builder("hospital.stream.pages")
+                .description("Pages read for patient streams")
+                .register(meterRegistry);
+    }
+
+    /**
+     * Writes all patients, or the patients of a hospital, ordered by ID. In the SSE format every event carries the
+     * patient ID as event ID, so a client that reconnects with Last-Event-ID continues after the last received
+     * patient.
+     *
+     * @param hospitalId the hospital whose patients are streamed, or null for all patients
+     * @param afterId    the ID after which the stream starts, 0 for all patients
+     * @param format     the output format
+     * @param output     the stream to write to
+     * @return the number of written patients
+     * @throws IOException if writing to the stream fails, e.g. because the client disconnected
+     */
+
+    public long streamPatients(Integer hospitalId, int afterId, StreamFormat format, OutputStream output)
+            throws IOException {
+        OutputStream buffered = new BufferedOutputStream(output, BUFFER_SIZE);
+        activeStreams.incrementAndGet();
+        try {
+            long written = 0;
+            int lastId = afterId;
+            List<PatientView> page;
+            do {
+                page = hospitalId == null
+                        ? readModelService.findPatientViewsAfter(lastId, pageSize)
+                        : hospitalRosterService.findPatientViewsByHospitalAfter(hospitalId, lastId, pageSize);
+                pages.increment();
+                for (PatientView patient : page) {
+                    write(PatientDto.from(patient), format, buffered);
+                    lastId = patient.id();
+                }
+                written += page.size();
+                buffered.flush();
+            } while (page.size() == pageSize);
+            return written;
+        } finally {
+            activeStreams.decrementAndGet();
+        }
+    }
+
+    private void write(PatientDto patient, StreamFormat format, OutputStream output) throws IOException {
+        byte[] json = objectMapper.writeValueAsBytes(patient);
+        if (format == StreamFormat.SSE) {
+            output.write(("id: " + patient.id() + "\ndata: ").getBytes(StandardCharsets.UTF_8));
+            output.write(json);
+            output.write(NEWLINE);
+            output.write(NEWLINE);
+        } else {
+            output.write(json);
+            output.write(NEWLINE);
+        }
+    }
+
+    public int getActiveStreams() {
+        return activeStreams.get();
+    }
+}
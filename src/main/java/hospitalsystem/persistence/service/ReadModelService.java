@@ -0,0 +1,135 @@
+package hospitalsystem.persistence.service;
+
+import hospitalsystem.persistence.entity.Patient;
+import hospitalsystem.persistence.projection.HospitalName;
+import hospitalsystem.persistence.projection.HospitalView;
+import hospitalsystem.persistence.projection.PatientRosterEntry;
+import hospitalsystem.persistence.projection.PatientView;
+import hospitalsystem.persistence.repository.HospitalRepository;
+import hospitalsystem.persistence.repository.PatientRepository;
+import hospitalsystem.persistence.sharding.PageLimit;
+import hospitalsystem.persistence.sharding.PatientShardKey;
+import hospitalsystem.persistence.sharding.ScatterGather;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.domain.Limit;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * Read paths for list and detail views. The methods return records selected with constructor expressions instead
+ * of entities, so no entity, snapshot or collection proxy is created per row.
+ * <p>
+ * All methods run in read-only transactions. This uses Spring's Transactional, as the JTA annotation used by the
+ * other services has no read-only flag: in a read-only transaction the Hibernate session does not flush and
+ * loads entities read-only, without dirty-checking snapshots.
+ */
+
+@Service
+@Transactional(readOnly = true)
+public class ReadModelService {
+    @Autowired
+    private PatientRepository patientRepository;
+    @Autowired
+    private HospitalRepository hospitalRepository;
+
+    /**
+     * Finds the read model of a patient.
+     *
+     * @param id the unique ID of the patient
+     * @return the patient, or null if no patient has the given ID
+     */
+
+    public PatientView findPatientView(@PatientShardKey int id) {
+        return patientRepository.findViewById(id).orElse(null);
+    }
+
+    /**
+     * Retrieves one page of patients using keyset pagination on the ID.
+     *
+     * @param afterId the ID of the last patient of the previous page, 0 for the first page
+     * @param limit   the maximum number of patients to return
+     * @return the patients with an ID greater than afterId, ordered by ID
+     */
+
+    @ScatterGather(order = ScatterGather.Order.ID)
+    public List<PatientView> findPatientViewsAfter(int afterId, @PageLimit int limit) {
+        return patientRepository.findViewsByIdGreaterThan(afterId, Limit.of(limit));
+    }
+
+    /**
+     * Retrieves one page of patients as read-only entities, for callers that need the entity but not its changes.
+     *
+     * @param afterId the ID of the last patient of the previous page, 0 for the first page
+     * @param limit   the maximum number of patients to return
+     * @return the patients with an ID greater than afterId, ordered by ID
+     */
+
+    @ScatterGather(order = ScatterGather.Order.ID)
+    public List<Patient> findReadOnlyPatientsAfter(int afterId, @PageLimit int limit) {
+        return patientRepository.findReadOnlyByIdGreaterThan(afterId, Limit.of(limit));
+    }
+
+    /**
+     * Finds the read models of the given patients, e.g. of one page of a roster.
+     *
+     * @param ids the unique IDs of the patients
+     * @return the found patients ordered by ID
+     */
+
+    @ScatterGather(order = ScatterGather.Order.ID)
+    public List<PatientView> findPatientViews(Collection<Integer> ids) {
+        return patientRepository.findViewsByIdIn(ids);
+    }
+
+    /**
+     * Finds the roster entries of the given patients, see {@link HospitalRosterService}.
+     *
+     * @param ids the unique IDs of the patients
+     * @return the found roster entries ordered by ID
+     */
+
+    @ScatterGather(order = ScatterGather.Order.ID)
+    public List<PatientRosterEntry> findRosterEntries(Collection<Integer> ids) {
+        return patientRepository.findRosterByIdIn(ids);
+    }
+
+    /**
+     * Lists all hospitals a patient is registered at without initializing Patient.hospitals. The registrations
+     * are read from the join table and stored with their hospital, so the patient does not have to be stored on
+     * the same shard.
+     *
+     * @param patientId the unique ID of the patient
+     * @return the hospitals of the patient ordered by ID
+     */
+
+    @ScatterGather(order = ScatterGather.Order.ID)
+    public List<HospitalView> listHospitalViewsByPatient(int patientId) {
+        List<Integer> hospitalIds = patientRepository.findHospitalIds(patientId);
+        return hospitalIds.isEmpty() ? List.of() : hospitalRepository.findViewsByIdIn(hospitalIds);
+    }
+
+    /**
+     * Retrieves all hospitals.
+     *
+     * @return the hospitals ordered by ID
+     */
+
+    @ScatterGather(order = ScatterGather.Order.ID)
+    public List<HospitalView> findAllHospitalViews() {
+        return hospitalRepository.findAllViews();
+    }
+
+    /**
+     * Retrieves the ID and name of all hospitals.
+     *
+     * @return the names of all hospitals in alphabetical order
+     */
+
+    @ScatterGather(order = ScatterGather.Order.NAME)
+    public List<HospitalName> findHospitalNames() {
+        return hospitalRepository.findNamesByOrderByNameAsc();
+    }
+}
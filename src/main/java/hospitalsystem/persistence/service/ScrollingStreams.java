@@ -0,0 +1,61 @@
+package hospitalsystem.persistence.service;
+
+import jakarta.persistence.EntityManager;
+import org.hibernate.ScrollMode;
+import org.hibernate.ScrollableResults;
+import org.hibernate.Session;
+
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+/**
+ * Creates streams that are backed by a forward-only database cursor instead of a fully materialized result list.
+ */
+
+final class ScrollingStreams {
+
+    /**
+     * Number of rows the JDBC driver fetches per round trip.
+     */
+    static final int FETCH_SIZE = 500;
+
+    private ScrollingStreams() {
+    }
+
+    /**
+     * Streams the result of a query. Every entity is detached from the persistence context as soon as it has
+     * been handed to the stream, so the memory footprint stays flat regardless of the size of the result.
+     * The stream must be consumed within the transaction of the given entity manager and has to be closed
+     * to release the cursor.
+     *
+     * @param entityManager the entity manager of the current transaction
+     * @param query         the HQL select query
+     * @param type          the result type
+     * @return a lazily populated stream of the query result
+     */
+
+    static <T> Stream<T> scroll(EntityManager entityManager, String query, Class<T> type) {
+        Session session = entityManager.unwrap(Session.class);
+        ScrollableResults<T> results = session.createSelectionQuery(query, type)
+                .setFetchSize(FETCH_SIZE)
+                .setReadOnly(true)
+                .scroll(ScrollMode.FORWARD_ONLY);
+        Spliterator<T> spliterator = new Spliterators.AbstractSpliterator<T>(Long.MAX_VALUE,
+                Spliterator.ORDERED | Spliterator.NONNULL) {
+            @Override
+            public boolean tryAdvance(Consumer<? super T> action) {
+                if (!results.next()) {
+                    return false;
+                }
+                T entity = results.get();
+                action.accept(entity);
+                session.detach(entity);
+                return true;
+            }
+        };
+        return StreamSupport.stream(spliterator, false).onClose(results::close);
+    }
+}
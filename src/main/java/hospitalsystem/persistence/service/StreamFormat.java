@@ -0,0 +1,20 @@
+package hospitalsystem.persistence.service;
+
+/**
+ * Output formats of the patient streams.
+ */
+
+public enum StreamFormat {
+    NDJSON("application/x-ndjson"),
+    SSE("text/event-stream");
+
+    private final String mediaType;
+
+    StreamFormat(String mediaType) {
+        this.mediaType = mediaType;
+    }
+
+    public String getMediaType() {
+        return mediaType;
+    }
+}
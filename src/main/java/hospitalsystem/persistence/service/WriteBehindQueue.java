@@ -0,0 +1,341 @@
+package hospitalsystem.persistence.service;
+
+import hospitalsystem.persistence.repository.PatientRepository;
+import hospitalsystem.persistence.search.PatientSearchIndex;
+import hospitalsystem.persistence.sharding.ShardContext;
+import hospitalsystem.persistence.sharding.ShardDirectory;
+import hospitalsystem.persistence.support.AfterCommit;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Optional write-behind mode for registrations and diagnoses, enabled with hospital.write-behind.enabled.
+ * Mutations are put into a bounded queue and a single writer applies them in grouped transactions, either every
+ * hospital.write-behind.flush-interval or as soon as hospital.write-behind.max-batch mutations are waiting.
+ * Within a batch duplicate registrations are written once. All diagnoses are appended to the history in order,
+ * and the current diagnosis of a patient is materialized once, from the last of them. When the data is
+ * partitioned, a batch is split into one transaction per shard: registrations go to the shard of the hospital,
+ * diagnoses to the shard of the patient.
+ * <p>
+ * The returned futures complete once the transaction containing the mutation has committed. When the queue is
+ * full, callers block for up to hospital.write-behind.offer-timeout before the mutation is rejected. When the
+ * mode is disabled, mutations are applied immediately in their own transaction. Mutations the writer cannot
+ * apply any more, because it was interrupted or did not finish within the shutdown timeout, fail their futures.
+ */
+
+@Component
+public class WriteBehindQueue {
+    private static final Logger log = LoggerFactory.getLogger(WriteBehindQueue.class);
+
+    private sealed interface Mutation permits Registration, Diagnosis {
+        CompletableFuture<Void> result();
+    }
+
+    private record Registration(int patientId, int hospitalId, CompletableFuture<Void> result) implements Mutation {
+    }
+
+    private record Diagnosis(int patientId, String diagnosis, CompletableFuture<Void> result) implements Mutation {
+    }
+
+    @Autowired
+    private PatientService patientService;
+    @Autowired
+    private PatientRepository patientRepository;
+    @Autowired
+    private DiagnosisHistoryService diagnosisHistoryService;
+    @Autowired
+    private PatientSearchIndex patientSearchIndex;
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+    @Autowired
+    private MeterRegistry meterRegistry;
+    @Autowired
+    private ObjectProvider<ShardDirectory> shardDirectory;
+
+    @Value("${hospital.write-behind.enabled:false}")
+    private boolean enabled;
+    @Value("${hospital.write-behind.capacity:10000}")
+    private int capacity;
+    @Value("${hospital.write-behind.max-batch:500}")
+    private int maxBatch;
+    @Value("${hospital.write-behind.flush-interval:20ms}")
+    private Duration flushInterval;
+    @Value("${hospital.write-behind.offer-timeout:1s}")
+    private Duration offerTimeout;
+
+    private BlockingQueue<Mutation> queue;
+    private Thread writer;
+    private volatile boolean running;
+    private Counter rejected;
+    private DistributionSummary batchSize;
+
+    @PostConstruct
+    void start() {
+        if (!enabled) {
+            return;
+        }
+        queue = new ArrayBlockingQueue<>(capacity);
+        Gauge.builder("hospital.write-behind.queue.depth", queue, BlockingQueue::size)
+                .description("Mutations waiting for the write-behind writer")
+                .register(meterRegistry);
+        rejected = Counter.builder("hospital.write-behind.rejected")
+                .description("Mutations rejected because the write-behind queue was full")
+                .register(meterRegistry);
+        batchSize = DistributionSummary.builder("hospital.write-behind.batch.size")
+                .description("Mutations applied per write-behind transaction")
+                .register(meterRegistry);
+        running = true;
+        writer = new Thread(this::drain, "write-behind-writer");
+        writer.setDaemon(true);
+        writer.start();
+    }
+
+    /**
+     * Stops accepting mutations and writes the ones that are still queued. If the writer does not finish within
+     * 30 seconds, it is interrupted and the mutations still queued fail.
+     */
+
+    @PreDestroy
+    void stop() throws InterruptedException {
+        if (writer != null) {
+            running = false;
+            writer.join(TimeUnit.SECONDS.toMillis(30));
+            if (writer.isAlive()) {
+                log.warn("Write-behind writer did not finish within 30 seconds, failing {} queued mutations",
+                        queue.size());
+                writer.interrupt();
+                failQueued();
+            }
+        }
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Registers a patient to a hospital by their IDs.
+     *
+     * @param patientId  the unique ID of the patient
+     * @param hospitalId the unique ID of the hospital
+     * @return a future that completes when the registration is committed
+     * @throws RuntimeException if the queue stays full for longer than the offer timeout
+     */
+
+    public CompletableFuture<Void> registerPatient(int patientId, int hospitalId) {
+        if (!enabled) {
+            return run(() -> patientService.registerPatient(patientId, hospitalId));
+        }
+        return submit(new Registration(patientId, hospitalId, new CompletableFuture<>()));
+    }
+
+    /**
+     * Adds or updates a diagnosis for a patient.
+     *
+     * @param patientId the unique ID of the patient
+     * @param diagnosis the new or updated diagnosis for the patient
+     * @return a future that completes when the diagnosis is committed, or fails if the patient is not found
+     * @throws RuntimeException if the queue stays full for longer than the offer timeout
+     */
+
+    public CompletableFuture<Void> addDiagnosis(int patientId, String diagnosis) {
+        if (!enabled) {
+            return run(() -> patientService.addDiagnosisById(patientId, diagnosis));
+        }
+        return submit(new Diagnosis(patientId, diagnosis, new CompletableFuture<>()));
+    }
+
+    private CompletableFuture<Void> submit(Mutation mutation) {
+        if (!running) {
+            throw new RuntimeException("Write-behind queue is stopped");
+        }
+        try {
+            if (!queue.offer(mutation, offerTimeout.toNanos(), TimeUnit.NANOSECONDS)) {
+                rejected.increment();
+                throw new RuntimeException("Write-behind queue is full");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("Interrupted while waiting for the write-behind queue", e);
+        }
+        // the writer may have seen an empty queue and exited after the check above
+        if (!running && queue.remove(mutation)) {
+            throw new RuntimeException("Write-behind queue is stopped");
+        }
+        return mutation.result();
+    }
+
+    private static CompletableFuture<Void> run(Runnable operation) {
+        try {
+            operation.run();
+            return CompletableFuture.completedFuture(null);
+        } catch (RuntimeException e) {
+            return CompletableFuture.failedFuture(e);
+        }
+    }
+
+    private void drain() {
+        List<Mutation> batch = new ArrayList<>(maxBatch);
+        while (running || !queue.isEmpty()) {
+            try {
+                Mutation first = queue.poll(flushInterval.toNanos(), TimeUnit.NANOSECONDS);
+                if (first == null) {
+                    continue;
+                }
+                batch.add(first);
+                long deadline = System.nanoTime() + flushInterval.toNanos();
+                while (batch.size() < maxBatch) {
+                    queue.drainTo(batch, maxBatch - batch.size());
+                    long remaining = deadline - System.nanoTime();
+                    if (batch.size() >= maxBatch || remaining <= 0 || !running) {
+                        break;
+                    }
+                    Mutation next = queue.poll(remaining, TimeUnit.NANOSECONDS);
+                    if (next != null) {
+                        batch.add(next);
+                    }
+                }
+                apply(batch);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                running = false;
+                RuntimeException interrupted = new RuntimeException("Write-behind writer was interrupted", e);
+                batch.forEach(mutation -> mutation.result().completeExceptionally(interrupted));
+                break;
+            } catch (RuntimeException e) {
+                log.error("Write-behind batch of {} mutations failed", batch.size(), e);
+                batch.forEach(mutation -> mutation.result().completeExceptionally(e));
+            } finally {
+                batch.clear();
+            }
+        }
+        failQueued();
+    }
+
+    /**
+     * Fails the mutations left in the queue once the writer has stopped, so that no caller waits for them.
+     */
+    private void failQueued() {
+        List<Mutation> remaining = new ArrayList<>();
+        queue.drainTo(remaining);
+        RuntimeException stopped = new RuntimeException("Write-behind queue is stopped");
+        remaining.forEach(mutation -> mutation.result().completeExceptionally(stopped));
+    }
+
+    /**
+     * Applies a batch on the shards its mutations belong to. Mutations for a hospital or patient that no shard
+     * stores are applied alone, so that they fail like the corresponding service call.
+     */
+    private void apply(List<Mutation> batch) {
+        ShardDirectory directory = shardDirectory.getIfAvailable();
+        if (directory == null) {
+            applyBatch(batch);
+            return;
+        }
+        Map<Integer, List<Mutation>> batches = new TreeMap<>();
+        for (Mutation mutation : batch) {
+            int shard = mutation instanceof Registration registration
+                    ? directory.locateHospital(registration.hospitalId())
+                    : directory.locatePatient(((Diagnosis) mutation).patientId());
+            if (shard == ShardDirectory.UNKNOWN) {
+                applyAlone(mutation);
+            } else {
+                batches.computeIfAbsent(shard, key -> new ArrayList<>()).add(mutation);
+            }
+        }
+        batches.forEach((shard, mutations) -> ShardContext.call(shard, () -> {
+            applyBatch(mutations);
+            return null;
+        }));
+    }
+
+    /**
+     * Applies a batch in one transaction. If the transaction fails, for example because a registration refers to
+     * a deleted patient, the mutations are retried one by one so that a single bad mutation does not fail the
+     * others.
+     */
+    private void applyBatch(List<Mutation> batch) {
+        Map<Integer, Set<Integer>> patientsByHospital = new LinkedHashMap<>();
+        Map<Integer, List<String>> diagnoses = new LinkedHashMap<>();
+        for (Mutation mutation : batch) {
+            if (mutation instanceof Registration registration) {
+                patientsByHospital.computeIfAbsent(registration.hospitalId(), id -> new LinkedHashSet<>())
+                        .add(registration.patientId());
+            } else if (mutation instanceof Diagnosis diagnosis) {
+                diagnoses.computeIfAbsent(diagnosis.patientId(), id -> new ArrayList<>()).add(diagnosis.diagnosis());
+            }
+        }
+        Set<Integer> missingPatients;
+        try {
+            missingPatients = new TransactionTemplate(transactionManager).execute(status -> {
+                Set<Integer> missing = new HashSet<>(diagnoses.keySet());
+                if (!diagnoses.isEmpty()) {
+                    patientRepository.findExistingIds(diagnoses.keySet()).forEach(missing::remove);
+                    missing.forEach(diagnoses::remove);
+                    diagnosisHistoryService.appendDiagnoses(diagnoses);
+                    AfterCommit.run(() -> diagnoses.forEach((patientId, patientDiagnoses) -> patientSearchIndex
+                            .updateDiagnosis(patientId, patientDiagnoses.get(patientDiagnoses.size() - 1))));
+                }
+                patientsByHospital.forEach((hospitalId, patientIds) ->
+                        patientRepository.registerAll(patientIds, hospitalId));
+                return missing;
+            });
+        } catch (RuntimeException e) {
+            log.warn("Write-behind batch of {} mutations failed, applying them one by one", batch.size(), e);
+            batch.forEach(this::applyAlone);
+            return;
+        }
+        batchSize.record(batch.size());
+        for (Mutation mutation : batch) {
+            if (mutation instanceof Diagnosis diagnosis && missingPatients.contains(diagnosis.patientId())) {
+                mutation.result().completeExceptionally(
+                        new RuntimeException("Patient " + diagnosis.patientId() + " not found"));
+            } else {
+                mutation.result().complete(null);
+            }
+        }
+    }
+
+    private void applyAlone(Mutation mutation) {
+        CompletableFuture<Void> result;
+        if (mutation instanceof Registration registration) {
+            result = run(() -> patientService.registerPatient(registration.patientId(), registration.hospitalId()));
+        } else {
+            Diagnosis diagnosis = (Diagnosis) mutation;
+            result = run(() -> patientService.addDiagnosisById(diagnosis.patientId(), diagnosis.diagnosis()));
+        }
+        result.whenComplete((ignored, e) -> {
+            if (e == null) {
+                mutation.result().complete(null);
+            } else {
+                mutation.result().completeExceptionally(e);
+            }
+        });
+    }
+}
@@ -0,0 +1,18 @@
+package hospitalsystem.persistence.sharding;
+
+import java.lang.annotation.Documented;
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Routes a service call to the shard of the hospital passed in the annotated parameter, either its ID or the
+ * hospital itself. A hospital that does not exist yet is routed to the default shard.
+ */
+
+@Documented
+@Retention(RetentionPolicy.RUNTIME)
+@Target(ElementType.PARAMETER)
+public @interface HospitalShardKey {
+}
@@ -0,0 +1,18 @@
+package hospitalsystem.persistence.sharding;
+
+import java.lang.annotation.Documented;
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Marks the maximum number of results of a {@link ScatterGather} call that reads one page. Every shard returns a
+ * page of this size, so the gathered list is cut to it once it is ordered.
+ */
+
+@Documented
+@Retention(RetentionPolicy.RUNTIME)
+@Target(ElementType.PARAMETER)
+public @interface PageLimit {
+}
@@ -0,0 +1,19 @@
+package hospitalsystem.persistence.sharding;
+
+import java.lang.annotation.Documented;
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Routes a service call to the shard of the patient passed in the annotated parameter: its ID, the patient
+ * itself or a collection of IDs, which must all be stored on the same shard. A patient that does not exist yet is
+ * routed to the default shard.
+ */
+
+@Documented
+@Retention(RetentionPolicy.RUNTIME)
+@Target(ElementType.PARAMETER)
+public @interface PatientShardKey {
+}
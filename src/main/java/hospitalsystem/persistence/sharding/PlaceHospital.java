@@ -0,0 +1,17 @@
+package hospitalsystem.persistence.sharding;
+
+import java.lang.annotation.Documented;
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Routes a service call that creates a hospital to the shard chosen by {@link ShardDirectory#placeHospital()}.
+ */
+
+@Documented
+@Retention(RetentionPolicy.RUNTIME)
+@Target(ElementType.METHOD)
+public @interface PlaceHospital {
+}
@@ -0,0 +1,42 @@
+package hospitalsystem.persistence.sharding;
+
+import java.lang.annotation.Documented;
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Runs a service call on every shard in parallel and merges the results: lists are concatenated in shard order,
+ * sets and maps are merged, counts are added up, booleans are or-ed and for any other type the first non-null
+ * result is returned. Collections stored under the same map key on several shards are combined.
+ * <p>
+ * Lists that each shard returns in ID or name order are merged in that {@link #order()}, and cut to the
+ * {@link PageLimit} of the call if it has one.
+ */
+
+@Documented
+@Retention(RetentionPolicy.RUNTIME)
+@Target(ElementType.METHOD)
+public @interface ScatterGather {
+
+    Order order() default Order.SHARDS;
+
+    /**
+     * The order of a gathered list.
+     */
+    enum Order {
+        /**
+         * The results of the default shard first, then those of the other shards.
+         */
+        SHARDS,
+        /**
+         * Ordered by the ID of the hospital or patient.
+         */
+        ID,
+        /**
+         * Ordered by the name of the hospital.
+         */
+        NAME
+    }
+}
@@ -0,0 +1,57 @@
+package hospitalsystem.persistence.sharding;
+
+import java.util.function.Supplier;
+
+/**
+ * The shard the database work of the current thread is routed to, see {@link ShardRoutingDataSource}. Threads
+ * without a shard use the default shard.
+ */
+
+public final class ShardContext {
+    private static final ThreadLocal<Integer> CURRENT = new ThreadLocal<>();
+
+    private ShardContext() {
+    }
+
+    /**
+     * Returns the shard of the current thread.
+     *
+     * @return the shard, or null if the current thread uses the default shard
+     */
+
+    public static Integer current() {
+        return CURRENT.get();
+    }
+
+    /**
+     * Runs an action on the given shard and restores the previous shard afterwards. The action must open its own
+     * transaction, a transaction that is already active stays on its shard.
+     *
+     * @param shard  the shard, or null for the default shard
+     * @param action the action to run
+     * @return the result of the action
+     */
+
+    public static <T> T call(Integer shard, Supplier<T> action) {
+        Integer previous = enter(shard);
+        try {
+            return action.get();
+        } finally {
+            restore(previous);
+        }
+    }
+
+    static Integer enter(Integer shard) {
+        Integer previous = CURRENT.get();
+        restore(shard);
+        return previous;
+    }
+
+    static void restore(Integer shard) {
+        if (shard == null) {
+            CURRENT.remove();
+        } else {
+            CURRENT.set(shard);
+        }
+    }
+}
@@ -0,0 +1,117 @@
+package hospitalsystem.persistence.sharding;
+
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Knows which shard stores a hospital or patient. Locations are learned from the entities returned by the
+ * routed service calls; an unknown ID is looked up on every shard once and then cached. IDs are unique across
+ * shards, so a cached location never points to a different entity, at worst to one that was deleted.
+ */
+
+public class ShardDirectory {
+    public static final int UNKNOWN = -1;
+
+    private final List<JdbcTemplate> shards = new ArrayList<>();
+    private final Map<Integer, Integer> hospitals = new ConcurrentHashMap<>();
+    private final Map<Integer, Integer> patients = new ConcurrentHashMap<>();
+    private final AtomicInteger nextHospitalShard = new AtomicInteger();
+
+    public ShardDirectory(ShardRoutingDataSource dataSource) {
+        for (int shard = 0; shard < dataSource.getShardCount(); shard++) {
+            shards.add(new JdbcTemplate(dataSource.getShard(shard)));
+        }
+    }
+
+    public int getShardCount() {
+        return shards.size();
+    }
+
+    /**
+     * Chooses the shard of a new hospital. Hospitals are spread round-robin over the shards.
+     *
+     * @return the shard to store the new hospital on
+     */
+
+    public int placeHospital() {
+        return Math.floorMod(nextHospitalShard.getAndIncrement(), shards.size());
+    }
+
+    /**
+     * Finds the shard of a hospital.
+     *
+     * @param hospitalId the unique ID of the hospital
+     * @return the shard, or {@link #UNKNOWN} if no shard stores the hospital
+     */
+
+    public int locateHospital(int hospitalId) {
+        return locate(hospitals, "select count(*) from Hospitals where id = ?", hospitalId);
+    }
+
+    /**
+     * Finds the shard of a patient.
+     *
+     * @param patientId the unique ID of the patient
+     * @return the shard, or {@link #UNKNOWN} if no shard stores the patient
+     */
+
+    public int locatePatient(int patientId) {
+        return locate(patients, "select count(*) from Patients where id = ?", patientId);
+    }
+
+    public void hospitalStored(int hospitalId, int shard) {
+        hospitals.put(hospitalId, shard);
+    }
+
+    public void patientStored(int patientId, int shard) {
+        patients.put(patientId, shard);
+    }
+
+    /**
+     * Removes the registrations of a deleted patient at the hospitals of other shards. They are stored with their
+     * hospitals, so the transaction that deleted the patient could not remove them.
+     *
+     * @param patientId the unique ID of the patient
+     * @param shard     the shard the patient was stored on, or null for the default shard
+     * @return the IDs of the hospitals the patient was unregistered from
+     */
+
+    public List<Integer> removeRegistrations(int patientId, Integer shard) {
+        int own = shard == null ? ShardRoutingDataSource.DEFAULT_SHARD : shard;
+        List<Integer> hospitalIds = new ArrayList<>();
+        for (int other = 0; other < shards.size(); other++) {
+            if (other == own) {
+                continue;
+            }
+            JdbcTemplate jdbcTemplate = shards.get(other);
+            List<Integer> registered = jdbcTemplate.queryForList(
+                    "select hospital_id from Patient_hospitals where patient_id = ?", Integer.class, patientId);
+            if (!registered.isEmpty()) {
+                jdbcTemplate.update("delete from Patient_hospitals where patient_id = ?", patientId);
+                hospitalIds.addAll(registered);
+            }
+        }
+        patients.remove(patientId);
+        return hospitalIds;
+    }
+
+    private int locate(Map<Integer, Integer> locations, String sql, int id) {
+        Integer known = locations.get(id);
+        if (known != null) {
+            return known;
+        }
+        for (int shard = 0; shard < shards.size(); shard++) {
+            Integer found = shards.get(shard).queryForObject(sql, Integer.class, id);
+            if (found != null && found > 0) {
+                locations.put(id, shard);
+                return shard;
+            }
+        }
+        return UNKNOWN;
+    }
+}
@@ -0,0 +1,300 @@
+package hospitalsystem.persistence.sharding;
+
+import hospitalsystem.persistence.entity.Hospital;
+import hospitalsystem.persistence.entity.Patient;
+import hospitalsystem.persistence.projection.HospitalName;
+import hospitalsystem.persistence.projection.HospitalView;
+import hospitalsystem.persistence.projection.PatientRosterEntry;
+import hospitalsystem.persistence.projection.PatientView;
+import jakarta.annotation.PreDestroy;
+import org.aspectj.lang.ProceedingJoinPoint;
+import org.aspectj.lang.annotation.Around;
+import org.aspectj.lang.annotation.Aspect;
+import org.aspectj.lang.reflect.MethodSignature;
+import org.springframework.core.Ordered;
+import org.springframework.core.annotation.Order;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.lang.annotation.Annotation;
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Routes the public methods of PatientService, HospitalService and ReadModelService to a shard, see
+ * {@link HospitalShardKey}, {@link PatientShardKey}, {@link PlaceHospital} and {@link ScatterGather}. Other methods
+ * run on the default shard, except for {@link SingleShard} methods, which fail unless the caller picked a shard.
+ * Runs outside of the transaction advice, so every transaction stays on one shard.
+ * <p>
+ * Calls made within a routed call or an active transaction cannot switch shards and fail if they would have to.
+ * Registrations are partitioned by hospital: a call with both a hospital and a patient key runs on the shard of the
+ * hospital, so a patient can be registered at hospitals of any shard.
+ */
+
+@Aspect
+@Order(Ordered.HIGHEST_PRECEDENCE + 1)
+public class ShardRoutingAspect {
+    private final ShardDirectory shardDirectory;
+    private final ExecutorService executor;
+
+    public ShardRoutingAspect(ShardDirectory shardDirectory) {
+        this.shardDirectory = shardDirectory;
+        AtomicInteger threads = new AtomicInteger();
+        this.executor = Executors.newFixedThreadPool(4 * shardDirectory.getShardCount(), runnable -> {
+            Thread thread = new Thread(runnable, "shard-scatter-" + threads.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    @PreDestroy
+    void stop() {
+        executor.shutdown();
+    }
+
+    @Around("execution(public * hospitalsystem.persistence.service.PatientService.*(..))"
+            + " || execution(public * hospitalsystem.persistence.service.HospitalService.*(..))"
+            + " || execution(public * hospitalsystem.persistence.service.ReadModelService.*(..))")
+    public Object route(ProceedingJoinPoint joinPoint) throws Throwable {
+        Method method = ((MethodSignature) joinPoint.getSignature()).getMethod();
+        Integer bound = ShardContext.current();
+        if (bound == null && TransactionSynchronizationManager.isActualTransactionActive()) {
+            bound = ShardRoutingDataSource.DEFAULT_SHARD;
+        }
+        if (method.isAnnotationPresent(ScatterGather.class)) {
+            if (bound != null) {
+                throw new RuntimeException("Cannot run " + method.getName() + " on all shards within a call or "
+                        + "transaction bound to shard " + bound);
+            }
+            return scatterGather(joinPoint, method);
+        }
+        if (method.isAnnotationPresent(SingleShard.class) && ShardContext.current() == null) {
+            throw new RuntimeException(method.getName() + " cannot merge the data of several shards and has to be "
+                    + "called for one shard with ShardContext.call");
+        }
+        Integer target = method.isAnnotationPresent(PlaceHospital.class) && bound == null
+                ? Integer.valueOf(shardDirectory.placeHospital())
+                : target(method, joinPoint.getArgs());
+        if (bound != null) {
+            if (target != null && !target.equals(bound)) {
+                throw new RuntimeException("Cannot run " + method.getName() + " on shard " + target
+                        + " within a call or transaction bound to shard " + bound);
+            }
+            target = bound;
+        }
+        int shard = target == null ? ShardRoutingDataSource.DEFAULT_SHARD : target;
+        Object result = proceed(joinPoint, shard);
+        for (Object argument : joinPoint.getArgs()) {
+            recordLocations(argument, shard);
+        }
+        return result;
+    }
+
+    /**
+     * Resolves the shard of the annotated parameters, the shard of the hospitals if there are any. Entities that
+     * are not stored yet do not count.
+     */
+    private Integer target(Method method, Object[] arguments) {
+        Integer hospitalShard = target(method, arguments, HospitalShardKey.class);
+        return hospitalShard != null ? hospitalShard : target(method, arguments, PatientShardKey.class);
+    }
+
+    private Integer target(Method method, Object[] arguments, Class<? extends Annotation> key) {
+        Annotation[][] annotations = method.getParameterAnnotations();
+        boolean hospital = key == HospitalShardKey.class;
+        Integer target = null;
+        for (int i = 0; i < arguments.length; i++) {
+            for (Annotation annotation : annotations[i]) {
+                if (!key.isInstance(annotation)) {
+                    continue;
+                }
+                for (int id : ids(arguments[i])) {
+                    int shard = hospital ? shardDirectory.locateHospital(id) : shardDirectory.locatePatient(id);
+                    if (shard == ShardDirectory.UNKNOWN) {
+                        continue;
+                    }
+                    if (target != null && target != shard) {
+                        throw new RuntimeException(method.getName() + " spans shards " + target + " and " + shard);
+                    }
+                    target = shard;
+                }
+            }
+        }
+        return target;
+    }
+
+    private static List<Integer> ids(Object key) {
+        List<Integer> ids = new ArrayList<>();
+        if (key instanceof Collection<?> keys) {
+            keys.forEach(element -> ids.addAll(ids(element)));
+        } else if (key instanceof Integer id) {
+            ids.add(id);
+        } else if (key instanceof Hospital hospital && hospital.getId() != 0) {
+            ids.add(hospital.getId());
+        } else if (key instanceof Patient patient && patient.getId() != 0) {
+            ids.add(patient.getId());
+        }
+        return ids;
+    }
+
+    /**
+     * Runs the call on the given shard and remembers where the returned hospitals and patients are stored.
+     */
+    private Object proceed(ProceedingJoinPoint joinPoint, int shard) throws Throwable {
+        Integer previous = ShardContext.enter(shard);
+        try {
+            Object result = joinPoint.proceed();
+            recordLocations(result, shard);
+            return result;
+        } finally {
+            ShardContext.restore(previous);
+        }
+    }
+
+    private void recordLocations(Object value, int shard) {
+        if (value instanceof Collection<?> values) {
+            values.forEach(element -> recordLocations(element, shard));
+        } else if (value instanceof Hospital hospital && hospital.getId() != 0) {
+            shardDirectory.hospitalStored(hospital.getId(), shard);
+        } else if (value instanceof Patient patient && patient.getId() != 0) {
+            shardDirectory.patientStored(patient.getId(), shard);
+        }
+    }
+
+    /**
+     * Runs the call on all shards at once, the default shard on the calling thread, and merges the results.
+     */
+    private Object scatterGather(ProceedingJoinPoint joinPoint, Method method) throws Throwable {
+        List<CompletableFuture<Object>> others = new ArrayList<>();
+        for (int shard = 1; shard < shardDirectory.getShardCount(); shard++) {
+            int target = shard;
+            others.add(CompletableFuture.supplyAsync(() -> {
+                try {
+                    return proceed(joinPoint, target);
+                } catch (Throwable e) {
+                    throw new CompletionException(e);
+                }
+            }, executor));
+        }
+        List<Object> results = new ArrayList<>();
+        results.add(proceed(joinPoint, ShardRoutingDataSource.DEFAULT_SHARD));
+        try {
+            for (CompletableFuture<Object> result : others) {
+                results.add(result.join());
+            }
+        } catch (CompletionException e) {
+            throw e.getCause();
+        }
+        return gather(method, joinPoint.getArgs(), results);
+    }
+
+    @SuppressWarnings("unchecked")
+    private static Object gather(Method method, Object[] arguments, List<Object> results) {
+        Class<?> type = method.getReturnType();
+        results.removeIf(Objects::isNull);
+        if (List.class.isAssignableFrom(type)) {
+            List<Object> gathered = new ArrayList<>();
+            results.forEach(result -> gathered.addAll((Collection<Object>) result));
+            ScatterGather.Order order = method.getAnnotation(ScatterGather.class).order();
+            if (order == ScatterGather.Order.ID) {
+                gathered.sort(Comparator.comparingInt(ShardRoutingAspect::id));
+            } else if (order == ScatterGather.Order.NAME) {
+                gathered.sort(Comparator.comparing(ShardRoutingAspect::name,
+                        Comparator.nullsFirst(Comparator.naturalOrder())));
+            }
+            Integer limit = limit(method, arguments);
+            return limit != null && gathered.size() > limit ? new ArrayList<>(gathered.subList(0, limit)) : gathered;
+        }
+        if (Set.class.isAssignableFrom(type)) {
+            Set<Object> gathered = new LinkedHashSet<>();
+            results.forEach(result -> gathered.addAll((Collection<Object>) result));
+            return gathered;
+        }
+        if (Map.class.isAssignableFrom(type)) {
+            Map<Object, Object> gathered = new HashMap<>();
+            results.forEach(result -> ((Map<Object, Object>) result).forEach((key, value) ->
+                    gathered.merge(key, value, ShardRoutingAspect::mergeValues)));
+            return gathered;
+        }
+        if (type == long.class || type == Long.class) {
+            return results.stream().mapToLong(result -> (Long) result).sum();
+        }
+        if (type == int.class || type == Integer.class) {
+            return results.stream().mapToInt(result -> (Integer) result).sum();
+        }
+        if (type == boolean.class || type == Boolean.class) {
+            return results.stream().anyMatch(Boolean.TRUE::equals);
+        }
+        return results.isEmpty() ? null : results.get(0);
+    }
+
+    /**
+     * Returns the value of the {@link PageLimit} parameter, or null if the method has none.
+     */
+    private static Integer limit(Method method, Object[] arguments) {
+        Annotation[][] annotations = method.getParameterAnnotations();
+        for (int i = 0; i < arguments.length; i++) {
+            for (Annotation annotation : annotations[i]) {
+                if (annotation instanceof PageLimit) {
+                    return (Integer) arguments[i];
+                }
+            }
+        }
+        return null;
+    }
+
+    private static int id(Object value) {
+        if (value instanceof Patient patient) {
+            return patient.getId();
+        } else if (value instanceof Hospital hospital) {
+            return hospital.getId();
+        } else if (value instanceof PatientView patient) {
+            return patient.id();
+        } else if (value instanceof HospitalView hospital) {
+            return hospital.id();
+        } else if (value instanceof PatientRosterEntry patient) {
+            return patient.getId();
+        } else if (value instanceof HospitalName hospital) {
+            return hospital.getId();
+        }
+        throw new IllegalArgumentException("Cannot order " + value.getClass().getName() + " by ID");
+    }
+
+    private static String name(Object value) {
+        if (value instanceof HospitalName hospital) {
+            return hospital.getName();
+        } else if (value instanceof Hospital hospital) {
+            return hospital.getName();
+        }
+        throw new IllegalArgumentException("Cannot order " + value.getClass().getName() + " by name");
+    }
+
+    /**
+     * Merges the values of a key found on several shards: collections are combined, otherwise the first wins.
+     */
+    private static Object mergeValues(Object first, Object second) {
+        if (first instanceof Set<?> firstSet && second instanceof Collection<?> secondValues) {
+            Set<Object> merged = new LinkedHashSet<>(firstSet);
+            merged.addAll(secondValues);
+            return merged;
+        }
+        if (first instanceof Collection<?> firstValues && second instanceof Collection<?> secondValues) {
+            List<Object> merged = new ArrayList<>(firstValues);
+            merged.addAll(secondValues);
+            return merged;
+        }
+        return first;
+    }
+}
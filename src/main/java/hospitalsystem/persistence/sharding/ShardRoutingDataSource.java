@@ -0,0 +1,80 @@
+package hospitalsystem.persistence.sharding;
+
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.jdbc.datasource.lookup.AbstractRoutingDataSource;
+
+import javax.sql.DataSource;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.IntStream;
+
+/**
+ * Hands out connections of the shard set in the {@link ShardContext} of the calling thread, or of the default
+ * shard 0. The shard is resolved when a connection is acquired, i.e. when a transaction begins, so it has to be
+ * set before the transaction starts.
+ */
+
+public class ShardRoutingDataSource extends AbstractRoutingDataSource implements DisposableBean {
+    public static final int DEFAULT_SHARD = 0;
+
+    private final List<DataSource> shards;
+
+    public ShardRoutingDataSource(List<DataSource> shards) {
+        if (shards.isEmpty()) {
+            throw new IllegalArgumentException("At least one shard is required");
+        }
+        this.shards = List.copyOf(shards);
+        Map<Object, Object> targets = new HashMap<>();
+        for (int shard = 0; shard < shards.size(); shard++) {
+            targets.put(shard, shards.get(shard));
+        }
+        setTargetDataSources(targets);
+        setDefaultTargetDataSource(shards.get(DEFAULT_SHARD));
+        setLenientFallback(false);
+    }
+
+    @Override
+    protected Object determineCurrentLookupKey() {
+        return ShardContext.current();
+    }
+
+    public int getShardCount() {
+        return shards.size();
+    }
+
+    /**
+     * Returns the data source of a shard, bypassing the routing.
+     *
+     * @param shard the shard
+     * @return the data source of the shard
+     */
+
+    public DataSource getShard(int shard) {
+        return shards.get(shard);
+    }
+
+    /**
+     * Returns the shards of a data source, for work that has to visit all of them with
+     * {@link ShardContext#call(Integer, java.util.function.Supplier)}.
+     *
+     * @param dataSource the data source of the application
+     * @return all shards of a sharded data source, otherwise just the default shard
+     */
+
+    public static List<Integer> shards(DataSource dataSource) {
+        if (dataSource instanceof ShardRoutingDataSource routing) {
+            return IntStream.range(0, routing.getShardCount()).boxed().toList();
+        }
+        return List.of(DEFAULT_SHARD);
+    }
+
+    @Override
+    public void destroy() throws Exception {
+        for (DataSource shard : shards) {
+            if (shard instanceof AutoCloseable closeable) {
+                closeable.close();
+            }
+        }
+    }
+}
@@ -0,0 +1,73 @@
+package hospitalsystem.persistence.sharding;
+
+import jakarta.annotation.PostConstruct;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.util.List;
+
+/**
+ * Creates the schema of empty shards for local runs on embedded H2 databases. Hibernate only creates the schema on
+ * the default shard, so its DDL is copied from there with H2's {@code SCRIPT NODATA}. The sequences of shard n are
+ * restarted at n * {@link #ID_RANGE}, which keeps generated IDs unique across shards. Shards that already have
+ * tables are left alone; outside of H2 the shards are expected to be migrated like any other database.
+ * <p>
+ * Registrations are stored on the shard of their hospital, while the patient may be stored on another one, so the
+ * foreign key {@link #REGISTERED_PATIENT_KEY} is dropped on every shard.
+ */
+
+public class ShardSchemaInitializer {
+    private static final Logger log = LoggerFactory.getLogger(ShardSchemaInitializer.class);
+    public static final int ID_RANGE = 100_000_000;
+    public static final String REGISTERED_PATIENT_KEY = "fk_patient_hospitals_patient";
+
+    private final ShardRoutingDataSource dataSource;
+
+    public ShardSchemaInitializer(ShardRoutingDataSource dataSource) {
+        this.dataSource = dataSource;
+        if ((long) dataSource.getShardCount() * ID_RANGE > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("At most " + Integer.MAX_VALUE / ID_RANGE + " shards are supported");
+        }
+    }
+
+    @PostConstruct
+    void initialize() {
+        for (int shard = 0; shard < dataSource.getShardCount(); shard++) {
+            new JdbcTemplate(dataSource.getShard(shard)).execute("alter table if exists Patient_hospitals "
+                    + "drop constraint if exists " + REGISTERED_PATIENT_KEY);
+        }
+        List<String> script = null;
+        for (int shard = 1; shard < dataSource.getShardCount(); shard++) {
+            JdbcTemplate jdbcTemplate = new JdbcTemplate(dataSource.getShard(shard));
+            if (hasTables(jdbcTemplate)) {
+                continue;
+            }
+            if (script == null) {
+                script = new JdbcTemplate(dataSource.getShard(ShardRoutingDataSource.DEFAULT_SHARD))
+                        .queryForList("script nodata", String.class).stream()
+                        .filter(ShardSchemaInitializer::isSchemaStatement)
+                        .toList();
+            }
+            script.forEach(jdbcTemplate::execute);
+            for (String sequence : jdbcTemplate.queryForList("select sequence_name from information_schema.sequences "
+                    + "where sequence_schema = 'PUBLIC'", String.class)) {
+                jdbcTemplate.execute("alter sequence \"" + sequence + "\" restart with "
+                        + ((long) shard * ID_RANGE + 1));
+            }
+            log.info("Created the schema of shard {} with {} statements", shard, script.size());
+        }
+    }
+
+    private static boolean hasTables(JdbcTemplate jdbcTemplate) {
+        Integer tables = jdbcTemplate.queryForObject("select count(*) from information_schema.tables "
+                + "where table_schema = 'PUBLIC'", Integer.class);
+        return tables != null && tables > 0;
+    }
+
+    private static boolean isSchemaStatement(String statement) {
+        return statement.startsWith("CREATE SEQUENCE") || statement.startsWith("CREATE CACHED TABLE")
+                || statement.startsWith("CREATE MEMORY TABLE") || statement.startsWith("CREATE INDEX")
+                || statement.startsWith("CREATE UNIQUE INDEX") || statement.startsWith("ALTER TABLE");
+    }
+}
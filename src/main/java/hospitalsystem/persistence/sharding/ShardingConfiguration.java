@@ -0,0 +1,81 @@
+package hospitalsystem.persistence.sharding;
+
+import jakarta.persistence.EntityManagerFactory;
+import org.hibernate.cfg.AvailableSettings;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.autoconfigure.jdbc.DataSourceProperties;
+import org.springframework.boot.autoconfigure.orm.jpa.HibernatePropertiesCustomizer;
+import org.springframework.boot.jdbc.DataSourceBuilder;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Lazy;
+import org.springframework.context.annotation.Primary;
+
+import javax.sql.DataSource;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Partitions the data by hospital over the databases listed in hospital.sharding.urls, the first one being the
+ * default shard. A hospital and its registrations are stored on one shard, a patient and its diagnoses on the shard
+ * of the hospital it was created at; see {@link ShardRoutingAspect} for how service calls find it. Reads that
+ * list patients or hospitals gather the results of every shard; the roster of a hospital takes the registered
+ * patient IDs from its shard and the patients from theirs. Calls marked {@link SingleShard} cannot merge shards
+ * and fail unless the caller picks one.
+ * <p>
+ * The statistics, the search index, the outbox relay, the repair of current diagnoses, the export and the patient
+ * streams visit every shard, and the write-behind queue writes each batch on the shards it belongs to. Import and
+ * deduplication are not routed by a service call and read and write the default shard only.
+ */
+
+@Configuration
+@ConditionalOnProperty(name = "hospital.sharding.enabled", havingValue = "true")
+public class ShardingConfiguration {
+
+    @Value("${hospital.sharding.urls}")
+    private String[] urls;
+
+    @Bean
+    @Primary
+    public ShardRoutingDataSource dataSource(DataSourceProperties properties) {
+        List<DataSource> shards = new ArrayList<>();
+        for (String url : urls) {
+            shards.add(DataSourceBuilder.create()
+                    .url(url.trim())
+                    .username(properties.determineUsername())
+                    .password(properties.determinePassword())
+                    .build());
+        }
+        return new ShardRoutingDataSource(shards);
+    }
+
+    @Bean
+    public ShardDirectory shardDirectory(ShardRoutingDataSource dataSource) {
+        return new ShardDirectory(dataSource);
+    }
+
+    @Bean
+    public ShardRoutingAspect shardRoutingAspect(ShardDirectory shardDirectory) {
+        return new ShardRoutingAspect(shardDirectory);
+    }
+
+    /**
+     * Copies the schema once Hibernate has created it on the default shard, also with lazy initialization.
+     */
+    @Bean
+    @Lazy(false)
+    public ShardSchemaInitializer shardSchemaInitializer(ShardRoutingDataSource dataSource,
+                                                         EntityManagerFactory entityManagerFactory) {
+        return new ShardSchemaInitializer(dataSource);
+    }
+
+    /**
+     * The query cache keys results by query and parameters only, so results of different shards would mix.
+     * Entities and collections stay cached, their IDs are unique across shards.
+     */
+    @Bean
+    public HibernatePropertiesCustomizer shardingQueryCache() {
+        return properties -> properties.put(AvailableSettings.USE_QUERY_CACHE, false);
+    }
+}
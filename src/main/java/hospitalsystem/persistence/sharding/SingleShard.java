@@ -0,0 +1,19 @@
+package hospitalsystem.persistence.sharding;
+
+import java.lang.annotation.Documented;
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Marks a service call whose results cannot be merged across shards, e.g. a stream or an offset page. With
+ * sharding the caller has to pick the shard with {@link ShardContext#call}; called without a shard the call fails
+ * instead of returning the data of the default shard only.
+ */
+
+@Documented
+@Retention(RetentionPolicy.RUNTIME)
+@Target(ElementType.METHOD)
+public @interface SingleShard {
+}
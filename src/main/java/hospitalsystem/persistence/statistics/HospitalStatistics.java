@@ -0,0 +1,291 @@
+package hospitalsystem.persistence.statistics;
+
+import hospitalsystem.persistence.sharding.ShardContext;
+import hospitalsystem.persistence.sharding.ShardRoutingDataSource;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.core.annotation.Order;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+
+import java.time.Year;
+import java.util.Calendar;
+import java.util.Comparator;
+import java.util.Date;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Aggregate statistics for dashboards: patients per hospital, patients registered at more than one hospital, and
+ * the distributions of sex, age and current diagnosis.
+ * <p>
+ * The counters are built once with SQL aggregates, see {@link #rebuild()}, and afterwards updated incrementally
+ * from committed changes: patient inserts, updates and deletes through {@link PatientStatisticsIntegrator},
+ * registrations through the registration repository and materialized diagnoses through the partial update
+ * repository. Reads never touch the database. The counters are {@link LongAdder}s, so concurrent updates of the
+ * same hospital do not contend.
+ */
+
+@Component
+public class HospitalStatistics {
+    private static final Logger log = LoggerFactory.getLogger(HospitalStatistics.class);
+    private static final String UNKNOWN = "unknown";
+    private static final int UNKNOWN_YEAR = Integer.MIN_VALUE;
+    private static final int AGE_BUCKET_YEARS = 10;
+    private static final int OLDEST_AGE_BUCKET = 90;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    private volatile Counters counters = new Counters();
+
+    private static final class Counters {
+        private final LongAdder patients = new LongAdder();
+        private final LongAdder sharedPatients = new LongAdder();
+        private final Map<Integer, LongAdder> patientsByHospital = new ConcurrentHashMap<>();
+        private final Map<Integer, Integer> hospitalsByPatient = new ConcurrentHashMap<>();
+        private final Map<String, LongAdder> patientsBySex = new ConcurrentHashMap<>();
+        private final Map<Integer, LongAdder> patientsByBirthYear = new ConcurrentHashMap<>();
+        private final Map<String, LongAdder> patientsByDiagnosis = new ConcurrentHashMap<>();
+    }
+
+    @Order(1)
+    @EventListener(ApplicationReadyEvent.class)
+    public void build() {
+        long start = System.nanoTime();
+        rebuild();
+        log.info("Built statistics of {} patients in {} ms", getPatientCount(),
+                (System.nanoTime() - start) / 1_000_000);
+    }
+
+    /**
+     * Recomputes all counters from the database with one aggregate query per statistic and shard. Changes committed
+     * while the queries run may be missing from or counted twice in the result.
+     */
+
+    public void rebuild() {
+        Counters rebuilt = new Counters();
+        for (int shard : ShardRoutingDataSource.shards(jdbcTemplate.getDataSource())) {
+            ShardContext.call(shard, () -> {
+                count(rebuilt);
+                return null;
+            });
+        }
+        rebuilt.hospitalsByPatient.values().stream()
+                .filter(hospitals -> hospitals > 1)
+                .forEach(hospitals -> rebuilt.sharedPatients.increment());
+        counters = rebuilt;
+    }
+
+    /**
+     * Adds the aggregates of the current shard. A patient can be registered at hospitals of several shards, so
+     * the registrations per patient are summed up over all shards before the shared patients are counted.
+     */
+    private void count(Counters rebuilt) {
+        jdbcTemplate.query("select count(*) from Patients", resultSet -> {
+            rebuilt.patients.add(resultSet.getLong(1));
+        });
+        jdbcTemplate.query("select sex, count(*) from Patients group by sex", resultSet -> {
+            add(rebuilt.patientsBySex, sexKey(resultSet.getString(1)), resultSet.getLong(2));
+        });
+        jdbcTemplate.query("select extract(year from date_of_birth), count(*) from Patients "
+                + "group by extract(year from date_of_birth)", resultSet -> {
+            int year = resultSet.getInt(1);
+            add(rebuilt.patientsByBirthYear, resultSet.wasNull() ? UNKNOWN_YEAR : year, resultSet.getLong(2));
+        });
+        jdbcTemplate.query("select diagnosis, count(*) from Patients where diagnosis is not null group by diagnosis",
+                resultSet -> {
+                    add(rebuilt.patientsByDiagnosis, resultSet.getString(1), resultSet.getLong(2));
+                });
+        jdbcTemplate.query("select hospital_id, count(*) from Patient_hospitals group by hospital_id", resultSet -> {
+            add(rebuilt.patientsByHospital, resultSet.getInt(1), resultSet.getLong(2));
+        });
+        jdbcTemplate.query("select patient_id, count(*) from Patient_hospitals group by patient_id", resultSet -> {
+            rebuilt.hospitalsByPatient.merge(resultSet.getInt(1), resultSet.getInt(2), Integer::sum);
+        });
+    }
+
+    void patientAdded(String sex, Date dateOfBirth, String diagnosis) {
+        Counters current = counters;
+        current.patients.increment();
+        add(current.patientsBySex, sexKey(sex), 1);
+        add(current.patientsByBirthYear, birthYear(dateOfBirth), 1);
+        if (diagnosis != null) {
+            add(current.patientsByDiagnosis, diagnosis, 1);
+        }
+    }
+
+    void patientRemoved(String sex, Date dateOfBirth, String diagnosis) {
+        Counters current = counters;
+        current.patients.decrement();
+        add(current.patientsBySex, sexKey(sex), -1);
+        add(current.patientsByBirthYear, birthYear(dateOfBirth), -1);
+        if (diagnosis != null) {
+            add(current.patientsByDiagnosis, diagnosis, -1);
+        }
+    }
+
+    void patientChanged(String oldSex, Date oldDateOfBirth, String oldDiagnosis, String sex, Date dateOfBirth,
+                        String diagnosis) {
+        patientRemoved(oldSex, oldDateOfBirth, oldDiagnosis);
+        patientAdded(sex, dateOfBirth, diagnosis);
+    }
+
+    /**
+     * Records a committed change of the current diagnosis of a patient.
+     *
+     * @param oldDiagnosis the previous diagnosis, or null
+     * @param diagnosis    the new diagnosis, or null
+     */
+
+    public void diagnosisChanged(String oldDiagnosis, String diagnosis) {
+        Counters current = counters;
+        if (oldDiagnosis != null) {
+            add(current.patientsByDiagnosis, oldDiagnosis, -1);
+        }
+        if (diagnosis != null) {
+            add(current.patientsByDiagnosis, diagnosis, 1);
+        }
+    }
+
+    /**
+     * Records a committed new registration.
+     *
+     * @param patientId  the unique ID of the patient
+     * @param hospitalId the unique ID of the hospital
+     */
+
+    public void registered(int patientId, int hospitalId) {
+        Counters current = counters;
+        add(current.patientsByHospital, hospitalId, 1);
+        if (current.hospitalsByPatient.merge(patientId, 1, Integer::sum) == 2) {
+            current.sharedPatients.increment();
+        }
+    }
+
+    /**
+     * Records a committed removal of a registration.
+     *
+     * @param patientId  the unique ID of the patient
+     * @param hospitalId the unique ID of the hospital
+     */
+
+    public void unregistered(int patientId, int hospitalId) {
+        Counters current = counters;
+        add(current.patientsByHospital, hospitalId, -1);
+        Integer hospitals = current.hospitalsByPatient.computeIfPresent(patientId,
+                (id, count) -> count == 1 ? null : count - 1);
+        if (hospitals != null && hospitals == 1) {
+            current.sharedPatients.decrement();
+        }
+    }
+
+    public long getPatientCount() {
+        return counters.patients.sum();
+    }
+
+    public long getPatientCount(int hospitalId) {
+        LongAdder patients = counters.patientsByHospital.get(hospitalId);
+        return patients == null ? 0 : patients.sum();
+    }
+
+    /**
+     * Returns the number of patients that are registered at more than one hospital.
+     */
+
+    public long getSharedPatientCount() {
+        return counters.sharedPatients.sum();
+    }
+
+    public Map<Integer, Long> getPatientsByHospital() {
+        return sums(counters.patientsByHospital, Comparator.naturalOrder());
+    }
+
+    public Map<String, Long> getSexDistribution() {
+        return sums(counters.patientsBySex, Comparator.naturalOrder());
+    }
+
+    /**
+     * Returns the number of patients per current diagnosis, most frequent first.
+     */
+
+    public Map<String, Long> getDiagnosisFrequency() {
+        Map<String, Long> sums = sums(counters.patientsByDiagnosis, Comparator.naturalOrder());
+        Map<String, Long> frequency = new LinkedHashMap<>();
+        sums.entrySet().stream()
+                .sorted(Map.Entry.<String, Long>comparingByValue().reversed())
+                .forEach(entry -> frequency.put(entry.getKey(), entry.getValue()));
+        return frequency;
+    }
+
+    /**
+     * Returns the number of patients per age bracket of ten years, e.g. "30-39", up to "90+". The age is the one
+     * reached in the current calendar year.
+     */
+
+    public Map<String, Long> getAgeDistribution() {
+        int currentYear = Year.now().getValue();
+        Map<Integer, Long> byBucket = new TreeMap<>();
+        long unknown = 0;
+        for (Map.Entry<Integer, LongAdder> entry : counters.patientsByBirthYear.entrySet()) {
+            long patients = entry.getValue().sum();
+            if (entry.getKey() == UNKNOWN_YEAR) {
+                unknown += patients;
+            } else if (patients != 0) {
+                int age = Math.max(0, currentYear - entry.getKey());
+                byBucket.merge(Math.min(age / AGE_BUCKET_YEARS * AGE_BUCKET_YEARS, OLDEST_AGE_BUCKET), patients,
+                        Long::sum);
+            }
+        }
+        Map<String, Long> distribution = new LinkedHashMap<>();
+        byBucket.forEach((bucket, patients) -> distribution.put(bucket == OLDEST_AGE_BUCKET
+                ? bucket + "+" : bucket + "-" + (bucket + AGE_BUCKET_YEARS - 1), patients));
+        if (unknown != 0) {
+            distribution.put(UNKNOWN, unknown);
+        }
+        return distribution;
+    }
+
+    /**
+     * Returns all statistics at once.
+     */
+
+    public StatisticsSnapshot snapshot() {
+        return new StatisticsSnapshot(getPatientCount(), getSharedPatientCount(), getPatientsByHospital(),
+                getSexDistribution(), getAgeDistribution(), getDiagnosisFrequency());
+    }
+
+    private static <K> void add(Map<K, LongAdder> counters, K key, long delta) {
+        counters.computeIfAbsent(key, k -> new LongAdder()).add(delta);
+    }
+
+    private static <K> Map<K, Long> sums(Map<K, LongAdder> counters, Comparator<K> order) {
+        Map<K, Long> sums = new TreeMap<>(order);
+        counters.forEach((key, counter) -> {
+            long sum = counter.sum();
+            if (sum != 0) {
+                sums.put(key, sum);
+            }
+        });
+        return sums;
+    }
+
+    private static String sexKey(String sex) {
+        return sex == null || sex.isBlank() ? UNKNOWN : sex;
+    }
+
+    private static int birthYear(Date dateOfBirth) {
+        if (dateOfBirth == null) {
+            return UNKNOWN_YEAR;
+        }
+        Calendar calendar = Calendar.getInstance();
+        calendar.setTime(dateOfBirth);
+        return calendar.get(Calendar.YEAR);
+    }
+}
@@ -0,0 +1,175 @@
+package hospitalsystem.persistence.statistics;
+
+import hospitalsystem.persistence.entity.Hospital;
+import hospitalsystem.persistence.entity.Patient;
+import hospitalsystem.persistence.support.AfterCommit;
+import org.hibernate.boot.Metadata;
+import org.hibernate.boot.spi.BootstrapContext;
+import org.hibernate.engine.spi.SessionFactoryImplementor;
+import org.hibernate.event.service.spi.EventListenerRegistry;
+import org.hibernate.event.spi.EventType;
+import org.hibernate.event.spi.PostCollectionRecreateEvent;
+import org.hibernate.event.spi.PostCollectionRecreateEventListener;
+import org.hibernate.event.spi.PostCollectionUpdateEvent;
+import org.hibernate.event.spi.PostCollectionUpdateEventListener;
+import org.hibernate.event.spi.PostDeleteEvent;
+import org.hibernate.event.spi.PostDeleteEventListener;
+import org.hibernate.event.spi.PostInsertEvent;
+import org.hibernate.event.spi.PostInsertEventListener;
+import org.hibernate.event.spi.PostUpdateEvent;
+import org.hibernate.event.spi.PostUpdateEventListener;
+import org.hibernate.integrator.spi.Integrator;
+import org.hibernate.persister.entity.EntityPersister;
+import org.hibernate.service.spi.SessionFactoryServiceRegistry;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import java.util.Collection;
+import java.util.Date;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Feeds {@link HospitalStatistics} with the patients and registrations written through Hibernate. Unlike a JPA
+ * entity listener, the update event carries the previous state, so a changed sex or diagnosis can be moved from
+ * one counter to the other. Changes are applied once the transaction commits. Registrations and diagnoses written
+ * with JDBC bypass these events and are reported by the repositories that write them.
+ */
+
+@Component
+public class PatientStatisticsIntegrator implements Integrator {
+
+    @Autowired
+    private HospitalStatistics hospitalStatistics;
+
+    @Override
+    public void integrate(Metadata metadata, BootstrapContext bootstrapContext,
+                          SessionFactoryImplementor sessionFactory) {
+        EventListenerRegistry registry = sessionFactory.getServiceRegistry().getService(EventListenerRegistry.class);
+        Listener listener = new Listener();
+        registry.appendListeners(EventType.POST_INSERT, listener);
+        registry.appendListeners(EventType.POST_UPDATE, listener);
+        registry.appendListeners(EventType.POST_DELETE, listener);
+        registry.appendListeners(EventType.POST_COLLECTION_RECREATE, listener);
+        registry.appendListeners(EventType.POST_COLLECTION_UPDATE, listener);
+    }
+
+    @Override
+    public void disintegrate(SessionFactoryImplementor sessionFactory, SessionFactoryServiceRegistry serviceRegistry) {
+    }
+
+    /**
+     * Reads the hospital IDs of a collection or of its snapshot, which is a map for sets.
+     */
+    private static Set<Integer> hospitalIds(Object elements) {
+        Collection<?> hospitals;
+        if (elements instanceof Map<?, ?> snapshot) {
+            hospitals = snapshot.keySet();
+        } else if (elements instanceof Collection<?> collection) {
+            hospitals = collection;
+        } else {
+            hospitals = List.of();
+        }
+        Set<Integer> ids = new HashSet<>();
+        for (Object hospital : hospitals) {
+            if (hospital instanceof Hospital registered) {
+                ids.add(registered.getId());
+            }
+        }
+        return ids;
+    }
+
+    /**
+     * The statistical attributes of a patient, copied out of a Hibernate state array.
+     */
+    private record Attributes(String sex, Date dateOfBirth, String diagnosis) {
+
+        static Attributes of(EntityPersister persister, Object[] state) {
+            String[] names = persister.getPropertyNames();
+            String sex = null;
+            Date dateOfBirth = null;
+            String diagnosis = null;
+            for (int i = 0; i < names.length; i++) {
+                switch (names[i]) {
+                    case "sex" -> sex = (String) state[i];
+                    case "dateOfBirth" -> dateOfBirth = (Date) state[i];
+                    case "diagnosis" -> diagnosis = (String) state[i];
+                    default -> {
+                    }
+                }
+            }
+            return new Attributes(sex, dateOfBirth, diagnosis);
+        }
+    }
+
+    private final class Listener implements PostInsertEventListener, PostUpdateEventListener,
+            PostDeleteEventListener, PostCollectionRecreateEventListener, PostCollectionUpdateEventListener {
+
+        @Override
+        public void onPostInsert(PostInsertEvent event) {
+            if (event.getEntity() instanceof Patient) {
+                Attributes patient = Attributes.of(event.getPersister(), event.getState());
+                AfterCommit.run(() -> hospitalStatistics.patientAdded(patient.sex(), patient.dateOfBirth(),
+                        patient.diagnosis()));
+            }
+        }
+
+        @Override
+        public void onPostUpdate(PostUpdateEvent event) {
+            // without the previous state, e.g. after merging a detached patient, the change cannot be attributed
+            if (!(event.getEntity() instanceof Patient) || event.getOldState() == null) {
+                return;
+            }
+            Attributes before = Attributes.of(event.getPersister(), event.getOldState());
+            Attributes after = Attributes.of(event.getPersister(), event.getState());
+            if (!before.equals(after)) {
+                AfterCommit.run(() -> hospitalStatistics.patientChanged(before.sex(), before.dateOfBirth(),
+                        before.diagnosis(), after.sex(), after.dateOfBirth(), after.diagnosis()));
+            }
+        }
+
+        @Override
+        public void onPostDelete(PostDeleteEvent event) {
+            if (event.getEntity() instanceof Patient) {
+                Attributes patient = Attributes.of(event.getPersister(), event.getDeletedState());
+                AfterCommit.run(() -> hospitalStatistics.patientRemoved(patient.sex(), patient.dateOfBirth(),
+                        patient.diagnosis()));
+            }
+        }
+
+        @Override
+        public void onPostRecreateCollection(PostCollectionRecreateEvent event) {
+            if (event.getAffectedOwnerOrNull() instanceof Patient patient) {
+                int patientId = patient.getId();
+                Set<Integer> hospitalIds = hospitalIds(event.getCollection());
+                AfterCommit.run(() -> hospitalIds.forEach(id -> hospitalStatistics.registered(patientId, id)));
+            }
+        }
+
+        @Override
+        public void onPostUpdateCollection(PostCollectionUpdateEvent event) {
+            if (!(event.getAffectedOwnerOrNull() instanceof Patient patient)) {
+                return;
+            }
+            int patientId = patient.getId();
+            Set<Integer> before = hospitalIds(event.getCollection().getStoredSnapshot());
+            Set<Integer> after = hospitalIds(event.getCollection());
+            Set<Integer> added = new HashSet<>(after);
+            added.removeAll(before);
+            before.removeAll(after);
+            if (!added.isEmpty() || !before.isEmpty()) {
+                AfterCommit.run(() -> {
+                    added.forEach(id -> hospitalStatistics.registered(patientId, id));
+                    before.forEach(id -> hospitalStatistics.unregistered(patientId, id));
+                });
+            }
+        }
+
+        @Override
+        public boolean requiresPostCommitHandling(EntityPersister persister) {
+            return false;
+        }
+    }
+}
@@ -0,0 +1,19 @@
+package hospitalsystem.persistence.statistics;
+
+import java.util.Map;
+
+/**
+ * All aggregate statistics at one point in time.
+ *
+ * @param patients           the number of patients
+ * @param sharedPatients     the number of patients registered at more than one hospital
+ * @param patientsByHospital the number of registered patients per hospital ID
+ * @param sexDistribution    the number of patients per sex
+ * @param ageDistribution    the number of patients per age bracket
+ * @param diagnosisFrequency the number of patients per current diagnosis, most frequent first
+ */
+
+public record StatisticsSnapshot(long patients, long sharedPatients, Map<Integer, Long> patientsByHospital,
+                                 Map<String, Long> sexDistribution, Map<String, Long> ageDistribution,
+                                 Map<String, Long> diagnosisFrequency) {
+}
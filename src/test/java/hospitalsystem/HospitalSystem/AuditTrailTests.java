@@ -0,0 +1,115 @@
+package hospitalsystem.HospitalSystem;
+
+import hospitalsystem.persistence.HospitalSystemApplication;
+import hospitalsystem.persistence.audit.AuditTrail;
+import hospitalsystem.persistence.audit.AuditedChange;
+import hospitalsystem.persistence.audit.AuditedEntity;
+import hospitalsystem.persistence.audit.AuditedState;
+import hospitalsystem.persistence.entity.Hospital;
+import hospitalsystem.persistence.entity.Patient;
+import hospitalsystem.persistence.outbox.ChangeEventRelay;
+import hospitalsystem.persistence.outbox.ChangeType;
+import hospitalsystem.persistence.service.HospitalService;
+import hospitalsystem.persistence.service.PatientService;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.context.DynamicPropertyRegistry;
+import org.springframework.test.context.DynamicPropertySource;
+
+import java.nio.file.Path;
+import java.time.Instant;
+import java.util.Date;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@SpringBootTest(classes = HospitalSystemApplication.class, properties = {
+		"spring.datasource.url=jdbc:h2:mem:audit",
+		"hospital.audit.enabled=true",
+		"hospital.audit.compaction-interval=1h"
+})
+class AuditTrailTests {
+
+	@TempDir
+	static Path directory;
+
+	@DynamicPropertySource
+	static void auditDirectory(DynamicPropertyRegistry registry) {
+		registry.add("hospital.audit.directory", directory::toString);
+	}
+
+	@Autowired
+	private AuditTrail auditTrail;
+	@Autowired
+	private ChangeEventRelay changeEventRelay;
+	@Autowired
+	private PatientService patientService;
+	@Autowired
+	private HospitalService hospitalService;
+
+	@Test
+	void testPatientAsOf() throws InterruptedException {
+		Instant beforeCreation = pause();
+		Patient patient = patientService.createPatient("Max", "Audit", new Date(), "max.audit@tum.de");
+		Instant created = pause();
+		patientService.updatePatientById(patient.getId(), "Max", "Audit", "max.audit@lmu.de");
+		Instant moved = pause();
+		patientService.addDiagnosisById(patient.getId(), "Audit Flu");
+		Instant diagnosed = pause();
+		changeEventRelay.relay();
+		auditTrail.compact();
+		assertTrue(auditTrail.getSegmentCount() > 0);
+
+		// the deletion is journaled, but not compacted yet
+		patientService.deletePatientById(patient.getId());
+		changeEventRelay.relay();
+
+		assertNull(auditTrail.findAsOf(AuditedEntity.PATIENT, patient.getId(), beforeCreation));
+		AuditedState state = auditTrail.findAsOf(AuditedEntity.PATIENT, patient.getId(), created);
+		assertEquals("max.audit@tum.de", state.properties().get("email").asText());
+		assertEquals("Max", state.properties().get("firstName").asText());
+		state = auditTrail.findAsOf(AuditedEntity.PATIENT, patient.getId(), moved);
+		assertEquals("max.audit@lmu.de", state.properties().get("email").asText());
+		assertFalse(state.properties().has("diagnosis"));
+		state = auditTrail.findAsOf(AuditedEntity.PATIENT, patient.getId(), diagnosed);
+		assertEquals("Audit Flu", state.properties().get("diagnosis").asText());
+		assertEquals("max.audit@lmu.de", state.properties().get("email").asText());
+		assertNull(auditTrail.findAsOf(AuditedEntity.PATIENT, patient.getId(), Instant.now()));
+
+		List<AuditedChange> history = auditTrail.findHistory(AuditedEntity.PATIENT, patient.getId());
+		assertEquals(List.of(ChangeType.PATIENT_CREATED, ChangeType.PATIENT_UPDATED, ChangeType.DIAGNOSIS_ADDED,
+				ChangeType.PATIENT_DELETED), history.stream().map(AuditedChange::type).toList());
+		assertEquals("max.audit@tum.de", history.get(1).before().get("email").asText());
+		assertEquals("max.audit@lmu.de", history.get(1).after().get("email").asText());
+		assertEquals(1, history.get(1).after().size(), "updates only record the changed properties");
+		assertTrue(history.get(3).after().isEmpty());
+	}
+
+	@Test
+	void testHospitalHistorySpansSegments() throws InterruptedException {
+		Hospital hospital = hospitalService.createHospital("TUM Klinikum", "Ismaninger Straße 22", "123-456-789");
+		changeEventRelay.relay();
+		auditTrail.compact();
+		Instant opened = pause();
+		hospitalService.updateHospitalById(hospital.getId(), "TUM Klinikum rechts der Isar", "Ismaninger Straße 22",
+				"987-654-321");
+		changeEventRelay.relay();
+		auditTrail.compact();
+
+		AuditedState state = auditTrail.findAsOf(AuditedEntity.HOSPITAL, hospital.getId(), opened);
+		assertEquals("TUM Klinikum", state.properties().get("name").asText());
+		state = auditTrail.findAsOf(AuditedEntity.HOSPITAL, hospital.getId(), Instant.now());
+		assertEquals("TUM Klinikum rechts der Isar", state.properties().get("name").asText());
+		assertEquals("Ismaninger Straße 22", state.properties().get("address").asText());
+		assertEquals(2, auditTrail.findHistory(AuditedEntity.HOSPITAL, hospital.getId()).size());
+	}
+
+	private static Instant pause() throws InterruptedException {
+		Thread.sleep(5);
+		Instant now = Instant.now();
+		Thread.sleep(5);
+		return now;
+	}
+}
@@ -0,0 +1,142 @@
+package hospitalsystem.HospitalSystem;
+
+import hospitalsystem.persistence.HospitalSystemApplication;
+import hospitalsystem.persistence.entity.Hospital;
+import hospitalsystem.persistence.entity.Patient;
+import hospitalsystem.persistence.service.DiagnosisHistoryService;
+import hospitalsystem.persistence.service.HospitalService;
+import hospitalsystem.persistence.service.PatientService;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.boot.WebApplicationType;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Runs concurrent createPatient + registerPatient traffic against the file-backed prod profile with
+ * different connection pool sizes.
+ */
+@Tag("load")
+class ConcurrentLoadTests {
+
+	private static final int CLIENTS = 32;
+	private static final int OPERATIONS_PER_CLIENT = 500;
+
+	@TempDir
+	Path dataDirectory;
+
+	@Test
+	void testThroughputScalesWithPoolSize() throws Exception {
+		double single = measureThroughput(1);
+		double pooled = measureThroughput(16);
+		assertTrue(pooled > single, () -> String.format(
+				"a larger pool should not serialize the clients: pool size 1: %.0f ops/sec, pool size 16: %.0f ops/sec",
+				single, pooled));
+	}
+
+	@Test
+	void testConcurrentPatientUpdates() throws Exception {
+		try (ConfigurableApplicationContext context = start("updates", 16)) {
+			PatientService patientService = context.getBean(PatientService.class);
+			List<Integer> patientIds = new ArrayList<>();
+			for (int i = 0; i < 4; i++) {
+				patientIds.add(patientService.createPatient("Ward" + i, "Tum", new Date(), "ward" + i + "@tum.de").getId());
+			}
+			AtomicInteger updates = new AtomicInteger();
+			AtomicInteger diagnoses = new AtomicInteger();
+
+			ExecutorService clients = Executors.newFixedThreadPool(CLIENTS);
+			List<Future<?>> results = new ArrayList<>();
+			long start = System.nanoTime();
+			for (int client = 0; client < CLIENTS; client++) {
+				int clientId = client;
+				results.add(clients.submit(() -> {
+					for (int i = 0; i < OPERATIONS_PER_CLIENT / 10; i++) {
+						int patientId = patientIds.get((clientId + i) % patientIds.size());
+						if (i % 2 == 0) {
+							patientService.updatePatientById(patientId, "Ward" + clientId, "Tum" + i, "ward.patient" + patientId + "@tum.de");
+							updates.incrementAndGet();
+						} else {
+							patientService.addDiagnosisById(patientId, "Diagnosis " + clientId + "/" + i);
+							diagnoses.incrementAndGet();
+						}
+					}
+				}));
+			}
+			for (Future<?> result : results) {
+				result.get();
+			}
+			double seconds = (System.nanoTime() - start) / 1e9;
+			clients.shutdown();
+			String rate = String.format("%.0f updates/sec, %.0f diagnoses/sec", updates.get() / seconds,
+					diagnoses.get() / seconds);
+			assertEquals(CLIENTS * (OPERATIONS_PER_CLIENT / 10), updates.get() + diagnoses.get(), rate);
+
+			DiagnosisHistoryService diagnosisHistoryService = context.getBean(DiagnosisHistoryService.class);
+			long versions = 0;
+			long entries = 0;
+			for (int patientId : patientIds) {
+				versions += patientService.findPatientById(patientId).getVersion();
+				entries += diagnosisHistoryService.findDiagnosisHistory(patientId).size();
+			}
+			assertEquals(updates.get(), versions,
+					"every successful update must have been applied exactly once (" + rate + ")");
+			assertEquals(diagnoses.get(), entries,
+					"every added diagnosis must have been recorded exactly once (" + rate + ")");
+		}
+	}
+
+	private ConfigurableApplicationContext start(String database, int poolSize) {
+		return new SpringApplicationBuilder(HospitalSystemApplication.class)
+				.web(WebApplicationType.NONE)
+				.profiles("prod")
+				.run("--spring.datasource.url=jdbc:h2:file:" + dataDirectory.resolve(database)
+								+ ";DB_CLOSE_ON_EXIT=FALSE;LOCK_TIMEOUT=10000",
+						"--spring.jpa.hibernate.ddl-auto=create",
+						"--spring.datasource.hikari.maximum-pool-size=" + poolSize,
+						"--spring.datasource.hikari.minimum-idle=" + poolSize,
+						"--spring.datasource.hikari.connection-timeout=60000",
+						"--hospital.optimistic-lock.max-attempts=50",
+						"--logging.level.root=WARN");
+	}
+
+	private double measureThroughput(int poolSize) throws Exception {
+		try (ConfigurableApplicationContext context = start("pool" + poolSize, poolSize)) {
+			PatientService patientService = context.getBean(PatientService.class);
+			Hospital hospital = context.getBean(HospitalService.class)
+					.createHospital("TUM Klinikum", "Ismaninger Straße 22", "123-456-789");
+			AtomicInteger sequence = new AtomicInteger();
+
+			ExecutorService clients = Executors.newFixedThreadPool(CLIENTS);
+			long start = System.nanoTime();
+			List<Future<?>> results = new ArrayList<>();
+			for (int client = 0; client < CLIENTS; client++) {
+				results.add(clients.submit(() -> {
+					for (int i = 0; i < OPERATIONS_PER_CLIENT; i++) {
+						int n = sequence.incrementAndGet();
+						Patient patient = patientService.createPatient("Load" + n, "Tum", new Date(), "load" + n + "@tum.de");
+						patientService.registerPatient(patient.getId(), hospital.getId());
+					}
+				}));
+			}
+			for (Future<?> result : results) {
+				result.get();
+			}
+			long nanos = System.nanoTime() - start;
+			clients.shutdown();
+			return CLIENTS * OPERATIONS_PER_CLIENT * 1e9 / nanos;
+		}
+	}
+}
@@ -1,16 +1,65 @@
 package hospitalsystem.HospitalSystem;
 
 import hospitalsystem.persistence.HospitalSystemApplication;
+import hospitalsystem.persistence.entity.DiagnosisEntry;
 import hospitalsystem.persistence.entity.Hospital;
 import hospitalsystem.persistence.entity.Patient;
+import hospitalsystem.persistence.metrics.CallStatistics;
+import hospitalsystem.persistence.outbox.ChangeEvent;
+import hospitalsystem.persistence.outbox.ChangeEventRelay;
+import hospitalsystem.persistence.outbox.ChangeType;
+import hospitalsystem.persistence.projection.HospitalView;
+import hospitalsystem.persistence.projection.PatientRosterEntry;
+import hospitalsystem.persistence.projection.PatientView;
+import hospitalsystem.persistence.search.PatientSearchHit;
 import hospitalsystem.persistence.repository.HospitalRepository;
+import hospitalsystem.persistence.repository.OutboxOffsetRepository;
 import hospitalsystem.persistence.repository.PatientRepository;
+import hospitalsystem.persistence.service.CacheRegionStats;
+import hospitalsystem.persistence.service.CacheStatisticsService;
+import hospitalsystem.persistence.service.CurrentDiagnosisMaterializer;
+import hospitalsystem.persistence.service.DeduplicationReport;
+import hospitalsystem.persistence.service.DiagnosisHistoryService;
+import hospitalsystem.persistence.service.ExportFormat;
+import hospitalsystem.persistence.service.ExportResult;
+import hospitalsystem.persistence.service.FileImportReport;
+import hospitalsystem.persistence.service.HospitalRosterService;
 import hospitalsystem.persistence.service.HospitalService;
+import hospitalsystem.persistence.service.ImportResult;
+import hospitalsystem.persistence.service.PatientDeduplicationService;
+import hospitalsystem.persistence.service.PatientExportFilter;
+import hospitalsystem.persistence.service.PatientExportService;
+import hospitalsystem.persistence.service.PatientFileImportService;
+import hospitalsystem.persistence.service.PatientImportService;
 import hospitalsystem.persistence.service.PatientService;
+import hospitalsystem.persistence.service.ReadModelService;
+import hospitalsystem.persistence.statistics.HospitalStatistics;
+import hospitalsystem.persistence.statistics.StatisticsSnapshot;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
 import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.orm.ObjectOptimisticLockingFailureException;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageRequest;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Calendar;
 import java.util.Date;
+import java.util.GregorianCalendar;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.IntStream;
 import static org.junit.jupiter.api.Assertions.*;
 
 @SpringBootTest(classes = HospitalSystemApplication.class)
@@ -20,15 +69,51 @@ class HospitalSystemApplicationTests {
 	private PatientService patientService;
 	@Autowired
 	private HospitalService hospitalService;
+	@Autowired
+	private PatientImportService patientImportService;
+	@Autowired
+	private CacheStatisticsService cacheStatisticsService;
+	@Autowired
+	private MeterRegistry meterRegistry;
+	@Autowired
+	private DiagnosisHistoryService diagnosisHistoryService;
+	@Autowired
+	private CurrentDiagnosisMaterializer currentDiagnosisMaterializer;
+	@Autowired
+	private PatientExportService patientExportService;
+	@Autowired
+	private PatientFileImportService patientFileImportService;
+	@Autowired
+	private ReadModelService readModelService;
+	@Autowired
+	private HospitalRosterService hospitalRosterService;
+	@Autowired
+	private HospitalStatistics hospitalStatistics;
+	@Autowired
+	private PatientDeduplicationService patientDeduplicationService;
+	@Autowired
+	private ChangeEventRelay changeEventRelay;
+	@Autowired
+	private OutboxOffsetRepository outboxOffsetRepository;
+
+	private static final AtomicInteger emails = new AtomicInteger();
+
+	/**
+	 * Patient emails are unique, so every test patient gets its own address.
+	 */
+	private static String email(String name) {
+		return name + "." + emails.incrementAndGet() + "@tum.de";
+	}
 
 	@Test
 	void testCreatePatient() {
-		Patient patient = patientService.createPatient("Max", "Tum", new Date(), "max.tum@tum.de");
+		String email = email("max.tum");
+		Patient patient = patientService.createPatient("Max", "Tum", new Date(), email);
 
 		assertNotNull(patient);
 		assertEquals("Max", patient.getFirstName());
 		assertEquals("Tum", patient.getLastName());
-		assertEquals("max.tum@tum.de", patient.getEmail());
+		assertEquals(email, patient.getEmail());
 	}
 
 	@Test
@@ -43,7 +128,7 @@ class HospitalSystemApplicationTests {
 
 	@Test
 	void testUpdatePatient() {
-		Patient patient = patientService.createPatient("Max", "Tum", new Date(), "max.tum@tum.de");
+		Patient patient = patientService.createPatient("Max", "Tum", new Date(), email("max.tum"));
 		patientService.updatePatientById(patient.getId(), "Max", "Tum","max.tum@gmail.com");
 		Patient updatedPatient = patientService.findPatientById(patient.getId());
 
@@ -65,7 +150,7 @@ class HospitalSystemApplicationTests {
 
 	@Test
 	void testDeletePatient() {
-		Patient patient = patientService.createPatient("Max", "Tum", new Date(), "max.tum@tum.de");
+		Patient patient = patientService.createPatient("Max", "Tum", new Date(), email("max.tum"));
 		int id = patient.getId();
 		patientService.deletePatientById(id);
 
@@ -83,7 +168,7 @@ class HospitalSystemApplicationTests {
 
 	@Test
 	void testRegisterPatient() {
-		Patient patient = patientService.createPatient("Max", "Tum", new Date(), "max.tum@tum.de");
+		Patient patient = patientService.createPatient("Max", "Tum", new Date(), email("max.tum"));
 		Hospital hospital = hospitalService.createHospital("TUM Klinikum", "Ismaninger Straße 22", "123-456-789");
 
 		patientService.registerPatient(patient, hospital);
@@ -95,8 +180,8 @@ class HospitalSystemApplicationTests {
 	@Test
 	void testPatientsOfHospital() {
 		Hospital hospital = hospitalService.createHospital("TUM Klinikum", "Ismaninger Straße 22", "123-456-789");
-		Patient patient1 = patientService.createPatient("Max", "Tum", new Date(), "max.tum@tum.de");
-		Patient patient2 = patientService.createPatient("Felix", "Mann", new Date(), "felix.mann@tum.de");
+		Patient patient1 = patientService.createPatient("Max", "Tum", new Date(), email("max.tum"));
+		Patient patient2 = patientService.createPatient("Felix", "Mann", new Date(), email("felix.mann"));
 
 		patientService.registerPatient(patient1, hospital);
 		patientService.registerPatient(patient2, hospital);
@@ -106,7 +191,7 @@ class HospitalSystemApplicationTests {
 
 	@Test
 	void testHospitalsOfPatient() {
-		Patient patient = patientService.createPatient("Max", "Tum", new Date(), "max.tum@tum.de");
+		Patient patient = patientService.createPatient("Max", "Tum", new Date(), email("max.tum"));
 		Hospital hospital1 = hospitalService.createHospital("TUM Klinikum", "Ismaninger Straße 22", "123-456-789");
 		Hospital hospital2 = hospitalService.createHospital("LMU Klinikum", "Garchinger Straße 33", "789-456-123");
 
@@ -119,8 +204,8 @@ class HospitalSystemApplicationTests {
 	@Test
 	void testPatientsInMultipleHospitals() {
 
-		Patient patient1 = patientService.createPatient("Max", "Tum", new Date(), "max.tum@tum.de");
-		Patient patient2 = patientService.createPatient("Felix", "Mann", new Date(), "felix.mann@tum.de");
+		Patient patient1 = patientService.createPatient("Max", "Tum", new Date(), email("max.tum"));
+		Patient patient2 = patientService.createPatient("Felix", "Mann", new Date(), email("felix.mann"));
 		Hospital hospital1 = hospitalService.createHospital("TUM Klinikum", "Ismaninger Straße 22", "123-456-789");
 		Hospital hospital2 = hospitalService.createHospital("LMU Klinikum", "Garchinger Straße 33", "789-456-123");
 
@@ -132,4 +217,460 @@ class HospitalSystemApplicationTests {
 		assertTrue(hospital2.getPatients().contains(patient1));
 		assertTrue(hospital2.getPatients().contains(patient2));
 	}
+
+	@Test
+	void testImportPatients() {
+		long before = patientService.findAllPatients().size();
+		ImportResult result = patientImportService.importPatients(IntStream.range(0, 1234)
+				.mapToObj(i -> new Patient("Import" + i, "Tum", new Date(), "import" + i + "@tum.de")));
+
+		assertEquals(1234, result.rows());
+		assertEquals(before + 1234, patientService.findAllPatients().size());
+	}
+
+	@Test
+	void testKeysetPagination() {
+		for (int i = 0; i < 5; i++) {
+			patientService.createPatient("Page" + i, "Tum", new Date(), "page" + i + "@tum.de");
+		}
+		List<Integer> ids = new ArrayList<>();
+		List<Patient> page = patientService.findPatientsAfter(0, 2);
+		while (!page.isEmpty()) {
+			assertTrue(page.size() <= 2);
+			page.forEach(patient -> ids.add(patient.getId()));
+			page = patientService.findPatientsAfter(ids.get(ids.size() - 1), 2);
+		}
+
+		assertEquals(patientService.findAllPatients().size(), ids.size());
+		assertEquals(ids.stream().sorted().toList(), ids);
+	}
+
+	@Test
+	void testForEachPatient() {
+		patientService.createPatient("Stream", "Tum", new Date(), "stream@tum.de");
+		AtomicInteger count = new AtomicInteger();
+		patientService.forEachPatient(patient -> count.incrementAndGet());
+
+		assertEquals(patientService.findAllPatients().size(), count.get());
+	}
+
+	@Test
+	void testRosterOfHospital() {
+		Hospital hospital = hospitalService.createHospital("TUM Klinikum", "Ismaninger Straße 22", "123-456-789");
+		Patient patient1 = patientService.createPatient("Max", "Tum", new Date(), email("max.tum"));
+		Patient patient2 = patientService.createPatient("Felix", "Mann", new Date(), email("felix.mann"));
+		Patient patient3 = patientService.createPatient("Anna", "Berg", new Date(), email("anna.berg"));
+
+		patientService.registerPatient(patient1, hospital);
+		patientService.registerPatient(patient2, hospital);
+
+		Page<PatientRosterEntry> roster = hospitalRosterService.findRosterByHospital(hospital.getId(),
+				PageRequest.of(0, 1));
+		assertEquals(2, roster.getTotalElements());
+		assertEquals(1, roster.getContent().size());
+		assertEquals(2, hospitalService.countPatientsByHospital(hospital.getId()));
+		assertTrue(hospitalService.isPatientRegistered(patient1.getId(), hospital.getId()));
+		assertFalse(hospitalService.isPatientRegistered(patient3.getId(), hospital.getId()));
+	}
+
+	@Test
+	void testRegisterPatientsInBatch() {
+		Hospital hospital = hospitalService.createHospital("TUM Klinikum", "Ismaninger Straße 22", "123-456-789");
+		List<Integer> patientIds = new ArrayList<>();
+		for (int i = 0; i < 10; i++) {
+			patientIds.add(patientService.createPatient("Batch" + i, "Tum", new Date(), "batch" + i + "@tum.de").getId());
+		}
+
+		CallStatistics.Snapshot before = CallStatistics.snapshot();
+		assertEquals(10, patientService.registerPatients(patientIds, hospital.getId()));
+		assertTrue(CallStatistics.snapshot().since(before).statements() < patientIds.size(),
+				"a JDBC batch counts as one statement");
+		assertEquals(0, patientService.registerPatients(patientIds, hospital.getId()));
+		assertEquals(10, hospitalService.countPatientsByHospital(hospital.getId()));
+		assertEquals(4, patientService.unregisterPatients(patientIds.subList(0, 4), hospital.getId()));
+		assertEquals(6, hospitalService.countPatientsByHospital(hospital.getId()));
+	}
+
+	@Test
+	void testUnregisterPatient() {
+		Patient patient = patientService.createPatient("Max", "Tum", new Date(), email("max.tum"));
+		Hospital hospital = hospitalService.createHospital("TUM Klinikum", "Ismaninger Straße 22", "123-456-789");
+
+		assertTrue(patientService.registerPatient(patient, hospital));
+		assertFalse(patientService.registerPatient(patient, hospital));
+		assertTrue(hospitalService.isPatientRegistered(patient.getId(), hospital.getId()));
+		assertTrue(patientService.unregisterPatient(patient, hospital));
+
+		assertFalse(hospital.getPatients().contains(patient));
+		assertFalse(patient.getHospitals().contains(hospital));
+		assertFalse(hospitalService.isPatientRegistered(patient.getId(), hospital.getId()));
+	}
+
+	@Test
+	void testHospitalCache() {
+		Hospital hospital = hospitalService.createHospital("TUM Klinikum", "Ismaninger Straße 22", "123-456-789");
+		hospitalService.findHospitalById(hospital.getId());
+		long hits = cacheStatisticsService.findRegionStatistics("hospitals").hits();
+		hospitalService.findHospitalById(hospital.getId());
+
+		CacheRegionStats statistics = cacheStatisticsService.findRegionStatistics("hospitals");
+		assertTrue(statistics.hits() > hits);
+		assertTrue(statistics.hitRate() > 0);
+
+		hospitalService.updateHospitalById(hospital.getId(), "TUM Klinikum", "Ismaninger Straße 22", "123-456-799");
+		assertEquals("123-456-799", hospitalService.findHospitalById(hospital.getId()).getPhone());
+	}
+
+	@Test
+	void testHospitalsOfPatients() {
+		Patient patient1 = patientService.createPatient("Max", "Tum", new Date(), email("max.tum"));
+		Patient patient2 = patientService.createPatient("Felix", "Mann", new Date(), email("felix.mann"));
+		Hospital hospital1 = hospitalService.createHospital("TUM Klinikum", "Ismaninger Straße 22", "123-456-789");
+		Hospital hospital2 = hospitalService.createHospital("LMU Klinikum", "Garchinger Straße 33", "789-456-123");
+
+		patientService.registerPatient(patient1, hospital1);
+		patientService.registerPatient(patient1, hospital2);
+		patientService.registerPatient(patient2, hospital2);
+
+		Map<Integer, Set<Hospital>> hospitals = patientService.listHospitalsByPatients(List.of(patient1.getId(), patient2.getId()));
+		assertEquals(2, hospitals.get(patient1.getId()).size());
+		assertEquals(1, hospitals.get(patient2.getId()).size());
+	}
+
+	@Test
+	void testDeleteHospitalKeepsPatients() {
+		Patient patient = patientService.createPatient("Max", "Tum", new Date(), email("max.tum"));
+		Hospital hospital1 = hospitalService.createHospital("TUM Klinikum", "Ismaninger Straße 22", "123-456-789");
+		Hospital hospital2 = hospitalService.createHospital("LMU Klinikum", "Garchinger Straße 33", "789-456-123");
+		patientService.registerPatient(patient, hospital1);
+		patientService.registerPatient(patient, hospital2);
+
+		hospitalService.deleteHospitalById(hospital1.getId());
+
+		assertNull(hospitalService.findHospitalById(hospital1.getId()));
+		assertNotNull(patientService.findPatientById(patient.getId()));
+		assertEquals(0, hospitalService.countPatientsByHospital(hospital1.getId()));
+		assertEquals(1, patientService.listHospitalsByPatients(List.of(patient.getId())).get(patient.getId()).size());
+
+		patientService.deletePatientById(patient.getId());
+		assertEquals(0, hospitalService.countPatientsByHospital(hospital2.getId()));
+	}
+
+	@Test
+	void testServiceMetrics() {
+		Hospital hospital = hospitalService.createHospital("TUM Klinikum", "Ismaninger Straße 22", "123-456-789");
+		hospitalService.countPatientsByHospital(hospital.getId());
+
+		Timer timer = meterRegistry.find("hospital.service.calls").tag("method", "countPatientsByHospital").timer();
+		assertNotNull(timer);
+		assertTrue(timer.count() > 0);
+		DistributionSummary statements = meterRegistry.find("hospital.service.sql.statements")
+				.tag("method", "countPatientsByHospital").summary();
+		assertNotNull(statements);
+		assertEquals(1, statements.max());
+	}
+
+	@Test
+	void testSearchPatients() {
+		Date dateOfBirth = new Date(0);
+		Patient patient = patientService.createPatient("Maximilian", "Searchable", dateOfBirth, email("max.search"));
+		patientService.createPatient("Felix", "Searchable", new Date(), email("felix.search"));
+
+		assertEquals(2, patientService.searchPatientsByLastName("Searcha", PageRequest.of(0, 10)).getNumberOfElements());
+		assertEquals(1, patientService.searchPatientsByName("Searchable", "Max", PageRequest.of(0, 10)).getNumberOfElements());
+		assertEquals(patient.getId(), patientService.findPatientByEmail(patient.getEmail()).getId());
+		assertEquals(1, patientService.searchPatientsByEmail("max.search", PageRequest.of(0, 10)).getNumberOfElements());
+		assertTrue(patientService.searchPatientsByDateOfBirth(dateOfBirth, dateOfBirth, PageRequest.of(0, 10)).getContent().stream()
+				.anyMatch(found -> found.getId() == patient.getId()));
+	}
+
+	@Test
+	void testEmailIsUnique() {
+		String email = email("max.unique");
+		patientService.createPatient("Max", "Tum", new Date(), email);
+
+		assertThrows(DataIntegrityViolationException.class, () -> patientService.createPatient("Max", "Tum", new Date(), email));
+	}
+
+	@Test
+	void testFuzzySearch() {
+		Patient patient = patientService.createPatient("Bartholomew", "Quackenbush", new Date(), email("bartholomew"));
+		patientService.addDiagnosisById(patient.getId(), "Pneumonia");
+
+		List<PatientSearchHit> hits = patientService.searchPatients("Bartolomew Quakenbush", 5);
+		assertFalse(hits.isEmpty());
+		assertEquals(patient.getId(), hits.get(0).patientId());
+		assertEquals(patient.getId(), patientService.searchPatients("pneumonia", 5).get(0).patientId());
+
+		// the diagnosis is not materialized yet, an update must not index the old one
+		patientService.updatePatientById(patient.getId(), "Bartholomew", "Quackenbush", email("bartholomew.new"));
+		assertEquals(patient.getId(), patientService.searchPatients("pneumonia", 5).get(0).patientId());
+
+		patientService.deletePatientById(patient.getId());
+		assertTrue(patientService.searchPatients("Quackenbush", 5).stream()
+				.noneMatch(hit -> hit.patientId() == patient.getId()));
+	}
+
+	@Test
+	void testOptimisticLocking() {
+		Patient patient = patientService.createPatient("Max", "Tum", new Date(), email("max.version"));
+		long version = patient.getVersion();
+		patientService.updatePatientById(patient.getId(), "Max", "Tum", email("max.version"));
+		patientService.addDiagnosisById(patient.getId(), "Flu");
+		currentDiagnosisMaterializer.flush();
+
+		Patient updated = patientService.findPatientById(patient.getId());
+		assertEquals(version + 1, updated.getVersion(), "materializing the diagnosis leaves the version alone");
+		assertEquals("Flu", updated.getDiagnosis());
+
+		patient.setFirstName("Stale");
+		assertThrows(ObjectOptimisticLockingFailureException.class, () -> patientService.savePatient(patient));
+	}
+
+	@Test
+	void testDiagnosisHistory() {
+		Patient patient = patientService.createPatient("Max", "Tum", new Date(), email("max.history"));
+		patientService.addDiagnosisById(patient.getId(), "Flu");
+		patientService.addDiagnosisById(patient.getId(), "Pneumonia");
+
+		List<DiagnosisEntry> history = diagnosisHistoryService.findDiagnosisHistory(patient.getId());
+		assertEquals(List.of("Flu", "Pneumonia"), history.stream().map(DiagnosisEntry::getDiagnosis).toList());
+		assertEquals("Pneumonia", diagnosisHistoryService.findLatestDiagnosis(patient.getId()));
+
+		currentDiagnosisMaterializer.flush();
+		Patient updated = patientService.findPatientById(patient.getId());
+		assertEquals("Pneumonia", updated.getDiagnosis());
+		assertEquals(history.get(1).getId(), updated.getDiagnosisEntryId());
+
+		assertThrows(RuntimeException.class, () -> patientService.addDiagnosisById(-1, "Flu"));
+	}
+
+	@Test
+	void testExportPatients() throws IOException {
+		Hospital hospital = hospitalService.createHospital("TUM Klinikum", "Ismaninger Straße 22", "123-456-789");
+		Hospital other = hospitalService.createHospital("LMU Klinikum", "Marchioninistraße 15", "987-654-321");
+		Patient max = patientService.createPatient("Max", "Tum, Jr.", new Date(), email("max.export"));
+		Patient anna = patientService.createPatient("Anna", "Tum", new Date(), email("anna.export"));
+		patientService.registerPatient(max.getId(), hospital.getId());
+		patientService.registerPatient(max.getId(), other.getId());
+		patientService.registerPatient(anna.getId(), hospital.getId());
+
+		ByteArrayOutputStream csv = new ByteArrayOutputStream();
+		ExportResult result = patientExportService.exportPatients(
+				new PatientExportFilter(hospital.getId(), null, null, true), ExportFormat.CSV, csv);
+		assertEquals(2, result.rows());
+		String[] lines = csv.toString(StandardCharsets.UTF_8).split("\r\n");
+		assertEquals(3, lines.length);
+		assertTrue(lines[0].startsWith("id,first_name,last_name,"));
+		assertTrue(lines[0].endsWith(",hospital_ids"));
+		assertTrue(lines[1].startsWith(max.getId() + ",Max,\"Tum, Jr.\","));
+		assertTrue(lines[1].endsWith("," + Math.min(hospital.getId(), other.getId()) + ";"
+				+ Math.max(hospital.getId(), other.getId())));
+
+		ByteArrayOutputStream ndjson = new ByteArrayOutputStream();
+		patientExportService.exportPatients(new PatientExportFilter(other.getId(), null, null, false),
+				ExportFormat.NDJSON, ndjson);
+		String json = ndjson.toString(StandardCharsets.UTF_8);
+		assertTrue(json.startsWith("{\"id\":" + max.getId() + ",\"firstName\":\"Max\",\"lastName\":\"Tum, Jr.\","));
+		assertTrue(json.endsWith("}\n"));
+		assertEquals(1, json.lines().count());
+
+		Calendar today = Calendar.getInstance();
+		today.set(Calendar.HOUR_OF_DAY, 0);
+		today.set(Calendar.MINUTE, 0);
+		today.set(Calendar.SECOND, 0);
+		today.set(Calendar.MILLISECOND, 0);
+		ExportResult bornToday = patientExportService.exportPatients(
+				new PatientExportFilter(hospital.getId(), today.getTime(), today.getTime(), false), ExportFormat.CSV,
+				new ByteArrayOutputStream());
+		assertEquals(2, bornToday.rows(), "bornTo includes the whole day");
+	}
+
+	@Test
+	void testImportPatientsFromFile(@TempDir Path directory) throws IOException {
+		Hospital hospital = hospitalService.createHospital("TUM Klinikum", "Ismaninger Straße 22", "123-456-789");
+		String max = email("max.file");
+		String anna = email("anna.file");
+		Path file = directory.resolve("patients.csv");
+		Files.writeString(file, String.join("\n",
+				"first_name,last_name,email,date_of_birth,sex,hospital_ids",
+				"Max,Tum,%s,1990-01-01,male,%d".formatted(max, hospital.getId()),
+				"Anna,\"Tum, Jr.\",%s,1985-12-24,female,".formatted(anna),
+				"Paul,Tum,not-an-email,1990-01-01,male,",
+				"Lena,Tum,%s,1990-13-01,female,".formatted(email("lena.file")),
+				"Finn,Tum,%s,1990-01-01,male,-1".formatted(email("finn.file")),
+				"Max,Tum,%s,1990-01-01,male,%d".formatted(max, hospital.getId()),
+				""));
+
+		FileImportReport report = patientFileImportService.importFile(file);
+		assertEquals(6, report.records());
+		assertEquals(2, report.imported());
+		assertEquals(1, report.skipped());
+		assertEquals(3, report.rejected());
+		assertEquals(1, report.registrations());
+		assertEquals(List.of(4L, 5L, 6L), report.errors().stream().map(error -> error.line()).toList());
+		assertEquals("Tum, Jr.", patientService.findPatientByEmail(anna).getLastName());
+
+		FileImportReport again = patientFileImportService.importFile(file);
+		assertEquals(0, again.imported());
+		assertEquals(3, again.skipped());
+		assertEquals(0, again.registrations());
+		assertEquals(1, hospitalService.countPatientsByHospital(hospital.getId()));
+	}
+
+	@Test
+	void testImportRejectsRecordWithStrayQuote(@TempDir Path directory) throws IOException {
+		StringBuilder csv = new StringBuilder("first_name,last_name,email,date_of_birth\n");
+		csv.append("Sean,O\"Brien,%s,1990-01-01\n".formatted(email("sean.quote")));
+		for (int i = 0; i < 2000; i++) {
+			csv.append("Max,Quote,%s,1990-01-01\n".formatted(email("max.quote" + i)));
+		}
+		Path file = directory.resolve("quote.csv");
+		Files.writeString(file, csv);
+
+		FileImportReport report = patientFileImportService.importFile(file);
+		assertEquals(2001, report.records());
+		assertEquals(2000, report.imported());
+		assertEquals(1, report.rejected());
+		assertEquals(2L, report.errors().get(0).line());
+	}
+
+	@Test
+	void testReadModels() {
+		Hospital hospital = hospitalService.createHospital("TUM Klinikum", "Ismaninger Straße 22", "123-456-789");
+		Patient max = patientService.createPatient("Max", "Tum", new Date(), email("max.view"));
+		Patient anna = patientService.createPatient("Anna", "Tum", new Date(), email("anna.view"));
+		patientService.registerPatient(max.getId(), hospital.getId());
+		patientService.registerPatient(anna.getId(), hospital.getId());
+
+		PatientView view = readModelService.findPatientView(max.getId());
+		assertEquals(max.getEmail(), view.email());
+		assertEquals("Tum", view.lastName());
+		assertNull(readModelService.findPatientView(-1));
+
+		assertEquals(List.of(max.getId(), anna.getId()), hospitalRosterService
+				.findPatientViewsByHospitalAfter(hospital.getId(), 0, 10).stream().map(PatientView::id).toList());
+		assertEquals(List.of(new HospitalView(hospital.getId(), "TUM Klinikum", "Ismaninger Straße 22", "123-456-789")),
+				readModelService.listHospitalViewsByPatient(max.getId()));
+		assertEquals(anna.getId(), readModelService.findPatientViewsAfter(max.getId(), 1).get(0).id());
+		assertEquals(anna.getId(), readModelService.findReadOnlyPatientsAfter(max.getId(), 1).get(0).getId());
+		assertTrue(readModelService.findHospitalNames().stream()
+				.anyMatch(name -> name.getId() == hospital.getId() && name.getName().equals("TUM Klinikum")));
+	}
+
+	@Test
+	void testHospitalStatistics() {
+		Hospital klinikum = hospitalService.createHospital("TUM Klinikum", "Ismaninger Straße 22", "123-456-789");
+		Hospital charite = hospitalService.createHospital("Charité", "Charitéplatz 1", "987-654-321");
+		long patients = hospitalStatistics.getPatientCount();
+		long sharedPatients = hospitalStatistics.getSharedPatientCount();
+
+		Patient max = patientService.createPatient("Max", "Tum", new Date(), email("max.statistics"));
+		Patient anna = patientService.createPatient("Anna", "Tum", new Date(), email("anna.statistics"));
+		patientService.registerPatient(max.getId(), klinikum.getId());
+		patientService.registerPatient(max.getId(), charite.getId());
+		patientService.registerPatients(List.of(max.getId(), anna.getId()), klinikum.getId());
+		assertEquals(patients + 2, hospitalStatistics.getPatientCount());
+		assertEquals(2, hospitalStatistics.getPatientCount(klinikum.getId()));
+		assertEquals(1, hospitalStatistics.getPatientCount(charite.getId()));
+		assertEquals(sharedPatients + 1, hospitalStatistics.getSharedPatientCount());
+
+		patientService.addDiagnosisById(max.getId(), "Statistics Flu");
+		currentDiagnosisMaterializer.flush();
+		assertEquals(1L, hospitalStatistics.getDiagnosisFrequency().get("Statistics Flu"));
+		patientService.addDiagnosisById(max.getId(), "Statistics Cold");
+		currentDiagnosisMaterializer.flush();
+		assertNull(hospitalStatistics.getDiagnosisFrequency().get("Statistics Flu"));
+		assertEquals(1L, hospitalStatistics.getDiagnosisFrequency().get("Statistics Cold"));
+
+		patientService.unregisterPatient(max.getId(), charite.getId());
+		assertEquals(0, hospitalStatistics.getPatientCount(charite.getId()));
+		assertEquals(sharedPatients, hospitalStatistics.getSharedPatientCount());
+		patientService.deletePatientById(anna.getId());
+		assertEquals(1, hospitalStatistics.getPatientCount(klinikum.getId()));
+		hospitalService.deleteHospitalById(klinikum.getId());
+		assertEquals(0, hospitalStatistics.getPatientCount(klinikum.getId()));
+		assertEquals(patients + 1, hospitalStatistics.getPatientCount());
+
+		// the incrementally maintained counters must match a rebuild from the database
+		StatisticsSnapshot incremental = hospitalStatistics.snapshot();
+		hospitalStatistics.rebuild();
+		assertEquals(hospitalStatistics.snapshot(), incremental);
+	}
+
+	@Test
+	void testDeduplicatePatients() {
+		Hospital klinikum = hospitalService.createHospital("TUM Klinikum", "Ismaninger Straße 22", "123-456-789");
+		Hospital charite = hospitalService.createHospital("Charité", "Charitéplatz 1", "987-654-321");
+		Date born = new GregorianCalendar(1961, Calendar.MARCH, 14).getTime();
+		Patient first = patientService.createPatient("Maximilian", "Müller-Lüdenscheidt", born, email("max.dedup"));
+		Patient second = patientService.createPatient("Maximillian", "Muller Ludenscheidt", born, email("m.dedup"));
+		Patient sister = patientService.createPatient("Anna", "Müller-Lüdenscheidt", born, email("anna.dedup"));
+		patientService.registerPatient(first.getId(), klinikum.getId());
+		patientService.registerPatient(second.getId(), charite.getId());
+		patientService.addDiagnosisById(second.getId(), "Dedup Flu");
+		currentDiagnosisMaterializer.flush();
+
+		DeduplicationReport report = patientDeduplicationService.deduplicate();
+		assertFalse(report.resumed());
+		assertTrue(report.merges().stream()
+				.anyMatch(merge -> merge.survivorId() == first.getId() && merge.duplicateId() == second.getId()));
+		assertNull(patientService.findPatientById(second.getId()));
+		assertNotNull(patientService.findPatientById(sister.getId()));
+		assertTrue(hospitalService.isPatientRegistered(first.getId(), klinikum.getId()));
+		assertTrue(hospitalService.isPatientRegistered(first.getId(), charite.getId()));
+		assertEquals("Dedup Flu", diagnosisHistoryService.findLatestDiagnosis(first.getId()));
+
+		DeduplicationReport again = patientDeduplicationService.deduplicate();
+		assertTrue(again.merges().stream().noneMatch(merge -> merge.survivorId() == first.getId()));
+	}
+
+	@Test
+	void testChangeEvents() {
+		changeEventRelay.relay();
+		long start = lastEventPosition(0);
+
+		Hospital hospital = hospitalService.createHospital("TUM Klinikum", "Ismaninger Straße 22", "123-456-789");
+		String email = email("max.events");
+		Patient patient = patientService.createPatient("Max", "Events", new Date(), email);
+		patientService.registerPatient(patient.getId(), hospital.getId());
+		patientService.addDiagnosisById(patient.getId(), "Event Flu");
+		patientService.updatePatientById(patient.getId(), "Maximilian", "Events", email);
+		patientService.deletePatientById(patient.getId());
+		hospitalService.deleteHospitalById(hospital.getId());
+		changeEventRelay.relay();
+
+		List<ChangeEvent> events = changeEventRelay.findEventsAfter(start, 1000).stream()
+				.filter(event -> event.type().name().startsWith("HOSPITAL")
+						? event.aggregateId() == hospital.getId() : event.aggregateId() == patient.getId())
+				.toList();
+		assertEquals(List.of(ChangeType.HOSPITAL_CREATED, ChangeType.PATIENT_CREATED, ChangeType.PATIENT_REGISTERED,
+				ChangeType.DIAGNOSIS_ADDED, ChangeType.PATIENT_UPDATED, ChangeType.PATIENT_DELETED,
+				ChangeType.HOSPITAL_DELETED), events.stream().map(ChangeEvent::type).toList());
+		assertEquals("{\"hospitalId\":" + hospital.getId() + "}", events.get(2).payload());
+		assertEquals("{\"diagnosis\":\"Event Flu\"}", events.get(3).payload());
+		// updates only carry the modified properties
+		assertEquals("{\"firstName\":\"Maximilian\"}", events.get(4).payload());
+		assertNull(events.get(5).payload());
+		for (int i = 1; i < events.size(); i++) {
+			assertTrue(events.get(i).position() > events.get(i - 1).position());
+		}
+
+		// a consumer resumes after the last position it processed
+		List<ChangeEvent> resumed = changeEventRelay.findEventsAfter(events.get(3).position(), 1000);
+		assertEquals(events.get(4).position(), resumed.stream()
+				.filter(event -> !event.type().name().startsWith("HOSPITAL") && event.aggregateId() == patient.getId())
+				.findFirst().orElseThrow().position());
+		assertTrue(outboxOffsetRepository.findById("application-events").orElseThrow().getPosition()
+				>= events.get(events.size() - 1).position());
+	}
+
+	private long lastEventPosition(long after) {
+		List<ChangeEvent> events = changeEventRelay.findEventsAfter(after, 1000);
+		while (!events.isEmpty()) {
+			after = events.get(events.size() - 1).position();
+			events = changeEventRelay.findEventsAfter(after, 1000);
+		}
+		return after;
+	}
 }
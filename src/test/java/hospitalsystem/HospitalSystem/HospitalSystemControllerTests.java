@@ -0,0 +1,107 @@
+package hospitalsystem.HospitalSystem;
+
+import com.jayway.jsonpath.JsonPath;
+import hospitalsystem.persistence.HospitalSystemApplication;
+import hospitalsystem.persistence.service.CurrentDiagnosisMaterializer;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.http.MediaType;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
+
+import static org.hamcrest.Matchers.startsWith;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.*;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.*;
+
+@SpringBootTest(classes = HospitalSystemApplication.class)
+@AutoConfigureMockMvc
+class HospitalSystemControllerTests {
+
+	@Autowired
+	private MockMvc mockMvc;
+	@Autowired
+	private CurrentDiagnosisMaterializer currentDiagnosisMaterializer;
+
+	@Test
+	void testPatientLifecycle() throws Exception {
+		String created = mockMvc.perform(post("/patients").contentType(MediaType.APPLICATION_JSON)
+						.content("{\"firstName\":\"Max\",\"lastName\":\"Rest\",\"dateOfBirth\":\"1990-01-01\",\"email\":\"max.rest@tum.de\"}"))
+				.andExpect(status().isCreated())
+				.andExpect(jsonPath("$.firstName").value("Max"))
+				.andReturn().getResponse().getContentAsString();
+		int id = JsonPath.read(created, "$.id");
+
+		mockMvc.perform(put("/patients/" + id + "/diagnosis").contentType(MediaType.APPLICATION_JSON)
+						.content("{\"diagnosis\":\"Flu\"}"))
+				.andExpect(status().isNoContent());
+		mockMvc.perform(get("/patients/" + id + "/diagnoses"))
+				.andExpect(status().isOk())
+				.andExpect(jsonPath("$[0].diagnosis").value("Flu"));
+		currentDiagnosisMaterializer.flush();
+		mockMvc.perform(get("/patients/" + id))
+				.andExpect(status().isOk())
+				.andExpect(jsonPath("$.diagnosis").value("Flu"))
+				.andExpect(jsonPath("$.hospitals").doesNotExist());
+
+		mockMvc.perform(delete("/patients/" + id)).andExpect(status().isNoContent());
+		mockMvc.perform(get("/patients/" + id)).andExpect(status().isNotFound());
+	}
+
+	@Test
+	void testHospitalRoster() throws Exception {
+		String hospital = mockMvc.perform(post("/hospitals").contentType(MediaType.APPLICATION_JSON)
+						.content("{\"name\":\"TUM Klinikum\",\"address\":\"Ismaninger Straße 22\",\"phone\":\"123-456-789\"}"))
+				.andExpect(status().isCreated())
+				.andReturn().getResponse().getContentAsString();
+		int hospitalId = JsonPath.read(hospital, "$.id");
+		String patient = mockMvc.perform(post("/patients").contentType(MediaType.APPLICATION_JSON)
+						.content("{\"firstName\":\"Felix\",\"lastName\":\"Rest\",\"dateOfBirth\":\"1990-01-01\",\"email\":\"felix.rest@tum.de\"}"))
+				.andReturn().getResponse().getContentAsString();
+		int patientId = JsonPath.read(patient, "$.id");
+
+		mockMvc.perform(put("/patients/" + patientId + "/hospitals/" + hospitalId))
+				.andExpect(status().isNoContent());
+		mockMvc.perform(put("/patients/0/hospitals/" + hospitalId)).andExpect(status().isNotFound());
+		mockMvc.perform(put("/patients/" + patientId + "/hospitals/0")).andExpect(status().isNotFound());
+		mockMvc.perform(delete("/patients/" + patientId + "/hospitals/0")).andExpect(status().isNotFound());
+		mockMvc.perform(post("/hospitals/" + hospitalId + "/patients").contentType(MediaType.APPLICATION_JSON)
+						.content("{\"patientIds\":[" + patientId + ",0]}"))
+				.andExpect(status().isNotFound());
+		mockMvc.perform(post("/hospitals/" + hospitalId + "/patients").contentType(MediaType.APPLICATION_JSON)
+						.content("{}"))
+				.andExpect(status().isBadRequest());
+
+		mockMvc.perform(get("/hospitals/" + hospitalId + "/patients"))
+				.andExpect(status().isOk())
+				.andExpect(jsonPath("$.totalElements").value(1))
+				.andExpect(jsonPath("$.content[0].id").value(patientId));
+		mockMvc.perform(get("/patients/" + patientId + "/hospitals"))
+				.andExpect(jsonPath("$[0].id").value(hospitalId));
+		mockMvc.perform(get("/hospitals/" + hospitalId + "/patients/count"))
+				.andExpect(content().string("1"));
+
+		MvcResult export = mockMvc.perform(get("/hospitals/" + hospitalId + "/patients/export?format=ndjson"))
+				.andExpect(request().asyncStarted())
+				.andReturn();
+		mockMvc.perform(asyncDispatch(export))
+				.andExpect(status().isOk())
+				.andExpect(header().string("Content-Type", "application/x-ndjson"))
+				.andExpect(content().string(startsWith("{\"id\":" + patientId + ",")));
+		mockMvc.perform(get("/patients/export?format=xml")).andExpect(status().isBadRequest());
+
+		MvcResult stream = mockMvc.perform(get("/hospitals/" + hospitalId + "/patients/stream?format=sse"))
+				.andExpect(request().asyncStarted())
+				.andReturn();
+		mockMvc.perform(asyncDispatch(stream))
+				.andExpect(status().isOk())
+				.andExpect(header().string("Content-Type", "text/event-stream"))
+				.andExpect(content().string(startsWith("id: " + patientId + "\ndata: {\"id\":" + patientId + ",")));
+		MvcResult resumed = mockMvc.perform(get("/hospitals/" + hospitalId + "/patients/stream")
+						.header("Last-Event-ID", patientId))
+				.andReturn();
+		mockMvc.perform(asyncDispatch(resumed))
+				.andExpect(content().string(""));
+	}
+}
@@ -0,0 +1,139 @@
+package hospitalsystem.HospitalSystem;
+
+import hospitalsystem.persistence.HospitalSystemApplication;
+import hospitalsystem.persistence.entity.Hospital;
+import hospitalsystem.persistence.service.FileImportReport;
+import hospitalsystem.persistence.service.HospitalService;
+import hospitalsystem.persistence.service.PatientFileImportService;
+import hospitalsystem.persistence.service.PatientStreamService;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.web.server.LocalServerPort;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.lang.management.ManagementFactory;
+import java.net.HttpURLConnection;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Streams a large roster to many slow clients at once. If the server buffered what the clients have not read yet,
+ * the heap would grow by the size of the roster per client; with pages read on demand it stays flat.
+ */
+@Tag("load")
+@SpringBootTest(classes = HospitalSystemApplication.class, webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT,
+		properties = {"hospital.stream.page-size=100", "logging.level.root=WARN"})
+class PatientStreamTests {
+
+	private static final int PATIENTS = 50_000;
+	private static final int CONSUMERS = 100;
+	private static final long MAX_HEAP_GROWTH = 64L * 1024 * 1024;
+
+	@LocalServerPort
+	private int port;
+	@Autowired
+	private HospitalService hospitalService;
+	@Autowired
+	private PatientFileImportService patientFileImportService;
+	@Autowired
+	private PatientStreamService patientStreamService;
+
+	@TempDir
+	Path directory;
+
+	@Test
+	void testSlowConsumersDoNotGrowTheHeap() throws Exception {
+		Hospital hospital = hospitalService.createHospital("TUM Klinikum", "Ismaninger Straße 22", "123-456-789");
+		importPatients(hospital.getId());
+		String roster = "http://localhost:" + port + "/hospitals/" + hospital.getId() + "/patients/stream";
+		long baseline = usedHeap();
+
+		AtomicBoolean stop = new AtomicBoolean();
+		ExecutorService clients = Executors.newFixedThreadPool(CONSUMERS);
+		List<Future<Integer>> results = new ArrayList<>();
+		for (int i = 0; i < CONSUMERS; i++) {
+			results.add(clients.submit(() -> {
+				HttpURLConnection connection = (HttpURLConnection) URI.create(roster).toURL().openConnection();
+				int lines = 0;
+				try (BufferedReader reader = new BufferedReader(
+						new InputStreamReader(connection.getInputStream(), StandardCharsets.UTF_8))) {
+					while (!stop.get() && reader.readLine() != null) {
+						lines++;
+						Thread.sleep(20);
+					}
+				} finally {
+					connection.disconnect();
+				}
+				return lines;
+			}));
+		}
+
+		long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+		while (patientStreamService.getActiveStreams() < CONSUMERS && System.nanoTime() < deadline) {
+			Thread.sleep(50);
+		}
+		assertEquals(CONSUMERS, patientStreamService.getActiveStreams(), "all streams should run concurrently");
+		long peak = 0;
+		for (int i = 0; i < 5; i++) {
+			Thread.sleep(1000);
+			peak = Math.max(peak, usedHeap());
+		}
+		long growth = peak - baseline;
+		assertTrue(growth < MAX_HEAP_GROWTH, () -> String.format(
+				"streams must not buffer unread patients: heap grew by %d MB with %d slow consumers",
+				growth >> 20, CONSUMERS));
+
+		stop.set(true);
+		for (Future<Integer> result : results) {
+			assertTrue(result.get() < PATIENTS, "slow consumers should still be reading");
+		}
+		clients.shutdown();
+		deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(30);
+		while (patientStreamService.getActiveStreams() > 0 && System.nanoTime() < deadline) {
+			Thread.sleep(50);
+		}
+		assertEquals(0, patientStreamService.getActiveStreams(), "disconnected clients must end their streams");
+
+		HttpURLConnection connection = (HttpURLConnection) URI.create(roster).toURL().openConnection();
+		try (BufferedReader reader = new BufferedReader(
+				new InputStreamReader(connection.getInputStream(), StandardCharsets.UTF_8))) {
+			assertEquals(PATIENTS, reader.lines().count());
+		}
+	}
+
+	private void importPatients(int hospitalId) throws IOException {
+		Path file = directory.resolve("roster.csv");
+		String address = "Ismaninger Straße 22, 81675 München, " + "x".repeat(200);
+		try (BufferedWriter writer = Files.newBufferedWriter(file)) {
+			writer.write("first_name,last_name,email,date_of_birth,sex,address,hospital_ids\n");
+			for (int i = 0; i < PATIENTS; i++) {
+				writer.write("Stream" + i + ",Tum,stream" + i + "@tum.de,1990-01-01,female,\"" + address + "\","
+						+ hospitalId + "\n");
+			}
+		}
+		FileImportReport report = patientFileImportService.importFile(file);
+		assertEquals(PATIENTS, report.imported());
+	}
+
+	private static long usedHeap() {
+		System.gc();
+		return ManagementFactory.getMemoryMXBean().getHeapMemoryUsage().getUsed();
+	}
+}
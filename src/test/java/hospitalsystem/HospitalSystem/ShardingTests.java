@@ -0,0 +1,286 @@
+package hospitalsystem.HospitalSystem;
+
+import hospitalsystem.persistence.HospitalSystemApplication;
+import hospitalsystem.persistence.entity.Hospital;
+import hospitalsystem.persistence.entity.Patient;
+import hospitalsystem.persistence.outbox.ChangeEvent;
+import hospitalsystem.persistence.outbox.ChangeEventRelay;
+import hospitalsystem.persistence.outbox.ChangeType;
+import hospitalsystem.persistence.search.PatientSearchIndexLoader;
+import hospitalsystem.persistence.service.CurrentDiagnosisMaterializer;
+import hospitalsystem.persistence.service.DiagnosisHistoryService;
+import hospitalsystem.persistence.projection.PatientRosterEntry;
+import hospitalsystem.persistence.projection.PatientView;
+import hospitalsystem.persistence.service.ExportFormat;
+import hospitalsystem.persistence.service.HospitalRosterService;
+import hospitalsystem.persistence.service.HospitalService;
+import hospitalsystem.persistence.service.PatientExportFilter;
+import hospitalsystem.persistence.service.PatientExportService;
+import hospitalsystem.persistence.service.PatientService;
+import hospitalsystem.persistence.service.ReadModelService;
+import hospitalsystem.persistence.service.WriteBehindQueue;
+import hospitalsystem.persistence.sharding.ShardContext;
+import hospitalsystem.persistence.sharding.ShardRoutingDataSource;
+import hospitalsystem.persistence.statistics.HospitalStatistics;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Date;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Partitions the data over three in-memory H2 databases standing in for database nodes.
+ */
+@SpringBootTest(classes = HospitalSystemApplication.class, properties = {
+		"hospital.sharding.enabled=true",
+		"hospital.sharding.urls=jdbc:h2:mem:shard0;DB_CLOSE_DELAY=-1,jdbc:h2:mem:shard1;DB_CLOSE_DELAY=-1,"
+				+ "jdbc:h2:mem:shard2;DB_CLOSE_DELAY=-1",
+		"spring.jpa.hibernate.ddl-auto=create-drop",
+		"hospital.write-behind.enabled=true"
+})
+class ShardingTests {
+
+	@Autowired
+	private PatientService patientService;
+	@Autowired
+	private HospitalService hospitalService;
+	@Autowired
+	private CurrentDiagnosisMaterializer currentDiagnosisMaterializer;
+	@Autowired
+	private DiagnosisHistoryService diagnosisHistoryService;
+	@Autowired
+	private ShardRoutingDataSource dataSource;
+	@Autowired
+	private HospitalStatistics hospitalStatistics;
+	@Autowired
+	private PatientSearchIndexLoader patientSearchIndexLoader;
+	@Autowired
+	private ChangeEventRelay changeEventRelay;
+	@Autowired
+	private ReadModelService readModelService;
+	@Autowired
+	private HospitalRosterService hospitalRosterService;
+	@Autowired
+	private PatientExportService patientExportService;
+	@Autowired
+	private WriteBehindQueue writeBehindQueue;
+
+	@Test
+	void testHospitalsAndTheirPatientsAreStoredOnOneShard() {
+		Hospital[] hospitals = new Hospital[3];
+		Patient[] patients = new Patient[3];
+		Set<Integer> shards = new HashSet<>();
+		for (int i = 0; i < 3; i++) {
+			hospitals[i] = hospitalService.createHospital("Klinikum " + i, "Ismaninger Straße 22", "123-456-789");
+			patients[i] = patientService.createPatient(hospitals[i].getId(), "Max", "Shard" + i, new Date(),
+					"max.shard" + i + "@tum.de");
+			int shard = shardOf("Hospitals", hospitals[i].getId());
+			assertEquals(shard, shardOf("Patients", patients[i].getId()));
+			shards.add(shard);
+		}
+		assertEquals(3, shards.size(), "new hospitals should be spread over all shards");
+
+		for (int i = 0; i < 3; i++) {
+			assertEquals("Klinikum " + i, hospitalService.findHospitalById(hospitals[i].getId()).getName());
+			assertEquals("Shard" + i, patientService.findPatientById(patients[i].getId()).getLastName());
+			assertEquals(1, hospitalService.countPatientsByHospital(hospitals[i].getId()));
+			assertTrue(hospitalService.isPatientRegistered(patients[i].getId(), hospitals[i].getId()));
+		}
+	}
+
+	@Test
+	void testScatterGather() {
+		Hospital first = hospitalService.createHospital("Klinikum rechts der Isar", "Ismaninger Straße 22", "1");
+		Hospital second = hospitalService.createHospital("Klinikum Großhadern", "Marchioninistraße 15", "2");
+		Patient max = patientService.createPatient(first.getId(), "Max", "Scatter", new Date(), "max.scatter@tum.de");
+		Patient felix = patientService.createPatient(second.getId(), "Felix", "Scatter", new Date(),
+				"felix.scatter@tum.de");
+		assertNotEquals(shardOf("Patients", max.getId()), shardOf("Patients", felix.getId()));
+
+		List<Integer> hospitalIds = hospitalService.findAllHospitals().stream().map(Hospital::getId).toList();
+		assertTrue(hospitalIds.containsAll(List.of(first.getId(), second.getId())));
+		assertEquals(hospitalIds.size(), new HashSet<>(hospitalIds).size(), "IDs must be unique across shards");
+
+		assertEquals(felix.getId(), patientService.findPatientByEmail("felix.scatter@tum.de").getId());
+		Map<Integer, Set<Hospital>> registrations = patientService.listHospitalsByPatients(
+				List.of(max.getId(), felix.getId()));
+		assertEquals(Set.of(first.getId()), ids(registrations.get(max.getId())));
+		assertEquals(Set.of(second.getId()), ids(registrations.get(felix.getId())));
+	}
+
+	@Test
+	void testRegistrationAcrossShards() {
+		Hospital first = hospitalService.createHospital("Klinikum rechts der Isar", "Ismaninger Straße 22", "1");
+		Hospital second = hospitalService.createHospital("Klinikum Großhadern", "Marchioninistraße 15", "2");
+		assertNotEquals(shardOf("Hospitals", first.getId()), shardOf("Hospitals", second.getId()));
+		Patient patient = patientService.createPatient(first.getId(), "Max", "Across", new Date(),
+				"max.across@tum.de");
+
+		assertTrue(patientService.registerPatient(patient.getId(), second.getId()));
+		assertTrue(hospitalService.isPatientRegistered(patient.getId(), second.getId()));
+		assertEquals(1, hospitalService.countPatientsByHospital(second.getId()));
+		assertEquals(Set.of(first.getId(), second.getId()),
+				ids(patientService.listHospitalsByPatients(List.of(patient.getId())).get(patient.getId())));
+		hospitalStatistics.rebuild();
+		assertEquals(1, hospitalStatistics.getPatientCount(second.getId()));
+
+		patientService.deletePatientById(patient.getId());
+		assertFalse(hospitalService.isPatientRegistered(patient.getId(), second.getId()));
+		assertEquals(0, hospitalService.countPatientsByHospital(second.getId()));
+	}
+
+	@Test
+	void testHospitalsOfPatientAcrossShards() {
+		Hospital first = hospitalService.createHospital("Klinikum rechts der Isar", "Ismaninger Straße 22", "1");
+		Hospital second = hospitalService.createHospital("Klinikum Großhadern", "Marchioninistraße 15", "2");
+		assertNotEquals(shardOf("Hospitals", first.getId()), shardOf("Hospitals", second.getId()));
+		Patient patient = patientService.createPatient(first.getId(), "Felix", "Across", new Date(),
+				"felix.across@tum.de");
+		assertTrue(patientService.registerPatient(patient.getId(), second.getId()));
+
+		assertEquals(Set.of(first.getId(), second.getId()), ids(patientService.listHospitalByPatient(patient)));
+	}
+
+	@Test
+	void testReadersSeeAllShards() throws IOException {
+		Hospital first = hospitalService.createHospital("Klinikum rechts der Isar", "Ismaninger Straße 22", "1");
+		Hospital second = hospitalService.createHospital("Klinikum Großhadern", "Marchioninistraße 15", "2");
+		assertNotEquals(shardOf("Hospitals", first.getId()), shardOf("Hospitals", second.getId()));
+		Patient max = patientService.createPatient(first.getId(), "Max", "Reader", new Date(), "max.reader@tum.de");
+		Patient felix = patientService.createPatient(second.getId(), "Felix", "Reader", new Date(),
+				"felix.reader@tum.de");
+		assertTrue(patientService.registerPatient(felix.getId(), first.getId()));
+		List<Integer> registered = max.getId() < felix.getId()
+				? List.of(max.getId(), felix.getId()) : List.of(felix.getId(), max.getId());
+
+		List<Integer> after = readModelService.findPatientViewsAfter(registered.get(0) - 1, 1000).stream()
+				.map(PatientView::id).toList();
+		assertTrue(after.containsAll(registered));
+		assertEquals(after.stream().sorted().toList(), after);
+		assertEquals(registered.get(0), readModelService.findPatientViewsAfter(registered.get(0) - 1, 1).get(0).id());
+
+		Page<PatientRosterEntry> roster = hospitalRosterService.findRosterByHospital(first.getId(),
+				PageRequest.of(0, 10));
+		assertEquals(2, roster.getTotalElements());
+		assertEquals(registered, roster.getContent().stream().map(PatientRosterEntry::getId).toList());
+		assertEquals(registered, hospitalRosterService.findPatientViewsByHospitalAfter(first.getId(), 0, 10).stream()
+				.map(PatientView::id).toList());
+
+		ByteArrayOutputStream ndjson = new ByteArrayOutputStream();
+		assertEquals(2, patientExportService.exportPatients(new PatientExportFilter(first.getId(), null, null, true),
+				ExportFormat.NDJSON, ndjson).rows());
+		assertTrue(ndjson.toString(StandardCharsets.UTF_8).contains("\"id\":" + felix.getId()
+				+ ",\"firstName\":\"Felix\""));
+		assertTrue(ndjson.toString(StandardCharsets.UTF_8).contains("\"hospitalIds\":["
+				+ Math.min(first.getId(), second.getId()) + "," + Math.max(first.getId(), second.getId()) + "]"));
+
+		assertThrows(RuntimeException.class,
+				() -> patientService.searchPatientsByLastName("Reader", PageRequest.of(0, 10)));
+	}
+
+	@Test
+	void testBackgroundWorkVisitsAllShards() {
+		changeEventRelay.relay();
+		long start = lastEventPosition();
+		Hospital hospital;
+		do {
+			hospital = hospitalService.createHospital("Klinikum Großhadern", "Marchioninistraße 15", "2");
+		} while (shardOf("Hospitals", hospital.getId()) == ShardRoutingDataSource.DEFAULT_SHARD);
+		Patient patient = patientService.createPatient(hospital.getId(), "Max", "Quackenbush", new Date(),
+				"max.background@tum.de");
+
+		hospitalStatistics.rebuild();
+		assertEquals(1, hospitalStatistics.getPatientCount(hospital.getId()));
+		patientSearchIndexLoader.buildIndex();
+		assertEquals(patient.getId(), patientService.searchPatients("Quackenbush", 5).get(0).patientId());
+
+		changeEventRelay.relay();
+		int hospitalId = hospital.getId();
+		assertTrue(changeEventRelay.findEventsAfter(start, 1000).stream()
+				.anyMatch(event -> event.type() == ChangeType.HOSPITAL_CREATED && event.aggregateId() == hospitalId));
+		assertTrue(changeEventRelay.findEventsAfter(start, 1000).stream()
+				.anyMatch(event -> event.type() == ChangeType.PATIENT_CREATED
+						&& event.aggregateId() == patient.getId()));
+	}
+
+	@Test
+	void testDiagnosesAreMaterializedOnTheShardOfThePatient() {
+		Hospital hospital;
+		do {
+			hospital = hospitalService.createHospital("Klinikum Großhadern", "Marchioninistraße 15", "2");
+		} while (shardOf("Hospitals", hospital.getId()) == ShardRoutingDataSource.DEFAULT_SHARD);
+		Patient patient = patientService.createPatient(hospital.getId(), "Max", "Diagnosis", new Date(),
+				"max.diagnosis@tum.de");
+
+		patientService.addDiagnosisById(patient.getId(), "Flu");
+		currentDiagnosisMaterializer.flush();
+		assertEquals("Flu", patientService.findPatientById(patient.getId()).getDiagnosis());
+
+		patientService.deletePatientById(patient.getId());
+		hospitalService.deleteHospitalById(hospital.getId());
+		assertNull(patientService.findPatientById(patient.getId()));
+		assertNull(hospitalService.findHospitalById(hospital.getId()));
+	}
+
+	@Test
+	void testWriteBehindAppliesBatchesOnTheirShards() {
+		Hospital hospital;
+		do {
+			hospital = hospitalService.createHospital("Klinikum Großhadern", "Marchioninistraße 15", "2");
+		} while (shardOf("Hospitals", hospital.getId()) == ShardRoutingDataSource.DEFAULT_SHARD);
+		Hospital other = hospitalService.createHospital("Klinikum rechts der Isar", "Ismaninger Straße 22", "1");
+		Patient patient = patientService.createPatient(hospital.getId(), "Max", "Behind", new Date(),
+				"max.behind@tum.de");
+
+		CompletableFuture.allOf(writeBehindQueue.addDiagnosis(patient.getId(), "Flu"),
+				writeBehindQueue.registerPatient(patient.getId(), other.getId())).join();
+		assertEquals(1, ShardContext.call(shardOf("Patients", patient.getId()),
+				() -> diagnosisHistoryService.findDiagnosisHistory(patient.getId())).size());
+		assertTrue(hospitalService.isPatientRegistered(patient.getId(), other.getId()));
+		assertThrows(CompletionException.class, () -> writeBehindQueue.addDiagnosis(-1, "Flu").join());
+	}
+
+	private int shardOf(String table, int id) {
+		int found = -1;
+		for (int shard = 0; shard < dataSource.getShardCount(); shard++) {
+			Integer rows = new JdbcTemplate(dataSource.getShard(shard))
+					.queryForObject("select count(*) from " + table + " where id = ?", Integer.class, id);
+			if (rows != null && rows > 0) {
+				assertEquals(-1, found, "stored on more than one shard");
+				found = shard;
+			}
+		}
+		assertNotEquals(-1, found, "stored on no shard");
+		return found;
+	}
+
+	private long lastEventPosition() {
+		long after = 0;
+		List<ChangeEvent> events = changeEventRelay.findEventsAfter(after, 1000);
+		while (!events.isEmpty()) {
+			after = events.get(events.size() - 1).position();
+			events = changeEventRelay.findEventsAfter(after, 1000);
+		}
+		return after;
+	}
+
+	private static Set<Integer> ids(Set<Hospital> hospitals) {
+		Set<Integer> ids = new HashSet<>();
+		hospitals.forEach(hospital -> ids.add(hospital.getId()));
+		return ids;
+	}
+}
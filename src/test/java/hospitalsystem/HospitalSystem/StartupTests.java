@@ -0,0 +1,38 @@
+package hospitalsystem.HospitalSystem;
+
+import hospitalsystem.persistence.HospitalSystemApplication;
+import hospitalsystem.persistence.service.PatientService;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@SpringBootTest(classes = HospitalSystemApplication.class, properties = {
+		"spring.datasource.url=jdbc:h2:mem:startup",
+		"spring.main.lazy-initialization=true",
+		"hospital.seed.mode=async"
+})
+class StartupTests {
+
+	@Autowired
+	private ConfigurableApplicationContext context;
+	@Autowired
+	private PatientService patientService;
+
+	@Test
+	void testLazyStartWithAsyncSeed() throws InterruptedException {
+		assertTrue(context.getBeanFactory().containsSingleton("changeEventRelay"),
+				"the outbox relay must start without being asked");
+		assertFalse(context.getBeanFactory().containsSingleton("patientDeduplicationService"));
+
+		long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+		while (patientService.findPatientByEmail("felix.tum@tum.de") == null && System.nanoTime() < deadline) {
+			Thread.sleep(20);
+		}
+		assertNotNull(patientService.findPatientByEmail("max.tum@tum.de"));
+	}
+}
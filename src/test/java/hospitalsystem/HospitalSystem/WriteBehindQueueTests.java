@@ -0,0 +1,83 @@
+package hospitalsystem.HospitalSystem;
+
+import hospitalsystem.persistence.HospitalSystemApplication;
+import hospitalsystem.persistence.entity.DiagnosisEntry;
+import hospitalsystem.persistence.entity.Hospital;
+import hospitalsystem.persistence.entity.Patient;
+import hospitalsystem.persistence.service.DiagnosisHistoryService;
+import hospitalsystem.persistence.service.HospitalService;
+import hospitalsystem.persistence.service.PatientService;
+import hospitalsystem.persistence.service.WriteBehindQueue;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@SpringBootTest(classes = HospitalSystemApplication.class, properties = {
+		"spring.datasource.url=jdbc:h2:mem:writebehind",
+		"hospital.write-behind.enabled=true",
+		"hospital.write-behind.max-batch=50"
+})
+class WriteBehindQueueTests {
+
+	@Autowired
+	private WriteBehindQueue writeBehindQueue;
+	@Autowired
+	private PatientService patientService;
+	@Autowired
+	private HospitalService hospitalService;
+	@Autowired
+	private DiagnosisHistoryService diagnosisHistoryService;
+	@Autowired
+	private MeterRegistry meterRegistry;
+
+	@Test
+	void testMutationsAreGroupedAndCoalesced() {
+		Hospital hospital = hospitalService.createHospital("TUM Klinikum", "Ismaninger Straße 22", "123-456-789");
+		List<Patient> patients = new ArrayList<>();
+		for (int i = 0; i < 20; i++) {
+			patients.add(patientService.createPatient("Max" + i, "Behind", new Date(), "max.behind" + i + "@tum.de"));
+		}
+
+		List<CompletableFuture<Void>> results = new ArrayList<>();
+		for (Patient patient : patients) {
+			results.add(writeBehindQueue.registerPatient(patient.getId(), hospital.getId()));
+			results.add(writeBehindQueue.registerPatient(patient.getId(), hospital.getId()));
+			results.add(writeBehindQueue.addDiagnosis(patient.getId(), "Flu"));
+			results.add(writeBehindQueue.addDiagnosis(patient.getId(), "Pneumonia"));
+		}
+		CompletableFuture.allOf(results.toArray(CompletableFuture[]::new)).join();
+
+		assertEquals(20, hospitalService.countPatientsByHospital(hospital.getId()));
+		for (Patient patient : patients) {
+			assertEquals("Pneumonia", diagnosisHistoryService.findLatestDiagnosis(patient.getId()));
+			assertEquals(List.of("Flu", "Pneumonia"), diagnosisHistoryService.findDiagnosisHistory(patient.getId())
+					.stream().map(DiagnosisEntry::getDiagnosis).toList());
+		}
+		assertTrue(meterRegistry.get("hospital.write-behind.batch.size").summary().max() > 1);
+		assertNotNull(meterRegistry.get("hospital.write-behind.queue.depth").gauge());
+	}
+
+	@Test
+	void testFailedMutationsDoNotFailTheBatch() {
+		Hospital hospital = hospitalService.createHospital("TUM Klinikum", "Ismaninger Straße 22", "123-456-789");
+		Patient patient = patientService.createPatient("Max", "Behind", new Date(), "max.behind.failure@tum.de");
+
+		CompletableFuture<Void> registration = writeBehindQueue.registerPatient(patient.getId(), hospital.getId());
+		CompletableFuture<Void> unknownHospital = writeBehindQueue.registerPatient(patient.getId(), -1);
+		CompletableFuture<Void> unknownPatient = writeBehindQueue.addDiagnosis(-1, "Flu");
+
+		registration.join();
+		assertThrows(CompletionException.class, unknownHospital::join);
+		assertThrows(CompletionException.class, unknownPatient::join);
+		assertTrue(hospitalService.isPatientRegistered(patient.getId(), hospital.getId()));
+	}
+}